@@ -379,13 +379,15 @@ class BranchReachabilityAnalysis(
         val allDeadCallSiteIds = deadCallSites.map { it.id }.toMutableSet()
         var changed = true
 
+        // The call graph does not change between iterations; group it once
+        val allCallSites = graph.nodes(CallSiteNode::class.java).toList()
+        val callSitesByCallee = allCallSites.groupBy { it.callee.signature }
+        val callSitesByCaller = allCallSites.groupBy { it.caller.signature }
+
         while (changed) {
             changed = false
 
             // Find methods where ALL call sites to them are dead
-            val allCallSites = graph.nodes(CallSiteNode::class.java).toList()
-            val callSitesByCallee = allCallSites.groupBy { it.callee.signature }
-
             for ((signature, callSitesForMethod) in callSitesByCallee) {
                 val method = callSitesForMethod.first().callee
                 if (method in deadMethods) continue
@@ -397,9 +399,7 @@ class BranchReachabilityAnalysis(
                     changed = true
 
                     // All call sites WITHIN this dead method also become dead
-                    allCallSites
-                        .filter { it.caller.signature == signature }
-                        .forEach { allDeadCallSiteIds.add(it.id) }
+                    callSitesByCaller[signature]?.forEach { allDeadCallSiteIds.add(it.id) }
                 }
             }
         }
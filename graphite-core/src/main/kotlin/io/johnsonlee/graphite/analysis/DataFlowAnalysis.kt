@@ -6,7 +6,6 @@ import io.johnsonlee.graphite.core.ConstantNode
 import io.johnsonlee.graphite.core.DataFlowEdge
 import io.johnsonlee.graphite.core.DataFlowKind
 import io.johnsonlee.graphite.core.DoubleConstant
-import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.EnumConstant
 import io.johnsonlee.graphite.core.FieldNode
 import io.johnsonlee.graphite.core.FloatConstant
@@ -22,10 +21,15 @@ import io.johnsonlee.graphite.core.ResourceValueNode
 import io.johnsonlee.graphite.core.ReturnNode
 import io.johnsonlee.graphite.core.StringConstant
 import io.johnsonlee.graphite.core.ValueNode
+import io.johnsonlee.graphite.graph.EdgeLabels
 import io.johnsonlee.graphite.graph.Graph
 
 private const val CONSTANT_PREVIEW_LENGTH = 50
 
+/** Cursor masks: every dataflow edge, and the edges that can write a field. */
+private val DATAFLOW_MASK = EdgeLabels.mask(DataFlowEdge::class.java)
+private val FIELD_WRITE_MASK = EdgeLabels.mask(DataFlowKind.ASSIGN, DataFlowKind.FIELD_STORE)
+
 /**
  * Dataflow analysis engine.
  *
@@ -122,8 +126,8 @@ class DataFlowAnalysis(
         }
 
         if (!skipDefaultIncoming) {
-            graph.incoming(current, DataFlowEdge::class.java).forEach { edge ->
-                traverseBackward(edge.from, currentPath, currentPropSteps, edge.kind, depth + 1, state)
+            graph.forEachIncoming(current, DATAFLOW_MASK) { from, label ->
+                traverseBackward(NodeId(from), currentPath, currentPropSteps, EdgeLabels.dataFlowKind(label), depth + 1, state)
             }
         }
     }
@@ -270,8 +274,8 @@ class DataFlowAnalysis(
             }
 
             // Continue forward traversal
-            graph.outgoing(current, DataFlowEdge::class.java).forEach { edge ->
-                traverse(edge.to, currentPath, currentPropSteps, edge.kind, depth + 1)
+            graph.forEachOutgoing(current, DATAFLOW_MASK) { to, label ->
+                traverse(NodeId(to), currentPath, currentPropSteps, EdgeLabels.dataFlowKind(label), depth + 1)
             }
         }
 
@@ -309,13 +313,9 @@ class DataFlowAnalysis(
         depth: Int,
         state: BackwardSliceState
     ) {
-        graph.incoming(field.id, DataFlowEdge::class.java)
-            .filter { edge ->
-                edge.kind == DataFlowKind.FIELD_STORE || edge.kind == DataFlowKind.ASSIGN
-            }
-            .forEach { edge ->
-                traverseBackward(edge.from, path, propSteps, edge.kind, depth + 1, state)
-            }
+        graph.forEachIncoming(field.id, FIELD_WRITE_MASK) { from, label ->
+            traverseBackward(NodeId(from), path, propSteps, EdgeLabels.dataFlowKind(label), depth + 1, state)
+        }
     }
 
 }
@@ -350,7 +350,8 @@ class DataFlowResult(
      * Enum constants are accessed via static field reads (e.g., ExperimentId.CHECKOUT_V2),
      * which are represented as FieldNode in the graph. This method extracts both:
      * - Direct ConstantNode values
-     * - Enum constants from FieldNode sources (synthetic EnumConstant with resolved values)
+     * - Enum constants from FieldNode sources (synthetic EnumConstant with resolved values and a
+     *   [NodeId.synthetic] id, so they never collide with graph nodes)
      */
     fun allConstants(): List<ConstantNode> {
         val directConstants = constants()
@@ -363,7 +364,7 @@ class DataFlowResult(
                 // Look up the enum values from the graph
                 val constructorArgs = graph?.enumValues(enumClass, enumName) ?: emptyList()
                 EnumConstant(
-                    id = NodeId.next(),
+                    id = NodeId.synthetic(),
                     enumType = field.declaringClass,
                     enumName = enumName,
                     constructorArgs = constructorArgs
@@ -430,7 +431,7 @@ class DataFlowResult(
                 val enumName = field.name
                 val constructorArgs = graph?.enumValues(enumClass, enumName) ?: emptyList()
                 val enumConstant = EnumConstant(
-                    id = NodeId.next(),
+                    id = NodeId.synthetic(),
                     enumType = field.declaringClass,
                     enumName = enumName,
                     constructorArgs = constructorArgs
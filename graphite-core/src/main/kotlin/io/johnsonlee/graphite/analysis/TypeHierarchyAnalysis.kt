@@ -608,12 +608,7 @@ class TypeHierarchyAnalysis(
      * Collect all supertypes (parents, grandparents, etc.) for a type using the type hierarchy graph.
      */
     private fun collectAllSupertypes(type: TypeDescriptor, result: MutableSet<String>) {
-        graph.supertypes(type).forEach { supertype ->
-            if (supertype.className !in result) {
-                result.add(supertype.className)
-                collectAllSupertypes(supertype, result)
-            }
-        }
+        graph.allSupertypes(type).mapTo(result) { it.className }
     }
 
     /**
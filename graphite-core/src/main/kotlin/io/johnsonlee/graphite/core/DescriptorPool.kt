@@ -0,0 +1,100 @@
+package io.johnsonlee.graphite.core
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Canonicalizing table of [TypeDescriptor]s and [MethodDescriptor]s.
+ *
+ * Every distinct descriptor is stored once and gets a dense integer id in
+ * insertion order; [intern] returns the canonical (flyweight) instance, with
+ * its component types interned as well. Nodes built from one pool share
+ * descriptor instances, so equality checks between them short-circuit on
+ * identity and each signature is kept in memory only once.
+ *
+ * Lookups of already interned descriptors are lock-free; new entries are
+ * appended under a per-table lock, so a pool can be shared across threads.
+ */
+class DescriptorPool {
+
+    private val types = Table<TypeDescriptor>()
+    private val methods = Table<MethodDescriptor>()
+
+    /** Number of distinct types. */
+    val typeCount: Int get() = types.size
+
+    /** Number of distinct methods. */
+    val methodCount: Int get() = methods.size
+
+    /** Canonical type named [className] without type arguments. */
+    fun type(className: String): TypeDescriptor = intern(TypeDescriptor(className))
+
+    fun intern(type: TypeDescriptor): TypeDescriptor = types[typeId(type)]
+
+    fun intern(method: MethodDescriptor): MethodDescriptor = methods[methodId(method)]
+
+    /** Id of [type], interning it first if needed. */
+    fun typeId(type: TypeDescriptor): Int = types.intern(type) { canonical(it) }
+
+    /** Id of [method], interning it first if needed. */
+    fun methodId(method: MethodDescriptor): Int = methods.intern(method) { canonical(it) }
+
+    /** Id of an already interned [type], or -1. */
+    fun idOf(type: TypeDescriptor): Int = types.idOf(type)
+
+    /** Id of an already interned [method], or -1. */
+    fun idOf(method: MethodDescriptor): Int = methods.idOf(method)
+
+    fun typeAt(id: Int): TypeDescriptor = types[id]
+
+    fun methodAt(id: Int): MethodDescriptor = methods[id]
+
+    private fun canonical(type: TypeDescriptor): TypeDescriptor {
+        if (type.typeArguments.isEmpty()) return type
+        val arguments = type.typeArguments.map { intern(it) }
+        return if (arguments.indices.all { arguments[it] === type.typeArguments[it] }) type else type.copy(typeArguments = arguments)
+    }
+
+    private fun canonical(method: MethodDescriptor): MethodDescriptor {
+        val declaringClass = intern(method.declaringClass)
+        val parameterTypes = method.parameterTypes.map { intern(it) }
+        val returnType = intern(method.returnType)
+        val unchanged = declaringClass === method.declaringClass &&
+            returnType === method.returnType &&
+            parameterTypes.indices.all { parameterTypes[it] === method.parameterTypes[it] }
+        return if (unchanged) method else MethodDescriptor(declaringClass, method.name, parameterTypes, returnType)
+    }
+
+    private class Table<T : Any> {
+        private val ids = ConcurrentHashMap<T, Int>()
+
+        // Grown under the lock; an id is published through [ids] only after
+        // its slot is written, so readers holding an id always see the value.
+        @Volatile
+        private var values = arrayOfNulls<Any>(64)
+
+        @Volatile
+        var size: Int = 0
+            private set
+
+        fun idOf(value: T): Int = ids[value] ?: -1
+
+        fun intern(value: T, canonicalize: (T) -> T): Int = ids[value] ?: synchronized(this) {
+            ids[value] ?: run {
+                // May intern nested types into this table first
+                val canonical = canonicalize(value)
+                val id = size
+                if (id == values.size) values = values.copyOf(id * 2)
+                values[id] = canonical
+                size = id + 1
+                ids[canonical] = id
+                id
+            }
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        operator fun get(id: Int): T {
+            if (id !in 0 until size) throw IndexOutOfBoundsException("Descriptor id $id out of range [0, $size)")
+            return values[id] as T
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.johnsonlee.graphite.core
 
+import io.johnsonlee.graphite.graph.Graph
 import java.util.concurrent.atomic.AtomicInteger
 
 /**
@@ -20,10 +21,23 @@ value class NodeId(val value: Int) {
         private val counter = AtomicInteger(0)
 
         /**
-         * Generate a new unique NodeId.
+         * Generate a new unique NodeId from the process-wide counter.
+         *
+         * Graph producers should prefer the per-graph
+         * [FullGraphBuilder.nodeIds][io.johnsonlee.graphite.graph.FullGraphBuilder.nodeIds],
+         * which keeps ids dense when several graphs are built in one process.
          */
         fun next(): NodeId = NodeId(counter.incrementAndGet())
 
+        private val syntheticCounter = AtomicInteger(0)
+
+        /**
+         * Generate a new, negative NodeId for a node synthesized outside any
+         * graph, e.g. by an analysis result. Graph producers allocate ids from
+         * zero up, so a synthetic id never resolves to, or equals, a graph node's.
+         */
+        fun synthetic(): NodeId = NodeId(syntheticCounter.decrementAndGet())
+
         /**
          * Reset the counter (for testing purposes).
          */
@@ -226,10 +240,17 @@ data class TypeDescriptor(
 ) {
     val simpleName: String get() = className.substringAfterLast('.')
 
+    /**
+     * Name-only check; use the overload taking a [Graph] to consult the type hierarchy.
+     */
     fun isSubtypeOf(other: TypeDescriptor): Boolean {
-        // Will be implemented using type hierarchy graph
         return className == other.className
     }
+
+    /**
+     * Whether this type is [other] or a direct or transitive subtype of it in [graph].
+     */
+    fun isSubtypeOf(other: TypeDescriptor, graph: Graph): Boolean = graph.isSubtypeOf(this, other)
 }
 
 data class MethodDescriptor(
@@ -0,0 +1,23 @@
+package io.johnsonlee.graphite.core
+
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Hands out dense [NodeId]s for a single graph, starting at 0.
+ *
+ * Unlike the process-wide [NodeId.next], every allocator has its own
+ * counter, so graphs built one after another in the same JVM each use the
+ * ids `0 until count` and id-indexed arrays can be sized by [count].
+ * Ids are unique per allocator only; nodes allocated by different
+ * allocators must not be added to the same graph.
+ */
+class NodeIdAllocator {
+
+    private val counter = AtomicInteger(0)
+
+    /** Number of ids handed out so far; every id is below it. */
+    val count: Int get() = counter.get()
+
+    /** Allocate the next id. */
+    fun next(): NodeId = NodeId(counter.getAndIncrement())
+}
@@ -0,0 +1,118 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.MethodDescriptor
+import io.johnsonlee.graphite.core.Node
+import io.johnsonlee.graphite.core.NodeId
+import it.unimi.dsi.fastutil.ints.IntArrayList
+
+/**
+ * Index of [CallSiteNode]s by callee declaring class and method name.
+ *
+ * Layout (all arrays sorted, CSR style):
+ * - `classes[c]` -- distinct callee class names
+ * - `names[classStarts[c] until classStarts[c + 1]]` -- method names called on class `c`
+ * - `nodeIds[nameStarts[n] until nameStarts[n + 1]]` -- ascending call site ids for name `n`
+ *
+ * [MethodPattern.declaringClass] and [MethodPattern.name] select a range of
+ * each sorted array: exact names by binary search, `prefix*` wildcards as the
+ * contiguous run of strings starting with the prefix, and regexes by testing
+ * each distinct class/name once instead of once per call site (see
+ * [MethodMatcher]). Only the remaining descriptor checks (parameter and
+ * return types) touch the nodes.
+ */
+class CallSiteIndex private constructor(
+    private val classes: Array<String>,
+    private val classStarts: IntArray,
+    private val names: Array<String>,
+    private val nameStarts: IntArray,
+    private val nodeIds: IntArray
+) {
+
+    /** Number of indexed call sites. */
+    val size: Int get() = nodeIds.size
+
+    /** Number of distinct `(class, name)` callee buckets. */
+    val bucketCount: Int get() = names.size
+
+    /**
+     * Call sites whose callee matches [pattern]; [resolve] loads a node by id.
+     */
+    fun callSites(pattern: MethodPattern, resolve: (NodeId) -> Node?): Sequence<CallSiteNode> {
+        val matcher = pattern.compile()
+        return candidates(pattern).asSequence()
+            .mapNotNull { resolve(NodeId(it)) as? CallSiteNode }
+            .filter { !matcher.checksDescriptor || matcher.matchesDescriptor(it.callee) }
+    }
+
+    /**
+     * Ids of call sites whose callee class and name match [pattern], in
+     * (class, name, id) order. Parameter and return types are not checked.
+     */
+    fun candidates(pattern: MethodPattern): IntArray {
+        val result = IntArrayList()
+        val matcher = pattern.compile()
+        matcher.declaringClass.forEachIndex(classes, 0, classes.size) { c ->
+            matcher.name.forEachIndex(names, classStarts[c], classStarts[c + 1]) { n ->
+                for (i in nameStarts[n] until nameStarts[n + 1]) result.add(nodeIds[i])
+            }
+        }
+        return result.toIntArray()
+    }
+
+    /**
+     * Visit every `(class, name, call site ids)` bucket in sorted order, e.g.
+     * to persist the index.
+     */
+    fun forEachBucket(action: (className: String, name: String, nodeIds: IntArray) -> Unit) {
+        for (c in classes.indices) {
+            for (n in classStarts[c] until classStarts[c + 1]) {
+                action(classes[c], names[n], nodeIds.copyOfRange(nameStarts[n], nameStarts[n + 1]))
+            }
+        }
+    }
+
+    /**
+     * Collects call sites in any order; [build] sorts and compacts them.
+     */
+    class Builder {
+        private val buckets = HashMap<String, HashMap<String, IntArrayList>>()
+
+        fun add(callSite: CallSiteNode): Builder = add(callSite.callee, callSite.id.value)
+
+        fun add(callee: MethodDescriptor, nodeId: Int): Builder =
+            add(callee.declaringClass.className, callee.name, nodeId)
+
+        fun add(className: String, name: String, nodeId: Int): Builder {
+            buckets.getOrPut(className) { HashMap() }.getOrPut(name) { IntArrayList() }.add(nodeId)
+            return this
+        }
+
+        fun build(): CallSiteIndex {
+            val classes = buckets.keys.sorted().toTypedArray()
+            val classStarts = IntArray(classes.size + 1)
+            val names = ArrayList<String>()
+            val nameStarts = IntArrayList()
+            val nodeIds = IntArrayList()
+            for ((c, className) in classes.withIndex()) {
+                val byName = buckets.getValue(className)
+                for (name in byName.keys.sorted()) {
+                    names.add(name)
+                    nameStarts.add(nodeIds.size)
+                    val ids = byName.getValue(name).toIntArray()
+                    ids.sort()
+                    nodeIds.addElements(nodeIds.size, ids)
+                }
+                classStarts[c + 1] = names.size
+            }
+            nameStarts.add(nodeIds.size)
+            return CallSiteIndex(
+                classes,
+                classStarts,
+                names.toTypedArray(),
+                nameStarts.toIntArray(),
+                nodeIds.toIntArray()
+            )
+        }
+    }
+}
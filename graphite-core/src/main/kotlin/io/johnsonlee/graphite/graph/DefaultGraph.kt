@@ -3,16 +3,21 @@ package io.johnsonlee.graphite.graph
 import io.johnsonlee.graphite.core.BranchComparison
 import io.johnsonlee.graphite.core.BranchScope
 import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.ControlFlowEdge
+import io.johnsonlee.graphite.core.DataFlowEdge
+import io.johnsonlee.graphite.core.DataFlowKind
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.NodeIdAllocator
 import io.johnsonlee.graphite.core.TypeDescriptor
 import io.johnsonlee.graphite.core.TypeRelation
 import io.johnsonlee.graphite.input.EmptyResourceAccessor
 import io.johnsonlee.graphite.input.ResourceAccessor
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
 import it.unimi.dsi.fastutil.objects.ObjectArrayList
 import java.util.concurrent.ConcurrentHashMap
 
@@ -23,12 +28,17 @@ import java.util.concurrent.ConcurrentHashMap
  * Memory savings vs standard HashMap:
  * - Int2ObjectOpenHashMap: ~40% less memory than HashMap<NodeId, V>
  * - ObjectArrayList: ~20% less memory than ArrayList with better cache locality
+ *
+ * Edges are stored as primitive CSR arrays in a [PartitionedAdjacency] per
+ * direction (~10 bytes per edge in total); [Edge] objects are decoded on
+ * demand. Each node's edges are sorted by [EdgeLabels] value, so typed and
+ * per-[DataFlowKind] lookups are slices instead of filters.
  */
 class DefaultGraph private constructor(
     private val nodesById: Int2ObjectOpenHashMap<Node>,
-    private val outgoingEdges: Int2ObjectOpenHashMap<List<Edge>>,
-    private val incomingEdges: Int2ObjectOpenHashMap<List<Edge>>,
-    private val methodIndex: Map<String, MethodDescriptor>,
+    private val outgoingEdges: PartitionedAdjacency,
+    private val incomingEdges: PartitionedAdjacency,
+    private val methodIndex: MethodIndex,
     private val typeHierarchy: TypeHierarchy,
     private val enumValues: Map<String, List<Any?>>,
     private val classOriginsMap: Map<String, String>,
@@ -39,7 +49,8 @@ class DefaultGraph private constructor(
     private val rawBranchScopes: Array<RawBranchScope>,
     override val resources: ResourceAccessor,
     /** Pre-computed index: concrete node class -> list of nodes of that class. */
-    private val nodesByType: Map<Class<out Node>, List<Node>>
+    private val nodesByType: Map<Class<out Node>, List<Node>>,
+    private val callSiteIndex: CallSiteIndex
 ) : Graph {
 
     /**
@@ -92,24 +103,32 @@ class DefaultGraph private constructor(
                 .filter { type.isAssignableFrom(it.key) }
                 .sumOf { it.value.size.toLong() }
 
-    override fun outgoing(id: NodeId): Sequence<Edge> =
-        outgoingEdges.get(id.value)?.asSequence() ?: emptySequence()
+    override fun outgoing(id: NodeId): Sequence<Edge> = outgoingEdges.all(id.value)
 
-    override fun incoming(id: NodeId): Sequence<Edge> =
-        incomingEdges.get(id.value)?.asSequence() ?: emptySequence()
+    override fun incoming(id: NodeId): Sequence<Edge> = incomingEdges.all(id.value)
 
-    @Suppress("UNCHECKED_CAST")
     override fun <T : Edge> outgoing(id: NodeId, type: Class<T>): Sequence<T> =
-        outgoing(id).filter { type.isInstance(it) } as Sequence<T>
+        outgoingEdges.ofType(id.value, type)
 
-    @Suppress("UNCHECKED_CAST")
     override fun <T : Edge> incoming(id: NodeId, type: Class<T>): Sequence<T> =
-        incoming(id).filter { type.isInstance(it) } as Sequence<T>
+        incomingEdges.ofType(id.value, type)
+
+    override fun outgoing(id: NodeId, kind: DataFlowKind): Sequence<DataFlowEdge> =
+        outgoingEdges.dataFlow(id.value, kind)
+
+    override fun incoming(id: NodeId, kind: DataFlowKind): Sequence<DataFlowEdge> =
+        incomingEdges.dataFlow(id.value, kind)
+
+    override fun forEachOutgoing(id: NodeId, labelMask: Long, consumer: EdgeConsumer) =
+        outgoingEdges.forEach(id.value, labelMask, consumer)
+
+    override fun forEachIncoming(id: NodeId, labelMask: Long, consumer: EdgeConsumer) =
+        incomingEdges.forEach(id.value, labelMask, consumer)
+
+    override fun edge(from: Int, to: Int, label: Int): Edge = outgoingEdges.edge(from, to, label)
 
     override fun callSites(methodPattern: MethodPattern): Sequence<CallSiteNode> =
-        nodes(CallSiteNode::class.java).filter { callSite ->
-            methodPattern.matches(callSite.callee)
-        }
+        callSiteIndex.callSites(methodPattern) { nodesById.get(it.value) }
 
     override fun supertypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         typeHierarchy.supertypes(type)
@@ -117,8 +136,10 @@ class DefaultGraph private constructor(
     override fun subtypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         typeHierarchy.subtypes(type)
 
+    override fun typeClosure(): TypeClosure = typeHierarchy.closure
+
     override fun methods(pattern: MethodPattern): Sequence<MethodDescriptor> =
-        methodIndex.values.asSequence().filter { pattern.matches(it) }
+        methodIndex.find(pattern)
 
     override fun enumValues(enumClass: String, enumName: String): List<Any?>? =
         enumValues["$enumClass#$enumName"]
@@ -140,14 +161,23 @@ class DefaultGraph private constructor(
 
     override fun typeHierarchyTypes(): Set<String> = typeHierarchy.allKeys()
 
+    private companion object {
+        const val INITIAL_EDGE_CAPACITY = 1024
+    }
+
     /**
      * Builder for constructing DefaultGraph instances.
      * Uses concurrent collections during building, then compacts to fastutil collections.
      */
     class Builder : FullGraphBuilder {
+        override val nodeIds = NodeIdAllocator()
         private val nodes = Int2ObjectOpenHashMap<Node>()
-        private val outgoing = Int2ObjectOpenHashMap<MutableList<Edge>>()
-        private val incoming = Int2ObjectOpenHashMap<MutableList<Edge>>()
+        private var edgeFrom = IntArray(INITIAL_EDGE_CAPACITY)
+        private var edgeTo = IntArray(INITIAL_EDGE_CAPACITY)
+        private var edgeLabels = ByteArray(INITIAL_EDGE_CAPACITY)
+        private var edgeCount = 0
+        private var maxEndpoint = -1
+        private val comparisons = Long2ObjectOpenHashMap<BranchComparison>()
         private val methods = ConcurrentHashMap<String, MethodDescriptor>()
         private val typeHierarchyBuilder = TypeHierarchy.Builder()
         private val enumValues = ConcurrentHashMap<String, List<Any?>>()
@@ -166,8 +196,24 @@ class DefaultGraph private constructor(
         }
 
         override fun addEdge(edge: Edge): FullGraphBuilder {
-            outgoing.computeIfAbsent(edge.from.value) { ObjectArrayList() }.add(edge)
-            incoming.computeIfAbsent(edge.to.value) { ObjectArrayList() }.add(edge)
+            val from = edge.from.value
+            val to = edge.to.value
+            require(from >= 0 && to >= 0) { "Negative node id in edge: $edge" }
+            if (edgeCount == edgeFrom.size) {
+                val newSize = edgeCount * 2
+                edgeFrom = edgeFrom.copyOf(newSize)
+                edgeTo = edgeTo.copyOf(newSize)
+                edgeLabels = edgeLabels.copyOf(newSize)
+            }
+            edgeFrom[edgeCount] = from
+            edgeTo[edgeCount] = to
+            edgeLabels[edgeCount] = EdgeLabels.of(edge).toByte()
+            edgeCount++
+            maxEndpoint = maxOf(maxEndpoint, from, to)
+            // Comparisons are rare; keep them out of line, last one wins per (from, to)
+            if (edge is ControlFlowEdge && edge.comparison != null) {
+                comparisons.put(PartitionedAdjacency.key(from, to), edge.comparison)
+            }
             return this
         }
 
@@ -227,30 +273,30 @@ class DefaultGraph private constructor(
         }
 
         override fun build(): Graph {
-            // Compact edge lists to immutable form
-            val compactOutgoing = Int2ObjectOpenHashMap<List<Edge>>(outgoing.size)
-            outgoing.int2ObjectEntrySet().forEach { entry ->
-                compactOutgoing.put(entry.intKey, entry.value.toList())
-            }
-
-            val compactIncoming = Int2ObjectOpenHashMap<List<Edge>>(incoming.size)
-            incoming.int2ObjectEntrySet().forEach { entry ->
-                compactIncoming.put(entry.intKey, entry.value.toList())
-            }
+            // Sort edges into label-ordered CSR slices for both directions
+            val capacity = maxEndpoint + 1
+            comparisons.trim()
+            val outgoingEdges = PartitionedAdjacency.build(
+                edgeFrom, edgeTo, edgeLabels, edgeCount, capacity, forward = true, comparisons
+            )
+            val incomingEdges = PartitionedAdjacency.build(
+                edgeTo, edgeFrom, edgeLabels, edgeCount, capacity, forward = false, comparisons
+            )
 
             // Trim to size for memory efficiency
             nodes.trim()
-            compactOutgoing.trim()
-            compactIncoming.trim()
 
             // Pre-compute node type index: concrete class -> list of nodes
             val nodesByType = nodes.values.groupBy { it::class.java }
+            val callSiteIndex = CallSiteIndex.Builder().apply {
+                nodesByType[CallSiteNode::class.java]?.forEach { add(it as CallSiteNode) }
+            }.build()
 
             return DefaultGraph(
                 nodesById = nodes,
-                outgoingEdges = compactOutgoing,
-                incomingEdges = compactIncoming,
-                methodIndex = methods.toMap(),
+                outgoingEdges = outgoingEdges,
+                incomingEdges = incomingEdges,
+                methodIndex = MethodIndex(methods.values),
                 typeHierarchy = typeHierarchyBuilder.build(),
                 enumValues = enumValues.toMap(),
                 classOriginsMap = classOrigins.toMap(),
@@ -258,7 +304,8 @@ class DefaultGraph private constructor(
                 memberAnnotationsMap = memberAnnotations.mapValues { it.value.toMap() },
                 rawBranchScopes = branchScopes.toTypedArray(),
                 resources = resourceAccessor,
-                nodesByType = nodesByType
+                nodesByType = nodesByType,
+                callSiteIndex = callSiteIndex
             )
         }
     }
@@ -279,6 +326,9 @@ class TypeHierarchy private constructor(
 
     fun allKeys(): Set<String> = supertypeMap.keys + subtypeMap.keys
 
+    /** Transitive closure, built on first use. */
+    val closure: TypeClosure by lazy { TypeClosure.of(supertypeMap) }
+
     class Builder {
         private val supertypes = mutableMapOf<String, MutableSet<TypeDescriptor>>()
         private val subtypes = mutableMapOf<String, MutableSet<TypeDescriptor>>()
@@ -0,0 +1,133 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.BranchComparison
+import io.johnsonlee.graphite.core.CallEdge
+import io.johnsonlee.graphite.core.ControlFlowEdge
+import io.johnsonlee.graphite.core.ControlFlowKind
+import io.johnsonlee.graphite.core.DataFlowEdge
+import io.johnsonlee.graphite.core.DataFlowKind
+import io.johnsonlee.graphite.core.Edge
+import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.ResourceEdge
+import io.johnsonlee.graphite.core.ResourceRelation
+import io.johnsonlee.graphite.core.TypeEdge
+import io.johnsonlee.graphite.core.TypeRelation
+
+/**
+ * Dense, family-major integer labels for in-memory edges.
+ *
+ * Every distinct edge shape (family + kind + flags) gets one label in
+ * `[0, COUNT)`, laid out family by family:
+ *
+ * | Labels  | Edge                                                      |
+ * |---------|-----------------------------------------------------------|
+ * | 0-8     | [DataFlowEdge], one per [DataFlowKind] in ordinal order   |
+ * | 9-12    | [CallEdge], `isVirtual` (bit 0) / `isDynamic` (bit 1)     |
+ * | 13-14   | [TypeEdge], one per [TypeRelation]                        |
+ * | 15-28   | [ControlFlowEdge], kind x "has comparison"                |
+ * | 29-33   | [ResourceEdge], one per [ResourceRelation]                |
+ *
+ * Sorting a node's edges by label therefore groups each family (and each
+ * dataflow kind) into a contiguous run, and since there are fewer than 64
+ * labels any set of them fits in a single `Long` mask (bit `label` set),
+ * which is what [Graph.forEachOutgoing]/[Graph.forEachIncoming] accept.
+ *
+ * This encoding is in-memory only; the persisted WebGraph label format is
+ * defined separately by the webgraph module.
+ */
+object EdgeLabels {
+
+    const val DATAFLOW_START = 0
+    const val CALL_START = DATAFLOW_START + 9
+    const val TYPE_START = CALL_START + 4
+    const val CONTROL_FLOW_START = TYPE_START + 2
+    const val RESOURCE_START = CONTROL_FLOW_START + 14
+    const val COUNT = RESOURCE_START + 5
+
+    /** Mask matching every label. */
+    const val ALL: Long = -1L
+
+    private val CONTROL_FLOW_KINDS = ControlFlowKind.entries
+    private val DATAFLOW_KINDS = DataFlowKind.entries
+    private val TYPE_RELATIONS = TypeRelation.entries
+    private val RESOURCE_RELATIONS = ResourceRelation.entries
+
+    init {
+        check(DATAFLOW_KINDS.size == CALL_START - DATAFLOW_START)
+        check(TYPE_RELATIONS.size == CONTROL_FLOW_START - TYPE_START)
+        check(CONTROL_FLOW_KINDS.size * 2 == RESOURCE_START - CONTROL_FLOW_START)
+        check(RESOURCE_RELATIONS.size == COUNT - RESOURCE_START)
+    }
+
+    fun of(edge: Edge): Int = when (edge) {
+        is DataFlowEdge -> of(edge.kind)
+        is CallEdge -> CALL_START + (if (edge.isVirtual) 1 else 0) + (if (edge.isDynamic) 2 else 0)
+        is TypeEdge -> TYPE_START + edge.kind.ordinal
+        is ControlFlowEdge -> CONTROL_FLOW_START + edge.kind.ordinal * 2 + (if (edge.comparison != null) 1 else 0)
+        is ResourceEdge -> RESOURCE_START + edge.kind.ordinal
+    }
+
+    fun of(kind: DataFlowKind): Int = DATAFLOW_START + kind.ordinal
+
+    /** Whether [label] is selected by [mask]. */
+    fun matches(mask: Long, label: Int): Boolean = (mask ushr label) and 1L != 0L
+
+    /** Mask selecting every edge of [type]; [Edge] itself selects everything. */
+    fun mask(type: Class<out Edge>): Long {
+        val range = rangeOf(type) ?: return ALL
+        return ((1L shl (range.last - range.first + 1)) - 1) shl range.first
+    }
+
+    /** Mask selecting dataflow edges of the given [kinds]. */
+    fun mask(vararg kinds: DataFlowKind): Long =
+        kinds.fold(0L) { mask, kind -> mask or (1L shl of(kind)) }
+
+    /** The [DataFlowKind] of a dataflow label. */
+    fun dataFlowKind(label: Int): DataFlowKind {
+        require(label in DATAFLOW_START until CALL_START) { "Not a dataflow label: $label" }
+        return DATAFLOW_KINDS[label - DATAFLOW_START]
+    }
+
+    /** Whether [label] belongs to a [ControlFlowEdge]. */
+    fun isControlFlow(label: Int): Boolean = label in CONTROL_FLOW_START until RESOURCE_START
+
+    /** Whether edges with this label carry a [BranchComparison] stored out of line. */
+    fun hasComparison(label: Int): Boolean =
+        isControlFlow(label) && (label - CONTROL_FLOW_START) and 1 == 1
+
+    /**
+     * Label range `[first, last]` covering all edges of [type], or `null`
+     * if [type] is not a concrete edge class (e.g. [Edge] itself).
+     */
+    fun rangeOf(type: Class<out Edge>): IntRange? = when (type) {
+        DataFlowEdge::class.java -> DATAFLOW_START until CALL_START
+        CallEdge::class.java -> CALL_START until TYPE_START
+        TypeEdge::class.java -> TYPE_START until CONTROL_FLOW_START
+        ControlFlowEdge::class.java -> CONTROL_FLOW_START until RESOURCE_START
+        ResourceEdge::class.java -> RESOURCE_START until COUNT
+        else -> null
+    }
+
+    /**
+     * Rebuild the [Edge] for a label. [comparison] is only consulted for
+     * control-flow labels where [hasComparison] is true.
+     */
+    fun decode(from: Int, to: Int, label: Int, comparison: () -> BranchComparison?): Edge {
+        val source = NodeId(from)
+        val target = NodeId(to)
+        return when {
+            label < CALL_START -> DataFlowEdge(source, target, DATAFLOW_KINDS[label - DATAFLOW_START])
+            label < TYPE_START -> {
+                val flags = label - CALL_START
+                CallEdge(source, target, isVirtual = flags and 1 != 0, isDynamic = flags and 2 != 0)
+            }
+            label < CONTROL_FLOW_START -> TypeEdge(source, target, TYPE_RELATIONS[label - TYPE_START])
+            label < RESOURCE_START -> {
+                val kind = CONTROL_FLOW_KINDS[(label - CONTROL_FLOW_START) shr 1]
+                ControlFlowEdge(source, target, kind, if (hasComparison(label)) comparison() else null)
+            }
+            label < COUNT -> ResourceEdge(source, target, RESOURCE_RELATIONS[label - RESOURCE_START])
+            else -> throw IllegalArgumentException("Unknown edge label: $label")
+        }
+    }
+}
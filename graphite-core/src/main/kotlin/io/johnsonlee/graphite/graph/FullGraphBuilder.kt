@@ -5,6 +5,7 @@ import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.NodeIdAllocator
 import io.johnsonlee.graphite.core.TypeDescriptor
 import io.johnsonlee.graphite.core.TypeRelation
 import io.johnsonlee.graphite.input.ResourceAccessor
@@ -16,8 +17,15 @@ import io.johnsonlee.graphite.input.ResourceAccessor
  * Both [DefaultGraph.Builder] and [MmapGraphBuilder] implement this
  * interface, allowing [SootUpAdapter][io.johnsonlee.graphite.sootup.SootUpAdapter]
  * to use either implementation transparently.
+ *
+ * Producers should allocate the ids of the nodes they add from [nodeIds],
+ * so that every graph uses dense ids from 0 regardless of how many graphs
+ * were built before it in the same process.
  */
 interface FullGraphBuilder : GraphBuilder {
+    /** Allocator for the ids of nodes added to this builder. */
+    val nodeIds: NodeIdAllocator
+
     override fun addNode(node: Node): FullGraphBuilder
     override fun addEdge(edge: Edge): FullGraphBuilder
     fun addMethod(method: MethodDescriptor): FullGraphBuilder
@@ -2,6 +2,9 @@ package io.johnsonlee.graphite.graph
 
 import io.johnsonlee.graphite.core.BranchScope
 import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.ControlFlowEdge
+import io.johnsonlee.graphite.core.DataFlowEdge
+import io.johnsonlee.graphite.core.DataFlowKind
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
@@ -24,6 +27,14 @@ interface Graph {
      */
     fun node(id: NodeId): Node?
 
+    /**
+     * Get the class of node [id], or null if there is no such node.
+     *
+     * Graphs that keep a per-node type tag answer this without decoding the
+     * node, so callers can reject nodes by type before calling [node].
+     */
+    fun nodeType(id: NodeId): Class<out Node>? = node(id)?.javaClass
+
     /**
      * Get all nodes of a specific type
      */
@@ -36,6 +47,37 @@ interface Graph {
      */
     fun nodeCount(type: Class<out Node>): Long? = null
 
+    /**
+     * Return a columnar view over all nodes of exactly [type] (e.g.
+     * [CallSiteColumns]) when the graph stores them that way, so callers can
+     * read single fields without materializing nodes. Returns null when no
+     * such view exists; callers should fall back to [nodes].
+     */
+    fun nodeColumns(type: Class<out Node>): NodeColumns? = null
+
+    /**
+     * Return the secondary index over the string [property] of nodes of
+     * exactly [type] (see [PropertyIndex]) when the graph keeps one, so
+     * callers can find nodes by value without scanning them. Returns null
+     * when [property] is not indexed; callers should fall back to [nodes].
+     */
+    fun propertyIndex(type: Class<out Node>, property: String): PropertyIndex? = null
+
+    /**
+     * Ascending ids of the nodes of exactly [type] whose [property] is
+     * [value], or null when [property] is not indexed (see [propertyIndex]).
+     */
+    fun lookup(type: Class<out Node>, property: String, value: String): IntArray? =
+        propertyIndex(type, property)?.lookup(value)
+
+    /**
+     * Return the [TrigramIndex] over the values of [propertyIndex] for
+     * [type] and [property] when the graph keeps one, so callers can find
+     * values containing a substring without testing every value. Returns
+     * null otherwise; callers should fall back to [propertyIndex] or [nodes].
+     */
+    fun trigramIndex(type: Class<out Node>, property: String): TrigramIndex? = null
+
     /**
      * Get all outgoing edges from a node
      */
@@ -56,6 +98,53 @@ interface Graph {
      */
     fun <T : Edge> incoming(id: NodeId, type: Class<T>): Sequence<T>
 
+    /**
+     * Get outgoing dataflow edges of a specific [DataFlowKind]
+     */
+    fun outgoing(id: NodeId, kind: DataFlowKind): Sequence<DataFlowEdge> =
+        outgoing(id, DataFlowEdge::class.java).filter { it.kind == kind }
+
+    /**
+     * Get incoming dataflow edges of a specific [DataFlowKind]
+     */
+    fun incoming(id: NodeId, kind: DataFlowKind): Sequence<DataFlowEdge> =
+        incoming(id, DataFlowEdge::class.java).filter { it.kind == kind }
+
+    /**
+     * Visit outgoing edges whose [EdgeLabels] value is selected by [labelMask],
+     * passing the target node id and label as primitives.
+     *
+     * Graphs with primitive adjacency implement this without allocating per
+     * edge; callers should use [edge] to materialize an [Edge] only when one
+     * is actually needed.
+     */
+    fun forEachOutgoing(id: NodeId, labelMask: Long, consumer: EdgeConsumer) {
+        outgoing(id).forEach { edge ->
+            val label = EdgeLabels.of(edge)
+            if (EdgeLabels.matches(labelMask, label)) consumer.accept(edge.to.value, label)
+        }
+    }
+
+    /**
+     * Visit incoming edges whose [EdgeLabels] value is selected by [labelMask],
+     * passing the source node id and label as primitives.
+     */
+    fun forEachIncoming(id: NodeId, labelMask: Long, consumer: EdgeConsumer) {
+        incoming(id).forEach { edge ->
+            val label = EdgeLabels.of(edge)
+            if (EdgeLabels.matches(labelMask, label)) consumer.accept(edge.from.value, label)
+        }
+    }
+
+    /**
+     * Materialize the edge `from -> to` reported by a cursor with [label].
+     */
+    fun edge(from: Int, to: Int, label: Int): Edge = EdgeLabels.decode(from, to, label) {
+        outgoing(NodeId(from), ControlFlowEdge::class.java)
+            .firstOrNull { it.to.value == to && it.comparison != null }
+            ?.comparison
+    }
+
     /**
      * Find all call sites that invoke a method matching the pattern
      */
@@ -67,6 +156,32 @@ interface Graph {
     fun supertypes(type: TypeDescriptor): Sequence<TypeDescriptor>
     fun subtypes(type: TypeDescriptor): Sequence<TypeDescriptor>
 
+    /**
+     * Transitive closure of the type hierarchy. The default implementation
+     * builds it from [typeHierarchyTypes] and [supertypes] on every call;
+     * implementations should build it once and cache it.
+     */
+    fun typeClosure(): TypeClosure =
+        TypeClosure.of(typeHierarchyTypes().associateWith { supertypes(TypeDescriptor(it)).toList() })
+
+    /**
+     * Whether [type] is [supertype] or a direct or transitive subtype of it.
+     */
+    fun isSubtypeOf(type: TypeDescriptor, supertype: TypeDescriptor): Boolean =
+        typeClosure().isSubtypeOf(type.className, supertype.className)
+
+    /**
+     * All direct and transitive supertypes of [type].
+     */
+    fun allSupertypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
+        typeClosure().allSupertypes(type.className).map { TypeDescriptor(it) }
+
+    /**
+     * All direct and transitive subtypes of [type].
+     */
+    fun allSubtypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
+        typeClosure().allSubtypes(type.className).map { TypeDescriptor(it) }
+
     /**
      * Find methods matching a pattern
      */
@@ -137,6 +252,14 @@ interface Graph {
 
 }
 
+/**
+ * Receives edges from [Graph.forEachOutgoing]/[Graph.forEachIncoming]:
+ * [neighbor] is the opposite endpoint and [label] its [EdgeLabels] value.
+ */
+fun interface EdgeConsumer {
+    fun accept(neighbor: Int, label: Int)
+}
+
 /**
  * Pattern for matching methods.
  * Supports wildcards and annotations.
@@ -149,34 +272,12 @@ data class MethodPattern(
     val annotations: List<String> = emptyList(), // e.g., ["org.springframework.web.bind.annotation.GetMapping"]
     val useRegex: Boolean = false              // when true, declaringClass and name are treated as regex patterns
 ) {
-    fun matches(method: MethodDescriptor): Boolean {
-        if (declaringClass != null && !matchesPattern(method.declaringClass.className, declaringClass)) {
-            return false
-        }
-        if (name != null && !matchesPattern(method.name, name)) {
-            return false
-        }
-        if (parameterTypes != null) {
-            if (method.parameterTypes.size != parameterTypes.size) return false
-            if (!method.parameterTypes.zip(parameterTypes).all { (actual, pattern) ->
-                    matchesPattern(actual.className, pattern)
-                }) return false
-        }
-        if (returnType != null && !matchesPattern(method.returnType.className, returnType)) {
-            return false
-        }
-        return true
-    }
+    private val matcher: MethodMatcher by lazy(LazyThreadSafetyMode.PUBLICATION) { MethodMatcher(this) }
 
-    private fun matchesPattern(actual: String, pattern: String): Boolean {
-        return if (useRegex) {
-            pattern.toRegex().matches(actual)
-        } else if (pattern.endsWith("*")) {
-            actual.startsWith(pattern.dropLast(1))
-        } else {
-            actual == pattern
-        }
-    }
+    /** This pattern with its regexes and wildcards compiled; cached per instance. */
+    fun compile(): MethodMatcher = matcher
+
+    fun matches(method: MethodDescriptor): Boolean = matcher.matches(method)
 }
 
 /**
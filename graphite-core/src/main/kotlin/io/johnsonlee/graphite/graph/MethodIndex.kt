@@ -0,0 +1,65 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.MethodDescriptor
+import it.unimi.dsi.fastutil.ints.IntArrayList
+
+/**
+ * Methods indexed by declaring class and by name, answering
+ * [Graph.methods] without scanning every method.
+ *
+ * Distinct class names and method names are kept in sorted arrays, each with
+ * the methods that carry it (in their original order). A pattern with an
+ * exact or `prefix*` declaring class selects class buckets by binary search;
+ * otherwise an exact or `prefix*` name selects name buckets the same way;
+ * regexes are tested once per distinct class (or name). Only the selected buckets
+ * are matched against the full pattern, so class- or name-scoped lookups
+ * cost `O(log n + result)`. [MethodPattern] with no constraints returns all
+ * methods in their original order.
+ */
+class MethodIndex(methods: Collection<MethodDescriptor>) {
+
+    private val all: Array<MethodDescriptor> = methods.toTypedArray()
+    private val classes: Array<String>
+    private val byClass: Array<Array<MethodDescriptor>>
+    private val names: Array<String>
+    private val byName: Array<Array<MethodDescriptor>>
+
+    init {
+        val classGroups = all.groupBy { it.declaringClass.className }.toSortedMap()
+        classes = classGroups.keys.toTypedArray()
+        byClass = classGroups.values.map { it.toTypedArray() }.toTypedArray()
+        val nameGroups = all.groupBy { it.name }.toSortedMap()
+        names = nameGroups.keys.toTypedArray()
+        byName = nameGroups.values.map { it.toTypedArray() }.toTypedArray()
+    }
+
+    /** Number of indexed methods. */
+    val size: Int get() = all.size
+
+    /** All indexed methods in their original order. */
+    fun all(): Sequence<MethodDescriptor> = all.asSequence()
+
+    fun find(pattern: MethodPattern): Sequence<MethodDescriptor> {
+        val matcher = pattern.compile()
+        val buckets = when {
+            matcher.declaringClass.isIndexed() -> select(matcher.declaringClass, classes, byClass)
+            matcher.name.isIndexed() -> select(matcher.name, names, byName)
+            matcher.declaringClass !== NamePattern.All -> select(matcher.declaringClass, classes, byClass)
+            matcher.name !== NamePattern.All -> select(matcher.name, names, byName)
+            else -> return if (matcher.checksDescriptor) all().filter { matcher.matches(it) } else all()
+        }
+        return buckets.asSequence().flatMap { it.asSequence() }.filter { matcher.matches(it) }
+    }
+
+    private fun NamePattern.isIndexed(): Boolean = this is NamePattern.Exact || this is NamePattern.Prefix
+
+    private fun select(
+        pattern: NamePattern,
+        keys: Array<String>,
+        buckets: Array<Array<MethodDescriptor>>
+    ): List<Array<MethodDescriptor>> {
+        val selected = IntArrayList()
+        pattern.forEachIndex(keys, 0, keys.size) { selected.add(it) }
+        return List(selected.size) { buckets[selected.getInt(it)] }
+    }
+}
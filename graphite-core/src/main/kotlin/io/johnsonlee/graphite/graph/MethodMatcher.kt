@@ -0,0 +1,105 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.MethodDescriptor
+
+/**
+ * A [MethodPattern] compiled for repeated matching: regexes are compiled and
+ * `prefix*` wildcards stripped once, instead of on every [matches] call.
+ *
+ * Obtained via [MethodPattern.compile]; [MethodPattern.matches] uses a cached
+ * instance, so holding on to a pattern is enough to benefit.
+ */
+class MethodMatcher internal constructor(val pattern: MethodPattern) {
+
+    internal val declaringClass: NamePattern = NamePattern.of(pattern.declaringClass, pattern.useRegex)
+    internal val name: NamePattern = NamePattern.of(pattern.name, pattern.useRegex)
+    private val parameterTypes: List<NamePattern>? = pattern.parameterTypes?.map { NamePattern.of(it, pattern.useRegex) }
+    private val returnType: NamePattern = NamePattern.of(pattern.returnType, pattern.useRegex)
+
+    /** Whether anything beyond declaring class and name has to be checked. */
+    internal val checksDescriptor: Boolean get() = parameterTypes != null || returnType !== NamePattern.All
+
+    fun matches(method: MethodDescriptor): Boolean {
+        if (!declaringClass.matches(method.declaringClass.className)) return false
+        if (!name.matches(method.name)) return false
+        return matchesDescriptor(method)
+    }
+
+    /** Check parameter and return types only. */
+    internal fun matchesDescriptor(method: MethodDescriptor): Boolean {
+        if (parameterTypes != null) {
+            if (method.parameterTypes.size != parameterTypes.size) return false
+            for (i in parameterTypes.indices) {
+                if (!parameterTypes[i].matches(method.parameterTypes[i].className)) return false
+            }
+        }
+        return returnType.matches(method.returnType.className)
+    }
+}
+
+/**
+ * One string component of a [MethodPattern]: absent (matches anything),
+ * exact, `prefix*`, or a regex when [MethodPattern.useRegex] is set.
+ *
+ * Besides testing single strings, it can select the matching entries of a
+ * sorted string array: exact and prefix patterns by binary search, since all
+ * strings sharing a prefix are contiguous in sorted order.
+ */
+internal sealed class NamePattern {
+
+    abstract fun matches(value: String): Boolean
+
+    /** Call [action] with the index of every entry of `sorted[from until to]` that matches. */
+    open fun forEachIndex(sorted: Array<String>, from: Int, to: Int, action: (Int) -> Unit) {
+        for (i in from until to) if (matches(sorted[i])) action(i)
+    }
+
+    object All : NamePattern() {
+        override fun matches(value: String): Boolean = true
+
+        override fun forEachIndex(sorted: Array<String>, from: Int, to: Int, action: (Int) -> Unit) {
+            for (i in from until to) action(i)
+        }
+    }
+
+    class Exact(val expected: String) : NamePattern() {
+        override fun matches(value: String): Boolean = value == expected
+
+        override fun forEachIndex(sorted: Array<String>, from: Int, to: Int, action: (Int) -> Unit) {
+            val i = lowerBound(sorted, from, to, expected)
+            if (i < to && sorted[i] == expected) action(i)
+        }
+    }
+
+    class Prefix(val prefix: String) : NamePattern() {
+        override fun matches(value: String): Boolean = value.startsWith(prefix)
+
+        override fun forEachIndex(sorted: Array<String>, from: Int, to: Int, action: (Int) -> Unit) {
+            var i = lowerBound(sorted, from, to, prefix)
+            while (i < to && sorted[i].startsWith(prefix)) action(i++)
+        }
+    }
+
+    class Matching(private val regex: Regex) : NamePattern() {
+        override fun matches(value: String): Boolean = regex.matches(value)
+    }
+
+    companion object {
+        fun of(pattern: String?, useRegex: Boolean): NamePattern = when {
+            pattern == null -> All
+            useRegex -> Matching(pattern.toRegex())
+            pattern.endsWith("*") -> Prefix(pattern.dropLast(1))
+            else -> Exact(pattern)
+        }
+
+        fun lowerBound(sorted: Array<String>, from: Int, to: Int, key: String): Int {
+            var low = from
+            var high = to
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (sorted[mid] < key) low = mid + 1 else high = mid
+            }
+            return low
+        }
+    }
+}
@@ -38,10 +38,11 @@ class MmapGraph internal constructor(
     private val dataDir: Path,
     private val nodeIndex: LongArray,
     private val nodeTypeIndex: Map<Class<out Node>, IntArray>,
+    private val callSiteIndex: CallSiteIndex,
     private val outgoingIndex: EdgeOffsetIndex,
     private val incomingIndex: EdgeOffsetIndex,
     private val nodeMethods: List<MethodDescriptor>,
-    private val methodIndex: Map<String, MethodDescriptor>,
+    private val methodIndex: MethodIndex,
     private val typeHierarchy: TypeHierarchy,
     private val enumValuesMap: Map<String, List<Any?>>,
     private val classOriginsMap: Map<String, String>,
@@ -70,6 +71,17 @@ class MmapGraph internal constructor(
         }.groupBy { it.conditionNodeId.value }
     }
 
+    private val nodeTypes: List<Class<out Node>> = nodeTypeIndex.keys.toList()
+
+    /** Index into [nodeTypes] of every node id, `-1` for ids without a node. */
+    private val nodeTags: ByteArray by lazy {
+        val tags = ByteArray(nodeIndex.size) { -1 }
+        nodeTypes.forEachIndexed { tag, type ->
+            nodeTypeIndex.getValue(type).forEach { tags[it] = tag.toByte() }
+        }
+        tags
+    }
+
     internal data class EdgeOffsetIndex(
         val starts: IntArray,
         val offsets: LongArray
@@ -83,6 +95,12 @@ class MmapGraph internal constructor(
         return readNodeAt(offset)
     }
 
+    override fun nodeType(id: NodeId): Class<out Node>? {
+        if (nodeTypes.size > Byte.MAX_VALUE) return super.nodeType(id)
+        val tag = nodeTags.getOrElse(id.value) { -1 }
+        return if (tag < 0) null else nodeTypes[tag.toInt()]
+    }
+
     @Suppress("UNCHECKED_CAST")
     override fun <T : Node> nodes(type: Class<T>): Sequence<T> {
         // Fast path: exact type match
@@ -113,7 +131,7 @@ class MmapGraph internal constructor(
         incoming(id).filter { type.isInstance(it) } as Sequence<T>
 
     override fun callSites(methodPattern: MethodPattern): Sequence<CallSiteNode> =
-        nodes(CallSiteNode::class.java).filter { methodPattern.matches(it.callee) }
+        callSiteIndex.callSites(methodPattern) { node(it) }
 
     override fun supertypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         typeHierarchy.supertypes(type)
@@ -121,8 +139,10 @@ class MmapGraph internal constructor(
     override fun subtypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         typeHierarchy.subtypes(type)
 
+    override fun typeClosure(): TypeClosure = typeHierarchy.closure
+
     override fun methods(pattern: MethodPattern): Sequence<MethodDescriptor> =
-        methodIndex.values.asSequence().filter { pattern.matches(it) }
+        methodIndex.find(pattern)
 
     override fun enumValues(enumClass: String, enumName: String): List<Any?>? =
         enumValuesMap["$enumClass#$enumName"]
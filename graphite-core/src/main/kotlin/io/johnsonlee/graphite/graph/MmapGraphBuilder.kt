@@ -24,6 +24,7 @@ import io.johnsonlee.graphite.core.LongConstant
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.NodeIdAllocator
 import io.johnsonlee.graphite.core.NullConstant
 import io.johnsonlee.graphite.core.ParameterNode
 import io.johnsonlee.graphite.core.ResourceEdge
@@ -76,6 +77,8 @@ class MmapGraphBuilder(
     internal val workDir: Path = Files.createTempDirectory("graphite-mmap")
 ) : FullGraphBuilder {
 
+    override val nodeIds = NodeIdAllocator()
+
     private val nodeStream = workDir.resolve(NODES_FILE).toFile().outputStream().buffered()
     private val edgeStream = workDir.resolve(EDGES_FILE).toFile().outputStream().buffered()
 
@@ -179,9 +182,11 @@ class MmapGraphBuilder(
         edgeStream.close()
 
         // Build indexes by scanning files sequentially
-        var nodeOffsets = LongArray(INITIAL_NODE_INDEX_CAPACITY) { -1L }
+        // Ids from [nodeIds] are dense, so their count is usually the exact index size
+        var nodeOffsets = LongArray(maxOf(INITIAL_NODE_INDEX_CAPACITY, nodeIds.count)) { -1L }
         var maxNodeId = -1
         val nodeTypeIndexBuilder = HashMap<Class<out Node>, MutableList<Int>>()
+        val callSiteIndexBuilder = CallSiteIndex.Builder()
 
         var offset = 0L
         DataInputStream(workDir.resolve(NODES_FILE).toFile().inputStream().buffered()).use { dis ->
@@ -198,6 +203,7 @@ class MmapGraphBuilder(
                 nodeOffsets[nodeId] = offset
                 maxNodeId = maxOf(maxNodeId, nodeId)
                 nodeTypeIndexBuilder.getOrPut(node::class.java) { mutableListOf() }.add(nodeId)
+                if (node is CallSiteNode) callSiteIndexBuilder.add(node)
                 offset += LENGTH_PREFIX_BYTES + len
             }
         }
@@ -248,10 +254,11 @@ class MmapGraphBuilder(
             dataDir = workDir,
             nodeIndex = nodeIndex,
             nodeTypeIndex = nodeTypeIndex,
+            callSiteIndex = callSiteIndexBuilder.build(),
             outgoingIndex = MmapGraph.EdgeOffsetIndex(outgoingStarts, outgoingOffsets),
             incomingIndex = MmapGraph.EdgeOffsetIndex(incomingStarts, incomingOffsets),
             nodeMethods = nodeMethods.toList(),
-            methodIndex = methodIndex,
+            methodIndex = MethodIndex(methodIndex.values),
             typeHierarchy = typeHierarchyBuilder.build(),
             enumValuesMap = enumValues.toMap(),
             classOriginsMap = classOrigins.toMap(),
@@ -0,0 +1,251 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.DescriptorPool
+import io.johnsonlee.graphite.core.MethodDescriptor
+import io.johnsonlee.graphite.core.Node
+import io.johnsonlee.graphite.core.NodeId
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import java.util.function.IntFunction
+import java.util.function.ToIntFunction
+
+/**
+ * Struct-of-arrays view over all nodes of one type (see [Graph.nodeColumns]).
+ *
+ * Row `r` holds the fields of node [nodeId]`(r)`, one primitive array per
+ * field, so a single field can be read -- e.g. to filter -- without
+ * materializing the node. Rows follow the order of [Graph.nodes].
+ */
+interface NodeColumns {
+
+    /** Node type described by every row. */
+    val type: Class<out Node>
+
+    /** Number of rows. */
+    val size: Int
+
+    /** Id of the node stored in [row]. */
+    fun nodeId(row: Int): Int
+
+    /** Materialize the node stored in [row] from its columns. */
+    fun node(row: Int): Node
+}
+
+/**
+ * Columns of [CallSiteNode]s.
+ *
+ * Strings are stored as ids resolved through [strings] and method
+ * descriptors as ids resolved through [methods], so they only need to be
+ * resolved for the rows a query actually looks at. When [stringIds] maps
+ * strings back to ids, a string can instead be matched against the raw ids
+ * (see [stringId]). Optional fields use `-1`
+ * for `null`. Arguments are kept in CSR form: the argument ids of `row` are
+ * `arguments[argumentStarts[row] until argumentStarts[row + 1]]`.
+ */
+class CallSiteColumns(
+    private val nodeIds: IntArray,
+    private val calleeClasses: IntArray,
+    private val calleeNames: IntArray,
+    private val callees: IntArray,
+    private val callers: IntArray,
+    private val lines: IntArray,
+    private val receivers: IntArray,
+    private val argumentStarts: IntArray,
+    private val arguments: IntArray,
+    private val strings: IntFunction<String>,
+    private val methods: IntFunction<MethodDescriptor>,
+    private val stringIds: ToIntFunction<String>? = null
+) : NodeColumns {
+
+    init {
+        val n = nodeIds.size
+        require(
+            calleeClasses.size == n && calleeNames.size == n && callees.size == n && callers.size == n &&
+                lines.size == n && receivers.size == n && argumentStarts.size == n + 1
+        ) { "Call site columns must all have $n rows" }
+        require(argumentStarts[n] == arguments.size) { "Argument offsets do not cover ${arguments.size} arguments" }
+    }
+
+    override val type: Class<out Node> get() = CallSiteNode::class.java
+
+    override val size: Int get() = nodeIds.size
+
+    override fun nodeId(row: Int): Int = nodeIds[row]
+
+    /** String id of the callee's declaring class name. */
+    fun calleeClassId(row: Int): Int = calleeClasses[row]
+
+    fun calleeClass(row: Int): String = strings.apply(calleeClasses[row])
+
+    /** String id of the callee's method name. */
+    fun calleeNameId(row: Int): Int = calleeNames[row]
+
+    fun calleeName(row: Int): String = strings.apply(calleeNames[row])
+
+    /**
+     * Id that [calleeClassId] and [calleeNameId] use for [s], `-1` if no row
+     * can hold [s], or null when these columns cannot map strings to ids.
+     */
+    fun stringId(s: String): Int? = stringIds?.applyAsInt(s)
+
+    /** Descriptor id of the callee. */
+    fun calleeId(row: Int): Int = callees[row]
+
+    fun callee(row: Int): MethodDescriptor = methods.apply(callees[row])
+
+    /** Descriptor id of the calling method. */
+    fun callerId(row: Int): Int = callers[row]
+
+    fun caller(row: Int): MethodDescriptor = methods.apply(callers[row])
+
+    fun line(row: Int): Int? = lines[row].takeIf { it >= 0 }
+
+    fun receiver(row: Int): NodeId? = receivers[row].takeIf { it >= 0 }?.let { NodeId(it) }
+
+    fun argumentCount(row: Int): Int = argumentStarts[row + 1] - argumentStarts[row]
+
+    fun argument(row: Int, index: Int): NodeId {
+        if (index !in 0 until argumentCount(row)) {
+            throw IndexOutOfBoundsException("Argument $index out of range [0, ${argumentCount(row)})")
+        }
+        return NodeId(arguments[argumentStarts[row] + index])
+    }
+
+    override fun node(row: Int): CallSiteNode = CallSiteNode(
+        id = NodeId(nodeIds[row]),
+        caller = caller(row),
+        callee = callee(row),
+        lineNumber = line(row),
+        receiver = receiver(row),
+        arguments = List(argumentCount(row)) { NodeId(arguments[argumentStarts[row] + it]) }
+    )
+
+    /**
+     * Visit every column as a raw array, e.g. to persist them. Arrays are
+     * shared with this instance and must not be modified.
+     */
+    fun forEachColumn(action: (name: String, values: IntArray) -> Unit) {
+        action(NODE_IDS, nodeIds)
+        action(CALLEE_CLASSES, calleeClasses)
+        action(CALLEE_NAMES, calleeNames)
+        action(CALLEES, callees)
+        action(CALLERS, callers)
+        action(LINES, lines)
+        action(RECEIVERS, receivers)
+        action(ARGUMENT_STARTS, argumentStarts)
+        action(ARGUMENTS, arguments)
+    }
+
+    /**
+     * Collects call sites in row order. String and method ids are assigned
+     * by [stringId] and [methodId], which must agree with the resolvers
+     * passed to [build].
+     */
+    class Builder(
+        private val stringId: (String) -> Int,
+        private val methodId: (MethodDescriptor) -> Int
+    ) {
+        private val nodeIds = IntArrayList()
+        private val calleeClasses = IntArrayList()
+        private val calleeNames = IntArrayList()
+        private val callees = IntArrayList()
+        private val callers = IntArrayList()
+        private val lines = IntArrayList()
+        private val receivers = IntArrayList()
+        private val argumentStarts = IntArrayList().apply { add(0) }
+        private val arguments = IntArrayList()
+
+        fun add(callSite: CallSiteNode): Builder {
+            nodeIds.add(callSite.id.value)
+            calleeClasses.add(stringId(callSite.callee.declaringClass.className))
+            calleeNames.add(stringId(callSite.callee.name))
+            callees.add(methodId(callSite.callee))
+            callers.add(methodId(callSite.caller))
+            lines.add(callSite.lineNumber ?: -1)
+            receivers.add(callSite.receiver?.value ?: -1)
+            callSite.arguments.forEach { arguments.add(it.value) }
+            argumentStarts.add(arguments.size)
+            return this
+        }
+
+        fun build(
+            strings: IntFunction<String>,
+            methods: IntFunction<MethodDescriptor>,
+            stringIds: ToIntFunction<String>? = null
+        ): CallSiteColumns =
+            CallSiteColumns(
+                nodeIds.toIntArray(),
+                calleeClasses.toIntArray(),
+                calleeNames.toIntArray(),
+                callees.toIntArray(),
+                callers.toIntArray(),
+                lines.toIntArray(),
+                receivers.toIntArray(),
+                argumentStarts.toIntArray(),
+                arguments.toIntArray(),
+                strings,
+                methods,
+                stringIds
+            )
+    }
+
+    companion object {
+        const val NODE_IDS = "ids"
+        const val CALLEE_CLASSES = "callee_class"
+        const val CALLEE_NAMES = "callee_name"
+        const val CALLEES = "callee"
+        const val CALLERS = "caller"
+        const val LINES = "line"
+        const val RECEIVERS = "receiver"
+        const val ARGUMENT_STARTS = "argument_starts"
+        const val ARGUMENTS = "arguments"
+
+        /** Names of all columns, in [forEachColumn] order. */
+        val COLUMNS: List<String> = listOf(
+            NODE_IDS, CALLEE_CLASSES, CALLEE_NAMES, CALLEES, CALLERS, LINES, RECEIVERS, ARGUMENT_STARTS, ARGUMENTS
+        )
+
+        /**
+         * Restore columns from raw arrays keyed by column name, as visited by
+         * [forEachColumn].
+         */
+        fun of(
+            columns: Map<String, IntArray>,
+            strings: IntFunction<String>,
+            methods: IntFunction<MethodDescriptor>,
+            stringIds: ToIntFunction<String>? = null
+        ): CallSiteColumns {
+            fun column(name: String) = requireNotNull(columns[name]) { "Missing call site column: $name" }
+            return CallSiteColumns(
+                column(NODE_IDS),
+                column(CALLEE_CLASSES),
+                column(CALLEE_NAMES),
+                column(CALLEES),
+                column(CALLERS),
+                column(LINES),
+                column(RECEIVERS),
+                column(ARGUMENT_STARTS),
+                column(ARGUMENTS),
+                strings,
+                methods,
+                stringIds
+            )
+        }
+
+        /**
+         * Build columns over in-memory [callSites], with strings and methods
+         * interned into private tables.
+         */
+        fun of(callSites: Sequence<CallSiteNode>): CallSiteColumns {
+            val stringIds = HashMap<String, Int>()
+            val strings = ArrayList<String>()
+            val descriptors = DescriptorPool()
+            val builder = Builder(
+                stringId = { s -> stringIds.getOrPut(s) { strings.add(s); strings.size - 1 } },
+                methodId = { descriptors.methodId(it) }
+            )
+            callSites.forEach { builder.add(it) }
+            return builder.build({ strings[it] }, { descriptors.methodAt(it) }, { stringIds[it] ?: -1 })
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.BranchComparison
+import io.johnsonlee.graphite.core.DataFlowEdge
+import io.johnsonlee.graphite.core.DataFlowKind
+import io.johnsonlee.graphite.core.Edge
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+
+/**
+ * Primitive compressed-sparse-row adjacency for one edge direction.
+ *
+ * Edges are stored as parallel arrays in CSR order: `offsets[node]` until
+ * `offsets[node + 1]` indexes into `neighbors` (the opposite endpoint) and
+ * `labels` (the [EdgeLabels] value), i.e. 5 bytes per edge per direction.
+ * [Edge] objects are only created while a caller iterates.
+ *
+ * Each node's slice is sorted by label (stable with respect to insertion
+ * order). Because labels are family-major, an [Edge] subtype or a single
+ * [DataFlowKind] is a contiguous sub-slice located by binary search.
+ *
+ * Nodes are addressed by raw [io.johnsonlee.graphite.core.NodeId.value];
+ * ids outside `[0, capacity)` simply have no edges.
+ */
+internal class PartitionedAdjacency private constructor(
+    private val offsets: IntArray,
+    private val neighbors: IntArray,
+    private val labels: ByteArray,
+    /** `true` if [neighbors] holds edge targets, `false` if it holds edge sources. */
+    private val forward: Boolean,
+    /** Out-of-line [BranchComparison]s keyed by `(from << 32) | to`. */
+    private val comparisons: Long2ObjectOpenHashMap<BranchComparison>
+) {
+
+    private val capacity: Int get() = offsets.size - 1
+
+    /** All edges of [node], grouped by family. */
+    fun all(node: Int): Sequence<Edge> {
+        if (node < 0 || node >= capacity) return emptySequence()
+        return decode(node, offsets[node], offsets[node + 1])
+    }
+
+    /** Edges of [node] whose runtime class is [type]. */
+    @Suppress("UNCHECKED_CAST")
+    fun <T : Edge> ofType(node: Int, type: Class<T>): Sequence<T> {
+        val range = EdgeLabels.rangeOf(type)
+        return when {
+            range != null -> labelRange(node, range.first, range.last + 1) as Sequence<T>
+            type == Edge::class.java -> all(node) as Sequence<T>
+            else -> all(node).filter { type.isInstance(it) } as Sequence<T>
+        }
+    }
+
+    /** [DataFlowEdge]s of [node] with the given [kind]. */
+    @Suppress("UNCHECKED_CAST")
+    fun dataFlow(node: Int, kind: DataFlowKind): Sequence<DataFlowEdge> {
+        val label = EdgeLabels.of(kind)
+        return labelRange(node, label, label + 1) as Sequence<DataFlowEdge>
+    }
+
+    /**
+     * Pass each neighbor of [node] whose label is selected by [mask] to
+     * [consumer]; only the label span covered by [mask] is scanned.
+     */
+    fun forEach(node: Int, mask: Long, consumer: EdgeConsumer) {
+        if (node < 0 || node >= capacity || mask == 0L) return
+        val lowest = java.lang.Long.numberOfTrailingZeros(mask)
+        val highest = Long.SIZE_BITS - 1 - java.lang.Long.numberOfLeadingZeros(mask)
+        val start = lowerBound(offsets[node], offsets[node + 1], lowest)
+        val end = lowerBound(start, offsets[node + 1], highest + 1)
+        for (i in start until end) {
+            val label = labels[i].toInt()
+            if (EdgeLabels.matches(mask, label)) consumer.accept(neighbors[i], label)
+        }
+    }
+
+    /** Materialize a single edge reported by [forEach]. */
+    fun edge(from: Int, to: Int, label: Int): Edge =
+        EdgeLabels.decode(from, to, label) { comparisons.get(key(from, to)) }
+
+    private fun labelRange(node: Int, fromLabel: Int, toLabel: Int): Sequence<Edge> {
+        if (node < 0 || node >= capacity) return emptySequence()
+        val start = lowerBound(offsets[node], offsets[node + 1], fromLabel)
+        val end = lowerBound(start, offsets[node + 1], toLabel)
+        return decode(node, start, end)
+    }
+
+    private fun decode(node: Int, start: Int, end: Int): Sequence<Edge> {
+        if (start == end) return emptySequence()
+        return (start until end).asSequence().map { i ->
+            val from = if (forward) node else neighbors[i]
+            val to = if (forward) neighbors[i] else node
+            edge(from, to, labels[i].toInt())
+        }
+    }
+
+    private fun lowerBound(from: Int, to: Int, label: Int): Int {
+        var low = from
+        var high = to
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (labels[mid] < label) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    companion object {
+
+        fun key(from: Int, to: Int): Long = (from.toLong() shl 32) or (to.toLong() and 0xFFFFFFFFL)
+
+        /**
+         * Build the adjacency for one direction with two stable counting sorts:
+         * first by label, then by node. The result keeps insertion order within
+         * each `(node, label)` bucket.
+         *
+         * @param keys the node each edge is indexed under (`from` for outgoing, `to` for incoming)
+         * @param others the opposite endpoint of each edge
+         */
+        fun build(
+            keys: IntArray,
+            others: IntArray,
+            edgeLabels: ByteArray,
+            size: Int,
+            capacity: Int,
+            forward: Boolean,
+            comparisons: Long2ObjectOpenHashMap<BranchComparison>
+        ): PartitionedAdjacency {
+            val labelStarts = IntArray(EdgeLabels.COUNT + 1)
+            for (i in 0 until size) labelStarts[edgeLabels[i] + 1]++
+            for (l in 0 until EdgeLabels.COUNT) labelStarts[l + 1] += labelStarts[l]
+            val byLabel = IntArray(size)
+            for (i in 0 until size) byLabel[labelStarts[edgeLabels[i].toInt()]++] = i
+
+            val offsets = IntArray(capacity + 1)
+            for (i in 0 until size) offsets[keys[i] + 1]++
+            for (n in 0 until capacity) offsets[n + 1] += offsets[n]
+
+            val fill = offsets.copyOf(capacity)
+            val neighbors = IntArray(size)
+            val labels = ByteArray(size)
+            for (i in byLabel) {
+                val slot = fill[keys[i]]++
+                neighbors[slot] = others[i]
+                labels[slot] = edgeLabels[i]
+            }
+
+            return PartitionedAdjacency(offsets, neighbors, labels, forward, comparisons)
+        }
+    }
+}
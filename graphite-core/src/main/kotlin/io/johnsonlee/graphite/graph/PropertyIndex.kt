@@ -0,0 +1,137 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.AnnotationNode
+import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.Node
+import io.johnsonlee.graphite.core.ResourceValueNode
+import io.johnsonlee.graphite.core.StringConstant
+import it.unimi.dsi.fastutil.ints.IntArrayList
+
+/**
+ * Inverted index from the values of one string [property] of nodes of
+ * exactly [type] to the ids of the nodes holding them (see
+ * [Graph.propertyIndex]).
+ *
+ * Layout (CSR style):
+ * - `values(v)` for `v` in `0 until valueCount` -- distinct property values, sorted
+ * - `nodeIds[starts[v] until starts[v + 1]]` -- ascending ids of the nodes whose value is `values(v)`
+ *
+ * Exact values are found by binary search, and values starting with a
+ * prefix form a contiguous run of `values`. Values are read through
+ * [values], so a persisted index can resolve them from its string table
+ * instead of holding them on the heap.
+ */
+class PropertyIndex(
+    val type: Class<out Node>,
+    val property: String,
+    /** Number of distinct values. */
+    val valueCount: Int,
+    private val values: (Int) -> String,
+    private val starts: IntArray,
+    private val nodeIds: IntArray
+) {
+
+    /** Number of indexed nodes. */
+    val size: Int get() = nodeIds.size
+
+    /** The [v]-th distinct value in sorted order. */
+    fun valueAt(v: Int): String = values(v)
+
+    /** Ascending ids of the nodes whose value is the [v]-th distinct value. */
+    fun nodeIdsAt(v: Int): IntArray = nodeIds.copyOfRange(starts[v], starts[v + 1])
+
+    /** Ascending ids of the nodes whose value is [value]. */
+    fun lookup(value: String): IntArray {
+        val v = search(value)
+        return if (v < 0) IntArray(0) else nodeIds.copyOfRange(starts[v], starts[v + 1])
+    }
+
+    /** Ascending ids of the nodes whose value starts with [prefix]. */
+    fun lookupPrefix(prefix: String): IntArray {
+        val first = search(prefix).let { if (it < 0) -it - 1 else it }
+        var last = first
+        while (last < valueCount && values(last).startsWith(prefix)) last++
+        val ids = nodeIds.copyOfRange(starts[first], starts[last])
+        // Ids of a single value are sorted already
+        if (last - first > 1) ids.sort()
+        return ids
+    }
+
+    /** Visit every `(value, node ids)` entry in value order, e.g. to persist the index. */
+    fun forEachValue(action: (value: String, nodeIds: IntArray) -> Unit) {
+        for (v in 0 until valueCount) action(values(v), nodeIds.copyOfRange(starts[v], starts[v + 1]))
+    }
+
+    /** Position of [value] in the sorted values, or `-(insertion point) - 1` as by [Array.binarySearch]. */
+    private fun search(value: String): Int {
+        var low = 0
+        var high = valueCount - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val cmp = values(mid).compareTo(value)
+            when {
+                cmp < 0 -> low = mid + 1
+                cmp > 0 -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -(low + 1)
+    }
+
+    /**
+     * Collects `(value, node id)` pairs in any order; [build] sorts and
+     * compacts them.
+     */
+    class Builder(private val type: Class<out Node>, private val property: String) {
+        private val buckets = HashMap<String, IntArrayList>()
+
+        fun add(value: String, nodeId: Int): Builder {
+            buckets.getOrPut(value) { IntArrayList() }.add(nodeId)
+            return this
+        }
+
+        fun build(): PropertyIndex {
+            val values = buckets.keys.sorted().toTypedArray()
+            val starts = IntArray(values.size + 1)
+            val nodeIds = IntArrayList()
+            for ((v, value) in values.withIndex()) {
+                val ids = buckets.getValue(value).toIntArray()
+                ids.sort()
+                nodeIds.addElements(nodeIds.size, ids)
+                starts[v + 1] = nodeIds.size
+            }
+            return PropertyIndex(type, property, values.size, values::get, starts, nodeIds.toIntArray())
+        }
+    }
+}
+
+/**
+ * A string property of nodes of exactly [type] that can be indexed by a
+ * [PropertyIndex], and how to read it from a node. [name] is the property
+ * name used by queries, e.g. `callee_name` in Cypher.
+ */
+class IndexedProperty(
+    val type: Class<out Node>,
+    val name: String,
+    private val reader: (Node) -> String?
+) {
+
+    /** The value of this property on [node], or null if [node] is not of [type] or has none. */
+    fun value(node: Node): String? = if (node.javaClass == type) reader(node) else null
+
+    override fun toString(): String = "${type.simpleName}.$name"
+
+    companion object {
+        inline fun <reified T : Node> of(name: String, crossinline reader: (T) -> String?): IndexedProperty =
+            IndexedProperty(T::class.java, name) { reader(it as T) }
+
+        val CALLEE_NAME = of<CallSiteNode>("callee_name") { it.callee.name }
+        val CALLEE_CLASS = of<CallSiteNode>("callee_class") { it.callee.declaringClass.className }
+        val ANNOTATION_NAME = of<AnnotationNode>("name") { it.name }
+        val STRING_VALUE = of<StringConstant>("value") { it.value }
+        val RESOURCE_KEY = of<ResourceValueNode>("key") { it.key }
+
+        /** Properties indexed unless configured otherwise. */
+        val DEFAULTS = listOf(CALLEE_NAME, CALLEE_CLASS, ANNOTATION_NAME, STRING_VALUE, RESOURCE_KEY)
+    }
+}
@@ -0,0 +1,229 @@
+package io.johnsonlee.graphite.graph
+
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+
+/**
+ * Trigram index over the distinct values of a [PropertyIndex] (see
+ * [Graph.trigramIndex]), to find values containing a substring without
+ * testing every value.
+ *
+ * Layout (CSR style):
+ * - `keys[t]` -- distinct trigrams (three chars packed into a long), sorted
+ * - `postings[starts[t] until starts[t + 1]]` -- ascending positions in [values] of the values containing `keys[t]`
+ *
+ * A value can only contain a string if it contains every trigram of it, so
+ * intersecting postings narrows the candidates; strings shorter than three
+ * chars have no trigram and cannot be narrowed.
+ */
+class TrigramIndex(
+    val values: PropertyIndex,
+    private val keys: LongArray,
+    private val starts: IntArray,
+    private val postings: IntArray
+) {
+
+    /** Number of distinct trigrams. */
+    val size: Int get() = keys.size
+
+    /** Number of `(trigram, value position)` postings. */
+    val postingCount: Int get() = postings.size
+
+    /**
+     * Ascending ids of the nodes whose value contains every string of
+     * [required] and satisfies [predicate], which is only tested on the
+     * values left after intersecting postings. Returns null when [required]
+     * has no trigram, i.e. the index cannot narrow the values.
+     */
+    fun lookup(required: Collection<String>, predicate: (String) -> Boolean): IntArray? {
+        val trigrams = required.flatMap { trigramsOf(it).asList() }.distinct()
+        if (trigrams.isEmpty()) return null
+        val ranges = trigrams.map { key ->
+            val t = keys.binarySearch(key)
+            if (t < 0) return IntArray(0)
+            starts[t] until starts[t + 1]
+        }.sortedBy { it.last - it.first }
+
+        var candidates = postings.copyOfRange(ranges[0].first, ranges[0].last + 1)
+        for (range in ranges.subList(1, ranges.size)) {
+            if (candidates.isEmpty()) break
+            candidates = intersect(candidates, range)
+        }
+        val ids = IntArrayList()
+        for (v in candidates) {
+            if (predicate(values.valueAt(v))) ids.addElements(ids.size, values.nodeIdsAt(v))
+        }
+        return ids.toIntArray().also { it.sort() }
+    }
+
+    /** Visit every `(trigram, value positions)` entry in trigram order, e.g. to persist the index. */
+    fun forEachTrigram(action: (trigram: Long, positions: IntArray) -> Unit) {
+        for (t in keys.indices) action(keys[t], postings.copyOfRange(starts[t], starts[t + 1]))
+    }
+
+    private fun intersect(sorted: IntArray, range: IntRange): IntArray {
+        val result = IntArrayList(sorted.size)
+        var i = 0
+        var j = range.first
+        while (i < sorted.size && j <= range.last) {
+            val a = sorted[i]
+            val b = postings[j]
+            when {
+                a < b -> i++
+                a > b -> j++
+                else -> {
+                    result.add(a)
+                    i++
+                    j++
+                }
+            }
+        }
+        return result.toIntArray()
+    }
+
+    /**
+     * Collects `(trigram, value position)` pairs in any order; [build] sorts
+     * and compacts them.
+     */
+    class Builder(private val values: PropertyIndex) {
+        private val buckets = Long2ObjectOpenHashMap<IntArrayList>()
+
+        fun add(trigram: Long, position: Int): Builder {
+            val bucket = buckets.get(trigram) ?: IntArrayList().also { buckets.put(trigram, it) }
+            bucket.add(position)
+            return this
+        }
+
+        fun build(): TrigramIndex {
+            val keys = buckets.keys.toLongArray()
+            keys.sort()
+            val starts = IntArray(keys.size + 1)
+            val postings = IntArrayList()
+            for ((t, key) in keys.withIndex()) {
+                val positions = buckets.get(key).toIntArray()
+                positions.sort()
+                for ((i, position) in positions.withIndex()) {
+                    if (i == 0 || position != positions[i - 1]) postings.add(position)
+                }
+                starts[t + 1] = postings.size
+            }
+            return TrigramIndex(values, keys, starts, postings.toIntArray())
+        }
+    }
+
+    companion object {
+        private const val TRIGRAM = 3
+        private const val HEX_RADIX = 16
+        private const val HEX_BYTE_DIGITS = 2
+        private const val HEX_CHAR_DIGITS = 4
+        private const val OCTAL_DIGITS = 3
+
+        /** Index the trigrams of every value of [values]. */
+        fun of(values: PropertyIndex): TrigramIndex {
+            val builder = Builder(values)
+            for (v in 0 until values.valueCount) {
+                for (trigram in trigramsOf(values.valueAt(v))) builder.add(trigram, v)
+            }
+            return builder.build()
+        }
+
+        /** The trigrams of [s], three chars packed into a long, with duplicates. */
+        fun trigramsOf(s: String): LongArray = LongArray(maxOf(0, s.length - TRIGRAM + 1)) { i ->
+            (s[i].code.toLong() shl 32) or (s[i + 1].code.toLong() shl 16) or s[i + 2].code.toLong()
+        }
+
+        /**
+         * Literal strings that every string fully matching [regex] contains,
+         * or none when they cannot be determined. Only runs of literal chars
+         * outside optional quantifiers are extracted; patterns with groups or
+         * alternation yield none.
+         */
+        @Suppress("CyclomaticComplexMethod", "LoopWithTooManyJumpStatements", "ReturnCount")
+        fun requiredLiterals(regex: String): List<String> {
+            if ('|' in regex || '(' in regex) return emptyList()
+            val literals = mutableListOf<String>()
+            val run = StringBuilder()
+            fun flush() {
+                if (run.length >= TRIGRAM) literals.add(run.toString())
+                run.setLength(0)
+            }
+
+            var i = 0
+            while (i < regex.length) {
+                when (val c = regex[i]) {
+                    '\\' -> {
+                        val next = regex.getOrNull(i + 1) ?: break
+                        if (!next.isLetterOrDigit()) {
+                            run.append(next)
+                            i += 2
+                        } else {
+                            // Character classes (\d, \p{L}, ...), char codes (\x2F, \u0041, ...) and quoting (\Q...\E)
+                            if (next == 'Q') return emptyList()
+                            flush()
+                            i = escapeEnd(regex, i) ?: return emptyList()
+                        }
+                        continue
+                    }
+                    '[' -> {
+                        flush()
+                        var j = i + 1
+                        if (regex.getOrNull(j) == '^') j++
+                        if (regex.getOrNull(j) == ']') j++
+                        while (j < regex.length && regex[j] != ']') {
+                            // Nested classes and intersections are not followed
+                            if (regex[j] == '[') return emptyList()
+                            j += if (regex[j] == '\\') 2 else 1
+                        }
+                        i = j
+                    }
+                    '*', '?', '{' -> {
+                        // The preceding atom is optional
+                        if (run.isNotEmpty()) run.setLength(run.length - 1)
+                        flush()
+                        if (c == '{') i = regex.indexOf('}', i).takeIf { it >= 0 } ?: return emptyList()
+                    }
+                    '+', '.', '^', '$' -> flush()
+                    else -> run.append(c)
+                }
+                i++
+            }
+            flush()
+            return literals
+        }
+
+        /**
+         * Index just past the escape starting with the backslash at [start]
+         * of [regex], or null if it is unterminated.
+         */
+        private fun escapeEnd(regex: String, start: Int): Int? {
+            val afterName = start + 2
+            fun hexDigits(from: Int, max: Int): Int {
+                var end = from
+                while (end < regex.length && end - from < max && Character.digit(regex[end], HEX_RADIX) >= 0) end++
+                return end
+            }
+            return when (regex[start + 1]) {
+                'p', 'P', 'N' -> if (regex.getOrNull(afterName) == '{') {
+                    regex.indexOf('}', afterName).takeIf { it >= 0 }?.plus(1)
+                } else {
+                    afterName + 1
+                }
+                'x' -> if (regex.getOrNull(afterName) == '{') {
+                    regex.indexOf('}', afterName).takeIf { it >= 0 }?.plus(1)
+                } else {
+                    hexDigits(afterName, HEX_BYTE_DIGITS)
+                }
+                'u' -> hexDigits(afterName, HEX_CHAR_DIGITS)
+                // \0n, \0nn or \0mnn with m <= 3
+                '0' -> {
+                    var end = afterName
+                    val max = if (regex.getOrNull(afterName)?.let { it in '0'..'3' } == true) OCTAL_DIGITS else OCTAL_DIGITS - 1
+                    while (end < regex.length && end - afterName < max && regex[end] in '0'..'7') end++
+                    end
+                }
+                'c' -> minOf(afterName + 1, regex.length)
+                else -> afterName
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.TypeDescriptor
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap
+
+/**
+ * Transitive closure of the type hierarchy over dense integer type ids.
+ *
+ * Every type picks one direct supertype as its tree parent (the first one
+ * recorded, i.e. the superclass for types built by the SootUp adapter), and
+ * types are numbered in DFS preorder over the resulting forest. The subtypes
+ * reachable through tree edges of type `t` are then exactly the ids
+ * `t + 1 until end(t)` (interval labelling). Ancestors reachable only through
+ * other edges -- typically interfaces -- are kept per type in a sorted array
+ * ([extraSupertypes]), which is small in practice.
+ *
+ * - [isSubtypeOf]: one interval check, then a binary search in the extra ancestors
+ * - [allSupertypes]: tree parent chain plus extra ancestors, `O(result)`
+ * - [allSubtypes]: the preorder interval plus the inverted extra ancestors, `O(result)`
+ *
+ * Subtyping is reflexive; unknown types are only subtypes of themselves.
+ */
+class TypeClosure private constructor(
+    private val names: Array<String>,
+    private val parents: IntArray,
+    private val ends: IntArray,
+    private val extraStarts: IntArray,
+    private val extras: IntArray
+) {
+
+    private val ids = Object2IntOpenHashMap<String>(names.size).apply {
+        defaultReturnValue(-1)
+        names.forEachIndexed { id, name -> put(name, id) }
+    }
+
+    /** Inverse of [extras]: for each type, the ids that reach it through non-tree edges. */
+    private val extraSubtypes: Array<IntArray> by lazy {
+        val inverse = Array(names.size) { IntArrayList() }
+        for (id in names.indices) {
+            for (i in extraStarts[id] until extraStarts[id + 1]) inverse[extras[i]].add(id)
+        }
+        Array(names.size) { inverse[it].toIntArray() }
+    }
+
+    /** Number of types. */
+    val size: Int get() = names.size
+
+    /** Id of [className], or -1 if it has no hierarchy information. */
+    fun id(className: String): Int = ids.getInt(className)
+
+    fun name(id: Int): String = names[id]
+
+    /** Tree parent of [id] (a direct supertype), or -1 for roots. */
+    fun parent(id: Int): Int = parents[id]
+
+    /** Exclusive end of the preorder interval holding [id] and its tree descendants. */
+    fun end(id: Int): Int = ends[id]
+
+    /** Sorted ids of ancestors of [id] that are not on its tree parent chain. */
+    fun extraSupertypes(id: Int): IntArray = extras.copyOfRange(extraStarts[id], extraStarts[id + 1])
+
+    fun isSubtypeOf(type: Int, supertype: Int): Boolean {
+        if (type == supertype) return true
+        if (type > supertype && type < ends[supertype]) return true
+        return extras.binarySearch(supertype, extraStarts[type], extraStarts[type + 1]) >= 0
+    }
+
+    fun isSubtypeOf(type: String, supertype: String): Boolean {
+        if (type == supertype) return true
+        val sub = id(type)
+        val sup = id(supertype)
+        return sub >= 0 && sup >= 0 && isSubtypeOf(sub, sup)
+    }
+
+    /** All proper supertypes of [className], nearest tree ancestors first. */
+    fun allSupertypes(className: String): Sequence<String> {
+        val id = id(className)
+        if (id < 0) return emptySequence()
+        val chain = generateSequence(parents[id].takeIf { it >= 0 }) { parents[it].takeIf { p -> p >= 0 } }
+        val others = (extraStarts[id] until extraStarts[id + 1]).asSequence().map { extras[it] }
+        return (chain + others).map { names[it] }
+    }
+
+    /** All proper subtypes of [className]. */
+    fun allSubtypes(className: String): Sequence<String> {
+        val id = id(className)
+        if (id < 0) return emptySequence()
+        val tree = (id + 1 until ends[id]).asSequence()
+        return (tree + extraSubtypes[id].asSequence()).map { names[it] }
+    }
+
+    companion object {
+
+        /**
+         * Build the closure from direct supertypes keyed by class name, as in
+         * [TypeHierarchy] and persisted graph metadata.
+         */
+        fun of(supertypes: Map<String, Collection<TypeDescriptor>>): TypeClosure {
+            val allNames = sortedSetOf<String>()
+            for ((name, sups) in supertypes) {
+                allNames.add(name)
+                sups.forEach { allNames.add(it.className) }
+            }
+            val index = Object2IntOpenHashMap<String>(allNames.size).apply { defaultReturnValue(-1) }
+            val byIndex = allNames.toTypedArray()
+            byIndex.forEachIndexed { i, name -> index.put(name, i) }
+            val n = byIndex.size
+
+            val direct = Array(n) { i ->
+                val result = IntArrayList()
+                supertypes[byIndex[i]]?.forEach { sup ->
+                    val s = index.getInt(sup.className)
+                    if (s != i && !result.contains(s)) result.add(s)
+                }
+                result.toIntArray()
+            }
+
+            // Spanning forest: first direct supertype is the tree parent
+            val treeParent = IntArray(n) { direct[it].firstOrNull() ?: -1 }
+            val children = Array(n) { IntArrayList() }
+            for (i in 0 until n) if (treeParent[i] >= 0) children[treeParent[i]].add(i)
+
+            // DFS preorder numbering; types on parent cycles become roots
+            val order = IntArray(n) { -1 }
+            val ends = IntArray(n)
+            var next = 0
+            val stack = IntArrayList()
+            fun visit(root: Int) {
+                treeParent[root] = -1
+                order[root] = next++
+                stack.add(root)
+                val cursors = IntArrayList().apply { add(0) }
+                while (stack.isNotEmpty()) {
+                    val top = stack.getInt(stack.size - 1)
+                    val cursor = cursors.getInt(cursors.size - 1)
+                    val kids = children[top]
+                    if (cursor < kids.size) {
+                        cursors.set(cursors.size - 1, cursor + 1)
+                        val child = kids.getInt(cursor)
+                        if (order[child] < 0 && treeParent[child] == top) {
+                            order[child] = next++
+                            stack.add(child)
+                            cursors.add(0)
+                        }
+                    } else {
+                        ends[top] = next
+                        stack.removeInt(stack.size - 1)
+                        cursors.removeInt(cursors.size - 1)
+                    }
+                }
+            }
+            for (i in 0 until n) if (treeParent[i] < 0 && order[i] < 0) visit(i)
+            for (i in 0 until n) if (order[i] < 0) visit(i)
+
+            val names = arrayOfNulls<String>(n)
+            val parents = IntArray(n)
+            val endsById = IntArray(n)
+            for (i in 0 until n) {
+                val id = order[i]
+                names[id] = byIndex[i]
+                parents[id] = if (treeParent[i] >= 0) order[treeParent[i]] else -1
+                endsById[id] = ends[i]
+            }
+
+            // Ancestors not on the tree parent chain
+            val extraStarts = IntArray(n + 1)
+            val extraLists = arrayOfNulls<IntArray>(n)
+            val seen = IntOpenHashSet()
+            val queue = IntArrayList()
+            for (i in 0 until n) {
+                val id = order[i]
+                seen.clear()
+                queue.clear()
+                queue.addAll(direct[i].asList())
+                val extra = IntArrayList()
+                var head = 0
+                while (head < queue.size) {
+                    val s = queue.getInt(head++)
+                    if (s == i || !seen.add(s)) continue
+                    val sup = order[s]
+                    if (!(id > sup && id < ends[s])) extra.add(sup)
+                    direct[s].forEach { queue.add(it) }
+                }
+                extraLists[id] = extra.toIntArray().also { it.sort() }
+            }
+            for (id in 0 until n) extraStarts[id + 1] = extraStarts[id] + extraLists[id]!!.size
+            val extras = IntArray(extraStarts[n])
+            for (id in 0 until n) extraLists[id]!!.copyInto(extras, extraStarts[id])
+
+            @Suppress("UNCHECKED_CAST")
+            return TypeClosure(names as Array<String>, parents, endsById, extraStarts, extras)
+        }
+
+        /**
+         * Restore a closure from its components (see [name], [parent], [end]
+         * and [extraSupertypes]), e.g. when loading a persisted graph.
+         */
+        fun of(names: Array<String>, parents: IntArray, ends: IntArray, extraSupertypes: Array<IntArray>): TypeClosure {
+            require(parents.size == names.size && ends.size == names.size && extraSupertypes.size == names.size) {
+                "Type closure arrays must all have ${names.size} entries"
+            }
+            val extraStarts = IntArray(names.size + 1)
+            for (id in names.indices) extraStarts[id + 1] = extraStarts[id] + extraSupertypes[id].size
+            val extras = IntArray(extraStarts[names.size])
+            for (id in names.indices) extraSupertypes[id].copyInto(extras, extraStarts[id])
+            return TypeClosure(names, parents, ends, extraStarts, extras)
+        }
+
+        val EMPTY: TypeClosure = of(emptyMap())
+    }
+}
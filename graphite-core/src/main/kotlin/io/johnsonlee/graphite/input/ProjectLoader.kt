@@ -67,6 +67,15 @@ data class LoaderConfig(
      */
     val callGraphAlgorithm: CallGraphAlgorithm = CallGraphAlgorithm.CHA,
 
+    /**
+     * Number of threads used to resolve method bodies while building the
+     * graph (1 = resolve them on the building thread). Graph construction
+     * itself -- creating nodes and edges -- stays sequential, so the result
+     * does not depend on this value. All threads share one view of the
+     * input, so memory use does not grow with the thread count.
+     */
+    val buildThreads: Int = 1,
+
     /**
      * Verbose logging callback
      */
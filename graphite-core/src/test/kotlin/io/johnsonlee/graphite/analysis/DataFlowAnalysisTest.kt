@@ -271,6 +271,7 @@ class DataFlowAnalysisTest {
         assertEquals(1, allConstants.size)
         assertTrue(allConstants[0] is EnumConstant)
         assertEquals("ACTIVE", (allConstants[0] as EnumConstant).enumName)
+        assertTrue(allConstants[0].id.value < 0, "synthetic enum constants must not reuse graph ids")
     }
 
     @Test
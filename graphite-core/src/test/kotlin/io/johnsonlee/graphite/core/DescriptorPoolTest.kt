@@ -0,0 +1,79 @@
+package io.johnsonlee.graphite.core
+
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+
+class DescriptorPoolTest {
+
+    private fun method(className: String, name: String, vararg params: String) =
+        MethodDescriptor(TypeDescriptor(className), name, params.map { TypeDescriptor(it) }, TypeDescriptor("void"))
+
+    @Test
+    fun `equal descriptors intern to the same instance`() {
+        val pool = DescriptorPool()
+        val first = pool.intern(method("com.example.Foo", "bar", "int"))
+        val second = pool.intern(method("com.example.Foo", "bar", "int"))
+        assertSame(first, second)
+        assertSame(pool.type("com.example.Foo"), pool.intern(TypeDescriptor("com.example.Foo")))
+        assertEquals(1, pool.methodCount)
+    }
+
+    @Test
+    fun `method components are interned with the method`() {
+        val pool = DescriptorPool()
+        val bar = pool.intern(method("com.example.Foo", "bar", "int"))
+        val baz = pool.intern(method("com.example.Foo", "baz", "int"))
+        assertSame(bar.declaringClass, baz.declaringClass)
+        assertSame(bar.parameterTypes.single(), baz.parameterTypes.single())
+        assertSame(bar.returnType, pool.type("void"))
+        assertSame(pool.type("int"), pool.intern(TypeDescriptor("java.util.List", listOf(TypeDescriptor("int")))).typeArguments.single())
+    }
+
+    @Test
+    fun `ids are dense and resolve to canonical instances`() {
+        val pool = DescriptorPool()
+        val foo = method("com.example.Foo", "bar")
+        assertEquals(-1, pool.idOf(foo))
+        assertEquals(0, pool.methodId(foo))
+        assertEquals(1, pool.methodId(method("com.example.Foo", "baz")))
+        assertEquals(0, pool.methodId(method("com.example.Foo", "bar")))
+        assertEquals(0, pool.idOf(foo))
+        assertSame(pool.intern(foo), pool.methodAt(0))
+        assertEquals(listOf("com.example.Foo", "void"), (0 until pool.typeCount).map { pool.typeAt(it).className })
+        assertFailsWith<IndexOutOfBoundsException> { pool.methodAt(2) }
+        assertFailsWith<IndexOutOfBoundsException> { pool.typeAt(-1) }
+    }
+
+    @Test
+    fun `generic types are distinct from their erasure`() {
+        val pool = DescriptorPool()
+        val raw = pool.type("java.util.List")
+        val generic = pool.intern(TypeDescriptor("java.util.List", listOf(TypeDescriptor("java.lang.String"))))
+        assertNotSame(raw, generic)
+        assertEquals(3, pool.typeCount)
+    }
+
+    @Test
+    fun `concurrent interning yields one instance per descriptor`() {
+        val pool = DescriptorPool()
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val results = (0 until 4).map {
+                executor.submit<List<MethodDescriptor>> {
+                    (0 until 1000).map { i -> pool.intern(method("com.example.C${i % 100}", "m${i % 7}", "int")) }
+                }
+            }.map { it.get(10, TimeUnit.SECONDS) }
+            for (i in 0 until 1000) {
+                results.forEach { assertSame(results[0][i], it[i]) }
+            }
+            assertEquals(results[0].toSet().size, pool.methodCount)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+}
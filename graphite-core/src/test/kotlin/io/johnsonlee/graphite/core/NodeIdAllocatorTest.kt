@@ -0,0 +1,44 @@
+package io.johnsonlee.graphite.core
+
+import io.johnsonlee.graphite.graph.DefaultGraph
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class NodeIdAllocatorTest {
+
+    @Test
+    fun `ids are dense from zero per allocator`() {
+        val first = NodeIdAllocator()
+        val second = NodeIdAllocator()
+        assertEquals(listOf(0, 1, 2), List(3) { first.next().value })
+        assertEquals(listOf(0, 1), List(2) { second.next().value })
+        assertEquals(3, first.count)
+        assertEquals(2, second.count)
+    }
+
+    @Test
+    fun `concurrent allocation hands out every id once`() {
+        val allocator = NodeIdAllocator()
+        val threads = 8
+        val perThread = 1000
+        val ids = ConcurrentLinkedQueue<Int>()
+        val pool = Executors.newFixedThreadPool(threads)
+        repeat(threads) { pool.execute { repeat(perThread) { ids.add(allocator.next().value) } } }
+        pool.shutdown()
+        pool.awaitTermination(1, TimeUnit.MINUTES)
+        assertEquals((0 until threads * perThread).toList(), ids.sorted())
+        assertEquals(threads * perThread, allocator.count)
+    }
+
+    @Test
+    fun `builders allocate independently of each other`() {
+        val a = DefaultGraph.Builder()
+        a.nodeIds.next()
+        a.nodeIds.next()
+        val b = DefaultGraph.Builder()
+        assertEquals(0, b.nodeIds.next().value)
+    }
+}
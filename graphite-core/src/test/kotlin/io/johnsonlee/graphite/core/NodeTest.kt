@@ -1,8 +1,10 @@
 package io.johnsonlee.graphite.core
 
+import io.johnsonlee.graphite.graph.DefaultGraph
 import kotlin.test.BeforeTest
 import kotlin.test.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertFalse
 import kotlin.test.assertNotEquals
 import kotlin.test.assertNull
 import kotlin.test.assertTrue
@@ -37,6 +39,15 @@ class NodeTest {
         assertEquals(1, id.value)
     }
 
+    @Test
+    fun `synthetic ids are negative and distinct`() {
+        val id1 = NodeId.synthetic()
+        val id2 = NodeId.synthetic()
+        assertTrue(id1.value < 0)
+        assertTrue(id2.value < 0)
+        assertNotEquals(id1, id2)
+    }
+
     @Test
     fun `toString returns node hash format`() {
         val id = NodeId(42)
@@ -174,6 +185,19 @@ class NodeTest {
         assertTrue(td.isSubtypeOf(TypeDescriptor("com.example.Foo")))
     }
 
+    @Test
+    fun `isSubtypeOf consults the graph type hierarchy`() {
+        val graph = DefaultGraph.Builder()
+            .addTypeRelation(TypeDescriptor("com.example.Foo"), TypeDescriptor("com.example.Base"), TypeRelation.EXTENDS)
+            .addTypeRelation(TypeDescriptor("com.example.Base"), TypeDescriptor("com.example.Api"), TypeRelation.IMPLEMENTS)
+            .build()
+        val foo = TypeDescriptor("com.example.Foo")
+        assertTrue(foo.isSubtypeOf(TypeDescriptor("com.example.Api"), graph))
+        assertTrue(foo.isSubtypeOf(foo, graph))
+        assertFalse(TypeDescriptor("com.example.Api").isSubtypeOf(foo, graph))
+        assertFalse(foo.isSubtypeOf(TypeDescriptor("com.example.Api")))
+    }
+
     @Test
     fun `typeArguments defaults to empty list`() {
         val td = TypeDescriptor("java.util.List")
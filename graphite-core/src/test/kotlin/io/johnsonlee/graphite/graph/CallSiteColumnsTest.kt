@@ -0,0 +1,73 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.MethodDescriptor
+import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.TypeDescriptor
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
+
+class CallSiteColumnsTest {
+
+    private val caller = MethodDescriptor(TypeDescriptor("com.example.Main"), "run", emptyList(), TypeDescriptor("void"))
+
+    private fun callSite(id: Int, className: String, name: String, line: Int?, vararg args: Int) = CallSiteNode(
+        id = NodeId(id),
+        caller = caller,
+        callee = MethodDescriptor(TypeDescriptor(className), name, listOf(TypeDescriptor("int")), TypeDescriptor("void")),
+        lineNumber = line,
+        receiver = if (args.isEmpty()) null else NodeId(args[0]),
+        arguments = args.map { NodeId(it) }
+    )
+
+    private val callSites = listOf(
+        callSite(7, "com.example.Foo", "bar", 12, 1, 2),
+        callSite(3, "com.example.Foo", "baz", null),
+        callSite(9, "com.example.Qux", "bar", 40, 5)
+    )
+
+    @Test
+    fun `rows expose single fields and rebuild equal nodes`() {
+        val columns = CallSiteColumns.of(callSites.asSequence())
+        assertEquals(3, columns.size)
+        assertEquals(CallSiteNode::class.java, columns.type)
+        assertEquals(listOf(7, 3, 9), (0 until columns.size).map { columns.nodeId(it) })
+        assertEquals(listOf("com.example.Foo", "com.example.Foo", "com.example.Qux"), (0 until columns.size).map { columns.calleeClass(it) })
+        assertEquals(columns.calleeClassId(0), columns.calleeClassId(1))
+        assertEquals(columns.calleeNameId(0), columns.calleeNameId(2))
+        assertEquals(columns.calleeClassId(2), columns.stringId("com.example.Qux"))
+        assertEquals(-1, columns.stringId("com.example.Missing"))
+        assertEquals("baz", columns.calleeName(1))
+        assertEquals(caller, columns.caller(2))
+        assertNull(columns.line(1))
+        assertNull(columns.receiver(1))
+        assertEquals(2, columns.argumentCount(0))
+        assertEquals(NodeId(2), columns.argument(0, 1))
+        assertFailsWith<IndexOutOfBoundsException> { columns.argument(1, 0) }
+        assertEquals(callSites, (0 until columns.size).map { columns.node(it) })
+    }
+
+    @Test
+    fun `columns round trip through their raw arrays`() {
+        val strings = mutableListOf<String>()
+        val methods = mutableListOf<MethodDescriptor>()
+        val builder = CallSiteColumns.Builder(
+            stringId = { s -> strings.indexOf(s).takeIf { it >= 0 } ?: strings.size.also { strings.add(s) } },
+            methodId = { m -> methods.indexOf(m).takeIf { it >= 0 } ?: methods.size.also { methods.add(m) } }
+        )
+        callSites.forEach { builder.add(it) }
+        val columns = builder.build({ strings[it] }, { methods[it] })
+        assertEquals(strings.indexOf("com.example.Qux"), columns.calleeClassId(2))
+        assertEquals(methods.indexOf(caller), columns.callerId(0))
+
+        val raw = linkedMapOf<String, IntArray>()
+        columns.forEachColumn { name, values -> raw[name] = values.copyOf() }
+        assertEquals(CallSiteColumns.COLUMNS, raw.keys.toList())
+        val copy = CallSiteColumns.of(raw, { strings[it] }, { methods[it] })
+        assertNull(copy.stringId("com.example.Foo"))
+        assertEquals(callSites, (0 until copy.size).map { copy.node(it) })
+        assertFailsWith<IllegalArgumentException> { CallSiteColumns.of(raw - CallSiteColumns.LINES, { strings[it] }, { methods[it] }) }
+    }
+}
@@ -0,0 +1,87 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.MethodDescriptor
+import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.TypeDescriptor
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class CallSiteIndexTest {
+
+    private val caller = method("com.example.App", "main")
+
+    private val callSites = listOf(
+        method("com.example.Client", "get", "java.lang.String"),
+        method("com.example.Client", "get", "int"),
+        method("com.example.Client", "getAll"),
+        method("com.example.ClientFactory", "create"),
+        method("com.example.sub.Service", "get"),
+        method("com.other.Client", "get", "java.lang.String"),
+        method("java.util.Map", "put", "java.lang.Object", "java.lang.Object")
+    ).mapIndexed { i, callee -> CallSiteNode(NodeId(100 - i * 7), caller, callee, i, null, emptyList()) }
+
+    private val byId = callSites.associateBy { it.id }
+
+    private val index = CallSiteIndex.Builder().apply { callSites.forEach { add(it) } }.build()
+
+    private fun method(className: String, name: String, vararg params: String) =
+        MethodDescriptor(TypeDescriptor(className), name, params.map { TypeDescriptor(it) }, TypeDescriptor("void"))
+
+    private fun assertSameAsScan(pattern: MethodPattern) {
+        val expected = callSites.filter { pattern.matches(it.callee) }.toSet()
+        val actual = index.callSites(pattern) { byId[it] }.toList()
+        assertEquals(expected, actual.toSet(), "$pattern")
+        assertEquals(actual.size, actual.toSet().size, "no duplicates for $pattern")
+    }
+
+    @Test
+    fun `exact class and name`() {
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.Client", name = "get"))
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.Client", name = "missing"))
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.Missing"))
+    }
+
+    @Test
+    fun `prefix wildcards on class and name`() {
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.*"))
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.Client*", name = "get*"))
+        assertSameAsScan(MethodPattern(declaringClass = "*", name = "get"))
+        assertSameAsScan(MethodPattern(name = "cre*"))
+    }
+
+    @Test
+    fun `regex patterns`() {
+        assertSameAsScan(MethodPattern(declaringClass = ".*Client", name = "get.*", useRegex = true))
+        assertSameAsScan(MethodPattern(declaringClass = "java\\..*", useRegex = true))
+    }
+
+    @Test
+    fun `parameter and return types are checked on candidates`() {
+        assertSameAsScan(MethodPattern(name = "get", parameterTypes = listOf("java.lang.String")))
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.*", returnType = "void"))
+        assertSameAsScan(MethodPattern(returnType = "int"))
+    }
+
+    @Test
+    fun `empty pattern returns every call site`() {
+        assertSameAsScan(MethodPattern())
+        assertEquals(callSites.size, index.size)
+    }
+
+    @Test
+    fun `buckets are sorted and rebuild the same index`() {
+        val buckets = mutableListOf<Pair<String, String>>()
+        val rebuilt = CallSiteIndex.Builder()
+        index.forEachBucket { className, name, nodeIds ->
+            buckets += className to name
+            assertTrue(nodeIds.toList() == nodeIds.sorted(), "$className#$name ids are ascending")
+            nodeIds.forEach { rebuilt.add(className, name, it) }
+        }
+        assertEquals(index.bucketCount, buckets.size)
+        assertEquals(buckets.sortedWith(compareBy({ it.first }, { it.second })), buckets)
+        val pattern = MethodPattern(declaringClass = "com.*")
+        assertEquals(index.candidates(pattern).toList(), rebuilt.build().candidates(pattern).toList())
+    }
+}
@@ -5,6 +5,8 @@ import io.johnsonlee.graphite.core.BranchScope
 import io.johnsonlee.graphite.core.CallEdge
 import io.johnsonlee.graphite.core.CallSiteNode
 import io.johnsonlee.graphite.core.ComparisonOp
+import io.johnsonlee.graphite.core.ControlFlowEdge
+import io.johnsonlee.graphite.core.ControlFlowKind
 import io.johnsonlee.graphite.core.DataFlowEdge
 import io.johnsonlee.graphite.core.DataFlowKind
 import io.johnsonlee.graphite.core.Edge
@@ -12,8 +14,11 @@ import io.johnsonlee.graphite.core.IntConstant
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.ResourceEdge
+import io.johnsonlee.graphite.core.ResourceRelation
 import io.johnsonlee.graphite.core.StringConstant
 import io.johnsonlee.graphite.core.TypeDescriptor
+import io.johnsonlee.graphite.core.TypeEdge
 import io.johnsonlee.graphite.core.TypeRelation
 import io.johnsonlee.graphite.input.EmptyResourceAccessor
 import io.johnsonlee.graphite.input.ResourceAccessor
@@ -164,6 +169,105 @@ class DefaultGraphTest {
         assertEquals(1, graph.incoming(to, CallEdge::class.java).count())
     }
 
+    @Test
+    fun `typed lookup with Edge class returns all edges`() {
+        val from = NodeId.next()
+        val to1 = NodeId.next()
+        val to2 = NodeId.next()
+        val graph = DefaultGraph.Builder()
+            .addEdge(DataFlowEdge(from, to1, DataFlowKind.ASSIGN))
+            .addEdge(CallEdge(from, to2, isVirtual = false))
+            .build()
+
+        assertEquals(2, graph.outgoing(from, Edge::class.java).count())
+        assertEquals(graph.outgoing(from).toSet(), graph.outgoing(from, Edge::class.java).toSet())
+    }
+
+    @Test
+    fun `dataflow edges by kind preserve insertion order`() {
+        val field = NodeId.next()
+        val a = NodeId.next()
+        val b = NodeId.next()
+        val c = NodeId.next()
+        val store1 = DataFlowEdge(a, field, DataFlowKind.FIELD_STORE)
+        val assign = DataFlowEdge(b, field, DataFlowKind.ASSIGN)
+        val store2 = DataFlowEdge(c, field, DataFlowKind.FIELD_STORE)
+        val graph = DefaultGraph.Builder()
+            .addEdge(store1)
+            .addEdge(CallEdge(a, field, isVirtual = false))
+            .addEdge(assign)
+            .addEdge(store2)
+            .build()
+
+        assertEquals(listOf(store1, store2), graph.incoming(field, DataFlowKind.FIELD_STORE).toList())
+        assertEquals(listOf(assign), graph.incoming(field, DataFlowKind.ASSIGN).toList())
+        assertEquals(0, graph.incoming(field, DataFlowKind.PHI).count())
+        assertEquals(listOf(store1), graph.outgoing(a, DataFlowKind.FIELD_STORE).toList())
+        assertEquals(3, graph.incoming(field, DataFlowEdge::class.java).count())
+    }
+
+    @Test
+    fun `edges are decoded with all attributes`() {
+        val cond = NodeId.next()
+        val target = NodeId.next()
+        val constant = NodeId.next()
+        val comparison = BranchComparison(ComparisonOp.EQ, constant)
+        val edges = listOf(
+            CallEdge(cond, target, isVirtual = true, isDynamic = true),
+            TypeEdge(target, cond, TypeRelation.IMPLEMENTS),
+            ControlFlowEdge(cond, target, ControlFlowKind.BRANCH_TRUE, comparison),
+            ControlFlowEdge(cond, constant, ControlFlowKind.SEQUENTIAL),
+            ResourceEdge(target, cond, ResourceRelation.LOOKUP)
+        )
+        val builder = DefaultGraph.Builder()
+        edges.forEach { builder.addEdge(it) }
+        val graph = builder.build()
+
+        assertEquals(edges.toSet(), (graph.outgoing(cond) + graph.outgoing(target)).toSet())
+        assertEquals(edges.toSet(), (graph.incoming(cond) + graph.incoming(target) + graph.incoming(constant)).toSet())
+        assertEquals(comparison, graph.incoming(target, ControlFlowEdge::class.java).single().comparison)
+    }
+
+    @Test
+    fun `edge cursor honours label mask and materializes edges`() {
+        val cond = NodeId.next()
+        val target = NodeId.next()
+        val other = NodeId.next()
+        val comparison = BranchComparison(ComparisonOp.NE, other)
+        val branch = ControlFlowEdge(cond, target, ControlFlowKind.BRANCH_FALSE, comparison)
+        val assign = DataFlowEdge(cond, other, DataFlowKind.ASSIGN)
+        val call = CallEdge(cond, other, isVirtual = true)
+        val graph = DefaultGraph.Builder()
+            .addEdge(branch)
+            .addEdge(assign)
+            .addEdge(call)
+            .build()
+
+        val all = mutableListOf<Edge>()
+        graph.forEachOutgoing(cond, EdgeLabels.ALL) { n, label -> all += graph.edge(cond.value, n, label) }
+        assertEquals(setOf(branch, assign, call), all.toSet())
+
+        val flows = mutableListOf<Int>()
+        graph.forEachOutgoing(cond, EdgeLabels.mask(DataFlowKind.ASSIGN)) { n, _ -> flows += n }
+        assertEquals(listOf(other.value), flows)
+
+        val incoming = mutableListOf<Edge>()
+        graph.forEachIncoming(target, EdgeLabels.mask(ControlFlowEdge::class.java)) { n, label ->
+            incoming += graph.edge(n, target.value, label)
+        }
+        assertEquals(listOf<Edge>(branch), incoming)
+
+        graph.forEachOutgoing(cond, 0L) { _, _ -> error("empty mask must not match") }
+        graph.forEachIncoming(NodeId(42), EdgeLabels.ALL) { _, _ -> error("unknown node has no edges") }
+    }
+
+    @Test
+    fun `lookup by kind returns empty for unknown node`() {
+        val graph = DefaultGraph.Builder().build()
+        assertEquals(0, graph.incoming(NodeId(42), DataFlowKind.ASSIGN).count())
+        assertEquals(0, graph.outgoing(NodeId(42), CallEdge::class.java).count())
+    }
+
     @Test
     fun `outgoing returns empty for node without edges`() {
         val id = NodeId.next()
@@ -0,0 +1,91 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.BranchComparison
+import io.johnsonlee.graphite.core.CallEdge
+import io.johnsonlee.graphite.core.ComparisonOp
+import io.johnsonlee.graphite.core.ControlFlowEdge
+import io.johnsonlee.graphite.core.ControlFlowKind
+import io.johnsonlee.graphite.core.DataFlowEdge
+import io.johnsonlee.graphite.core.DataFlowKind
+import io.johnsonlee.graphite.core.Edge
+import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.ResourceEdge
+import io.johnsonlee.graphite.core.ResourceRelation
+import io.johnsonlee.graphite.core.TypeEdge
+import io.johnsonlee.graphite.core.TypeRelation
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class EdgeLabelsTest {
+
+    private val from = NodeId(1)
+    private val to = NodeId(2)
+    private val comparison = BranchComparison(ComparisonOp.NE, NodeId(3))
+
+    private fun allShapes(): List<Edge> = buildList {
+        DataFlowKind.entries.forEach { add(DataFlowEdge(from, to, it)) }
+        listOf(false, true).forEach { virtual ->
+            listOf(false, true).forEach { dynamic -> add(CallEdge(from, to, virtual, dynamic)) }
+        }
+        TypeRelation.entries.forEach { add(TypeEdge(from, to, it)) }
+        ControlFlowKind.entries.forEach {
+            add(ControlFlowEdge(from, to, it))
+            add(ControlFlowEdge(from, to, it, comparison))
+        }
+        ResourceRelation.entries.forEach { add(ResourceEdge(from, to, it)) }
+    }
+
+    @Test
+    fun `every edge shape has a distinct label and round-trips`() {
+        val shapes = allShapes()
+        val labels = shapes.map { EdgeLabels.of(it) }
+        assertEquals(EdgeLabels.COUNT, labels.toSet().size)
+        assertTrue(labels.all { it in 0 until EdgeLabels.COUNT })
+        shapes.zip(labels).forEach { (edge, label) ->
+            assertEquals(edge, EdgeLabels.decode(from.value, to.value, label) { comparison })
+        }
+    }
+
+    @Test
+    fun `labels are family-major`() {
+        allShapes().forEach { edge ->
+            val range = EdgeLabels.rangeOf(edge.javaClass)!!
+            assertTrue(EdgeLabels.of(edge) in range, "$edge")
+        }
+        assertNull(EdgeLabels.rangeOf(Edge::class.java))
+    }
+
+    @Test
+    fun `comparison flag only set for control flow`() {
+        assertTrue(EdgeLabels.hasComparison(EdgeLabels.of(ControlFlowEdge(from, to, ControlFlowKind.BRANCH_TRUE, comparison))))
+        allShapes().filterNot { it is ControlFlowEdge && it.comparison != null }.forEach {
+            assertTrue(!EdgeLabels.hasComparison(EdgeLabels.of(it)), "$it")
+        }
+    }
+
+    @Test
+    fun `masks select exactly their labels`() {
+        allShapes().forEach { edge ->
+            val label = EdgeLabels.of(edge)
+            assertTrue(EdgeLabels.matches(EdgeLabels.ALL, label))
+            assertTrue(EdgeLabels.matches(EdgeLabels.mask(edge.javaClass), label), "$edge")
+            assertEquals(
+                edge is DataFlowEdge && edge.kind == DataFlowKind.PHI,
+                EdgeLabels.matches(EdgeLabels.mask(DataFlowKind.PHI), label),
+                "$edge"
+            )
+        }
+        assertEquals(EdgeLabels.ALL, EdgeLabels.mask(Edge::class.java))
+        assertEquals(DataFlowKind.FIELD_LOAD, EdgeLabels.dataFlowKind(EdgeLabels.of(DataFlowKind.FIELD_LOAD)))
+    }
+
+    @Test
+    fun `decode rejects unknown label`() {
+        assertFailsWith<IllegalArgumentException> {
+            EdgeLabels.decode(0, 1, EdgeLabels.COUNT) { null }
+        }
+    }
+}
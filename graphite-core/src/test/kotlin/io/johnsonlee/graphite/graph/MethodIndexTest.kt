@@ -0,0 +1,60 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.MethodDescriptor
+import io.johnsonlee.graphite.core.TypeDescriptor
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class MethodIndexTest {
+
+    private val methods = listOf(
+        method("com.example.Client", "get", "java.lang.String"),
+        method("com.example.Client", "get", "int"),
+        method("com.example.Client", "getAll"),
+        method("com.example.ClientFactory", "create"),
+        method("com.example.sub.Service", "get"),
+        method("com.other.Client", "get", "java.lang.String"),
+        method("java.util.Map", "put", "java.lang.Object", "java.lang.Object")
+    )
+
+    private val index = MethodIndex(methods)
+
+    private fun method(className: String, name: String, vararg params: String) =
+        MethodDescriptor(TypeDescriptor(className), name, params.map { TypeDescriptor(it) }, TypeDescriptor("void"))
+
+    private fun assertSameAsScan(pattern: MethodPattern) {
+        val expected = methods.filter { pattern.matches(it) }
+        val actual = index.find(pattern).toList()
+        assertEquals(expected.toSet(), actual.toSet(), "$pattern")
+        assertEquals(expected.size, actual.size, "no duplicates for $pattern")
+    }
+
+    @Test
+    fun `class-scoped lookups`() {
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.Client"))
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.Client*"))
+        assertSameAsScan(MethodPattern(declaringClass = "com.example.Client", name = "get"))
+        assertSameAsScan(MethodPattern(declaringClass = "com.missing.*"))
+    }
+
+    @Test
+    fun `name-scoped lookups`() {
+        assertSameAsScan(MethodPattern(name = "get"))
+        assertSameAsScan(MethodPattern(name = "get*"))
+        assertSameAsScan(MethodPattern(name = "get", parameterTypes = listOf("java.lang.String")))
+    }
+
+    @Test
+    fun `regex lookups`() {
+        assertSameAsScan(MethodPattern(declaringClass = ".*Client", useRegex = true))
+        assertSameAsScan(MethodPattern(name = "g.t", useRegex = true))
+        assertSameAsScan(MethodPattern(declaringClass = "com\\..*", name = "get.*", useRegex = true))
+    }
+
+    @Test
+    fun `unconstrained pattern returns all methods in original order`() {
+        assertEquals(methods, index.find(MethodPattern()).toList())
+        assertSameAsScan(MethodPattern(returnType = "int"))
+        assertEquals(methods.size, index.size)
+    }
+}
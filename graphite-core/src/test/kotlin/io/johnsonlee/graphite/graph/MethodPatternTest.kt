@@ -3,7 +3,10 @@ package io.johnsonlee.graphite.graph
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.TypeDescriptor
 import kotlin.test.Test
+import kotlin.test.assertEquals
 import kotlin.test.assertFalse
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
 import kotlin.test.assertTrue
 
 class MethodPatternTest {
@@ -142,4 +145,24 @@ class MethodPatternTest {
         assertTrue(pattern.matches(method(className = "com.other.Bar", name = "other")))
     }
 
+    // ========================================================================
+    // Compiled matcher
+    // ========================================================================
+
+    @Test
+    fun `compile is cached per pattern instance`() {
+        val pattern = MethodPattern(declaringClass = ".*Foo", name = "do.*", useRegex = true)
+        assertSame(pattern.compile(), pattern.compile())
+        assertSame(pattern, pattern.compile().pattern)
+        assertNotSame(pattern.compile(), pattern.copy(name = "other").compile())
+    }
+
+    @Test
+    fun `compiled matcher agrees with pattern`() {
+        val pattern = MethodPattern(declaringClass = "com.example.*", parameterTypes = listOf("java.lang.*"))
+        val m = method(params = listOf("java.lang.String"))
+        assertTrue(pattern.compile().matches(m))
+        assertFalse(pattern.compile().matches(method(params = listOf("int"))))
+        assertEquals(pattern, pattern.copy())
+    }
 }
@@ -81,6 +81,20 @@ class MmapGraphTest {
         assertNull(graph.node(NodeId(9999)))
     }
 
+    @Test
+    fun `nodeType returns node classes without decoding`() {
+        val id1 = NodeId.next()
+        val id2 = NodeId.next()
+        val graph = MmapGraphBuilder()
+            .addNode(IntConstant(id1, 1))
+            .addNode(StringConstant(id2, "hello"))
+            .build()
+        assertEquals(IntConstant::class.java, graph.nodeType(id1))
+        assertEquals(StringConstant::class.java, graph.nodeType(id2))
+        assertNull(graph.nodeType(NodeId(9999)))
+        assertNull(graph.nodeType(NodeId(-1)))
+    }
+
     // ========================================================================
     // nodes(type) queries
     // ========================================================================
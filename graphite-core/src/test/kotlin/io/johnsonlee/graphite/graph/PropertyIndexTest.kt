@@ -0,0 +1,57 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.IntConstant
+import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.StringConstant
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class PropertyIndexTest {
+
+    private val constants = listOf("get", "getAll", "get", "put", "g", "getter", "post")
+        .mapIndexed { i, value -> StringConstant(NodeId(100 - i * 7), value) }
+
+    private val index = PropertyIndex.Builder(StringConstant::class.java, "value").apply {
+        constants.forEach { add(IndexedProperty.STRING_VALUE.value(it)!!, it.id.value) }
+    }.build()
+
+    private fun idsOf(predicate: (String) -> Boolean): List<Int> =
+        constants.filter { predicate(it.value) }.map { it.id.value }.sorted()
+
+    @Test
+    fun `exact values return ascending ids`() {
+        assertEquals(idsOf { it == "get" }, index.lookup("get").toList())
+        assertEquals(idsOf { it == "post" }, index.lookup("post").toList())
+        assertEquals(emptyList(), index.lookup("missing").toList())
+        assertEquals(7, index.size)
+        assertEquals(6, index.valueCount)
+    }
+
+    @Test
+    fun `prefixes return ascending ids across values`() {
+        for (prefix in listOf("get", "g", "p", "po", "", "x", "getAllX")) {
+            assertEquals(idsOf { it.startsWith(prefix) }, index.lookupPrefix(prefix).toList(), prefix)
+        }
+    }
+
+    @Test
+    fun `values can be resolved from a shared string table`() {
+        val table = listOf("a", "get", "getAll", "post", "zzz")
+        val valueIds = intArrayOf(1, 2, 3)
+        val resolved = PropertyIndex(
+            StringConstant::class.java, "value", valueIds.size, { table[valueIds[it]] },
+            intArrayOf(0, 2, 3, 4), intArrayOf(5, 9, 7, 1)
+        )
+        assertEquals(listOf(5, 9), resolved.lookup("get").toList())
+        assertEquals(listOf(5, 7, 9), resolved.lookupPrefix("get").toList())
+        assertEquals(emptyList(), resolved.lookup("a").toList())
+        assertEquals("post", resolved.valueAt(2))
+    }
+
+    @Test
+    fun `indexed properties only read nodes of their type`() {
+        assertEquals("v", IndexedProperty.STRING_VALUE.value(StringConstant(NodeId(1), "v")))
+        assertNull(IndexedProperty.STRING_VALUE.value(IntConstant(NodeId(2), 1)))
+    }
+}
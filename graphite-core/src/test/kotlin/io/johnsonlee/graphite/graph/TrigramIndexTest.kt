@@ -0,0 +1,80 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.StringConstant
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class TrigramIndexTest {
+
+    private val constants = listOf(
+        "https://api.example.com/v1", "SELECT * FROM users", "feature.checkout.enabled",
+        "http://example.org", "feature.search.enabled", "select id from orders", "https://api.example.com/v1"
+    ).mapIndexed { i, value -> StringConstant(NodeId(i * 3 + 1), value) }
+
+    private val index = TrigramIndex.of(PropertyIndex.Builder(StringConstant::class.java, "value").apply {
+        constants.forEach { add(it.value, it.id.value) }
+    }.build())
+
+    private fun idsOf(predicate: (String) -> Boolean): List<Int> =
+        constants.filter { predicate(it.value) }.map { it.id.value }.sorted()
+
+    @Test
+    fun `substrings are narrowed by trigrams and verified`() {
+        for (substring in listOf("api.example", "enabled", "FROM", "example", "nothing here", "ure.s")) {
+            assertEquals(
+                idsOf { it.contains(substring) },
+                index.lookup(listOf(substring)) { it.contains(substring) }?.toList(),
+                substring
+            )
+        }
+        assertNull(index.lookup(listOf("ht")) { it.contains("ht") })
+    }
+
+    @Test
+    fun `regexes are narrowed by their required literals`() {
+        val patterns = listOf(".*example\\.com.*", "feature\\.[a-z]+\\.enabled", "https?://.*", "SELECT \\* FROM \\w+")
+        for (pattern in patterns) {
+            val regex = Regex(pattern)
+            assertEquals(
+                idsOf { regex.matches(it) },
+                index.lookup(TrigramIndex.requiredLiterals(pattern)) { regex.matches(it) }?.toList(),
+                pattern
+            )
+        }
+        assertNull(index.lookup(TrigramIndex.requiredLiterals("(?i)select.*")) { true })
+    }
+
+    @Test
+    fun `required literals skip optional atoms`() {
+        assertEquals(listOf("example.com"), TrigramIndex.requiredLiterals(".*example\\.com.*"))
+        assertEquals(listOf("feature.", ".enabled"), TrigramIndex.requiredLiterals("feature\\.[a-z]+\\.enabled"))
+        assertEquals(listOf("http", "://"), TrigramIndex.requiredLiterals("https?://.*"))
+        assertEquals(listOf("colo", "abc"), TrigramIndex.requiredLiterals("colou?r{1,2}abc+"))
+        assertEquals(listOf("SELECT * FROM "), TrigramIndex.requiredLiterals("SELECT \\* FROM \\w+"))
+        assertEquals(emptyList(), TrigramIndex.requiredLiterals("(?i)select.*"))
+        assertEquals(emptyList(), TrigramIndex.requiredLiterals("foo|bar"))
+        assertEquals(emptyList(), TrigramIndex.requiredLiterals("[a[b]]xyz"))
+    }
+
+    @Test
+    fun `required literals skip whole char code escapes`() {
+        assertEquals(listOf("api"), TrigramIndex.requiredLiterals(".*\\x2Fapi.*"))
+        assertEquals(listOf("api"), TrigramIndex.requiredLiterals(".*\\x{2F}api.*"))
+        assertEquals(listOf("BCD"), TrigramIndex.requiredLiterals("\\u0041BCD"))
+        assertEquals(listOf("xyz"), TrigramIndex.requiredLiterals("\\0101xyz"))
+        assertEquals(listOf("xyz"), TrigramIndex.requiredLiterals("\\07xyz"))
+        assertEquals(listOf("abc"), TrigramIndex.requiredLiterals("\\cMabc"))
+        assertEquals(listOf("api"), TrigramIndex.requiredLiterals("\\N{SOLIDUS}api"))
+        assertEquals(listOf("abc"), TrigramIndex.requiredLiterals("\\pLabc"))
+        assertEquals(emptyList(), TrigramIndex.requiredLiterals("\\x{2Fapi"))
+
+        val pattern = ".*\\x2Fapi.*"
+        val regex = Regex(pattern)
+        assertEquals(
+            idsOf { regex.matches(it) },
+            index.lookup(TrigramIndex.requiredLiterals(pattern)) { regex.matches(it) }?.toList()
+        )
+    }
+}
@@ -0,0 +1,109 @@
+package io.johnsonlee.graphite.graph
+
+import io.johnsonlee.graphite.core.TypeDescriptor
+import kotlin.random.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class TypeClosureTest {
+
+    private fun hierarchy(vararg relations: Pair<String, List<String>>): Map<String, List<TypeDescriptor>> =
+        relations.associate { (sub, sups) -> sub to sups.map { TypeDescriptor(it) } }
+
+    /** Ancestors by walking direct supertypes, as the closure must reproduce. */
+    private fun reachable(supertypes: Map<String, List<TypeDescriptor>>, type: String): Set<String> {
+        val result = mutableSetOf<String>()
+        val queue = ArrayDeque(supertypes[type].orEmpty().map { it.className })
+        while (queue.isNotEmpty()) {
+            val next = queue.removeFirst()
+            if (next != type && result.add(next)) queue.addAll(supertypes[next].orEmpty().map { it.className })
+        }
+        return result
+    }
+
+    private fun assertMatchesReachability(supertypes: Map<String, List<TypeDescriptor>>) {
+        val closure = TypeClosure.of(supertypes)
+        val names = (supertypes.keys + supertypes.values.flatten().map { it.className }).toSet()
+        assertEquals(names.size, closure.size)
+        for (type in names) {
+            val ancestors = reachable(supertypes, type)
+            assertEquals(ancestors, closure.allSupertypes(type).toSet(), "supertypes of $type")
+            assertEquals(ancestors.size, closure.allSupertypes(type).count(), "no duplicate supertypes of $type")
+            for (other in names) {
+                assertEquals(other == type || other in ancestors, closure.isSubtypeOf(type, other), "$type <: $other")
+            }
+            val descendants = names.filter { it != type && type in reachable(supertypes, it) }.toSet()
+            assertEquals(descendants, closure.allSubtypes(type).toSet(), "subtypes of $type")
+            assertEquals(descendants.size, closure.allSubtypes(type).count(), "no duplicate subtypes of $type")
+        }
+    }
+
+    @Test
+    fun `classes and interfaces are closed transitively`() {
+        val supertypes = hierarchy(
+            "ArrayList" to listOf("AbstractList", "List", "RandomAccess"),
+            "AbstractList" to listOf("AbstractCollection", "List"),
+            "AbstractCollection" to listOf("Object", "Collection"),
+            "List" to listOf("Collection"),
+            "Collection" to listOf("Iterable"),
+            "LinkedList" to listOf("AbstractList", "Deque"),
+            "Deque" to listOf("Queue"),
+            "Queue" to listOf("Collection")
+        )
+        assertMatchesReachability(supertypes)
+
+        val closure = TypeClosure.of(supertypes)
+        assertTrue(closure.isSubtypeOf("LinkedList", "Iterable"))
+        assertTrue(closure.isSubtypeOf("ArrayList", "Object"))
+        assertFalse(closure.isSubtypeOf("ArrayList", "Deque"))
+        assertEquals(listOf("AbstractList", "AbstractCollection", "Object"), closure.allSupertypes("LinkedList").take(3).toList())
+    }
+
+    @Test
+    fun `unknown types are only subtypes of themselves`() {
+        val closure = TypeClosure.of(hierarchy("B" to listOf("A")))
+        assertTrue(closure.isSubtypeOf("Missing", "Missing"))
+        assertFalse(closure.isSubtypeOf("Missing", "A"))
+        assertFalse(closure.isSubtypeOf("B", "Missing"))
+        assertEquals(-1, closure.id("Missing"))
+        assertTrue(closure.allSupertypes("Missing").none())
+        assertTrue(TypeClosure.EMPTY.allSubtypes("A").none())
+    }
+
+    @Test
+    fun `cyclic relations do not loop`() {
+        assertMatchesReachability(hierarchy("A" to listOf("B"), "B" to listOf("A"), "C" to listOf("B")))
+    }
+
+    @Test
+    fun `random hierarchies match reachability`() {
+        val random = Random(42)
+        repeat(20) {
+            val count = 30
+            val supertypes = (1 until count).associate { i ->
+                val parents = (0 until i).shuffled(random).take(random.nextInt(0, 4))
+                "T$i" to parents.map { TypeDescriptor("T$it") }
+            }
+            assertMatchesReachability(supertypes)
+        }
+    }
+
+    @Test
+    fun `components rebuild an equivalent closure`() {
+        val closure = TypeClosure.of(hierarchy("C" to listOf("B", "I"), "B" to listOf("A"), "I" to listOf("J")))
+        val copy = TypeClosure.of(
+            Array(closure.size) { closure.name(it) },
+            IntArray(closure.size) { closure.parent(it) },
+            IntArray(closure.size) { closure.end(it) },
+            Array(closure.size) { closure.extraSupertypes(it) }
+        )
+        for (a in 0 until closure.size) {
+            for (b in 0 until closure.size) {
+                assertEquals(closure.isSubtypeOf(a, b), copy.isSubtypeOf(a, b))
+            }
+        }
+        assertEquals(closure.allSubtypes("J").toSet(), copy.allSubtypes("J").toSet())
+    }
+}
@@ -19,6 +19,7 @@ class LoaderConfigTest {
         assertTrue(config.extractAnnotations)
         assertTrue(config.trackCrossMethodFunctionalDispatch)
         assertEquals(CallGraphAlgorithm.CHA, config.callGraphAlgorithm)
+        assertEquals(1, config.buildThreads)
         assertNull(config.verbose)
     }
 
@@ -48,6 +49,7 @@ class LoaderConfigTest {
             extractAnnotations = false,
             trackCrossMethodFunctionalDispatch = false,
             callGraphAlgorithm = CallGraphAlgorithm.RTA,
+            buildThreads = 4,
             verbose = { verboseCalled = true }
         )
 
@@ -59,6 +61,7 @@ class LoaderConfigTest {
         assertFalse(config.extractAnnotations)
         assertFalse(config.trackCrossMethodFunctionalDispatch)
         assertEquals(CallGraphAlgorithm.RTA, config.callGraphAlgorithm)
+        assertEquals(4, config.buildThreads)
 
         config.verbose?.invoke("test")
         assertTrue(verboseCalled)
@@ -310,6 +310,7 @@ class ExpressionEvaluator {
 
     private fun resolveProperty(obj: Any?, propertyName: String): Any? = when (obj) {
         is Node -> NodePropertyAccessor.getProperty(obj, propertyName)
+        is ColumnRow -> NodePropertyAccessor.getProperty(obj.columns, obj.row, propertyName)
         is Edge -> getEdgeProperty(obj, propertyName)
         is Map<*, *> -> obj[propertyName]
         is PathFinder.Path -> when (propertyName) {
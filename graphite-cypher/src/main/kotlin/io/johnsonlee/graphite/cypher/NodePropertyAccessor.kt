@@ -25,6 +25,10 @@ import io.johnsonlee.graphite.core.ReturnNode
 import io.johnsonlee.graphite.core.StringConstant
 import io.johnsonlee.graphite.core.TypeEdge
 import io.johnsonlee.graphite.core.ValueNode
+import io.johnsonlee.graphite.graph.CallSiteColumns
+import io.johnsonlee.graphite.graph.NodeColumns
+import java.util.function.IntPredicate
+import java.util.function.IntUnaryOperator
 
 /**
  * Resolves Cypher property names to actual values on Graphite nodes.
@@ -38,6 +42,9 @@ object NodePropertyAccessor {
     private const val PROPERTY_CLASS = "class"
     private const val PROPERTY_FORMAT = "format"
     private const val PROPERTY_PROFILE = "profile"
+    private val CALL_SITE_COLUMN_PROPERTIES = setOf(
+        "callee_class", "callee_name", "callee_signature", "caller_class", "caller_name", "caller_signature", "line"
+    )
 
     fun getProperty(node: Node, property: String): Any? {
         // Check global properties first (except PROPERTY_TYPE which is ambiguous)
@@ -71,6 +78,46 @@ object NodePropertyAccessor {
         }
     }
 
+    /**
+     * Whether [getProperty] can answer [property] for rows of [columns]
+     * directly from the column arrays.
+     */
+    fun hasColumn(columns: NodeColumns, property: String): Boolean = when {
+        property == PROPERTY_ID -> true
+        columns is CallSiteColumns -> property in CALL_SITE_COLUMN_PROPERTIES
+        else -> false
+    }
+
+    /**
+     * Read [property] of the node in [row] of [columns] without materializing
+     * it; yields the same value as [getProperty] on the node for every
+     * property accepted by [hasColumn].
+     */
+    fun getProperty(columns: NodeColumns, row: Int, property: String): Any? = when {
+        property == PROPERTY_ID -> columns.nodeId(row)
+        columns is CallSiteColumns -> getCallSiteColumn(columns, row, property)
+        else -> null
+    }
+
+    /**
+     * A row test for `property = value` on the raw string ids of [columns],
+     * so rows can be matched without resolving a string per row. Returns
+     * null when [property] is not stored as string ids, [value] is not a
+     * string, or [columns] cannot map strings to ids; callers then compare
+     * [getProperty] values instead.
+     */
+    fun columnEquals(columns: NodeColumns, property: String, value: Any?): IntPredicate? {
+        if (columns !is CallSiteColumns || value !is String) return null
+        val ids: IntUnaryOperator = when (property) {
+            "callee_class" -> IntUnaryOperator(columns::calleeClassId)
+            "callee_name" -> IntUnaryOperator(columns::calleeNameId)
+            else -> return null
+        }
+        val id = columns.stringId(value) ?: return null
+        if (id < 0) return IntPredicate { false }
+        return IntPredicate { row -> ids.applyAsInt(row) == id }
+    }
+
     fun nodeTypeName(node: Node): String = when (node) {
         is CallSiteNode -> "CallSiteNode"
         is IntConstant -> "IntConstant"
@@ -101,6 +148,17 @@ object NodePropertyAccessor {
         else -> null
     }
 
+    private fun getCallSiteColumn(columns: CallSiteColumns, row: Int, prop: String) = when (prop) {
+        "callee_class" -> columns.calleeClass(row)
+        "callee_name" -> columns.calleeName(row)
+        "callee_signature" -> columns.callee(row).signature
+        "caller_class" -> columns.caller(row).declaringClass.className
+        "caller_name" -> columns.caller(row).name
+        "caller_signature" -> columns.caller(row).signature
+        "line" -> columns.line(row)
+        else -> null
+    }
+
     private fun getIntConstantProperty(node: IntConstant, prop: String) = when (prop) {
         PROPERTY_VALUE -> node.value
         else -> null
@@ -303,3 +361,12 @@ object NodePropertyAccessor {
         else -> null
     }
 }
+
+/**
+ * Binds a pattern variable to one row of [columns] while a predicate is
+ * evaluated on the columns; [ExpressionEvaluator] resolves its properties
+ * through [NodePropertyAccessor.getProperty].
+ */
+internal class ColumnRow(val columns: NodeColumns) {
+    var row: Int = 0
+}
@@ -3,6 +3,7 @@ package io.johnsonlee.graphite.cypher
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.graph.EdgeLabels
 import io.johnsonlee.graphite.graph.Graph
 
 /**
@@ -22,6 +23,7 @@ object PathFinder {
      * @param minDepth Minimum path length (in edges) to include in results
      * @param maxDepth Maximum path length (in edges) to explore
      * @param direction Edge traversal direction
+     * @param targetType Class the last node of a path must be an instance of
      * @return List of paths from sources to targets
      */
     fun findPaths(
@@ -31,13 +33,14 @@ object PathFinder {
         edgeType: Class<out Edge>?,
         minDepth: Int = 1,
         maxDepth: Int = 10,
-        direction: Direction = Direction.OUTGOING
+        direction: Direction = Direction.OUTGOING,
+        targetType: Class<out Node> = Node::class.java
     ): List<Path> {
         val results = mutableListOf<Path>()
 
         for (source in sources) {
             val startNode = graph.node(source) ?: continue
-            bfs(graph, startNode, targets, edgeType, minDepth, maxDepth, direction, results)
+            bfs(graph, startNode, targets, edgeType, minDepth, maxDepth, direction, targetType, results)
         }
 
         return results
@@ -51,47 +54,49 @@ object PathFinder {
         minDepth: Int,
         maxDepth: Int,
         direction: Direction,
+        targetType: Class<out Node>,
         results: MutableList<Path>
     ) {
-        data class State(val nodeId: NodeId, val pathNodes: List<Node>, val pathEdges: List<Edge>)
+        data class State(val nodeId: NodeId, val pathNodeIds: List<Int>, val pathEdges: List<Edge>)
+
+        // Path nodes are decoded once each, and only for paths that are returned
+        val decoded = hashMapOf(startNode.id.value to startNode)
+        fun decode(id: Int): Node? = decoded[id] ?: graph.node(NodeId(id))?.also { decoded[id] = it }
+        fun isTarget(id: NodeId): Boolean =
+            targetType == Node::class.java || graph.nodeType(id)?.let { targetType.isAssignableFrom(it) } == true
 
         val visited = mutableSetOf<Int>()
         val queue = ArrayDeque<State>()
-        queue.add(State(startNode.id, listOf(startNode), emptyList()))
+        queue.add(State(startNode.id, listOf(startNode.id.value), emptyList()))
+        val labelMask = if (edgeType != null) EdgeLabels.mask(edgeType) else EdgeLabels.ALL
 
         while (queue.isNotEmpty()) {
-            val (current, pathNodes, pathEdges) = queue.removeFirst()
+            val (current, pathNodeIds, pathEdges) = queue.removeFirst()
             val depth = pathEdges.size
 
-            if (depth >= minDepth && (targets == null || current in targets)) {
-                results.add(Path(pathNodes, pathEdges))
+            if (depth >= minDepth && (targets == null || current in targets) && isTarget(current)) {
+                val pathNodes = pathNodeIds.mapNotNull(::decode)
+                if (pathNodes.size == pathNodeIds.size) results.add(Path(pathNodes, pathEdges))
             }
 
             if (depth >= maxDepth) continue
             if (!visited.add(current.value)) continue
 
-            val edges = when (direction) {
-                Direction.OUTGOING -> filteredEdges(graph.outgoing(current), edgeType)
-                Direction.INCOMING -> filteredEdges(graph.incoming(current), edgeType)
-                Direction.BOTH -> filteredEdges(graph.outgoing(current), edgeType) +
-                        filteredEdges(graph.incoming(current), edgeType)
+            // Edges are only materialized for neighbors that extend a path, and
+            // nodes are checked by type without being decoded
+            fun extend(from: Int, to: Int, label: Int, next: Int) {
+                graph.nodeType(NodeId(next)) ?: return
+                queue.add(State(NodeId(next), pathNodeIds + next, pathEdges + graph.edge(from, to, label)))
             }
 
-            for (edge in edges) {
-                val nextId = when (direction) {
-                    Direction.OUTGOING -> edge.to
-                    Direction.INCOMING -> edge.from
-                    Direction.BOTH -> if (edge.from == current) edge.to else edge.from
-                }
-                val nextNode = graph.node(nextId) ?: continue
-                queue.add(State(nextId, pathNodes + nextNode, pathEdges + edge))
+            if (direction != Direction.INCOMING) {
+                graph.forEachOutgoing(current, labelMask) { to, label -> extend(current.value, to, label, to) }
+            }
+            if (direction != Direction.OUTGOING) {
+                graph.forEachIncoming(current, labelMask) { from, label -> extend(from, current.value, label, from) }
             }
         }
     }
 
-    private fun filteredEdges(edges: Sequence<Edge>, edgeType: Class<out Edge>?): List<Edge> =
-        if (edgeType != null) edges.filter { edgeType.isInstance(it) }.toList()
-        else edges.toList()
-
     enum class Direction { OUTGOING, INCOMING, BOTH }
 }
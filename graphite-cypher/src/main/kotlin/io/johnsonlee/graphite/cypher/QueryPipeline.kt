@@ -8,7 +8,11 @@ import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
 import io.johnsonlee.graphite.core.ResourceEdge
 import io.johnsonlee.graphite.core.TypeEdge
+import io.johnsonlee.graphite.graph.EdgeLabels
 import io.johnsonlee.graphite.graph.Graph
+import io.johnsonlee.graphite.graph.NodeColumns
+import io.johnsonlee.graphite.graph.TrigramIndex
+import java.util.function.IntPredicate
 
 private const val COUNT_QUERY_CLAUSES = 2
 private const val DISTINCT_LIMIT_QUERY_CLAUSES = 3
@@ -54,13 +58,15 @@ class QueryPipeline(private val graph: Graph) {
         // node scan early instead of materialising all candidates first.
         val earlyLimit = computeEarlyLimit(clauses)
 
-        for (clause in clauses) {
+        for ((index, clause) in clauses.withIndex()) {
             when (clause) {
                 is CypherClause.Match -> {
                     rows = if (clause.optional) {
                         executeOptionalMatch(clause.patterns, rows)
                     } else {
-                        executeMatch(clause.patterns, rows, earlyLimit)
+                        // A WHERE right after MATCH may be tested on node columns while scanning
+                        val where = (clauses.getOrNull(index + 1) as? CypherClause.Where)?.condition
+                        executeMatch(clause.patterns, rows, earlyLimit, where)
                     }
                 }
                 is CypherClause.Where -> rows = executeWhere(clause, rows)
@@ -191,9 +197,17 @@ class QueryPipeline(private val graph: Graph) {
             ?: Node::class.java
         val column = returnItem.alias ?: returnItem.expression.toCypherString()
         val seen = LinkedHashSet<Any?>()
-        for (node in graph.nodes(nodeClass)) {
-            seen.add(NodePropertyAccessor.getProperty(node, propertyName))
-            if (seen.size >= limitCount) break
+        val columns = graph.nodeColumns(nodeClass)?.takeIf { NodePropertyAccessor.hasColumn(it, propertyName) }
+        if (columns != null) {
+            for (row in 0 until columns.size) {
+                seen.add(NodePropertyAccessor.getProperty(columns, row, propertyName))
+                if (seen.size >= limitCount) break
+            }
+        } else {
+            for (node in graph.nodes(nodeClass)) {
+                seen.add(NodePropertyAccessor.getProperty(node, propertyName))
+                if (seen.size >= limitCount) break
+            }
         }
         return CypherResult(
             columns = listOf(column),
@@ -240,7 +254,10 @@ class QueryPipeline(private val graph: Graph) {
             ?.let { NodePropertyAccessor.resolveNodeLabel(it) }
             ?: Node::class.java
         val rows = mutableListOf<Map<String, Any?>>()
-        for (node in graph.nodes(nodeClass)) {
+        val candidates = indexedCandidates(nodePattern, nodeClass, emptyMap(), where.condition)
+            ?: columnarCandidates(nodePattern, nodeClass, emptyMap(), where.condition)
+            ?: graph.nodes(nodeClass)
+        for (node in candidates) {
             if (!matchesNodeConstraints(node, nodePattern, emptyMap())) continue
 
             val bindings = mapOf<String, Any?>(variable to node)
@@ -290,6 +307,7 @@ class QueryPipeline(private val graph: Graph) {
             ?.let { NodePropertyAccessor.resolveNodeLabel(it) }
             ?: Node::class.java
         val edgeClass = rel.types.singleOrNull()?.let { NodePropertyAccessor.resolveEdgeType(it) }
+        val targetClass = nodeLabelClass(targetPattern)
 
         val rows = mutableListOf<Map<String, Any?>>()
         for (source in graph.nodes(sourceClass)) {
@@ -300,6 +318,7 @@ class QueryPipeline(private val graph: Graph) {
                 if (!matchesRelConstraints(edge, rel, sourceBindings)) continue
 
                 val targetId = resolveTargetId(edge, source.id, rel.direction)
+                if (!isNodeOfType(targetId, targetClass)) continue
                 val target = graph.node(targetId) ?: continue
                 val targetBindings = matchTargetNode(targetPattern, target, sourceBindings) ?: continue
 
@@ -334,16 +353,21 @@ class QueryPipeline(private val graph: Graph) {
     // MATCH
     // ========================================================================
 
+    /**
+     * @param where condition of the WHERE clause following this MATCH, if
+     *   any; it is still applied afterwards, but may prune candidates early
+     */
     private fun executeMatch(
         patterns: List<CypherPattern>,
         inputRows: List<Map<String, Any?>>,
-        limit: Int? = null
+        limit: Int? = null,
+        where: CypherExpr? = null
     ): List<Map<String, Any?>> {
         var rows = inputRows
         for (pattern in patterns) {
             val nextRows = mutableListOf<Map<String, Any?>>()
             for (inputRow in rows) {
-                nextRows.addAll(matchPattern(pattern, inputRow, limit))
+                nextRows.addAll(matchPattern(pattern, inputRow, limit, where))
                 if (limit != null && nextRows.size >= limit) break
             }
             rows = if (limit != null && nextRows.size > limit) nextRows.subList(0, limit) else nextRows
@@ -394,14 +418,15 @@ class QueryPipeline(private val graph: Graph) {
     private fun matchPattern(
         pattern: CypherPattern,
         existingBindings: Map<String, Any?>,
-        limit: Int? = null
+        limit: Int? = null,
+        where: CypherExpr? = null
     ): List<Map<String, Any?>> {
         val elements = pattern.elements
         if (elements.isEmpty()) return listOf(existingBindings)
 
         // A pattern is a chain: Node [Rel Node [Rel Node ...]]
         // Start by matching the first node, then alternate rel+node.
-        var currentMatches = matchNodeElement(elements[0] as PatternElement.NodePattern, existingBindings, limit)
+        var currentMatches = matchNodeElement(elements[0] as PatternElement.NodePattern, existingBindings, limit, where)
 
         var i = 1
         while (i < elements.size) {
@@ -484,7 +509,8 @@ class QueryPipeline(private val graph: Graph) {
     private fun matchNodeElement(
         nodePattern: PatternElement.NodePattern,
         existingBindings: Map<String, Any?>,
-        limit: Int? = null
+        limit: Int? = null,
+        where: CypherExpr? = null
     ): List<Map<String, Any?>> {
         val results = mutableListOf<Map<String, Any?>>()
 
@@ -503,7 +529,9 @@ class QueryPipeline(private val graph: Graph) {
                 emptySequence()
             }
         } else {
-            graph.nodes(nodeClass)
+            indexedCandidates(nodePattern, nodeClass, existingBindings, where)
+                ?: columnarCandidates(nodePattern, nodeClass, existingBindings, where)
+                ?: graph.nodes(nodeClass)
         }
 
         for (node in candidates) {
@@ -518,6 +546,216 @@ class QueryPipeline(private val graph: Graph) {
         return results
     }
 
+    /**
+     * Candidates for [nodePattern] looked up in a [Graph.propertyIndex]: the
+     * first inline property, or conjunct of [where] of the form
+     * `variable.property = operand`, `variable.property IN operand` or
+     * `variable.property STARTS WITH operand` whose operand is a literal or
+     * parameter, over an indexed property of [nodeClass]. `CONTAINS` and
+     * `=~` conjuncts are looked up in a [Graph.trigramIndex] instead.
+     * Returns null when no such predicate exists.
+     *
+     * Callers still check the complete constraints on the returned nodes.
+     */
+    private fun indexedCandidates(
+        nodePattern: PatternElement.NodePattern,
+        nodeClass: Class<out Node>,
+        bindings: Map<String, Any?>,
+        where: CypherExpr?
+    ): Sequence<Node>? {
+        val variable = nodePattern.variable
+        val conjuncts = if (variable == null || where == null) emptyList() else conjuncts(where)
+        val ids = nodePattern.properties.firstNotNullOfOrNull { (key, value) ->
+            graph.propertyIndex(nodeClass, key)?.let { index ->
+                (evaluator.evaluate(value, bindings) as? String)?.let(index::lookup) ?: IntArray(0)
+            }
+        } ?: conjuncts.firstNotNullOfOrNull { indexLookup(it, variable, nodeClass, bindings) }
+            ?: return null
+        return ids.asSequence().mapNotNull { graph.node(NodeId(it)) }
+    }
+
+    /**
+     * Ascending ids of the nodes of [nodeClass] that may satisfy [expr] as
+     * answered by a [Graph.propertyIndex], or null when [expr] is not an
+     * indexable predicate on [variable].
+     */
+    @Suppress("CyclomaticComplexMethod", "ReturnCount")
+    private fun indexLookup(
+        expr: CypherExpr,
+        variable: String?,
+        nodeClass: Class<out Node>,
+        bindings: Map<String, Any?>
+    ): IntArray? {
+        val (op, left, right) = when (expr) {
+            is CypherExpr.Comparison -> Triple(expr.op, expr.left, expr.right)
+            is CypherExpr.ListOp -> Triple(expr.op, expr.left, expr.right)
+            is CypherExpr.StringOp -> Triple(expr.op, expr.left, expr.right)
+            is CypherExpr.RegexMatch -> Triple("=~", expr.left, expr.right)
+            else -> return null
+        }
+        fun propertyOf(e: CypherExpr): String? =
+            (e as? CypherExpr.Property)?.takeIf { (it.expression as? CypherExpr.Variable)?.name == variable }?.propertyName
+        val (property, operand) = when {
+            op == "=" -> propertyOf(left)?.let { it to right } ?: propertyOf(right)?.let { it to left }
+            op == "IN" || op == "STARTS WITH" || op == "CONTAINS" || op == "=~" -> propertyOf(left)?.let { it to right }
+            else -> null
+        } ?: return null
+        if (operand !is CypherExpr.Literal && operand !is CypherExpr.Parameter && operand !is CypherExpr.ListLiteral) {
+            return null
+        }
+        if (op == "CONTAINS" || op == "=~") return trigramLookup(op, property, operand, nodeClass, bindings)
+        val index = graph.propertyIndex(nodeClass, property) ?: return null
+        val value = evaluator.evaluate(operand, bindings)
+        return when (op) {
+            // `=` compares other values by their string form, so leave those to the scan
+            "=" -> if (value == null) IntArray(0) else (value as? String)?.let(index::lookup)
+            "IN" -> (value as? List<*>)?.filterIsInstance<String>()?.distinct()
+                ?.flatMap { index.lookup(it).asList() }?.sorted()?.toIntArray()
+            else -> (value as? String)?.let(index::lookupPrefix) ?: IntArray(0)
+        }
+    }
+
+    /**
+     * Ascending ids of the nodes of [nodeClass] whose [property] satisfies
+     * `CONTAINS operand` or `=~ operand`, narrowed by the trigrams of the
+     * required literals and verified on the candidate values only. Returns
+     * null when the graph has no [Graph.trigramIndex] for [property] or the
+     * operand has no trigram.
+     */
+    private fun trigramLookup(
+        op: String,
+        property: String,
+        operand: CypherExpr,
+        nodeClass: Class<out Node>,
+        bindings: Map<String, Any?>
+    ): IntArray? {
+        val index = graph.trigramIndex(nodeClass, property) ?: return null
+        val value = evaluator.evaluate(operand, bindings) as? String ?: return IntArray(0)
+        return if (op == "CONTAINS") {
+            index.lookup(listOf(value)) { it.contains(value) }
+        } else {
+            val regex = Regex(value)
+            index.lookup(TrigramIndex.requiredLiterals(value)) { regex.matches(it) }
+        }
+    }
+
+    /**
+     * Candidates for [nodePattern] scanned through [Graph.nodeColumns]: inline
+     * properties and the conjuncts of [where] that only read columns of the
+     * pattern variable are tested on the column arrays, and only rows passing
+     * them are materialized. Returns null when the graph has no columns for
+     * [nodeClass] or nothing can be tested on them.
+     *
+     * Rows are only dropped when a constraint is not true, so callers still
+     * check the complete constraints on the returned nodes.
+     */
+    private fun columnarCandidates(
+        nodePattern: PatternElement.NodePattern,
+        nodeClass: Class<out Node>,
+        bindings: Map<String, Any?>,
+        where: CypherExpr?
+    ): Sequence<Node>? {
+        val columns = graph.nodeColumns(nodeClass) ?: return null
+        val variable = nodePattern.variable
+        val properties = nodePattern.properties
+            .filterKeys { NodePropertyAccessor.hasColumn(columns, it) }
+            .mapValues { (_, value) -> evaluator.evaluate(value, bindings) }
+        val conjuncts = if (variable == null || where == null) {
+            emptyList()
+        } else {
+            conjuncts(where).filter { readsOnlyColumns(it, variable, columns, bindings) }
+        }
+        if (properties.isEmpty() && conjuncts.isEmpty()) return null
+
+        val current = ColumnRow(columns)
+        val rowBindings = if (variable != null) bindings + (variable to current) else bindings
+        val tests = properties.map { (key, value) ->
+            NodePropertyAccessor.columnEquals(columns, key, value)
+                ?: IntPredicate { row -> NodePropertyAccessor.getProperty(columns, row, key) == value }
+        } + conjuncts.map { conjunct ->
+            columnEquality(conjunct, variable, columns, bindings)
+                ?: IntPredicate { evaluator.evaluate(conjunct, rowBindings) == true }
+        }
+        return (0 until columns.size).asSequence()
+            .filter { row ->
+                current.row = row
+                tests.all { it.test(row) }
+            }
+            .map { columns.node(it) }
+    }
+
+    /**
+     * [NodePropertyAccessor.columnEquals] for a conjunct of the form
+     * `variable.property = operand` (either way round) whose operand is a
+     * literal or parameter, or null for any other conjunct.
+     */
+    private fun columnEquality(
+        expr: CypherExpr,
+        variable: String?,
+        columns: NodeColumns,
+        bindings: Map<String, Any?>
+    ): IntPredicate? {
+        if (variable == null || expr !is CypherExpr.Comparison || expr.op != "=") return null
+        fun propertyOf(e: CypherExpr): String? =
+            (e as? CypherExpr.Property)?.takeIf { (it.expression as? CypherExpr.Variable)?.name == variable }?.propertyName
+        val (property, operand) = propertyOf(expr.left)?.let { it to expr.right }
+            ?: propertyOf(expr.right)?.let { it to expr.left }
+            ?: return null
+        if (operand !is CypherExpr.Literal && operand !is CypherExpr.Parameter) return null
+        return NodePropertyAccessor.columnEquals(columns, property, evaluator.evaluate(operand, bindings))
+    }
+
+    private fun conjuncts(expr: CypherExpr): List<CypherExpr> =
+        if (expr is CypherExpr.And) conjuncts(expr.left) + conjuncts(expr.right) else listOf(expr)
+
+    /**
+     * Whether [expr] only reads columnar properties of [variable] besides
+     * literals, parameters and variables already bound in [bindings].
+     */
+    @Suppress("CyclomaticComplexMethod")
+    private fun readsOnlyColumns(
+        expr: CypherExpr,
+        variable: String,
+        columns: NodeColumns,
+        bindings: Map<String, Any?>
+    ): Boolean {
+        fun reads(e: CypherExpr?): Boolean = when (e) {
+            null, is CypherExpr.Literal, is CypherExpr.Parameter -> true
+            is CypherExpr.Variable -> e.name != variable && e.name in bindings
+            is CypherExpr.Property -> {
+                val owner = e.expression
+                if (owner is CypherExpr.Variable && owner.name == variable) {
+                    NodePropertyAccessor.hasColumn(columns, e.propertyName)
+                } else {
+                    reads(owner)
+                }
+            }
+            is CypherExpr.FunctionCall -> !CypherFunctions.isAggregation(e.name) && e.args.all { reads(it) }
+            is CypherExpr.BinaryOp -> reads(e.left) && reads(e.right)
+            is CypherExpr.UnaryOp -> reads(e.expression)
+            is CypherExpr.Comparison -> reads(e.left) && reads(e.right)
+            is CypherExpr.StringOp -> reads(e.left) && reads(e.right)
+            is CypherExpr.ListOp -> reads(e.left) && reads(e.right)
+            is CypherExpr.RegexMatch -> reads(e.left) && reads(e.right)
+            is CypherExpr.IsNull -> reads(e.expression)
+            is CypherExpr.IsNotNull -> reads(e.expression)
+            is CypherExpr.Not -> reads(e.expression)
+            is CypherExpr.And -> reads(e.left) && reads(e.right)
+            is CypherExpr.Or -> reads(e.left) && reads(e.right)
+            is CypherExpr.Xor -> reads(e.left) && reads(e.right)
+            is CypherExpr.ListLiteral -> e.elements.all { reads(it) }
+            is CypherExpr.MapLiteral -> e.entries.values.all { reads(it) }
+            is CypherExpr.CaseExpr -> reads(e.test) && reads(e.elseExpr) &&
+                e.whenClauses.all { (condition, result) -> reads(condition) && reads(result) }
+            is CypherExpr.Subscript -> reads(e.expression) && reads(e.index)
+            is CypherExpr.Slice -> reads(e.expression) && reads(e.from) && reads(e.to)
+            is CypherExpr.Distinct -> reads(e.expression)
+            // Introduce their own variables, or aggregate across rows
+            is CypherExpr.ListComprehension, is CypherExpr.PredicateFunction, is CypherExpr.CountStar -> false
+        }
+        return reads(expr)
+    }
+
     /**
      * Match a relationship + target node from the current source node binding.
      */
@@ -550,21 +788,32 @@ class QueryPipeline(private val graph: Graph) {
         edgeClass: Class<out Edge>?,
         results: MutableList<Map<String, Any?>>
     ) {
-        val edges = edgesForDirection(sourceNode.id, rel.direction, edgeClass)
-
-        for (edge in edges) {
-            val targetId = resolveTargetId(edge, sourceNode.id, rel.direction)
-            val targetNode = graph.node(targetId) ?: continue
-
+        val labelMask = if (edgeClass != null) EdgeLabels.mask(edgeClass) else EdgeLabels.ALL
+        // Only build Edge objects when the pattern binds or constrains the relationship
+        val needsEdge = rel.variable != null || rel.types.isNotEmpty() || rel.properties.isNotEmpty()
+        val source = sourceNode.id.value
+        val targetClass = nodeLabelClass(targetNodePattern)
+
+        fun hop(from: Int, to: Int, label: Int, targetId: Int) {
+            if (!isNodeOfType(NodeId(targetId), targetClass)) return
+            val edge = if (needsEdge) graph.edge(from, to, label) else null
             // Check relationship property constraints
-            if (!matchesRelConstraints(edge, rel, bindings)) continue
+            if (edge != null && !matchesRelConstraints(edge, rel, bindings)) return
 
-            val targetMatch = matchTargetNode(targetNodePattern, targetNode, bindings) ?: continue
+            val targetNode = graph.node(NodeId(targetId)) ?: return
+            val targetMatch = matchTargetNode(targetNodePattern, targetNode, bindings) ?: return
 
             val newBindings = targetMatch.toMutableMap()
             if (rel.variable != null) newBindings[rel.variable] = edge
             results.add(newBindings)
         }
+
+        if (rel.direction != Direction.INCOMING) {
+            graph.forEachOutgoing(sourceNode.id, labelMask) { to, label -> hop(source, to, label, to) }
+        }
+        if (rel.direction != Direction.OUTGOING) {
+            graph.forEachIncoming(sourceNode.id, labelMask) { from, label -> hop(from, source, label, from) }
+        }
     }
 
     private fun matchVariableLengthPath(
@@ -588,7 +837,8 @@ class QueryPipeline(private val graph: Graph) {
             edgeType = edgeClass,
             minDepth = rel.minHops ?: 1,
             maxDepth = rel.maxHops ?: 10,
-            direction = direction
+            direction = direction,
+            targetType = nodeLabelClass(targetNodePattern)
         )
 
         for (path in paths) {
@@ -606,11 +856,7 @@ class QueryPipeline(private val graph: Graph) {
         node: Node,
         bindings: Map<String, Any?>
     ): Map<String, Any?>? {
-        val nodeClass = targetPattern.labels.firstOrNull()
-            ?.let { NodePropertyAccessor.resolveNodeLabel(it) }
-            ?: Node::class.java
-
-        if (!nodeClass.isInstance(node)) return null
+        if (!nodeLabelClass(targetPattern).isInstance(node)) return null
 
         // Check if already bound to a different node
         if (targetPattern.variable != null && bindings.containsKey(targetPattern.variable)) {
@@ -625,6 +871,16 @@ class QueryPipeline(private val graph: Graph) {
         return result
     }
 
+    private fun nodeLabelClass(pattern: PatternElement.NodePattern): Class<out Node> =
+        pattern.labels.firstOrNull()?.let { NodePropertyAccessor.resolveNodeLabel(it) } ?: Node::class.java
+
+    /**
+     * Whether node [id] exists and is a [nodeClass], answered from the graph's
+     * node types so that neighbors rejected by label are never decoded.
+     */
+    private fun isNodeOfType(id: NodeId, nodeClass: Class<out Node>): Boolean =
+        graph.nodeType(id)?.let { nodeClass.isAssignableFrom(it) } == true
+
     private fun matchesNodeConstraints(
         node: Node,
         pattern: PatternElement.NodePattern,
@@ -29,9 +29,11 @@ import io.johnsonlee.graphite.core.StringConstant
 import io.johnsonlee.graphite.core.TypeDescriptor
 import io.johnsonlee.graphite.core.TypeEdge
 import io.johnsonlee.graphite.core.ValueNode
+import io.johnsonlee.graphite.graph.CallSiteColumns
 import org.junit.Before
 import org.junit.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertFalse
 import kotlin.test.assertNull
 import kotlin.test.assertTrue
 
@@ -145,6 +147,27 @@ class NodePropertyAccessorTest {
         assertNull(NodePropertyAccessor.getProperty(node, "unknown"))
     }
 
+    @Test
+    fun `CallSiteNode column properties match node properties`() {
+        val callee = MethodDescriptor(TypeDescriptor("com.example.Repo"), "save", listOf(stringType), TypeDescriptor("void"))
+        val nodes = listOf(
+            CallSiteNode(NodeId.next(), method, callee, 42, null, emptyList()),
+            CallSiteNode(NodeId.next(), method, callee, null, null, emptyList())
+        )
+        val columns = CallSiteColumns.of(nodes.asSequence())
+        val properties = listOf(
+            "id", "callee_class", "callee_name", "callee_signature", "caller_class", "caller_name", "caller_signature", "line"
+        )
+        for ((row, node) in nodes.withIndex()) {
+            for (property in properties) {
+                assertTrue(NodePropertyAccessor.hasColumn(columns, property))
+                assertEquals(NodePropertyAccessor.getProperty(node, property), NodePropertyAccessor.getProperty(columns, row, property))
+            }
+        }
+        assertFalse(NodePropertyAccessor.hasColumn(columns, "type"))
+        assertFalse(NodePropertyAccessor.hasColumn(columns, "unknown"))
+    }
+
     @Test
     fun `FieldNode properties`() {
         val node = FieldNode(NodeId.next(), FieldDescriptor(type, "name", stringType), true)
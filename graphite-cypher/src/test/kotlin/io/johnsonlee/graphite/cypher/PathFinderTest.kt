@@ -189,4 +189,25 @@ class PathFinderTest {
         // Should not include A->B (depth 1), but include A->B->C (depth 2) and longer
         assertTrue(paths.all { it.edges.size >= 2 })
     }
+
+    @Test
+    fun `target type filters endpoints without decoding rejected nodes`() {
+        val decoded = mutableListOf<NodeId>()
+        val counting = object : Graph by graph {
+            override fun node(id: NodeId): Node? = graph.node(id).also { decoded.add(id) }
+            override fun nodeType(id: NodeId): Class<out Node>? = graph.nodeType(id)
+        }
+        val paths = PathFinder.findPaths(
+            counting, setOf(nodeA), null,
+            edgeType = null,
+            minDepth = 1, maxDepth = 3,
+            targetType = CallSiteNode::class.java
+        )
+        assertEquals(listOf(listOf(nodeA, nodeD), listOf(nodeA, nodeB, nodeC, nodeD)), paths.map { p -> p.nodes.map { it.id } })
+        assertEquals(decoded.distinct(), decoded, "Each path node should be decoded once")
+
+        decoded.clear()
+        PathFinder.findPaths(counting, setOf(nodeA), null, edgeType = null, maxDepth = 1, targetType = CallSiteNode::class.java)
+        assertEquals(listOf(nodeA, nodeD), decoded)
+    }
 }
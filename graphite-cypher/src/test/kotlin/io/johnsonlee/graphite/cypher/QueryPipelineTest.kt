@@ -5,6 +5,7 @@ import io.johnsonlee.graphite.core.CallEdge
 import io.johnsonlee.graphite.core.CallSiteNode
 import io.johnsonlee.graphite.core.DataFlowEdge
 import io.johnsonlee.graphite.core.DataFlowKind
+import io.johnsonlee.graphite.core.DescriptorPool
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.FieldDescriptor
 import io.johnsonlee.graphite.core.FieldNode
@@ -21,8 +22,13 @@ import io.johnsonlee.graphite.core.ResourceRelation
 import io.johnsonlee.graphite.core.ReturnNode
 import io.johnsonlee.graphite.core.StringConstant
 import io.johnsonlee.graphite.core.TypeDescriptor
+import io.johnsonlee.graphite.graph.CallSiteColumns
 import io.johnsonlee.graphite.graph.DefaultGraph
 import io.johnsonlee.graphite.graph.Graph
+import io.johnsonlee.graphite.graph.IndexedProperty
+import io.johnsonlee.graphite.graph.NodeColumns
+import io.johnsonlee.graphite.graph.PropertyIndex
+import io.johnsonlee.graphite.graph.TrigramIndex
 import org.junit.Before
 import org.junit.Test
 import kotlin.test.assertEquals
@@ -1726,4 +1732,211 @@ class QueryPipelineTest {
         assertTrue(path[1] is DataFlowEdge)
         assertTrue(path[2] is ParameterNode)
     }
+
+    // ========================================================================
+    // Node columns
+    // ========================================================================
+
+    /** Serves call site columns and counts call site scans that materialize nodes. */
+    private class ColumnarGraph(private val delegate: Graph) : Graph by delegate {
+        private val columns = CallSiteColumns.of(delegate.nodes(CallSiteNode::class.java))
+        var callSiteScans = 0
+
+        override fun nodeColumns(type: Class<out Node>): NodeColumns? =
+            if (type == CallSiteNode::class.java) columns else null
+
+        override fun <T : Node> nodes(type: Class<T>): Sequence<T> {
+            if (type == CallSiteNode::class.java) callSiteScans++
+            return delegate.nodes(type)
+        }
+    }
+
+    @Test
+    fun `where on call site columns filters without scanning nodes`() {
+        val cs = variable("cs")
+        val queries = listOf(
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode")))),
+                CypherClause.Where(CypherExpr.And(
+                    CypherExpr.RegexMatch(prop(cs, "callee_class"), lit("com\\.example\\.Repo.*")),
+                    CypherExpr.Comparison(">", prop(cs, "line"), lit(5))
+                )),
+                CypherClause.Return(listOf(returnItem(prop(cs, "callee_name"), "name"), returnItem(prop(cs, "id"), "id")))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode", mapOf("caller_name" to lit("process")))))),
+                CypherClause.Where(CypherExpr.StringOp("STARTS WITH", prop(cs, "callee_name"), lit("lo"))),
+                CypherClause.Return(listOf(returnItem(prop(cs, "callee_signature"), "sig"))),
+                CypherClause.Limit(lit(10))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode")))),
+                CypherClause.Return(listOf(returnItem(prop(cs, "callee_class"), "cls")), distinct = true),
+                CypherClause.Limit(lit(10))
+            )
+        )
+        for (clauses in queries) {
+            val columnar = ColumnarGraph(graph)
+            val result = QueryPipeline(columnar).execute(clauses)
+            assertEquals(pipeline.execute(clauses).rows, result.rows, clauses.toString())
+            assertTrue(result.rows.isNotEmpty(), clauses.toString())
+            assertEquals(0, columnar.callSiteScans, clauses.toString())
+        }
+    }
+
+    @Test
+    fun `where conjuncts that need the node are still applied after column filtering`() {
+        val cs = variable("cs")
+        val clauses = listOf(
+            CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode")))),
+            CypherClause.Where(CypherExpr.And(
+                CypherExpr.Comparison("=", prop(cs, "caller_class"), lit("com.example.Service")),
+                CypherExpr.Comparison("=", CypherExpr.FunctionCall("id", listOf(cs)), lit(callSite2.value))
+            )),
+            CypherClause.Return(listOf(returnItem(prop(cs, "callee_name"), "name")))
+        )
+        val result = QueryPipeline(ColumnarGraph(graph)).execute(clauses)
+        assertEquals(listOf(mapOf<String, Any?>("name" to "log")), result.rows)
+    }
+
+    @Test
+    fun `string equality on call site columns compares ids without resolving strings`() {
+        val strings = mutableListOf<String>()
+        val descriptors = DescriptorPool()
+        val builder = CallSiteColumns.Builder(
+            stringId = { s -> strings.indexOf(s).takeIf { it >= 0 } ?: strings.size.also { strings.add(s) } },
+            methodId = { descriptors.methodId(it) }
+        )
+        graph.nodes(CallSiteNode::class.java).forEach { builder.add(it) }
+        var resolved = 0
+        val columns = builder.build({ resolved++; strings[it] }, { descriptors.methodAt(it) }, { strings.indexOf(it) })
+        val columnar = object : Graph by graph {
+            override fun nodeColumns(type: Class<out Node>): NodeColumns? =
+                if (type == CallSiteNode::class.java) columns else null
+        }
+
+        val cs = variable("cs")
+        val queries = listOf(
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode")))),
+                CypherClause.Where(CypherExpr.Comparison("=", prop(cs, "callee_name"), lit("log"))),
+                CypherClause.Return(listOf(returnItem(prop(cs, "id"), "id")))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode", mapOf("callee_class" to lit("com.example.Logger")))))),
+                CypherClause.Where(CypherExpr.Comparison("=", lit("missing"), prop(cs, "callee_name"))),
+                CypherClause.Return(listOf(returnItem(prop(cs, "id"), "id")))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode", mapOf("callee_class" to lit("com.example.Logger")))))),
+                CypherClause.Return(listOf(returnItem(prop(cs, "id"), "id")))
+            )
+        )
+        for (clauses in queries) {
+            assertEquals(pipeline.execute(clauses).rows, QueryPipeline(columnar).execute(clauses).rows, clauses.toString())
+        }
+        assertEquals(0, resolved)
+    }
+
+    // ========================================================================
+    // Property indexes
+    // ========================================================================
+
+    /** Serves the default property indexes, a trigram index over string constants, and counts node scans. */
+    private class IndexedGraph(private val delegate: Graph) : Graph by delegate {
+        private val indexes = IndexedProperty.DEFAULTS.map { property ->
+            PropertyIndex.Builder(property.type, property.name).apply {
+                delegate.nodes(property.type).forEach { node -> property.value(node)?.let { add(it, node.id.value) } }
+            }.build()
+        }
+        private val trigrams = TrigramIndex.of(indexes.first { it.type == StringConstant::class.java })
+        var scans = 0
+
+        override fun propertyIndex(type: Class<out Node>, property: String): PropertyIndex? =
+            indexes.firstOrNull { it.type == type && it.property == property }
+
+        override fun trigramIndex(type: Class<out Node>, property: String): TrigramIndex? =
+            trigrams.takeIf { type == it.values.type && property == it.values.property }
+
+        override fun <T : Node> nodes(type: Class<T>): Sequence<T> {
+            scans++
+            return delegate.nodes(type)
+        }
+    }
+
+    @Test
+    fun `indexed property predicates look up nodes without scanning`() {
+        val cs = variable("cs")
+        val s = variable("s")
+        val queries = listOf(
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode", mapOf("callee_name" to lit("log")))))),
+                CypherClause.Return(listOf(returnItem(prop(cs, "id"), "id")))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode")))),
+                CypherClause.Where(CypherExpr.And(
+                    CypherExpr.ListOp("IN", prop(cs, "callee_class"), CypherExpr.ListLiteral(listOf(
+                        lit("com.example.Logger"), lit("com.example.Repository"), lit("missing")
+                    ))),
+                    CypherExpr.Comparison(">", prop(cs, "line"), lit(5))
+                )),
+                CypherClause.Return(listOf(returnItem(prop(cs, "callee_name"), "name")))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode")))),
+                CypherClause.Where(CypherExpr.StringOp("STARTS WITH", prop(cs, "callee_class"), lit("com.example.Re"))),
+                CypherClause.Return(listOf(returnItem(prop(cs, "callee_name"), "name"))),
+                CypherClause.Limit(lit(10))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("s", "StringConstant")))),
+                CypherClause.Where(CypherExpr.Comparison("=", lit("hello"), prop(s, "value"))),
+                CypherClause.Return(listOf(returnItem(prop(s, "id"), "id")))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("s", "StringConstant")))),
+                CypherClause.Where(CypherExpr.StringOp("CONTAINS", prop(s, "value"), lit("ell"))),
+                CypherClause.Return(listOf(returnItem(prop(s, "id"), "id")))
+            ),
+            listOf(
+                CypherClause.Match(listOf(pattern(nodePattern("s", "StringConstant")))),
+                CypherClause.Where(CypherExpr.RegexMatch(prop(s, "value"), lit("h[a-z]llo"))),
+                CypherClause.Return(listOf(returnItem(prop(s, "id"), "id")))
+            )
+        )
+        for (clauses in queries) {
+            val indexed = IndexedGraph(graph)
+            val result = QueryPipeline(indexed).execute(clauses)
+            assertEquals(pipeline.execute(clauses).rows.toSet(), result.rows.toSet(), clauses.toString())
+            assertTrue(result.rows.isNotEmpty(), clauses.toString())
+            assertEquals(0, indexed.scans, clauses.toString())
+        }
+
+        val missing = listOf(
+            CypherClause.Match(listOf(pattern(nodePattern("cs", "CallSiteNode")))),
+            CypherClause.Where(CypherExpr.Comparison("=", prop(cs, "callee_name"), lit("missing"))),
+            CypherClause.Return(listOf(returnItem(prop(cs, "id"), "id")))
+        )
+        assertTrue(QueryPipeline(IndexedGraph(graph)).execute(missing).rows.isEmpty())
+    }
+
+    @Test
+    fun `neighbors rejected by label are not decoded`() {
+        val decoded = mutableSetOf<NodeId>()
+        val counting = object : Graph by graph {
+            override fun node(id: NodeId): Node? = graph.node(id).also { decoded.add(id) }
+            override fun nodeType(id: NodeId): Class<out Node>? = graph.nodeType(id)
+        }
+        val match = CypherClause.Match(listOf(pattern(
+            nodePattern("a", "LocalVariable"), relPattern(), nodePattern("b", "LocalVariable")
+        )))
+        val ret = CypherClause.Return(listOf(returnItem(prop(variable("b"), "name"), "name")))
+        for (clauses in listOf(listOf(match, ret), listOf(match, ret, CypherClause.Limit(lit(10))))) {
+            decoded.clear()
+            val result = QueryPipeline(counting).execute(clauses)
+            assertEquals(listOf(mapOf<String, Any?>("name" to "y")), result.rows, clauses.toString())
+            assertTrue(callSite1 !in decoded, clauses.toString())
+        }
+    }
 }
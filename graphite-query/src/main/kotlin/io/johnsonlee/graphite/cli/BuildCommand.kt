@@ -32,6 +32,12 @@ class BuildCommand : Callable<Int> {
     @Option(names = ["--lib-filter"], description = ["Only load JARs matching these patterns (comma-separated)"], split = ",")
     var libFilters: List<String> = emptyList()
 
+    @Option(names = ["--threads"], description = ["Threads used to resolve method bodies (default: 1)"])
+    var threads: Int = 1
+
+    @Option(names = ["--no-trigrams"], description = ["Do not store the trigram index over string constants"])
+    var noTrigrams: Boolean = false
+
     @Option(names = ["-v", "--verbose"], description = ["Enable verbose output"])
     var verbose: Boolean = false
 
@@ -48,6 +54,7 @@ class BuildCommand : Callable<Int> {
                 includeLibraries = includeLibs,
                 libraryFilters = libFilters,
                 buildCallGraph = true,
+                buildThreads = threads,
                 verbose = if (verbose) { msg -> System.err.println(msg) } else null
             )
 
@@ -59,7 +66,7 @@ class BuildCommand : Callable<Int> {
             System.err.println("Graph built: $nodeCount nodes")
 
             System.err.println("Saving to: $output")
-            GraphStore.save(graph, output)
+            GraphStore.save(graph, output, storeTrigrams = !noTrigrams)
             System.err.println("Done.")
 
             return 0
@@ -6,6 +6,7 @@ import java.nio.file.Files
 import java.nio.file.Path
 import kotlin.test.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertFalse
 import kotlin.test.assertTrue
 import kotlin.test.fail
 
@@ -166,6 +167,38 @@ class GraphiteCommandTest {
         }
     }
 
+    @Test
+    fun `build with no trigrams skips the trigram index`() {
+        val classesDir = Files.createTempDirectory("build-test-classes3")
+        val outputDir = Files.createTempDirectory("build-test-output3")
+        try {
+            val javaFile = classesDir.resolve("Example.java")
+            Files.writeString(javaFile, """
+                package example;
+                public class Example {
+                    public String hello() { return "world"; }
+                }
+            """.trimIndent())
+            val compiler = javax.tools.ToolProvider.getSystemJavaCompiler()
+            Files.createDirectories(classesDir.resolve("example"))
+            val compileResult = compiler.run(null, null, null, "-d", classesDir.toString(), javaFile.toString())
+            assertEquals(0, compileResult, "Java compilation should succeed")
+
+            val cmd = BuildCommand()
+            cmd.input = classesDir
+            cmd.output = outputDir
+            cmd.includePackages = listOf("example")
+            cmd.noTrigrams = true
+            val (_, err, code) = captureOutput { cmd.call() }
+            assertEquals(0, code, "Build should succeed, stderr: $err")
+            assertTrue(Files.exists(outputDir.resolve("graph.propertyindex")))
+            assertFalse(Files.exists(outputDir.resolve("graph.strings.trigrams")))
+        } finally {
+            classesDir.toFile().deleteRecursively()
+            outputDir.toFile().deleteRecursively()
+        }
+    }
+
     @Test
     fun `build with includeLibs and libFilters`() {
         val emptyDir = Files.createTempDirectory("build-test-libs")
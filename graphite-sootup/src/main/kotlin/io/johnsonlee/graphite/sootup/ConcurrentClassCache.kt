@@ -0,0 +1,31 @@
+package io.johnsonlee.graphite.sootup
+
+import sootup.core.cache.ClassCache
+import sootup.core.model.SootClass
+import sootup.core.types.ClassType
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * [ClassCache] over a [ConcurrentHashMap], so the class lookups of a view
+ * shared by the pass 2 workers of [SootUpAdapter] are thread-safe; SootUp's
+ * default full cache is a plain hash map.
+ *
+ * The first class stored for a type wins, so a class built by two threads at
+ * once is cached only once.
+ */
+internal class ConcurrentClassCache : ClassCache {
+
+    private val classes = ConcurrentHashMap<ClassType, SootClass>()
+
+    override fun getClass(classType: ClassType): SootClass? = classes[classType]
+
+    override fun getClasses(): Collection<SootClass> = classes.values
+
+    override fun putClass(classType: ClassType, sootClass: SootClass) {
+        classes.putIfAbsent(classType, sootClass)
+    }
+
+    override fun hasClass(classType: ClassType): Boolean = classes.containsKey(classType)
+
+    override fun size(): Int = classes.size
+}
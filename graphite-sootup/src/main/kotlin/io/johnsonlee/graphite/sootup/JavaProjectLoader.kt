@@ -10,7 +10,6 @@ import io.johnsonlee.graphite.input.ProjectLoader
 import sootup.core.inputlocation.AnalysisInputLocation
 import sootup.core.model.SourceType
 import sootup.java.bytecode.frontend.inputlocation.PathBasedAnalysisInputLocation
-import sootup.java.core.views.JavaView
 import java.nio.file.Files
 import java.nio.file.Path
 import java.util.zip.ZipEntry
@@ -51,7 +50,7 @@ class JavaProjectLoader(
 
     override fun load(path: Path): Graph {
         val inputLocations = createInputLocations(path)
-        val view = JavaView(inputLocations.locations)
+        val view = SootUpAdapter.createConcurrentView(inputLocations.locations)
 
         // Load generic signatures from bytecode
         val signatureReader = BytecodeSignatureReader()
@@ -62,7 +61,8 @@ class JavaProjectLoader(
             view, config, signatureReader,
             resourceAccessor = resourceAccessor,
             inputLocationSources = inputLocations.sources,
-            graphBuilder = graphBuilderFactory()
+            graphBuilder = graphBuilderFactory(),
+            concurrentView = true
         )
         return adapter.buildGraph()
     }
@@ -12,6 +12,7 @@ import io.johnsonlee.graphite.core.ControlFlowEdge
 import io.johnsonlee.graphite.core.ControlFlowKind
 import io.johnsonlee.graphite.core.DataFlowEdge
 import io.johnsonlee.graphite.core.DataFlowKind
+import io.johnsonlee.graphite.core.DescriptorPool
 import io.johnsonlee.graphite.core.DoubleConstant
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.EnumValueReference
@@ -46,6 +47,10 @@ import java.nio.file.Files
 import java.util.Locale
 import java.util.ResourceBundle
 import java.util.ServiceLoader
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import org.objectweb.asm.ClassReader
 import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.FieldVisitor
@@ -63,6 +68,7 @@ import org.objectweb.asm.tree.MethodInsnNode
 import org.objectweb.asm.tree.MethodNode
 import org.objectweb.asm.tree.TypeInsnNode
 import org.objectweb.asm.tree.VarInsnNode
+import sootup.core.cache.provider.ClassCacheProvider
 import sootup.core.frontend.BodySource
 import sootup.core.graph.StmtGraph
 import sootup.core.inputlocation.AnalysisInputLocation
@@ -111,6 +117,7 @@ import sootup.core.types.ArrayType
 import sootup.core.types.PrimitiveType
 import sootup.core.types.Type
 import sootup.core.views.View
+import sootup.java.core.views.JavaView
 import sootup.callgraph.CallGraph
 import sootup.callgraph.ClassHierarchyAnalysisAlgorithm
 import sootup.callgraph.RapidTypeAnalysisAlgorithm
@@ -131,12 +138,21 @@ private const val RESOURCE_SOURCE = "resource"
 private const val GET_KEYS_METHOD = "getKeys"
 private const val PASS1_PROGRESS_INTERVAL = 500
 private const val PASS2_PROGRESS_INTERVAL = 100
+private const val PASS2_LOOKAHEAD_PER_THREAD = 4
 
 /**
  * Adapter that converts SootUp's IR to Graphite's graph model.
  *
  * This is the bridge between SootUp's analysis infrastructure and
  * Graphite's unified graph representation.
+ *
+ * With [LoaderConfig.buildThreads] > 1, pass 2 resolves method bodies on a
+ * worker pool through the one shared [view], which must then be created by
+ * [createConcurrentView] and flagged with [concurrentView] = `true`: SootUp's
+ * default class cache is an unsynchronized hash map, and the body
+ * interceptors look classes up through it. Other views keep pass 2 serial.
+ * Graph assembly -- creating nodes and edges -- is always serial (see
+ * [forEachIncludedClass]).
  */
 class SootUpAdapter(
     private val view: View,
@@ -145,7 +161,8 @@ class SootUpAdapter(
     private val extensions: List<GraphiteExtension> = ServiceLoader.load(GraphiteExtension::class.java).toList(),
     private val resourceAccessor: ResourceAccessor = EmptyResourceAccessor,
     private val inputLocationSources: Map<AnalysisInputLocation, String>,
-    private val graphBuilder: FullGraphBuilder = DefaultGraph.Builder()
+    private val graphBuilder: FullGraphBuilder = DefaultGraph.Builder(),
+    private val concurrentView: Boolean = false
 ) {
     private val trackCrossMethodFunctionalDispatch = config.trackCrossMethodFunctionalDispatch
     private val extractAnnotationsEnabled = config.extractAnnotations
@@ -212,6 +229,7 @@ class SootUpAdapter(
 
     private val resolvedMethodCache = mutableMapOf<MethodSignature, MethodSignature>()
     private val methodDescriptorCache = mutableMapOf<MethodSignature, MethodDescriptor>()
+    private val descriptors = DescriptorPool()
     private val classOriginsByName = mutableMapOf<String, String>()
     private val classOriginSourceCounts = mutableMapOf<String, Int>()
     private val artifactDependenciesByArtifact = mutableMapOf<String, MutableMap<String, Int>>()
@@ -278,32 +296,30 @@ class SootUpAdapter(
             logger = ::log,
             resources = resourceAccessor
         )
-        view.classes
-            .filter { shouldIncludeClass(it) }
-            .forEach { sootClass ->
-                pass2Count++
-                if (pass2Count % PASS2_PROGRESS_INTERVAL == 0) {
-                    log("Pass 2 processed $pass2Count classes; current=${sootClass.type}")
-                }
-                if (extractAnnotationsEnabled && sootClass is JavaSootClass) {
-                    val className = sootClass.type.fullyQualifiedName
-                    extractAnnotations(sootClass.annotations, className, "<class>")
-                    sootClass.fields.forEach { field ->
-                        extractAnnotations(field.annotations, className, field.name)
-                    }
+        forEachIncludedClass { sootClass, methods ->
+            pass2Count++
+            if (pass2Count % PASS2_PROGRESS_INTERVAL == 0) {
+                log("Pass 2 processed $pass2Count classes; current=${sootClass.type}")
+            }
+            if (extractAnnotationsEnabled && sootClass is JavaSootClass) {
+                val className = sootClass.type.fullyQualifiedName
+                extractAnnotations(sootClass.annotations, className, "<class>")
+                sootClass.fields.forEach { field ->
+                    extractAnnotations(field.annotations, className, field.name)
                 }
+            }
 
-                forEachMethod(sootClass) { method ->
-                    processMethod(method)
-                    if (extractAnnotationsEnabled && sootClass is JavaSootClass && method is JavaSootMethod) {
-                        extractAnnotations(method.annotations, sootClass.type.fullyQualifiedName, method.name)
-                    }
+            methods.forEach { method ->
+                processMethod(method)
+                if (extractAnnotationsEnabled && sootClass is JavaSootClass && method is JavaSootMethod) {
+                    extractAnnotations(method.annotations, sootClass.type.fullyQualifiedName, method.name)
                 }
-
-                visitFieldsForClass(sootClass)
-                extensions.forEach { it.visit(sootClass, extensionContext) }
             }
 
+            visitFieldsForClass(sootClass)
+            extensions.forEach { it.visit(sootClass, extensionContext) }
+        }
+
         // Pass 2B: Resolve cross-method functional interface dispatch
         if (trackCrossMethodFunctionalDispatch) {
             resolveFunctionalDispatch()
@@ -334,6 +350,84 @@ class SootUpAdapter(
         config.verbose?.invoke(message)
     }
 
+    /**
+     * Visit the classes selected by [shouldIncludeClass] in view order,
+     * together with their methods.
+     *
+     * With [LoaderConfig.buildThreads] > 1 and a [concurrentView], method
+     * bodies -- the bytecode to Jimple conversion -- are resolved by a worker
+     * pool up to [PASS2_LOOKAHEAD_PER_THREAD] classes per thread ahead of
+     * [action], all through the shared [view]. Its class cache is concurrent
+     * and its type hierarchy is built here before the workers start, so they
+     * only read shared view state, and no class is parsed twice.
+     *
+     * Only body resolution is parallel. [action] -- all node and edge
+     * construction -- runs on the calling thread in view order: the adapter's
+     * maps (constants, fields, return nodes, dynamic targets, resource
+     * tracking) are read across methods and classes in that order, so
+     * splitting them into per-worker buffers would change which node a
+     * lookup finds, not just its id. Node ids and all adapter state are
+     * therefore assigned exactly as in a serial build, and both produce
+     * identical graphs.
+     */
+    private fun forEachIncludedClass(action: (SootClass, Sequence<SootMethod>) -> Unit) {
+        val classes = view.classes.filter { shouldIncludeClass(it) }.iterator()
+        val threads = config.buildThreads
+        if (threads <= 1 || !concurrentView) {
+            classes.forEach { sootClass -> action(sootClass, methodsOf(sootClass)) }
+            return
+        }
+
+        // Build the lazily created hierarchy before any worker can race to create it
+        view.typeHierarchy
+        val executor = Executors.newFixedThreadPool(threads) { runnable ->
+            Thread(runnable, "graphite-pass2").apply { isDaemon = true }
+        }
+        try {
+            val pending = ArrayDeque<Pair<SootClass, Future<List<SootMethod>>>>()
+            val lookahead = threads * PASS2_LOOKAHEAD_PER_THREAD
+            fun submitAhead() {
+                while (pending.size < lookahead && classes.hasNext()) {
+                    val sootClass = classes.next()
+                    pending.addLast(sootClass to executor.submit(Callable { resolveMethodBodies(sootClass) }))
+                }
+            }
+            submitAhead()
+            while (pending.isNotEmpty()) {
+                val (sootClass, methods) = pending.removeFirst()
+                val resolved = try {
+                    methods.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+                submitAhead()
+                action(sootClass, resolved.asSequence())
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    /**
+     * Collect the methods of [sootClass] and resolve their bodies. A body
+     * that fails to resolve is left for [processMethod], which retries and
+     * handles the failure the same way as in a serial build.
+     */
+    private fun resolveMethodBodies(sootClass: SootClass): List<SootMethod> {
+        val methods = mutableListOf<SootMethod>()
+        forEachMethod(sootClass) { method ->
+            try {
+                if (method.hasBody()) method.body
+            } catch (_: Exception) {
+                // reported by processMethod when it resolves the body again
+            } catch (_: OutOfMemoryError) {
+                System.gc()
+            }
+            methods.add(method)
+        }
+        return methods
+    }
+
     /**
      * Extract enum constant values from a single enum class.
      *
@@ -1173,6 +1267,13 @@ class SootUpAdapter(
     }
 
     companion object {
+        /**
+         * A view over [inputLocations] whose class cache is safe to share
+         * with the pass 2 workers; pass it with `concurrentView = true`.
+         */
+        fun createConcurrentView(inputLocations: List<AnalysisInputLocation>): JavaView =
+            JavaView(inputLocations, ClassCacheProvider { ConcurrentClassCache() })
+
         private val WRAPPER_CLASSES = setOf(
             "java.lang.Integer",
             "java.lang.Long",
@@ -1538,9 +1639,12 @@ class SootUpAdapter(
     }
 
     private fun forEachMethod(sootClass: SootClass, action: (SootMethod) -> Unit) {
-        streamMethodsOrNull(sootClass)?.forEach(action) ?: resolveMethodsOrEmpty(sootClass).forEach(action)
+        methodsOf(sootClass).forEach(action)
     }
 
+    private fun methodsOf(sootClass: SootClass): Sequence<SootMethod> =
+        streamMethodsOrNull(sootClass) ?: resolveMethodsOrEmpty(sootClass).asSequence()
+
     private fun firstMethod(sootClass: SootClass, predicate: (SootMethod) -> Boolean): SootMethod? {
         streamMethodsOrNull(sootClass)?.firstOrNull(predicate)?.let { return it }
         return resolveMethodsOrEmpty(sootClass).firstOrNull(predicate)
@@ -2796,7 +2900,7 @@ class SootUpAdapter(
             }
             graphBuilder.addMemberAnnotation(className, memberName, fullName, cleanValues)
             graphBuilder.addNode(AnnotationNode(
-                id = NodeId.next(),
+                id = nextNodeId("annotation"),
                 name = fullName,
                 className = className,
                 memberName = memberName,
@@ -2857,7 +2961,7 @@ class SootUpAdapter(
     }
 
     @Suppress("UNUSED_PARAMETER")
-    private fun nextNodeId(prefix: String): NodeId = NodeId.next()
+    private fun nextNodeId(prefix: String): NodeId = graphBuilder.nodeIds.next()
 
     private fun localKey(method: MethodDescriptor, localName: String): LocalKey {
         val key = LocalKey(method, localName)
@@ -2911,15 +3015,10 @@ class SootUpAdapter(
 
     private fun toTypeDescriptor(type: Type): TypeDescriptor {
         return when (type) {
-            is ClassType -> TypeDescriptor(
-                className = type.fullyQualifiedName,
-                typeArguments = emptyList() // Base type without generics
-            )
-            is ArrayType -> TypeDescriptor(
-                className = "${toTypeDescriptor(type.baseType).className}[]"
-            )
-            is PrimitiveType -> TypeDescriptor(className = type.toString())
-            else -> TypeDescriptor(className = type.toString())
+            is ClassType -> descriptors.type(type.fullyQualifiedName) // Base type without generics
+            is ArrayType -> descriptors.type("${toTypeDescriptor(type.baseType).className}[]")
+            is PrimitiveType -> descriptors.type(type.toString())
+            else -> descriptors.type(type.toString())
         }
     }
 
@@ -2940,11 +3039,13 @@ class SootUpAdapter(
 
     private fun toMethodDescriptor(sig: MethodSignature): MethodDescriptor {
         return methodDescriptorCache.getOrPut(sig) {
-            MethodDescriptor(
-                declaringClass = toTypeDescriptor(sig.declClassType),
-                name = sig.name,
-                parameterTypes = sig.parameterTypes.map { toTypeDescriptor(it) },
-                returnType = toTypeDescriptor(sig.type)
+            descriptors.intern(
+                MethodDescriptor(
+                    declaringClass = toTypeDescriptor(sig.declClassType),
+                    name = sig.name,
+                    parameterTypes = sig.parameterTypes.map { toTypeDescriptor(it) },
+                    returnType = toTypeDescriptor(sig.type)
+                )
             )
         }
     }
@@ -675,6 +675,38 @@ class SootUpAdapterTest {
         assertTrue(item1Values.isNotEmpty(), "ITEM_1 should have constructor values")
     }
 
+    // ========== Parallel pass 2 ==========
+
+    @Test
+    fun `parallel body resolution builds the same graph as a serial build`() {
+        val testClassesDir = findTestClassesDir()
+        assertTrue(testClassesDir.exists(), "Test classes directory should exist: $testClassesDir")
+
+        val packages = listOf(
+            "sample.simple", "sample.lambda", "sample.controlflow", "sample.inheritance",
+            "sample.enums", "sample.resources", "sample.generics", "sample.nested"
+        )
+        fun load(threads: Int) = JavaProjectLoader(LoaderConfig(
+            includePackages = packages,
+            buildCallGraph = true,
+            buildThreads = threads
+        )).load(testClassesDir)
+
+        val serial = load(1)
+        val serialNodes = serial.nodes<Node>().sortedBy { it.id.value }.toList()
+        assertTrue(serialNodes.isNotEmpty(), "Should build nodes")
+        val serialEdges = serialNodes.associate { it.id to serial.outgoing(it.id).toSet() }
+        val serialMethods = serial.methods(MethodPattern()).map { it.signature }.toSet()
+
+        // Repeat so that a scheduling-dependent difference is unlikely to slip through
+        repeat(3) {
+            val parallel = load(4)
+            assertEquals(serialNodes, parallel.nodes<Node>().sortedBy { it.id.value }.toList())
+            assertEquals(serialEdges, serialNodes.associate { it.id to parallel.outgoing(it.id).toSet() })
+            assertEquals(serialMethods, parallel.methods(MethodPattern()).map { it.signature }.toSet())
+        }
+    }
+
     private fun findTestClassesDir(): Path {
         val projectDir = Path.of(System.getProperty("user.dir"))
         val submodulePath = projectDir.resolve("build/classes/java/test")
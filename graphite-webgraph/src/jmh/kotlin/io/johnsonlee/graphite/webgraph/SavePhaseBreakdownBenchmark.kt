@@ -5,6 +5,7 @@ import io.johnsonlee.graphite.core.BranchComparison
 import io.johnsonlee.graphite.core.ControlFlowEdge
 import io.johnsonlee.graphite.core.DataFlowEdge
 import io.johnsonlee.graphite.core.DataFlowKind
+import io.johnsonlee.graphite.core.DescriptorPool
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.IntConstant
 import io.johnsonlee.graphite.core.Node
@@ -59,6 +60,7 @@ open class SavePhaseBreakdownBenchmark {
     private lateinit var allStrings: Set<String>
     private lateinit var metadata: GraphMetadata
     private lateinit var stringTable: StringTable
+    private lateinit var descriptors: DescriptorPool
     private lateinit var forwardAdj: GraphStore.PrecomputedAdjacency
     private lateinit var labelArray: ByteArray
     private lateinit var comparisonMap: Map<Long, BranchComparison>
@@ -92,14 +94,17 @@ open class SavePhaseBreakdownBenchmark {
         maxNodeId = 0
         graphNodeCount = 0
         val strings = mutableSetOf<String>()
+        descriptors = DescriptorPool()
         for (node in graph.nodes(Node::class.java)) {
             if (node.id.value > maxNodeId) maxNodeId = node.id.value
             graphNodeCount++
-            NodeSerializer.collectNodeStrings(listOf(node), strings)
+            NodeSerializer.collectNodeStrings(listOf(node), strings::add)
+            NodeSerializer.collectNodeDescriptors(node, descriptors)
         }
 
         metadata = GraphStore.collectMetadata(graph)
-        NodeSerializer.collectMetadataStrings(metadata, strings)
+        NodeSerializer.collectMetadataStrings(metadata, strings::add)
+        NodeSerializer.collectMetadataDescriptors(metadata, descriptors)
         allStrings = strings.toSet()
 
         tmpDir = Files.createTempDirectory("phase-bench")
@@ -117,7 +122,7 @@ open class SavePhaseBreakdownBenchmark {
             NodeSerializer.writeHeader(dos, NodeSerializer.MAGIC_NODEDATA)
             dos.writeInt(graphNodeCount)
             for (node in graph.nodes(Node::class.java)) {
-                NodeSerializer.writeNode(dos, node, stringTable)
+                NodeSerializer.writeNode(dos, node, stringTable, descriptors)
             }
         }
     }
@@ -134,7 +139,7 @@ open class SavePhaseBreakdownBenchmark {
         val strings = mutableSetOf<String>()
         var count = 0
         for (node in graph.nodes(Node::class.java)) {
-            NodeSerializer.collectNodeStrings(listOf(node), strings)
+            NodeSerializer.collectNodeStrings(listOf(node), strings::add)
             count++
         }
         return strings.size
@@ -186,7 +191,7 @@ open class SavePhaseBreakdownBenchmark {
                 NodeSerializer.writeHeader(dos, NodeSerializer.MAGIC_NODEDATA)
                 dos.writeInt(graphNodeCount)
                 for (node in graph.nodes(Node::class.java)) {
-                    NodeSerializer.writeNode(dos, node, stringTable)
+                    NodeSerializer.writeNode(dos, node, stringTable, descriptors)
                 }
             }
         } finally {
@@ -198,9 +203,7 @@ open class SavePhaseBreakdownBenchmark {
     fun phase7_nodeindexBuild() {
         val indexFile = tmpDir.resolve("graph.nodeindex.tmp")
         try {
-            GraphStore.buildNodeIndex(
-                tmpDir.resolve("graph.nodedata"), indexFile, stringTable
-            )
+            GraphStore.buildNodeIndex(tmpDir, indexFile, stringTable, descriptors)
         } finally {
             indexFile.toFile().delete()
         }
@@ -211,7 +214,7 @@ open class SavePhaseBreakdownBenchmark {
         val dir = Files.createTempDirectory("meta")
         try {
             DataOutputStream(BufferedOutputStream(dir.resolve("graph.metadata").toFile().outputStream())).use { dos ->
-                NodeSerializer.saveMetadata(metadata, dos, stringTable)
+                NodeSerializer.saveMetadata(metadata, dos, stringTable, descriptors)
             }
         } finally {
             dir.toFile().deleteRecursively()
@@ -0,0 +1,114 @@
+package io.johnsonlee.graphite.webgraph
+
+import it.unimi.dsi.fastutil.io.BinIO
+import it.unimi.dsi.fastutil.longs.LongIterator
+import it.unimi.dsi.fastutil.longs.LongIterators
+import it.unimi.dsi.sux4j.util.EliasFanoMonotoneLongBigList
+import it.unimi.dsi.webgraph.ImmutableGraph
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * 8-bit labels of a graph's arcs in successor order: the label of the
+ * `i`-th successor of `node` is `label(start(node) + i)`.
+ */
+internal interface ArcLabels {
+
+    /** Position of the first label of [node]'s successors. */
+    fun start(node: Int): Long
+
+    /** Persisted label of the arc at [position]. */
+    fun label(position: Long): Byte
+
+    companion object {
+
+        /** Labels and cumulative outdegrees of [graph] on heap. */
+        fun heap(graph: ImmutableGraph, labels: ByteArray): ArcLabels =
+            HeapArcLabels(labels, cumulativeOutdegrees(graph))
+
+        /**
+         * Labels memory-mapped from [labelsFile], with the cumulative
+         * outdegrees of [graph] in an Elias-Fano list (a few bits per node
+         * instead of a `long`), so neither grows the heap with the edge count.
+         * The list is read from [offsetsFile] when it was stored by
+         * [storeOffsets], otherwise built from the outdegrees of [graph].
+         *
+         * The list is deliberately kept on heap rather than mapped: sux4j has
+         * no mapped Elias-Fano list, it is a few bits per node, and
+         * `BVGraph.loadMapped` keeps its own Elias-Fano offsets on heap the
+         * same way.
+         */
+        fun mapped(graph: ImmutableGraph, labelsFile: Path, offsetsFile: Path): ArcLabels {
+            val labels = FileChannel.open(labelsFile, StandardOpenOption.READ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+            if (Files.exists(offsetsFile)) {
+                return MappedArcLabels(labels, BinIO.loadObject(offsetsFile.toString()) as EliasFanoMonotoneLongBigList)
+            }
+            val numNodes = graph.numNodes()
+            val starts = object : LongIterator {
+                private var node = 0
+                private var start = 0L
+
+                override fun hasNext(): Boolean = node <= numNodes
+
+                override fun nextLong(): Long {
+                    if (!hasNext()) throw NoSuchElementException()
+                    val current = start
+                    if (node < numNodes) start += graph.outdegree(node)
+                    node++
+                    return current
+                }
+
+                override fun remove() = throw UnsupportedOperationException()
+            }
+            return MappedArcLabels(
+                labels,
+                EliasFanoMonotoneLongBigList(numNodes + 1L, labels.capacity().toLong(), starts)
+            )
+        }
+
+        /**
+         * Store cumulative outdegrees (`numNodes + 1` entries up to
+         * [numArcs]) as the Elias-Fano list read back by [mapped].
+         */
+        fun storeOffsets(cumulativeOutdeg: LongArray, numArcs: Long, offsetsFile: Path) {
+            BinIO.storeObject(
+                EliasFanoMonotoneLongBigList(cumulativeOutdeg.size.toLong(), numArcs, LongIterators.wrap(cumulativeOutdeg)),
+                offsetsFile.toString()
+            )
+        }
+
+        /**
+         * `cumulativeOutdeg[i]` = sum of outdegree(0..i-1), so the labels for
+         * node `i` start at `labels[cumulativeOutdeg[i]]`.
+         */
+        private fun cumulativeOutdegrees(graph: ImmutableGraph): LongArray {
+            val numNodes = graph.numNodes()
+            val cumOutdeg = LongArray(numNodes + 1)
+            for (i in 0 until numNodes) {
+                cumOutdeg[i + 1] = cumOutdeg[i] + graph.outdegree(i)
+            }
+            return cumOutdeg
+        }
+    }
+}
+
+internal class HeapArcLabels(
+    private val labels: ByteArray,
+    private val cumulativeOutdeg: LongArray
+) : ArcLabels {
+    override fun start(node: Int): Long = cumulativeOutdeg[node]
+    override fun label(position: Long): Byte = labels[position.toInt()]
+}
+
+internal class MappedArcLabels(
+    private val labels: ByteBuffer,
+    private val starts: EliasFanoMonotoneLongBigList
+) : ArcLabels {
+    override fun start(node: Int): Long = starts.getLong(node.toLong())
+    override fun label(position: Long): Byte = labels.get(position.toInt())
+}
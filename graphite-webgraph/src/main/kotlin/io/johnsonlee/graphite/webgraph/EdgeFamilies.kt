@@ -0,0 +1,78 @@
+package io.johnsonlee.graphite.webgraph
+
+import io.johnsonlee.graphite.core.CallEdge
+import io.johnsonlee.graphite.core.ControlFlowEdge
+import io.johnsonlee.graphite.core.DataFlowEdge
+import io.johnsonlee.graphite.core.Edge
+import io.johnsonlee.graphite.core.ResourceEdge
+import io.johnsonlee.graphite.core.TypeEdge
+import io.johnsonlee.graphite.graph.EdgeLabels
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * One sub-graph per edge family next to the combined forward graph, so
+ * traversals of a single family read only its arcs:
+ *
+ * - `forward.<family>.*`, `graph.labels.<family>` (+ `.offsets`) -- the arcs
+ *   of the family, with the same node ids as `forward.*`
+ * - `backward.<family>.*`, `graph.backward.labels.<family>` (+ `.offsets`) --
+ *   their transpose, when the graph was saved with one
+ *
+ * Sub-graphs are opened with [open] on first use. A label mask selects a
+ * sub-graph when all of its labels belong to one family; other masks are
+ * answered by the combined graphs.
+ */
+internal class EdgeFamilies(
+    dir: Path,
+    private val open: (graph: Path, labels: Path) -> GraphStore.LabelledAdjacency
+) {
+
+    private val forward = FAMILIES.map { family ->
+        lazy { open(dir.resolve(family.forwardGraph), dir.resolve(family.forwardLabels)) }
+    }
+
+    private val backward = FAMILIES.map { family ->
+        lazy {
+            val labels = dir.resolve(family.backwardLabels)
+            if (Files.exists(labels)) open(dir.resolve(family.backwardGraph), labels) else null
+        }
+    }
+
+    /** Sub-graph holding every outgoing arc selected by [mask], or `null`. */
+    fun outgoing(mask: Long): GraphStore.LabelledAdjacency? = familyOf(mask)?.let { forward[it].value }
+
+    /** Transposed sub-graph holding every incoming arc selected by [mask], or `null`. */
+    fun incoming(mask: Long): GraphStore.LabelledAdjacency? = familyOf(mask)?.let { backward[it].value }
+
+    /** An edge family and the names of its files. */
+    class Family(val name: String, val type: Class<out Edge>) {
+        val mask: Long = EdgeLabels.mask(type)
+        val forwardGraph = "forward.$name"
+        val forwardLabels = "graph.labels.$name"
+        val backwardGraph = "backward.$name"
+        val backwardLabels = "graph.backward.labels.$name"
+    }
+
+    companion object {
+        val FAMILIES = listOf(
+            Family("dataflow", DataFlowEdge::class.java),
+            Family("call", CallEdge::class.java),
+            Family("type", TypeEdge::class.java),
+            Family("controlflow", ControlFlowEdge::class.java),
+            Family("resource", ResourceEdge::class.java)
+        )
+
+        /** Index of the family whose labels include all of [mask]'s, or `null`. */
+        fun familyOf(mask: Long): Int? {
+            if (mask == 0L) return null
+            return FAMILIES.indexOfFirst { mask and it.mask.inv() == 0L }.takeIf { it >= 0 }
+        }
+
+        /**
+         * Whether [dir] holds every forward sub-graph. Each family's labels
+         * are written after its graph, so they mark a complete sub-graph.
+         */
+        fun exists(dir: Path): Boolean = FAMILIES.all { Files.exists(dir.resolve(it.forwardLabels)) }
+    }
+}
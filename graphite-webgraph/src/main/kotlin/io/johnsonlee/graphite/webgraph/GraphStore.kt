@@ -1,51 +1,73 @@
 package io.johnsonlee.graphite.webgraph
 
 import io.johnsonlee.graphite.core.AnnotationNode
-import io.johnsonlee.graphite.core.BooleanConstant
 import io.johnsonlee.graphite.core.BranchComparison
 import io.johnsonlee.graphite.core.BranchScope
 import io.johnsonlee.graphite.core.CallSiteNode
 import io.johnsonlee.graphite.core.ControlFlowEdge
-import io.johnsonlee.graphite.core.DoubleConstant
+import io.johnsonlee.graphite.core.DescriptorPool
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.EnumConstant
 import io.johnsonlee.graphite.core.FieldNode
-import io.johnsonlee.graphite.core.FloatConstant
-import io.johnsonlee.graphite.core.IntConstant
 import io.johnsonlee.graphite.core.LocalVariable
-import io.johnsonlee.graphite.core.LongConstant
 import io.johnsonlee.graphite.core.Node
-import io.johnsonlee.graphite.core.NodeId
-import io.johnsonlee.graphite.core.NullConstant
 import io.johnsonlee.graphite.core.ParameterNode
-import io.johnsonlee.graphite.core.ResourceFileNode
-import io.johnsonlee.graphite.core.ResourceValueNode
 import io.johnsonlee.graphite.core.ReturnNode
-import io.johnsonlee.graphite.core.StringConstant
 import io.johnsonlee.graphite.core.TypeDescriptor
 import io.johnsonlee.graphite.core.ValueNode
+import io.johnsonlee.graphite.graph.CallSiteColumns
+import io.johnsonlee.graphite.graph.CallSiteIndex
+import io.johnsonlee.graphite.graph.EdgeLabels
 import io.johnsonlee.graphite.graph.Graph
+import io.johnsonlee.graphite.graph.IndexedProperty
 import io.johnsonlee.graphite.graph.MethodPattern
+import io.johnsonlee.graphite.graph.PropertyIndex
+import io.johnsonlee.graphite.graph.TrigramIndex
+import io.johnsonlee.graphite.graph.TypeClosure
 import it.unimi.dsi.fastutil.io.BinIO
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap
 import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.longs.LongArrayList
 import it.unimi.dsi.webgraph.BVGraph
 import it.unimi.dsi.webgraph.ImmutableGraph
 import it.unimi.dsi.webgraph.LazyIntIterator
-import it.unimi.dsi.webgraph.LazyIntIterators
 import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
 import java.io.BufferedOutputStream
 import java.io.DataInputStream
 import java.io.DataOutputStream
+import java.io.EOFException
 import java.io.File
+import java.io.FilterInputStream
 import java.io.InputStream
 import java.io.OutputStream
-import java.io.RandomAccessFile
+import java.nio.ByteBuffer
 import java.nio.channels.FileChannel
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.StandardOpenOption
 import java.util.concurrent.CompletableFuture
 
+/** InputStream wrapper that tracks total bytes read. */
+private class CountingInputStream(private val delegate: InputStream) : InputStream() {
+    var bytesRead: Long = 0L
+        private set
+
+    override fun read(): Int {
+        val b = delegate.read()
+        if (b >= 0) bytesRead++
+        return b
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        val n = delegate.read(b, off, len)
+        if (n > 0) bytesRead += n
+        return n
+    }
+
+    override fun close() = delegate.close()
+}
+
 /** OutputStream wrapper that tracks total bytes written. */
 private class CountingOutputStream(private val delegate: OutputStream) : OutputStream() {
     var bytesWritten: Long = 0L
@@ -70,12 +92,26 @@ private class CountingOutputStream(private val delegate: OutputStream) : OutputS
  * ecosystem tools (dsiutils + sux4j + fastutil).
  *
  * Storage layout:
- * - `forward.*`                -- BVGraph adjacency (forward only; backward is rebuilt lazily on incoming queries)
+ * - `forward.*`                -- BVGraph adjacency (forward)
+ * - `backward.*`               -- optional BVGraph transpose, memory-mapped on the first incoming query (rebuilt from forward when absent)
  * - `graph.strings`            -- [StringTable] (FrontCodedStringList via BinIO)
+ * - `graph.descriptors`        -- [DescriptorPool]: distinct type and method descriptors, referenced by id
  * - `graph.labels`             -- byte[] via [BinIO.storeBytes], 1 byte per arc in BVGraph successor order
+ * - `graph.backward.labels`    -- byte[] labels of the transpose, 1 byte per arc in `backward.*` successor order
  * - `graph.comparisons`        -- [BranchComparison] data for [ControlFlowEdge]s that carry one
- * - `graph.nodedata`           -- sequential binary node data with string table indices
- * - `graph.metadata`           -- methods, type hierarchy, enums, annotations, branch scopes (string table indices)
+ * - `graph.nodedata`           -- binary node records in ascending id order, with string table indices and descriptor ids
+ * - `graph.nodedata.blocks`    -- optional [NodeDataBlocks]: block index of a block-compressed `graph.nodedata`
+ * - `graph.nodeindex`          -- node id, tag and offset of every record in `graph.nodedata`
+ * - `graph.nodeoffsets`, `graph.nodetypes`, `graph.nodetags` -- [SuccinctNodeIndex] over the same records
+ * - `graph.labels.offsets`     -- Elias-Fano position of each node's first label (also `graph.backward.labels.offsets`)
+ * - `graph.metadata`           -- [MetadataSections]: methods, type hierarchy, enums, annotations, branch scopes, one section each
+ * - `graph.callsites`          -- [CallSiteIndex]: call site ids by callee class and method name (string table indices)
+ * - `graph.types`              -- [TypeClosure]: transitive type hierarchy as preorder intervals + extra supertypes
+ * - `graph.columns.callsite.*` -- [CallSiteColumns]: one int array per call site field, in node index order
+ * - `graph.propertyindex`      -- [PropertyIndex]es: per index, sorted value string ids, value starts and node ids (CSR)
+ * - `graph.strings.trigrams`   -- optional [TrigramIndex]: `StringConstant` values by trigram
+ * - `graph.resources`          -- optional [PersistedResourceStore]: text resources as a sorted path index + one content blob
+ * - `graph.originalids`        -- optional int[] via [BinIO.storeInts]: source graph id of each node id, for renumbered saves
  */
 object GraphStore {
 
@@ -86,11 +122,26 @@ object GraphStore {
     private const val MAPPED_THRESHOLD = 1_000_000
 
     private const val FORWARD_GRAPH = "forward"
+    private const val BACKWARD_GRAPH = "backward"
+    private val BVGRAPH_EXTENSIONS = listOf(".graph", ".offsets", ".properties")
     private const val LABELS_FILE = "graph.labels"
+    private const val BACKWARD_LABELS_FILE = "graph.backward.labels"
+    private const val LABEL_OFFSETS_SUFFIX = ".offsets"
     private const val COMPARISONS_FILE = "graph.comparisons"
     private const val NODE_DATA_FILE = "graph.nodedata"
     private const val NODE_INDEX_FILE = "graph.nodeindex"
     private const val METADATA_FILE = "graph.metadata"
+    private const val CALL_SITES_FILE = "graph.callsites"
+    private const val DESCRIPTORS_FILE = "graph.descriptors"
+    private const val TYPES_FILE = "graph.types"
+    private const val CALL_SITE_COLUMNS_PREFIX = "graph.columns.callsite."
+    private const val PROPERTY_INDEX_FILE = "graph.propertyindex"
+    private const val TRIGRAMS_FILE = "graph.strings.trigrams"
+    private const val ORIGINAL_IDS_FILE = "graph.originalids"
+    private const val NODE_SPOOL_PREFIX = ".nodes"
+    private const val EDGE_SPOOL_PREFIX = ".edges"
+    private const val SPOOL_SUFFIX = ".spool"
+    private const val SPOOL_RECORD_BUFFER_SIZE = 256
     private const val NOT_A_DIRECTORY_PREFIX = "Not a directory:"
 
     private fun notDirectoryMessage(dir: Path): String = "$NOT_A_DIRECTORY_PREFIX $dir"
@@ -98,76 +149,275 @@ object GraphStore {
     /**
      * Save a graph to disk in WebGraph + native LAW format.
      *
-     * Uses a streaming [ImmutableGraph] wrapper over the source [Graph] to avoid
-     * copying all edge data into a second adjacency structure
-     * ([ArrayListMutableGraph][it.unimi.dsi.webgraph.ArrayListMutableGraph]).
-     * For large graphs (millions of nodes) this eliminates the OOM caused by
-     * duplicating the entire adjacency list in memory.
+     * The source [graph] is walked once: each node is spooled to a temporary
+     * file against a [growable][StringTable.growable] string table and its
+     * outgoing edges to a second one, while strings, descriptors and metadata
+     * keys are collected. Once every string is known the final [StringTable]
+     * is built and the spools are rewritten into `graph.nodedata` (in
+     * ascending node id order) and the forward BVGraph, so mapped or lazy
+     * source graphs decode every node and edge list only once.
+     *
+     * @param storeBackward also store the transpose as `backward.*`, so loaded
+     *   graphs memory-map it instead of rebuilding it on heap on the first
+     *   incoming query
+     * @param renumber save nodes under new, dense ids that keep each method's
+     *   nodes together (see [NodeRenumbering.methodClustered]), for smaller
+     *   BVGraphs and better page locality in mapped loads; the source id of
+     *   every saved node is stored and returned by [originalIds]
+     * @param storeEdgeFamilies also store one sub-graph per edge family (see
+     *   [EdgeFamilies]), so lazy and mapped graphs answer typed edge queries
+     *   without reading the arcs of other families
+     * @param indexedProperties string properties to store [PropertyIndex]es
+     *   for, answered by [Graph.propertyIndex] on loaded graphs; their types
+     *   must be persisted node types
+     * @param storeTrigrams also store a [TrigramIndex] over the indexed
+     *   `StringConstant` values, answered by [Graph.trigramIndex], so
+     *   `CONTAINS` and regex filters do not test every string; ignored when
+     *   [IndexedProperty.STRING_VALUE] is not in [indexedProperties]
+     * @param compressNodeData store `graph.nodedata` as Deflate-compressed
+     *   blocks (see [NodeDataBlocks]), trading some CPU per node read for a
+     *   smaller file and fewer pages touched by mapped loads
      */
-    fun save(graph: Graph, dir: Path, compressionThreads: Int = 2) {
+    @Suppress("LongParameterList")
+    fun save(
+        graph: Graph,
+        dir: Path,
+        compressionThreads: Int = 2,
+        storeBackward: Boolean = true,
+        renumber: Boolean = false,
+        storeEdgeFamilies: Boolean = false,
+        indexedProperties: List<IndexedProperty> = IndexedProperty.DEFAULTS,
+        storeTrigrams: Boolean = true,
+        compressNodeData: Boolean = false
+    ) {
+        val unsupported = indexedProperties.filter { it.type !in NodeSerializer.NODE_CLASSES }
+        require(unsupported.isEmpty()) {
+            "Cannot index properties of non-persisted node types: ${unsupported.joinToString()}"
+        }
         Files.createDirectories(dir)
 
-        // 1. Stream nodes: find maxNodeId, count nodes, collect strings
-        var maxNodeId = 0
-        var nodeCount = 0
-        val allStrings = mutableSetOf<String>()
-        for (node in graph.nodes(Node::class.java)) {
-            if (node.id.value > maxNodeId) maxNodeId = node.id.value
-            nodeCount++
-            collectSingleNodeStrings(node, allStrings)
+        val renumbering = if (renumber) NodeRenumbering.methodClustered(graph) else null
+        val nodeSpool = Files.createTempFile(dir, NODE_SPOOL_PREFIX, SPOOL_SUFFIX)
+        val edgeSpool = Files.createTempFile(dir, EDGE_SPOOL_PREFIX, SPOOL_SUFFIX)
+        try {
+            saveSpooled(
+                graph, dir, nodeSpool, edgeSpool, compressionThreads,
+                storeBackward, storeEdgeFamilies, indexedProperties, storeTrigrams, compressNodeData, renumbering
+            )
+        } finally {
+            Files.deleteIfExists(nodeSpool)
+            Files.deleteIfExists(edgeSpool)
+        }
+        if (renumbering != null) {
+            BinIO.storeInts(renumbering.oldIds, dir.resolve(ORIGINAL_IDS_FILE).toString())
+        } else {
+            Files.deleteIfExists(dir.resolve(ORIGINAL_IDS_FILE))
         }
 
-        // 2. Collect metadata
-        val metadata = collectMetadata(graph)
-        NodeSerializer.collectMetadataStrings(metadata, allStrings)
-        val stringTable = StringTable.build(allStrings, dir)
-        allStrings.clear()
+        // 8. Save persisted text resources for loaded-graph access
+        PersistedResourceStore.save(graph, dir)
+    }
 
-        // 3. Build forward adjacency + labels + comparisons
-        val numNodes = maxNodeId + 1
+    @Suppress("LongParameterList")
+    private fun saveSpooled(
+        graph: Graph,
+        dir: Path,
+        nodeSpool: Path,
+        edgeSpool: Path,
+        compressionThreads: Int,
+        storeBackward: Boolean,
+        storeEdgeFamilies: Boolean,
+        indexedProperties: List<IndexedProperty>,
+        storeTrigrams: Boolean,
+        compressNodeData: Boolean,
+        renumbering: NodeRenumbering?
+    ) {
+        // 1. Single pass over the nodes: spool node records and outgoing edges, collect
+        //    strings, descriptors, call sites and metadata keys
+        var numNodes = 0
+        var nodeCount = 0
+        val spoolStrings = StringTable.growable()
+        val descriptors = DescriptorPool()
+        val callSiteIndex = CallSiteIndex.Builder()
+        val propertyIndexes = indexedProperties.map { PropertyIndex.Builder(it.type, it.name) }
+        val metadataCollector = MetadataCollector()
+        val outdeg = IntArrayList()
+        val spoolOffsets = LongArrayList()
+        val spoolLengths = IntArrayList()
         val comparisonMap = mutableMapOf<Long, BranchComparison>()
-        val (forwardAdj, labelArray) = buildForwardData(graph, numNodes, comparisonMap)
+        val edgesByTarget = Int2ObjectOpenHashMap<Edge>()
+        CountingOutputStream(BufferedOutputStream(nodeSpool.toFile().outputStream())).use { nodeCos ->
+            val nodeDos = DataOutputStream(nodeCos)
+            DataOutputStream(BufferedOutputStream(edgeSpool.toFile().outputStream())).use { edgeDos ->
+                for (source in graph.nodes(Node::class.java)) {
+                    val node = renumbering?.node(source) ?: source
+                    val from = node.id.value
+                    numNodes = maxOf(numNodes, from + 1)
+                    nodeCount++
+                    NodeSerializer.collectNodeStrings(listOf(node)) { spoolStrings.indexOf(it) }
+                    NodeSerializer.collectNodeDescriptors(node, descriptors)
+                    val spoolOffset = nodeCos.bytesWritten
+                    NodeSerializer.writeNode(nodeDos, node, spoolStrings, descriptors)
+                    if (from >= spoolOffsets.size) {
+                        spoolOffsets.size(from + 1)
+                        spoolLengths.size(from + 1)
+                    }
+                    spoolOffsets.set(from, spoolOffset)
+                    spoolLengths.set(from, (nodeCos.bytesWritten - spoolOffset).toInt())
+                    if (node is CallSiteNode) callSiteIndex.add(node)
+                    for ((i, property) in indexedProperties.withIndex()) {
+                        val value = property.value(node) ?: continue
+                        spoolStrings.indexOf(value)
+                        propertyIndexes[i].add(value, from)
+                    }
+                    metadataCollector.add(node)
+
+                    edgesByTarget.clear()
+                    for (edge in graph.outgoing(source.id)) {
+                        val saved = renumbering?.edge(edge) ?: edge
+                        edgesByTarget.put(saved.to.value, saved)
+                    }
+                    if (edgesByTarget.isEmpty()) continue
+                    val sorted = edgesByTarget.keys.toIntArray().apply { sort() }
+                    numNodes = maxOf(numNodes, sorted.last() + 1)
+                    if (from >= outdeg.size) outdeg.size(from + 1)
+                    outdeg.set(from, sorted.size)
+                    edgeDos.writeInt(from)
+                    edgeDos.writeInt(sorted.size)
+                    for (to in sorted) {
+                        val edge = edgesByTarget.get(to)
+                        edgeDos.writeInt(to)
+                        edgeDos.writeByte(NodeSerializer.encodeEdge(edge))
+                        if (edge is ControlFlowEdge && edge.comparison != null) {
+                            val key = from.toLong() shl INT_BITS or (to.toLong() and UNSIGNED_INT_MASK)
+                            comparisonMap[key] = edge.comparison!!
+                        }
+                    }
+                }
+            }
+        }
+
+        // 2. Finish metadata and build the final string and descriptor tables
+        val metadata = metadataCollector.finish(graph).let { metadata ->
+            if (renumbering == null) metadata else metadata.copy(branchScopes = metadata.branchScopes.map(renumbering::branchScope))
+        }
+        NodeSerializer.collectMetadataStrings(metadata) { spoolStrings.indexOf(it) }
+        indexedProperties.forEach { spoolStrings.indexOf(it.name) }
+        NodeSerializer.collectMetadataDescriptors(metadata, descriptors)
+        val stringTable = spoolStrings.build(dir)
+        DataOutputStream(BufferedOutputStream(dir.resolve(DESCRIPTORS_FILE).toFile().outputStream())).use { dos ->
+            NodeSerializer.writeDescriptors(dos, descriptors, stringTable)
+        }
+
+        // 3. Rebuild forward adjacency + labels from the edge spool
+        outdeg.size(numNodes)
+        val (forwardAdj, labelArray) = readForwardSpool(edgeSpool, outdeg.toIntArray())
 
         // 4. Store BVGraph (forward only)
         val forwardGraph = PrecomputedImmutableGraph(forwardAdj)
-        BVGraph.store(
-            forwardGraph, dir.resolve(FORWARD_GRAPH).toString(),
-            BVGraph.DEFAULT_WINDOW_SIZE, BVGraph.DEFAULT_MAX_REF_COUNT,
-            BVGraph.DEFAULT_MIN_INTERVAL_LENGTH, BVGraph.DEFAULT_ZETA_K,
-            0, compressionThreads
-        )
+        storeBVGraph(forwardGraph, dir.resolve(FORWARD_GRAPH), compressionThreads)
 
-        // 5. Store labels + comparisons
+        // 5. Store labels + comparisons, and the transpose unless disabled
         BinIO.storeBytes(labelArray, dir.resolve(LABELS_FILE).toString())
+        ArcLabels.storeOffsets(forwardAdj.offsets, labelArray.size.toLong(), dir.resolve(LABELS_FILE + LABEL_OFFSETS_SUFFIX))
+        if (storeBackward) {
+            storeBackward(
+                forwardGraph, HeapArcLabels(labelArray, forwardAdj.offsets),
+                dir.resolve(BACKWARD_GRAPH), dir.resolve(BACKWARD_LABELS_FILE), compressionThreads
+            )
+        } else {
+            deleteLabelledGraph(dir.resolve(BACKWARD_GRAPH), dir.resolve(BACKWARD_LABELS_FILE))
+        }
+        for (family in EdgeFamilies.FAMILIES) {
+            deleteLabelledGraph(dir.resolve(family.forwardGraph), dir.resolve(family.forwardLabels))
+            deleteLabelledGraph(dir.resolve(family.backwardGraph), dir.resolve(family.backwardLabels))
+            if (storeEdgeFamilies) storeEdgeFamily(forwardAdj, labelArray, family, dir, storeBackward, compressionThreads)
+        }
         DataOutputStream(BufferedOutputStream(dir.resolve(COMPARISONS_FILE).toFile().outputStream())).use { dos ->
             NodeSerializer.writeComparisons(dos, comparisonMap)
         }
 
-        // 6. Write nodedata + nodeindex simultaneously
-        CountingOutputStream(BufferedOutputStream(dir.resolve(NODE_DATA_FILE).toFile().outputStream())).use { cos ->
-            val dataDos = DataOutputStream(cos)
-            DataOutputStream(BufferedOutputStream(dir.resolve(NODE_INDEX_FILE).toFile().outputStream())).use { idxDos ->
-                NodeSerializer.writeHeader(dataDos, NodeSerializer.MAGIC_NODEDATA)
-                dataDos.writeInt(nodeCount)
-                NodeSerializer.writeHeader(idxDos, NodeSerializer.MAGIC_NODEINDEX)
-                idxDos.writeInt(nodeCount)
-                for (node in graph.nodes(Node::class.java)) {
-                    val offset = cos.bytesWritten
-                    val tag = NodeSerializer.writeNode(dataDos, node, stringTable)
-                    idxDos.writeInt(node.id.value)
-                    idxDos.writeByte(tag)
-                    idxDos.writeLong(offset)
+        // 6. Rewrite the node spool with final string ids into nodedata + nodeindex in
+        //    ascending id order, collecting call site columns in the same order
+        val callSiteColumns = CallSiteColumns.Builder(
+            stringId = { stringTable.indexOf(it) },
+            methodId = { NodeSerializer.methodId(it, descriptors) }
+        )
+        // Spool offsets are replaced by nodedata offsets as records are rewritten
+        val nodeOffsets = spoolOffsets.elements().copyOf(spoolOffsets.size)
+        val nodeTags = ByteArray(nodeOffsets.size) { -1 }
+        // Offsets stay positions in the uncompressed stream when it is written in blocks
+        NodeDataBlocks.delete(dir)
+        val nodeDataOut = BufferedOutputStream(dir.resolve(NODE_DATA_FILE).toFile().outputStream())
+        val blockWriter = if (compressNodeData) NodeDataBlocks.Writer(nodeDataOut) else null
+        val nodeDataLength = FileChannel.open(nodeSpool, StandardOpenOption.READ).use { spool ->
+            CountingOutputStream(blockWriter ?: nodeDataOut).use { cos ->
+                val dataDos = DataOutputStream(cos)
+                DataOutputStream(BufferedOutputStream(dir.resolve(NODE_INDEX_FILE).toFile().outputStream())).use { idxDos ->
+                    NodeSerializer.writeHeader(dataDos, NodeSerializer.MAGIC_NODEDATA)
+                    dataDos.writeInt(nodeCount)
+                    NodeSerializer.writeHeader(idxDos, NodeSerializer.MAGIC_NODEINDEX)
+                    idxDos.writeInt(nodeCount)
+                    var record = ByteArray(SPOOL_RECORD_BUFFER_SIZE)
+                    for (id in nodeOffsets.indices) {
+                        val length = spoolLengths.getInt(id)
+                        if (length == 0) continue
+                        if (record.size < length) record = ByteArray(maxOf(length, record.size * 2))
+                        readFully(spool, ByteBuffer.wrap(record, 0, length), nodeOffsets[id])
+                        val node = NodeSerializer.readNode(
+                            DataInputStream(ByteArrayInputStream(record, 0, length)),
+                            spoolStrings, NodeSerializer.FORMAT_VERSION, descriptors
+                        )
+                        val offset = cos.bytesWritten
+                        val tag = NodeSerializer.writeNode(dataDos, node, stringTable, descriptors)
+                        idxDos.writeInt(id)
+                        idxDos.writeByte(tag)
+                        idxDos.writeLong(offset)
+                        nodeOffsets[id] = offset
+                        nodeTags[id] = tag.toByte()
+                        if (node is CallSiteNode) callSiteColumns.add(node)
+                    }
                 }
+                dataDos.flush()
+                cos.bytesWritten
             }
         }
+        blockWriter?.blocks()?.store(dir)
+        SuccinctNodeIndex.store(dir, nodeOffsets, nodeTags, nodeDataLength)
 
         // 7. Save metadata
         DataOutputStream(BufferedOutputStream(dir.resolve(METADATA_FILE).toFile().outputStream())).use { dos ->
-            NodeSerializer.saveMetadata(metadata, dos, stringTable)
+            NodeSerializer.saveMetadata(metadata, dos, stringTable, descriptors)
+        }
+        DataOutputStream(BufferedOutputStream(dir.resolve(CALL_SITES_FILE).toFile().outputStream())).use { dos ->
+            NodeSerializer.writeCallSiteIndex(dos, callSiteIndex.build(), stringTable)
+        }
+        val builtPropertyIndexes = propertyIndexes.map { it.build() }
+        DataOutputStream(BufferedOutputStream(dir.resolve(PROPERTY_INDEX_FILE).toFile().outputStream())).use { dos ->
+            NodeSerializer.writePropertyIndexes(dos, builtPropertyIndexes, stringTable)
+        }
+        val trigramIndexes = if (storeTrigrams) {
+            builtPropertyIndexes.filter {
+                it.type == IndexedProperty.STRING_VALUE.type && it.property == IndexedProperty.STRING_VALUE.name
+            }.map(TrigramIndex::of)
+        } else {
+            emptyList()
+        }
+        if (trigramIndexes.isNotEmpty()) {
+            DataOutputStream(BufferedOutputStream(dir.resolve(TRIGRAMS_FILE).toFile().outputStream())).use { dos ->
+                NodeSerializer.writeTrigramIndexes(dos, trigramIndexes, stringTable)
+            }
+        } else {
+            Files.deleteIfExists(dir.resolve(TRIGRAMS_FILE))
+        }
+        DataOutputStream(BufferedOutputStream(dir.resolve(TYPES_FILE).toFile().outputStream())).use { dos ->
+            NodeSerializer.writeTypeClosure(dos, TypeClosure.of(metadata.supertypes), stringTable)
+        }
+        callSiteColumns.build({ stringTable.get(it) }, { descriptors.methodAt(it) }).forEachColumn { name, values ->
+            DataOutputStream(BufferedOutputStream(dir.resolve(CALL_SITE_COLUMNS_PREFIX + name).toFile().outputStream())).use { dos ->
+                NodeSerializer.writeIntColumn(dos, values)
+            }
         }
-
-        // 8. Save persisted text resources for loaded-graph access
-        PersistedResourceStore.save(graph, dir)
     }
 
     /**
@@ -175,30 +425,45 @@ object GraphStore {
      *
      * @param mode loading strategy; defaults to [LoadMode.AUTO] which selects
      *   based on graph size (< 1M nodes → eager, >= 1M → mapped).
+     * @param nodeCache cache of decoded nodes for a mapped load; unused when
+     *   the graph is loaded eagerly, since all nodes are on heap then.
      */
-    fun load(dir: Path, mode: LoadMode = LoadMode.AUTO): Graph {
+    fun load(dir: Path, mode: LoadMode = LoadMode.AUTO, nodeCache: NodeCache? = null): Graph {
         require(Files.isDirectory(dir)) { notDirectoryMessage(dir) }
         return when (mode) {
             LoadMode.EAGER -> loadEager(dir)
-            LoadMode.MAPPED -> { ensureNodeIndex(dir); loadMapped(dir) }
+            LoadMode.MAPPED -> { ensureNodeIndex(dir); loadMapped(dir, nodeCache) }
             LoadMode.AUTO -> {
                 val (_, nodeCount) = readNodeDataHeader(dir)
                 if (nodeCount < MAPPED_THRESHOLD) {
                     loadEager(dir)
                 } else {
-                    ensureNodeIndex(dir); loadMapped(dir)
+                    ensureNodeIndex(dir); loadMapped(dir, nodeCache)
                 }
             }
         }
     }
 
+    /**
+     * Source graph id of each node id of the graph saved in [dir] with
+     * `renumber = true`, or `null` if it was saved with the source ids.
+     */
+    fun originalIds(dir: Path): IntArray? {
+        val file = dir.resolve(ORIGINAL_IDS_FILE)
+        return if (Files.exists(file)) BinIO.loadInts(file.toString()) else null
+    }
+
     /**
      * Loading strategy for [load].
      */
     enum class LoadMode {
         /** All nodes deserialized into JVM heap. Fastest queries, highest memory. */
         EAGER,
-        /** Node data memory-mapped via OS page cache. 75% less heap, slightly slower queries. */
+        /**
+         * Node data, BVGraphs and edge labels memory-mapped via OS page cache,
+         * so the heap does not grow with the edge count. 75% less heap,
+         * slightly slower queries.
+         */
         MAPPED,
         /** Auto-select based on graph size (< 1M nodes → [EAGER], >= 1M → [MAPPED]). */
         AUTO
@@ -217,25 +482,26 @@ object GraphStore {
         val stringTable = stringTableFuture.join()
         val labelBytes = labelsFuture.join()
 
-        val cumulativeOutdeg = buildCumulativeOutdeg(forward)
-        val backward = lazy { loadBackward(forward) }
+        val forwardLabels = ArcLabels.heap(forward, labelBytes)
+        val backward = lazy { loadBackward(dir, lazyOf(forward), lazyOf(forwardLabels)) }
 
         val comparisonMap = DataInputStream(BufferedInputStream(dir.resolve(COMPARISONS_FILE).toFile().inputStream())).use { dis ->
             NodeSerializer.readComparisons(dis)
         }
+        val descriptors = readDescriptors(dir, stringTable)
 
         val nodesById = mutableMapOf<Int, Node>()
-        DataInputStream(BufferedInputStream(dir.resolve(NODE_DATA_FILE).toFile().inputStream())).use { dis ->
+        DataInputStream(openNodeData(dir)).use { dis ->
             NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEDATA)
             val count = dis.readInt()
             repeat(count) {
-                val node = NodeSerializer.readNode(dis, stringTable, nodeDataVersion)
+                val node = NodeSerializer.readNode(dis, stringTable, nodeDataVersion, descriptors)
                 nodesById[node.id.value] = node
             }
         }
 
         val metadata = DataInputStream(BufferedInputStream(dir.resolve(METADATA_FILE).toFile().inputStream())).use { dis ->
-            NodeSerializer.loadMetadata(dis, stringTable)
+            NodeSerializer.loadMetadata(dis, stringTable, descriptors)
         }
 
         return WebGraphBackedGraph(
@@ -243,10 +509,12 @@ object GraphStore {
             backward,
             nodesById,
             nodeDataVersion,
-            labelBytes,
-            cumulativeOutdeg,
+            forwardLabels,
             comparisonMap,
             metadata,
+            readCallSiteIndex(dir, stringTable),
+            persistedIndexes(dir, stringTable),
+            readTypeClosure(dir, stringTable),
             PersistedResourceStore.load(dir)
         )
     }
@@ -258,40 +526,51 @@ object GraphStore {
      * Memory savings for Android SDK (5.9M nodes): ~500 MB vs ~4 GB eager.
      * Query speed for LIMIT queries is similar; full-scan queries pay ~5-10x
      * for on-demand node deserialization.
+     *
+     * @param nodeCache cache of decoded nodes, so nodes queried repeatedly
+     *   (common constants, popular call sites) are decoded once; `null` to
+     *   decode on every lookup.
      */
-    fun loadLazy(dir: Path): Graph {
+    fun loadLazy(dir: Path, nodeCache: NodeCache? = null): Graph {
         require(Files.isDirectory(dir)) { notDirectoryMessage(dir) }
+        // Claim the cache before opening anything a rejected cache would leak
+        nodeCache?.attach()
 
         val (nodeDataVersion, _) = readNodeDataHeader(dir)
-        val nodeIndex = readNodeIndex(dir)
+        val nodeIndex = loadNodeIndex(dir)
         val stringTable = StringTable.load(dir)
         val forward = lazy { BVGraph.load(dir.resolve(FORWARD_GRAPH).toString()) }
-        val backward = lazy { loadBackward(forward.value) }
-        val labelBytes = lazy { BinIO.loadBytes(dir.resolve(LABELS_FILE).toString()) }
-        val cumulativeOutdeg = lazy { buildCumulativeOutdeg(forward.value) }
+        val forwardLabels = lazy { ArcLabels.heap(forward.value, BinIO.loadBytes(dir.resolve(LABELS_FILE).toString())) }
+        val backward = lazy { loadBackward(dir, forward, forwardLabels) }
         val comparisonMap = lazy {
             DataInputStream(BufferedInputStream(dir.resolve(COMPARISONS_FILE).toFile().inputStream())).use { dis ->
                 NodeSerializer.readComparisons(dis)
             }
         }
-        val metadata = lazy {
-            DataInputStream(BufferedInputStream(dir.resolve(METADATA_FILE).toFile().inputStream())).use { dis ->
-                NodeSerializer.loadMetadata(dis, stringTable)
-            }
-        }
+        val descriptors = lazy { readDescriptors(dir, stringTable) }
+        val metadata = lazy { MetadataSections.open(dir.resolve(METADATA_FILE), stringTable, descriptors.value) }
 
         return LazyWebGraphBackedGraph(
             forward = forward,
             backward = backward,
             nodeDataFile = dir.resolve(NODE_DATA_FILE).toFile(),
+            nodeDataBlocks = NodeDataBlocks.load(dir),
             nodeDataVersion = nodeDataVersion,
             stringTable = stringTable,
-            nodeOffsets = nodeIndex.nodeOffsets,
-            nodeTypeIndex = nodeIndex.nodeTypeIndex,
-            forwardLabels = labelBytes,
-            cumulativeOutdeg = cumulativeOutdeg,
+            descriptors = descriptors,
+            nodeIndex = nodeIndex,
+            nodeCache = nodeCache,
+            forwardLabels = forwardLabels,
+            edgeFamilies = edgeFamilies(dir) { graph, labels ->
+                val familyGraph = BVGraph.load(graph.toString())
+                LabelledAdjacency(familyGraph, ArcLabels.heap(familyGraph, BinIO.loadBytes(labels.toString())))
+            },
             comparisonMap = comparisonMap,
             metadata = metadata,
+            callSiteIndex = lazy { readCallSiteIndex(dir, stringTable) },
+            indexes = persistedIndexes(dir, stringTable),
+            typeClosure = lazy { readTypeClosure(dir, stringTable) },
+            callSiteColumns = lazy { readCallSiteColumns(dir, stringTable, descriptors) },
             resourceAccessor = lazy { PersistedResourceStore.load(dir) }
         )
     }
@@ -299,16 +578,24 @@ object GraphStore {
     /**
      * Load a graph with memory-mapped node data. Edge structures, metadata,
      * and resources are loaded on first use, while node data is memory-mapped.
+     * The forward BVGraph and its labels are mapped too, with label offsets
+     * in an Elias-Fano list (see [ArcLabels.mapped]). The Elias-Fano lists of
+     * the BVGraphs, the labels and the [SuccinctNodeIndex] stay on heap by
+     * design, at a few bits per node or arc.
      *
      * The OS page cache manages which node pages are in physical RAM.
      * No JVM heap allocation for node data, and no system calls per node access
-     * (unlike [loadLazy] which uses [RandomAccessFile.seek]).
+     * (unlike [loadLazy] which reads each node with a positional file read).
+     *
+     * @param nodeCache cache of decoded nodes, as for [loadLazy].
      */
-    fun loadMapped(dir: Path): Graph {
+    fun loadMapped(dir: Path, nodeCache: NodeCache? = null): Graph {
         require(Files.isDirectory(dir)) { notDirectoryMessage(dir) }
+        // Claim the cache before opening anything a rejected cache would leak
+        nodeCache?.attach()
 
         val (nodeDataVersion, _) = readNodeDataHeader(dir)
-        val nodeIndex = readNodeIndex(dir)
+        val nodeIndex = loadNodeIndex(dir)
 
         val nodeDataPath = dir.resolve(NODE_DATA_FILE)
         val channel = FileChannel.open(nodeDataPath, StandardOpenOption.READ)
@@ -316,59 +603,53 @@ object GraphStore {
         channel.close()
 
         val stringTable = StringTable.load(dir)
-        val forward = lazy { BVGraph.load(dir.resolve(FORWARD_GRAPH).toString()) }
-        val backward = lazy { loadBackward(forward.value) }
-        val labelBytes = lazy { BinIO.loadBytes(dir.resolve(LABELS_FILE).toString()) }
-        val cumulativeOutdeg = lazy { buildCumulativeOutdeg(forward.value) }
+        val forward = lazy { BVGraph.loadMapped(dir.resolve(FORWARD_GRAPH).toString()) }
+        val forwardLabels = lazy {
+            ArcLabels.mapped(forward.value, dir.resolve(LABELS_FILE), dir.resolve(LABELS_FILE + LABEL_OFFSETS_SUFFIX))
+        }
+        val backward = lazy { loadBackward(dir, forward, forwardLabels) }
         val comparisonMap = lazy {
             DataInputStream(BufferedInputStream(dir.resolve(COMPARISONS_FILE).toFile().inputStream())).use { dis ->
                 NodeSerializer.readComparisons(dis)
             }
         }
-        val metadata = lazy {
-            DataInputStream(BufferedInputStream(dir.resolve(METADATA_FILE).toFile().inputStream())).use { dis ->
-                NodeSerializer.loadMetadata(dis, stringTable)
-            }
-        }
+        val descriptors = lazy { readDescriptors(dir, stringTable) }
+        val metadata = lazy { MetadataSections.open(dir.resolve(METADATA_FILE), stringTable, descriptors.value) }
 
         return MappedWebGraphBackedGraph(
             forward = forward,
             backward = backward,
             mappedNodeData = mappedBuffer,
+            nodeDataBlocks = NodeDataBlocks.load(dir),
             nodeDataVersion = nodeDataVersion,
             stringTable = stringTable,
-            nodeOffsets = nodeIndex.nodeOffsets,
-            nodeTypeIndex = nodeIndex.nodeTypeIndex,
-            forwardLabels = labelBytes,
-            cumulativeOutdeg = cumulativeOutdeg,
+            descriptors = descriptors,
+            nodeIndex = nodeIndex,
+            nodeCache = nodeCache,
+            forwardLabels = forwardLabels,
+            edgeFamilies = edgeFamilies(dir) { graph, labels ->
+                val familyGraph = BVGraph.loadMapped(graph.toString())
+                LabelledAdjacency(familyGraph, ArcLabels.mapped(familyGraph, labels, offsetsFile(labels)))
+            },
             comparisonMap = comparisonMap,
             metadata = metadata,
+            callSiteIndex = lazy { readCallSiteIndex(dir, stringTable) },
+            indexes = persistedIndexes(dir, stringTable),
+            typeClosure = lazy { readTypeClosure(dir, stringTable) },
+            callSiteColumns = lazy { readCallSiteColumns(dir, stringTable, descriptors) },
             resourceAccessor = lazy { PersistedResourceStore.load(dir) }
         )
     }
 
     /**
-     * Build forward adjacency, labels, and comparisons in 2 sequential passes.
+     * Build forward adjacency and labels from the edge spool written by [save].
      *
-     * Pass 1: count unique outdegree per node.
-     * Pass 2: fill sorted targets + encode labels + extract comparisons.
+     * Each spool record is `from`, its outdegree, then `(to, label)` pairs
+     * with ascending, distinct targets, so records can be copied straight
+     * into place once [outdeg] has been turned into offsets.
      */
-    private fun buildForwardData(
-        graph: Graph,
-        numNodes: Int,
-        comparisonMap: MutableMap<Long, BranchComparison>
-    ): Pair<PrecomputedAdjacency, ByteArray> {
-        // Pass 1: count outdegree
-        val outdeg = IntArray(numNodes)
-        for (node in 0 until numNodes) {
-            val targets = mutableSetOf<Int>()
-            for (edge in graph.outgoing(NodeId(node))) {
-                targets.add(edge.to.value)
-            }
-            outdeg[node] = targets.size
-        }
-
-        // Build offsets (prefix sum)
+    private fun readForwardSpool(edgeSpool: Path, outdeg: IntArray): Pair<PrecomputedAdjacency, ByteArray> {
+        val numNodes = outdeg.size
         val offsets = LongArray(numNodes + 1)
         for (i in 0 until numNodes) {
             offsets[i + 1] = offsets[i] + outdeg[i]
@@ -377,57 +658,44 @@ object GraphStore {
         val targets = IntArray(totalArcs)
         val labels = ByteArray(totalArcs)
 
-        // Pass 2: fill targets + labels + comparisons
-        for (node in 0 until numNodes) {
-            val edgesByTarget = mutableMapOf<Int, Edge>()
-            for (edge in graph.outgoing(NodeId(node))) {
-                edgesByTarget[edge.to.value] = edge
-            }
-            val sorted = edgesByTarget.keys.sorted()
-            val start = offsets[node].toInt()
-            for ((i, to) in sorted.withIndex()) {
-                targets[start + i] = to
-                val edge = edgesByTarget[to]!!
-                labels[start + i] = NodeSerializer.encodeEdge(edge).toByte()
-                if (edge is ControlFlowEdge && edge.comparison != null) {
-                    val key = node.toLong() shl INT_BITS or (to.toLong() and UNSIGNED_INT_MASK)
-                    comparisonMap[key] = edge.comparison!!
+        DataInputStream(BufferedInputStream(edgeSpool.toFile().inputStream())).use { dis ->
+            var remaining = totalArcs
+            while (remaining > 0) {
+                val from = dis.readInt()
+                val count = dis.readInt()
+                val start = offsets[from].toInt()
+                for (i in 0 until count) {
+                    targets[start + i] = dis.readInt()
+                    labels[start + i] = dis.readByte()
                 }
+                remaining -= count
             }
         }
 
         return PrecomputedAdjacency(numNodes, targets, offsets) to labels
     }
 
-    /**
-     * Collect strings from a single node (avoids building a list of all nodes).
-     */
-    private fun collectSingleNodeStrings(node: Node, dest: MutableSet<String>) {
-        NodeSerializer.collectNodeStrings(listOf(node), dest)
-    }
-
-    /**
-     * Build a cumulative outdegree array for O(1) label offset lookup.
-     * `cumulativeOutdeg[i]` = sum of outdegree(0..i-1), so the labels for
-     * node `i` start at `forwardLabels[cumulativeOutdeg[i]]`.
-     */
-    private fun buildCumulativeOutdeg(forward: ImmutableGraph): LongArray {
-        val numNodes = forward.numNodes()
-        val cumOutdeg = LongArray(numNodes + 1)
-        for (i in 0 until numNodes) {
-            cumOutdeg[i + 1] = cumOutdeg[i] + forward.outdegree(i)
+    internal fun readFully(channel: FileChannel, buffer: ByteBuffer, position: Long) {
+        var at = position
+        while (buffer.hasRemaining()) {
+            val read = channel.read(buffer, at)
+            if (read < 0) throw EOFException("Unexpected end of ${channel.size()}-byte file at $at")
+            at += read
         }
-        return cumOutdeg
     }
 
     /**
      * Flat sorted adjacency: targets[offsets[node]..offsets[node+1]] are the
      * sorted, deduplicated successors of node. Zero per-node allocation on access.
+     *
+     * [labels], when present, holds the 8-bit edge label of each entry in
+     * [targets] (used by the transpose so incoming edges need no forward lookup).
      */
     internal class PrecomputedAdjacency(
         val numNodes: Int,
         val targets: IntArray,
-        val offsets: LongArray
+        val offsets: LongArray,
+        val labels: ByteArray? = null
     ) {
         fun outdegree(node: Int): Int = (offsets[node + 1] - offsets[node]).toInt()
         fun successorArray(node: Int): IntArray {
@@ -439,29 +707,162 @@ object GraphStore {
 
     /**
      * Wraps a [PrecomputedAdjacency] as a WebGraph [ImmutableGraph] for BVGraph storage.
-     * Zero allocation per node access -- successorArray returns a copy of the pre-sorted slice.
+     * successorArray returns a copy of the pre-sorted slice; successors iterates
+     * it in place.
      */
     internal class PrecomputedImmutableGraph(
-        private val adj: PrecomputedAdjacency
+        internal val adj: PrecomputedAdjacency
     ) : ImmutableGraph() {
         override fun numNodes(): Int = adj.numNodes
         override fun randomAccess(): Boolean = true
         override fun outdegree(x: Int): Int = adj.outdegree(x)
         override fun successorArray(x: Int): IntArray = adj.successorArray(x)
-        override fun successors(x: Int): LazyIntIterator = LazyIntIterators.wrap(successorArray(x))
+        override fun successors(x: Int): LazyIntIterator = object : LazyIntIterator {
+            private var next = adj.offsets[x].toInt()
+            private val end = adj.offsets[x + 1].toInt()
+
+            override fun nextInt(): Int = if (next < end) adj.targets[next++] else -1
+
+            override fun skip(n: Int): Int {
+                val skipped = minOf(n, end - next)
+                next += skipped
+                return skipped
+            }
+        }
         override fun copy(): ImmutableGraph = this
     }
 
-    /** Build backward adjacency from forward BVGraph. */
-    private fun loadBackward(forward: ImmutableGraph): ImmutableGraph =
-        buildBackwardFromForward(forward)
+    /**
+     * Successor lists of [graph] labelled by [labels] in the same order: the
+     * transpose of the forward graph, whose successors are the predecessors
+     * of a node, or an [EdgeFamilies] sub-graph.
+     */
+    internal class LabelledAdjacency(
+        val graph: ImmutableGraph,
+        val labels: ArcLabels
+    ) {
+        val numNodes: Int get() = graph.numNodes()
+    }
+
+    private fun storeBVGraph(graph: ImmutableGraph, basename: Path, compressionThreads: Int) {
+        BVGraph.store(
+            graph, basename.toString(),
+            BVGraph.DEFAULT_WINDOW_SIZE, BVGraph.DEFAULT_MAX_REF_COUNT,
+            BVGraph.DEFAULT_MIN_INTERVAL_LENGTH, BVGraph.DEFAULT_ZETA_K,
+            0, compressionThreads
+        )
+    }
+
+    /**
+     * Store the transpose of [forward] as the BVGraph [basename] and its
+     * labels in [labelsFile] (e.g. `backward.*` and `graph.backward.labels`),
+     * with the same compression parameters as the forward graph. The labels
+     * are written last, so their presence means the transpose is complete.
+     */
+    private fun storeBackward(
+        forward: ImmutableGraph,
+        forwardLabels: ArcLabels,
+        basename: Path,
+        labelsFile: Path,
+        compressionThreads: Int
+    ) {
+        Files.deleteIfExists(labelsFile)
+        val backward = buildBackwardFromForward(forward, forwardLabels)
+        storeBVGraph(backward, basename, compressionThreads)
+        val labels = checkNotNull(backward.adj.labels)
+        ArcLabels.storeOffsets(backward.adj.offsets, labels.size.toLong(), offsetsFile(labelsFile))
+        BinIO.storeBytes(labels, labelsFile.toString())
+    }
+
+    /**
+     * Store the arcs of [family] in [forward] (labelled by [labels]) as its
+     * [EdgeFamilies] sub-graph, and its transpose when [storeBackward] is set.
+     */
+    @Suppress("LongParameterList")
+    private fun storeEdgeFamily(
+        forward: PrecomputedAdjacency,
+        labels: ByteArray,
+        family: EdgeFamilies.Family,
+        dir: Path,
+        storeBackward: Boolean,
+        compressionThreads: Int
+    ) {
+        val labelTable = NodeSerializer.cursorLabelTable()
+        fun inFamily(arc: Int): Boolean {
+            val label = labelTable[labels[arc].toInt() and BYTE_MASK]
+            return label >= 0 && EdgeLabels.matches(family.mask, label)
+        }
+        val offsets = LongArray(forward.numNodes + 1)
+        for (node in 0 until forward.numNodes) {
+            var count = 0L
+            for (arc in forward.offsets[node].toInt() until forward.offsets[node + 1].toInt()) {
+                if (inFamily(arc)) count++
+            }
+            offsets[node + 1] = offsets[node] + count
+        }
+        val numArcs = offsets[forward.numNodes].toInt()
+        val targets = IntArray(numArcs)
+        val familyLabels = ByteArray(numArcs)
+        var next = 0
+        for (arc in 0 until forward.offsets[forward.numNodes].toInt()) {
+            if (!inFamily(arc)) continue
+            targets[next] = forward.targets[arc]
+            familyLabels[next++] = labels[arc]
+        }
+
+        val graph = PrecomputedImmutableGraph(PrecomputedAdjacency(forward.numNodes, targets, offsets))
+        if (storeBackward) {
+            storeBackward(
+                graph, HeapArcLabels(familyLabels, offsets),
+                dir.resolve(family.backwardGraph), dir.resolve(family.backwardLabels), compressionThreads
+            )
+        }
+        storeBVGraph(graph, dir.resolve(family.forwardGraph), compressionThreads)
+        ArcLabels.storeOffsets(offsets, numArcs.toLong(), offsetsFile(dir.resolve(family.forwardLabels)))
+        BinIO.storeBytes(familyLabels, dir.resolve(family.forwardLabels).toString())
+    }
+
+    private fun deleteLabelledGraph(basename: Path, labelsFile: Path) {
+        Files.deleteIfExists(labelsFile)
+        Files.deleteIfExists(offsetsFile(labelsFile))
+        BVGRAPH_EXTENSIONS.forEach { Files.deleteIfExists(basename.resolveSibling(basename.fileName.toString() + it)) }
+    }
+
+    private fun edgeFamilies(dir: Path, open: (graph: Path, labels: Path) -> LabelledAdjacency): EdgeFamilies? =
+        if (EdgeFamilies.exists(dir)) EdgeFamilies(dir, open) else null
+
+    private fun offsetsFile(labelsFile: Path): Path =
+        labelsFile.resolveSibling(labelsFile.fileName.toString() + LABEL_OFFSETS_SUFFIX)
+
+    /**
+     * Memory-map the persisted transpose and its labels when the graph was
+     * saved with one; otherwise build it (with backward-ordered labels) on
+     * heap from the forward graph, which is only loaded in that case.
+     */
+    private fun loadBackward(dir: Path, forward: Lazy<ImmutableGraph>, forwardLabels: Lazy<ArcLabels>): LabelledAdjacency {
+        val labelsFile = dir.resolve(BACKWARD_LABELS_FILE)
+        if (Files.exists(labelsFile)) {
+            val graph = BVGraph.loadMapped(dir.resolve(BACKWARD_GRAPH).toString())
+            return LabelledAdjacency(
+                graph,
+                ArcLabels.mapped(graph, labelsFile, dir.resolve(BACKWARD_LABELS_FILE + LABEL_OFFSETS_SUFFIX))
+            )
+        }
+        val adj = buildBackwardFromForward(forward.value, forwardLabels.value).adj
+        return LabelledAdjacency(PrecomputedImmutableGraph(adj), HeapArcLabels(checkNotNull(adj.labels), adj.offsets))
+    }
 
     /**
      * Build backward (transpose) adjacency from forward BVGraph.
      * Two passes over the compressed forward graph -- no intermediate collections.
-     * Memory: IntArray(totalEdges) + LongArray(numNodes+1) + IntArray(numNodes) work array.
+     * Memory: IntArray(totalEdges) + ByteArray(totalEdges) + LongArray(numNodes+1)
+     * + IntArray(numNodes) work array.
+     *
+     * Each forward edge's label is copied next to its transposed entry, so
+     * incoming edges can be decoded without binary-searching the predecessor's
+     * successor list.
      */
-    private fun buildBackwardFromForward(forward: ImmutableGraph): PrecomputedImmutableGraph {
+    private fun buildBackwardFromForward(forward: ImmutableGraph, forwardLabels: ArcLabels): PrecomputedImmutableGraph {
         val numNodes = forward.numNodes()
 
         // Pass 1: count indegree
@@ -480,92 +881,68 @@ object GraphStore {
             offsets[i + 1] = offsets[i] + backwardDeg[i]
         }
 
-        // Pass 2: fill targets
+        // Pass 2: fill sources + labels. Sources are visited in ascending order,
+        // so each predecessor list comes out sorted without a separate sort pass.
         val targets = IntArray(offsets[numNodes].toInt())
+        val labels = ByteArray(targets.size)
         val fillPos = IntArray(numNodes)
         for (node in 0 until numNodes) {
             val succs = forward.successorArray(node)
             val outdeg = forward.outdegree(node)
+            val labelStart = forwardLabels.start(node)
             for (i in 0 until outdeg) {
                 val to = succs[i]
-                targets[(offsets[to] + fillPos[to]).toInt()] = node
+                val slot = (offsets[to] + fillPos[to]).toInt()
+                targets[slot] = node
+                labels[slot] = forwardLabels.label(labelStart + i)
                 fillPos[to]++
             }
         }
 
-        // Sort each node's predecessors
-        for (node in 0 until numNodes) {
-            val start = offsets[node].toInt()
-            val end = offsets[node + 1].toInt()
-            java.util.Arrays.sort(targets, start, end)
-        }
-
-        return PrecomputedImmutableGraph(PrecomputedAdjacency(numNodes, targets, offsets))
+        return PrecomputedImmutableGraph(PrecomputedAdjacency(numNodes, targets, offsets, labels))
     }
 
     /**
-     * Result of reading and parsing the node index file.
-     */
-    private class NodeIndexData(
-        val nodeOffsets: LongArray,
-        val nodeTypeIndex: HashMap<Class<out Node>, IntArray>
-    )
-
-    /**
-     * Read the node index file and return parsed offsets and type index.
+     * Load the [SuccinctNodeIndex] when the graph was saved with one,
+     * otherwise read `graph.nodeindex` into an [ArrayNodeIndex].
      */
-    private fun readNodeIndex(dir: Path): NodeIndexData {
+    private fun loadNodeIndex(dir: Path): NodeIndex {
         val nodeIndexFile = dir.resolve(NODE_INDEX_FILE).toFile()
         require(nodeIndexFile.exists()) {
             "Node index file not found: $nodeIndexFile. Re-save the graph to generate it."
         }
+        return if (SuccinctNodeIndex.exists(dir)) SuccinctNodeIndex.load(dir) else readNodeIndex(nodeIndexFile)
+    }
+
+    /**
+     * Read the node index file into per-id offsets and tags.
+     */
+    private fun readNodeIndex(nodeIndexFile: File): ArrayNodeIndex {
 
-        val nodeTypeByTag = HashMap<Int, IntArrayList>()
         lateinit var nodeOffsets: LongArray
+        lateinit var nodeTags: ByteArray
         DataInputStream(BufferedInputStream(nodeIndexFile.inputStream())).use { dis ->
             NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEINDEX)
             val nodeCount = dis.readInt()
             nodeOffsets = LongArray(nodeCount) { -1L }
+            nodeTags = ByteArray(nodeCount) { -1 }
             repeat(nodeCount) {
                 val nodeId = dis.readInt()
-                val tag = dis.readByte().toInt()
+                val tag = dis.readByte()
                 val offset = dis.readLong()
                 if (nodeId >= nodeOffsets.size) {
                     val oldSize = nodeOffsets.size
                     nodeOffsets = nodeOffsets.copyOf(nodeId + 1)
+                    nodeTags = nodeTags.copyOf(nodeId + 1)
                     java.util.Arrays.fill(nodeOffsets, oldSize, nodeOffsets.size, -1L)
+                    java.util.Arrays.fill(nodeTags, oldSize, nodeTags.size, -1)
                 }
                 nodeOffsets[nodeId] = offset
-                nodeTypeByTag.getOrPut(tag) { IntArrayList() }.add(nodeId)
+                nodeTags[nodeId] = if (tag in 0 until NodeSerializer.NODE_CLASSES.size) tag else -1
             }
         }
 
-        // Map tags to concrete Node classes
-        val nodeTypeIndex = HashMap<Class<out Node>, IntArray>()
-        val tagToClass = mapOf(
-            NodeSerializer.TAG_INT_CONSTANT to IntConstant::class.java,
-            NodeSerializer.TAG_STRING_CONSTANT to StringConstant::class.java,
-            NodeSerializer.TAG_LONG_CONSTANT to LongConstant::class.java,
-            NodeSerializer.TAG_FLOAT_CONSTANT to FloatConstant::class.java,
-            NodeSerializer.TAG_DOUBLE_CONSTANT to DoubleConstant::class.java,
-            NodeSerializer.TAG_BOOLEAN_CONSTANT to BooleanConstant::class.java,
-            NodeSerializer.TAG_NULL_CONSTANT to NullConstant::class.java,
-            NodeSerializer.TAG_ENUM_CONSTANT to EnumConstant::class.java,
-            NodeSerializer.TAG_LOCAL_VARIABLE to LocalVariable::class.java,
-            NodeSerializer.TAG_FIELD_NODE to FieldNode::class.java,
-            NodeSerializer.TAG_PARAMETER_NODE to ParameterNode::class.java,
-            NodeSerializer.TAG_RETURN_NODE to ReturnNode::class.java,
-            NodeSerializer.TAG_CALL_SITE_NODE to CallSiteNode::class.java,
-            NodeSerializer.TAG_ANNOTATION_NODE to AnnotationNode::class.java,
-            NodeSerializer.TAG_RESOURCE_VALUE_NODE to ResourceValueNode::class.java,
-            NodeSerializer.TAG_RESOURCE_FILE_NODE to ResourceFileNode::class.java
-        )
-        for ((tag, ids) in nodeTypeByTag) {
-            val cls = tagToClass[tag] ?: continue
-            nodeTypeIndex[cls] = ids.toIntArray()
-        }
-
-        return NodeIndexData(nodeOffsets, nodeTypeIndex)
+        return ArrayNodeIndex(nodeOffsets, nodeTags)
     }
 
     /**
@@ -576,52 +953,139 @@ object GraphStore {
     fun ensureNodeIndex(dir: Path) {
         val indexFile = dir.resolve(NODE_INDEX_FILE)
         if (Files.exists(indexFile)) return
+        // A succinct index without graph.nodeindex may not describe the current nodedata
+        SuccinctNodeIndex.delete(dir)
         val stringTable = StringTable.load(dir)
-        buildNodeIndex(dir.resolve(NODE_DATA_FILE), indexFile, stringTable)
+        buildNodeIndex(dir, indexFile, stringTable, readDescriptors(dir, stringTable))
     }
 
-    internal fun buildNodeIndex(nodeDataPath: Path, nodeIndexPath: Path, stringTable: StringTable) {
+    internal fun buildNodeIndex(
+        dir: Path,
+        nodeIndexPath: Path,
+        stringTable: StringTable,
+        descriptors: DescriptorPool = DescriptorPool()
+    ) {
         // Stream directly: read nodedata, write nodeindex entry by entry (no intermediate list)
-        RandomAccessFile(nodeDataPath.toFile(), "r").use { raf ->
-            val nodeDataVersion = NodeSerializer.readHeader(raf, NodeSerializer.MAGIC_NODEDATA)
-            val count = raf.readInt()
+        val input = CountingInputStream(openNodeData(dir))
+        DataInputStream(input).use { dis ->
+            val nodeDataVersion = NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEDATA)
+            val count = dis.readInt()
             DataOutputStream(BufferedOutputStream(nodeIndexPath.toFile().outputStream())).use { dos ->
                 NodeSerializer.writeHeader(dos, NodeSerializer.MAGIC_NODEINDEX)
                 dos.writeInt(count)
                 repeat(count) {
-                    val offset = raf.filePointer
-                    val nodeId = raf.readInt()
-                    val tag = raf.readByte().toInt()
-                    dos.writeInt(nodeId)
-                    dos.writeByte(tag)
+                    val offset = input.bytesRead
+                    val node = NodeSerializer.readNode(dis, stringTable, nodeDataVersion, descriptors)
+                    dos.writeInt(node.id.value)
+                    dos.writeByte(NodeSerializer.NODE_CLASSES.indexOf(node.javaClass))
                     dos.writeLong(offset)
-                    // Seek back and read full node to advance raf past the record
-                    raf.seek(offset)
-                    val dis = object : DataInputStream(object : InputStream() {
-                        override fun read(): Int = raf.read()
-                        override fun read(b: ByteArray, off: Int, len: Int): Int = raf.read(b, off, len)
-                    }) {}
-                    NodeSerializer.readNode(dis, stringTable, nodeDataVersion)
                 }
             }
         }
     }
 
+    /**
+     * Read the persisted [CallSiteIndex], or `null` for graphs saved before
+     * `graph.callsites` existed (callers then index the call site nodes themselves).
+     */
+    private fun readCallSiteIndex(dir: Path, stringTable: StringTable): CallSiteIndex? {
+        val file = dir.resolve(CALL_SITES_FILE).toFile()
+        if (!file.exists()) return null
+        return DataInputStream(BufferedInputStream(file.inputStream())).use { dis ->
+            NodeSerializer.readCallSiteIndex(dis, stringTable)
+        }
+    }
+
+    /**
+     * The persisted [PropertyIndex]es and [TrigramIndex]es, each loaded on first
+     * use; none for graphs saved without them (callers then scan nodes instead).
+     */
+    private fun persistedIndexes(dir: Path, stringTable: StringTable): PersistedIndexes =
+        PersistedIndexes(dir.resolve(PROPERTY_INDEX_FILE), dir.resolve(TRIGRAMS_FILE), stringTable)
+
+    /**
+     * Read the persisted [TypeClosure], or `null` for graphs saved before
+     * `graph.types` existed (callers then build it from the metadata).
+     */
+    private fun readTypeClosure(dir: Path, stringTable: StringTable): TypeClosure? {
+        val file = dir.resolve(TYPES_FILE).toFile()
+        if (!file.exists()) return null
+        return DataInputStream(BufferedInputStream(file.inputStream())).use { dis ->
+            NodeSerializer.readTypeClosure(dis, stringTable)
+        }
+    }
+
+    /**
+     * Read the persisted [CallSiteColumns], or `null` for graphs saved before
+     * `graph.columns.callsite.*` existed (callers then read the call site nodes).
+     * Method ids are resolved through [descriptors] only when first used.
+     */
+    private fun readCallSiteColumns(dir: Path, stringTable: StringTable, descriptors: Lazy<DescriptorPool>): CallSiteColumns? {
+        val files = CallSiteColumns.COLUMNS.associateWith { dir.resolve(CALL_SITE_COLUMNS_PREFIX + it).toFile() }
+        if (!files.values.all { it.exists() }) return null
+        val columns = files.mapValues { (_, file) ->
+            DataInputStream(BufferedInputStream(file.inputStream())).use { dis -> NodeSerializer.readIntColumn(dis) }
+        }
+        return CallSiteColumns.of(
+            columns,
+            { stringTable.get(it) },
+            { descriptors.value.methodAt(it) },
+            { stringTable.indexOf(it) }
+        )
+    }
+
+    /**
+     * Read the persisted descriptor table, or an empty pool for graphs saved
+     * before `graph.descriptors` existed (their inline descriptors are interned
+     * into it as nodes are read).
+     */
+    private fun readDescriptors(dir: Path, stringTable: StringTable): DescriptorPool {
+        val file = dir.resolve(DESCRIPTORS_FILE).toFile()
+        if (!file.exists()) return DescriptorPool()
+        return DataInputStream(BufferedInputStream(file.inputStream())).use { dis ->
+            NodeSerializer.readDescriptors(dis, stringTable)
+        }
+    }
+
     private fun readNodeDataHeader(dir: Path): Pair<Int, Int> {
-        return DataInputStream(BufferedInputStream(dir.resolve(NODE_DATA_FILE).toFile().inputStream())).use { dis ->
+        return DataInputStream(openNodeData(dir)).use { dis ->
             val version = NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEDATA)
             version to dis.readInt()
         }
     }
 
+    /**
+     * Stream of the uncompressed `graph.nodedata` in [dir], decompressing
+     * its blocks when it was saved block-compressed.
+     */
+    private fun openNodeData(dir: Path): InputStream {
+        val file = dir.resolve(NODE_DATA_FILE)
+        val blocks = NodeDataBlocks.load(dir) ?: return BufferedInputStream(file.toFile().inputStream())
+        val channel = FileChannel.open(file, StandardOpenOption.READ)
+        val data = CompressedNodeData(blocks) { position, into -> readFully(channel, ByteBuffer.wrap(into), position) }
+        return object : FilterInputStream(data.inputStream()) {
+            override fun close() = channel.close()
+        }
+    }
+
     internal fun collectMetadata(graph: Graph): GraphMetadata {
-        // Collect type hierarchy
-        val supertypes = mutableMapOf<String, Set<TypeDescriptor>>()
-        val subtypes = mutableMapOf<String, Set<TypeDescriptor>>()
+        val collector = MetadataCollector()
+        graph.nodes(Node::class.java).forEach(collector::add)
+        return collector.finish(graph)
+    }
+
+    /**
+     * Collects [GraphMetadata] alongside another walk over the nodes: [add]
+     * records the types, class members and enum constants each node refers
+     * to, and [finish] queries the graph for their hierarchy, annotations and
+     * values.
+     */
+    private class MetadataCollector {
+        private val allTypes = mutableSetOf<TypeDescriptor>()
+        private val classMembers = mutableSetOf<Pair<String, String>>()
+        private val enumConstants = mutableSetOf<Pair<String, String>>()
 
-        // Walk all types referenced in the graph (nodes + methods)
-        val allTypes = mutableSetOf<TypeDescriptor>()
-        graph.nodes(Node::class.java).forEach { node ->
+        fun add(node: Node) {
             when (node) {
                 is LocalVariable -> {
                     allTypes.add(node.type)
@@ -630,103 +1094,103 @@ object GraphStore {
                 is FieldNode -> {
                     allTypes.add(node.descriptor.declaringClass)
                     allTypes.add(node.descriptor.type)
+                    classMembers.add(node.descriptor.declaringClass.className to node.descriptor.name)
                 }
                 is ParameterNode -> {
                     allTypes.add(node.type)
                     allTypes.add(node.method.declaringClass)
+                    classMembers.add(node.method.declaringClass.className to node.method.name)
                 }
                 is ReturnNode -> {
                     node.actualType?.let { allTypes.add(it) }
                     allTypes.add(node.method.declaringClass)
                     allTypes.add(node.method.returnType)
+                    classMembers.add(node.method.declaringClass.className to node.method.name)
                 }
                 is CallSiteNode -> {
                     allTypes.add(node.callee.declaringClass)
                     allTypes.add(node.callee.returnType)
                     allTypes.add(node.caller.declaringClass)
+                    classMembers.add(node.callee.declaringClass.className to node.callee.name)
+                }
+                is EnumConstant -> {
+                    allTypes.add(node.enumType)
+                    enumConstants.add(node.enumType.className to node.enumName)
                 }
-                is EnumConstant -> allTypes.add(node.enumType)
                 is AnnotationNode -> {}
                 else -> {}
             }
         }
-        // Also collect types from registered methods
-        graph.methods(MethodPattern()).forEach { method ->
-            allTypes.add(method.declaringClass)
-            allTypes.add(method.returnType)
-            method.parameterTypes.forEach { allTypes.add(it) }
-        }
 
-        // Include all types that have hierarchy info (covers types not referenced by nodes)
-        graph.typeHierarchyTypes().forEach { allTypes.add(TypeDescriptor(it)) }
+        fun finish(graph: Graph): GraphMetadata {
+            // Collect type hierarchy
+            val supertypes = mutableMapOf<String, Set<TypeDescriptor>>()
+            val subtypes = mutableMapOf<String, Set<TypeDescriptor>>()
 
-        for (type in allTypes) {
-            val sups = graph.supertypes(type).toSet()
-            if (sups.isNotEmpty()) supertypes[type.className] = sups
-            val subs = graph.subtypes(type).toSet()
-            if (subs.isNotEmpty()) subtypes[type.className] = subs
-        }
+            // Also collect types from registered methods
+            graph.methods(MethodPattern()).forEach { method ->
+                allTypes.add(method.declaringClass)
+                allTypes.add(method.returnType)
+                method.parameterTypes.forEach { allTypes.add(it) }
+            }
 
-        // Collect methods
-        val methods = graph.methods(MethodPattern())
-            .associateBy { it.signature }
+            // Include all types that have hierarchy info (covers types not referenced by nodes)
+            graph.typeHierarchyTypes().forEach { allTypes.add(TypeDescriptor(it)) }
 
-        // Collect enum values - we can't enumerate all enum keys from Graph interface,
-        // so we extract from EnumConstant nodes
-        val enumValues = mutableMapOf<String, List<Any?>>()
-        graph.nodes(EnumConstant::class.java).forEach { ec ->
-            val key = "${ec.enumType.className}#${ec.enumName}"
-            if (key !in enumValues) {
-                val values = graph.enumValues(ec.enumType.className, ec.enumName)
-                if (values != null) enumValues[key] = values
+            for (type in allTypes) {
+                val sups = graph.supertypes(type).toSet()
+                if (sups.isNotEmpty()) supertypes[type.className] = sups
+                val subs = graph.subtypes(type).toSet()
+                if (subs.isNotEmpty()) subtypes[type.className] = subs
             }
-        }
 
-        // Collect member annotations - extract from all classes referenced in nodes
-        val memberAnnotations = mutableMapOf<String, Map<String, Map<String, Any?>>>()
-        val classMembers = mutableSetOf<Pair<String, String>>()
-        graph.nodes(Node::class.java).forEach { node ->
-            when (node) {
-                is FieldNode -> classMembers.add(node.descriptor.declaringClass.className to node.descriptor.name)
-                is CallSiteNode -> classMembers.add(node.callee.declaringClass.className to node.callee.name)
-                is ParameterNode -> classMembers.add(node.method.declaringClass.className to node.method.name)
-                is ReturnNode -> classMembers.add(node.method.declaringClass.className to node.method.name)
-                is AnnotationNode -> {}
-                else -> {}
+            // Collect methods
+            val methods = graph.methods(MethodPattern())
+                .associateBy { it.signature }
+
+            // Collect enum values - we can't enumerate all enum keys from Graph interface,
+            // so we extract them for the EnumConstant nodes seen
+            val enumValues = mutableMapOf<String, List<Any?>>()
+            for ((enumClass, enumName) in enumConstants) {
+                val values = graph.enumValues(enumClass, enumName)
+                if (values != null) enumValues["$enumClass#$enumName"] = values
             }
-        }
-        // Also add <class> level annotations
-        val allClasses = classMembers.map { it.first }.toSet()
-        for (className in allClasses) {
-            classMembers.add(className to "<class>")
-        }
-        for ((className, memberName) in classMembers) {
-            val annotations = graph.memberAnnotations(className, memberName)
-            if (annotations.isNotEmpty()) {
-                memberAnnotations["$className#$memberName"] = annotations
+
+            // Collect member annotations for all classes referenced in nodes,
+            // including <class> level annotations
+            val memberAnnotations = mutableMapOf<String, Map<String, Map<String, Any?>>>()
+            val allClasses = classMembers.map { it.first }.toSet()
+            for (className in allClasses) {
+                classMembers.add(className to "<class>")
+            }
+            for ((className, memberName) in classMembers) {
+                val annotations = graph.memberAnnotations(className, memberName)
+                if (annotations.isNotEmpty()) {
+                    memberAnnotations["$className#$memberName"] = annotations
+                }
             }
-        }
 
-        // Collect branch scopes
-        val branchScopes = graph.branchScopes().map { bs ->
-            BranchScopeData(
-                conditionNodeId = bs.conditionNodeId.value,
-                method = bs.method,
-                comparison = bs.comparison,
-                trueBranchNodeIds = bs.trueBranchNodeIds.toIntArray(),
-                falseBranchNodeIds = bs.falseBranchNodeIds.toIntArray()
+            // Collect branch scopes
+            val branchScopes = graph.branchScopes().map { bs ->
+                BranchScopeData(
+                    conditionNodeId = bs.conditionNodeId.value,
+                    method = bs.method,
+                    comparison = bs.comparison,
+                    trueBranchNodeIds = bs.trueBranchNodeIds.toIntArray(),
+                    falseBranchNodeIds = bs.falseBranchNodeIds.toIntArray()
+                )
+            }.toList()
+
+            return GraphMetadata(
+                methods = methods,
+                supertypes = supertypes,
+                subtypes = subtypes,
+                enumValues = enumValues,
+                classOrigins = graph.classOrigins(),
+                artifactDependencies = graph.artifactDependencies(),
+                memberAnnotations = memberAnnotations,
+                branchScopes = branchScopes
             )
-        }.toList()
-
-        return GraphMetadata(
-            methods = methods,
-            supertypes = supertypes,
-            subtypes = subtypes,
-            enumValues = enumValues,
-            classOrigins = graph.classOrigins(),
-            artifactDependencies = graph.artifactDependencies(),
-            memberAnnotations = memberAnnotations,
-            branchScopes = branchScopes
-        )
+        }
     }
 }
@@ -3,104 +3,142 @@ package io.johnsonlee.graphite.webgraph
 import io.johnsonlee.graphite.core.BranchComparison
 import io.johnsonlee.graphite.core.BranchScope
 import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.DescriptorPool
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
 import io.johnsonlee.graphite.core.TypeDescriptor
+import io.johnsonlee.graphite.graph.CallSiteColumns
+import io.johnsonlee.graphite.graph.CallSiteIndex
+import io.johnsonlee.graphite.graph.EdgeConsumer
+import io.johnsonlee.graphite.graph.EdgeLabels
 import io.johnsonlee.graphite.graph.Graph
+import io.johnsonlee.graphite.graph.MethodIndex
 import io.johnsonlee.graphite.graph.MethodPattern
+import io.johnsonlee.graphite.graph.NodeColumns
+import io.johnsonlee.graphite.graph.PropertyIndex
+import io.johnsonlee.graphite.graph.TrigramIndex
+import io.johnsonlee.graphite.graph.TypeClosure
 import io.johnsonlee.graphite.input.ResourceAccessor
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
 import it.unimi.dsi.webgraph.ImmutableGraph
 import java.io.Closeable
 import java.io.DataInputStream
+import java.io.EOFException
 import java.io.File
-import java.io.InputStream
-import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentLinkedQueue
 
 /**
  * A [Graph] backed by WebGraph compression for edges and lazy disk reads for nodes.
  *
- * Node data is read on demand from `graph.nodedata` via [RandomAccessFile.seek],
- * using a pre-built index (nodeId -> file offset). Edge structures, metadata,
- * and resources are loaded on first use.
+ * Node data is read on demand from `graph.nodedata` with positional
+ * [FileChannel] reads, using a pre-built index (nodeId -> file offset). Each
+ * node record is read whole into a pooled direct buffer with one read call,
+ * and reads do not lock, so concurrent queries do not serialize on the file.
+ * Edge structures, metadata, and resources are loaded on first use.
+ *
+ * Call site fields are also available column by column through [nodeColumns]
+ * (loaded on first use), so filters on them do not read node data at all.
  *
  * **Memory profile (5.9M nodes, 6.5M edges):**
  * - BVGraph forward: loaded lazily on first edge traversal
- * - BVGraph backward: built lazily on first incoming query
+ * - BVGraph backward: memory-mapped on first incoming query (built on heap
+ *   when the graph was saved without one)
  * - Edge label map: loaded lazily on first edge traversal
- * - Node index: ~47 MB (nodeId -> offset)
- * - Node type index: ~24 MB (type -> nodeId list)
+ * - Node index: Elias-Fano offsets by node id, a few bits per node (was
+ *   ~47 MB as one `long` per id; still used for graphs saved without it)
+ * - Node type index: Elias-Fano node ids per tag plus a memory-mapped tag byte
+ *   per node id (was ~24 MB of `int` node id lists)
  * - StringTable: ~21 MB
- * - **Open heap before edge traversal: ~92 MB plus object overhead** vs ~4 GB
- *   for eager [WebGraphBackedGraph]
+ * - **Open heap before edge traversal: little more than the StringTable** vs
+ *   ~4 GB for eager [WebGraphBackedGraph]
  *
  * Created by [GraphStore.loadLazy].
  */
 @Suppress("LongParameterList")
 internal class LazyWebGraphBackedGraph(
     private val forward: Lazy<ImmutableGraph>,
-    private val backward: Lazy<ImmutableGraph>,
+    private val backward: Lazy<GraphStore.LabelledAdjacency>,
     private val nodeDataFile: File,
+    /** Block index of a block-compressed [nodeDataFile]; `null` when it is stored uncompressed. */
+    nodeDataBlocks: NodeDataBlocks?,
     private val nodeDataVersion: Int,
     private val stringTable: StringTable,
-    private val nodeOffsets: LongArray,
-    private val nodeTypeIndex: Map<Class<out Node>, IntArray>,
-    private val forwardLabels: Lazy<ByteArray>,
-    private val cumulativeOutdeg: Lazy<LongArray>,
-    private val comparisonMap: Lazy<Map<Long, BranchComparison>>,
-    private val metadata: Lazy<GraphMetadata>,
+    private val descriptors: Lazy<DescriptorPool>,
+    private val nodeIndex: NodeIndex,
+    /** Decoded nodes returned by [node]; `null` to decode on every call. */
+    private val nodeCache: NodeCache?,
+    private val forwardLabels: Lazy<ArcLabels>,
+    /** Per-family sub-graphs; `null` for graphs saved without them. */
+    private val edgeFamilies: EdgeFamilies?,
+    private val comparisonMap: Lazy<Long2ObjectOpenHashMap<BranchComparison>>,
+    private val metadata: Lazy<MetadataSections>,
+    /** Persisted call site index; `null` value for graphs saved without one. */
+    private val callSiteIndex: Lazy<CallSiteIndex?>,
+    /** Persisted property and trigram indexes; none for graphs saved without them. */
+    private val indexes: PersistedIndexes,
+    private val typeClosure: Lazy<TypeClosure?>,
+    /** Persisted call site columns; `null` value for graphs saved without them. */
+    private val callSiteColumns: Lazy<CallSiteColumns?>,
     private val resourceAccessor: Lazy<ResourceAccessor>
 ) : Graph, Closeable {
 
     override val resources: ResourceAccessor
         get() = resourceAccessor.value
 
-    private val openRafs = java.util.Collections.synchronizedList(mutableListOf<RandomAccessFile>())
+    private val nodeData = lazy { FileChannel.open(nodeDataFile.toPath(), StandardOpenOption.READ) }
+
+    private val nodeDataSize: Long by lazy { nodeData.value.size() }
 
-    private val rafLocal = ThreadLocal.withInitial {
-        RandomAccessFile(nodeDataFile, "r").also { openRafs.add(it) }
+    private val compressedNodeData = nodeDataBlocks?.let { blocks ->
+        CompressedNodeData(blocks) { position, into -> GraphStore.readFully(nodeData.value, ByteBuffer.wrap(into), position) }
     }
 
-    private val branchScopeIndex: Map<Int, List<BranchScope>> by lazy {
-        metadata.value.branchScopes.map { raw ->
-            BranchScope(
-                conditionNodeId = NodeId(raw.conditionNodeId),
-                method = raw.method,
-                comparison = raw.comparison,
-                trueBranchNodeIds = IntOpenHashSet(raw.trueBranchNodeIds),
-                falseBranchNodeIds = IntOpenHashSet(raw.falseBranchNodeIds)
-            )
-        }.groupBy { it.conditionNodeId.value }
+    /** Direct buffers of [RECORD_BUFFER_SIZE] bytes, one per concurrent read. */
+    private val recordBuffers = ConcurrentLinkedQueue<ByteBuffer>()
+
+    private val allBranchScopes: List<BranchScope> by lazy { metadata.value.branchScopes.map(::branchScope) }
+
+    private val edgeCursor = WebGraphEdgeCursor(nodeDataVersion, comparisonMap)
+
+    private val callSites: CallSiteIndex by lazy {
+        callSiteIndex.value ?: CallSiteIndex.Builder().apply {
+            nodes(CallSiteNode::class.java).forEach { add(it) }
+        }.build()
     }
 
+    private val closure: TypeClosure by lazy { typeClosure.value ?: TypeClosure.of(metadata.value.supertypes) }
+
+    private val methodIndex: MethodIndex by lazy { MethodIndex(metadata.value.methods.values) }
+
     override fun node(id: NodeId): Node? {
         val nodeId = id.value
-        if (nodeId < 0 || nodeId >= nodeOffsets.size) return null
-        val offset = nodeOffsets[nodeId]
-        if (offset == -1L) return null
-        return readNodeAt(offset)
+        if (nodeCache == null) return readNode(nodeId)
+        return nodeCache.get(nodeId) ?: readNode(nodeId)?.also { nodeCache.put(nodeId, it) }
     }
 
     @Suppress("UNCHECKED_CAST")
-    override fun <T : Node> nodes(type: Class<T>): Sequence<T> {
-        // Fast path: exact type
-        nodeTypeIndex[type]?.let { ids ->
-            return ids.asSequence().mapNotNull { node(NodeId(it)) as? T }
-        }
-        // Slow path: supertype
-        return nodeTypeIndex.entries.asSequence()
-            .filter { type.isAssignableFrom(it.key) }
-            .flatMap { it.value.asSequence() }
-            .mapNotNull { node(NodeId(it)) as? T }
+    override fun <T : Node> nodes(type: Class<T>): Sequence<T> =
+        nodeIndex.ids(type).mapNotNull { readNode(it) as? T }
+
+    private fun readNode(id: Int): Node? {
+        val offset = nodeIndex.offset(id)
+        if (offset == -1L) return null
+        return readNodeAt(id, offset)
     }
 
-    override fun nodeCount(type: Class<out Node>): Long =
-        nodeTypeIndex[type]?.size?.toLong()
-            ?: nodeTypeIndex.entries.asSequence()
-                .filter { type.isAssignableFrom(it.key) }
-                .sumOf { it.value.size.toLong() }
+    override fun nodeColumns(type: Class<out Node>): NodeColumns? =
+        if (type == CallSiteNode::class.java) callSiteColumns.value else null
+
+    override fun nodeCount(type: Class<out Node>): Long = nodeIndex.count(type)
+
+    override fun nodeType(id: NodeId): Class<out Node>? =
+        NodeSerializer.NODE_CLASSES.getOrNull(nodeIndex.tag(id.value))
 
     override fun outgoing(id: NodeId): Sequence<Edge> {
         val nodeIdx = id.value
@@ -109,53 +147,66 @@ internal class LazyWebGraphBackedGraph(
         val succs = forwardGraph.successorArray(nodeIdx)
         val outdeg = forwardGraph.outdegree(nodeIdx)
         val labels = forwardLabels.value
-        val labelStart = cumulativeOutdeg.value[nodeIdx]
+        val labelStart = labels.start(nodeIdx)
         return (0 until outdeg).asSequence().map { i ->
             val to = succs[i]
-            val label = labels[(labelStart + i).toInt()].toInt() and BYTE_MASK
+            val label = labels.label(labelStart + i).toInt() and BYTE_MASK
             val key = nodeIdx.toLong() shl INT_BITS or (to.toLong() and UNSIGNED_INT_MASK)
-            val comparison = comparisonMap.value[key]
+            val comparison = comparisonMap.value.get(key)
             NodeSerializer.decodeEdge(label, NodeId(nodeIdx), NodeId(to), comparison, nodeDataVersion)
         }
     }
 
     override fun incoming(id: NodeId): Sequence<Edge> {
         val nodeIdx = id.value
-        val backwardGraph = backward.value
-        if (nodeIdx >= backwardGraph.numNodes()) return emptySequence()
-        val preds = backwardGraph.successorArray(nodeIdx)
-        val indeg = backwardGraph.outdegree(nodeIdx)
+        val backwardAdj = backward.value
+        if (nodeIdx >= backwardAdj.numNodes) return emptySequence()
+        val preds = backwardAdj.graph.successorArray(nodeIdx)
+        val indeg = backwardAdj.graph.outdegree(nodeIdx)
+        val labelStart = backwardAdj.labels.start(nodeIdx)
         return (0 until indeg).asSequence().map { i ->
             val from = preds[i]
-            val label = lookupForwardLabel(from, nodeIdx)
+            val label = backwardAdj.labels.label(labelStart + i).toInt() and BYTE_MASK
             val key = from.toLong() shl INT_BITS or (nodeIdx.toLong() and UNSIGNED_INT_MASK)
-            val comparison = comparisonMap.value[key]
+            val comparison = comparisonMap.value.get(key)
             NodeSerializer.decodeEdge(label, NodeId(from), NodeId(nodeIdx), comparison, nodeDataVersion)
         }
     }
 
-    private fun lookupForwardLabel(from: Int, to: Int): Int {
-        val forwardGraph = forward.value
-        val succs = forwardGraph.successorArray(from)
-        val outdeg = forwardGraph.outdegree(from)
-        val pos = java.util.Arrays.binarySearch(succs, 0, outdeg, to)
-        return if (pos >= 0) {
-            forwardLabels.value[(cumulativeOutdeg.value[from] + pos).toInt()].toInt() and BYTE_MASK
+    override fun forEachOutgoing(id: NodeId, labelMask: Long, consumer: EdgeConsumer) {
+        val family = edgeFamilies?.outgoing(labelMask)
+        if (family != null) {
+            edgeCursor.forEachOutgoing(family.graph, family.labels, id.value, labelMask, consumer)
         } else {
-            0
+            edgeCursor.forEachOutgoing(forward.value, forwardLabels.value, id.value, labelMask, consumer)
         }
     }
 
+    override fun forEachIncoming(id: NodeId, labelMask: Long, consumer: EdgeConsumer) =
+        edgeCursor.forEachIncoming(edgeFamilies?.incoming(labelMask) ?: backward.value, id.value, labelMask, consumer)
+
+    override fun edge(from: Int, to: Int, label: Int): Edge = edgeCursor.edge(from, to, label)
+
     @Suppress("UNCHECKED_CAST")
-    override fun <T : Edge> outgoing(id: NodeId, type: Class<T>): Sequence<T> =
-        outgoing(id).filter { type.isInstance(it) } as Sequence<T>
+    override fun <T : Edge> outgoing(id: NodeId, type: Class<T>): Sequence<T> {
+        val edges = edgeFamilies?.outgoing(EdgeLabels.mask(type))?.let { edgeCursor.outgoing(it, id.value) } ?: outgoing(id)
+        return edges.filter { type.isInstance(it) } as Sequence<T>
+    }
 
     @Suppress("UNCHECKED_CAST")
-    override fun <T : Edge> incoming(id: NodeId, type: Class<T>): Sequence<T> =
-        incoming(id).filter { type.isInstance(it) } as Sequence<T>
+    override fun <T : Edge> incoming(id: NodeId, type: Class<T>): Sequence<T> {
+        val edges = edgeFamilies?.incoming(EdgeLabels.mask(type))?.let { edgeCursor.incoming(it, id.value) } ?: incoming(id)
+        return edges.filter { type.isInstance(it) } as Sequence<T>
+    }
+
+    override fun propertyIndex(type: Class<out Node>, property: String): PropertyIndex? =
+        indexes.propertyIndex(type, property)
+
+    override fun trigramIndex(type: Class<out Node>, property: String): TrigramIndex? =
+        indexes.trigramIndex(type, property)
 
     override fun callSites(methodPattern: MethodPattern): Sequence<CallSiteNode> =
-        nodes(CallSiteNode::class.java).filter { methodPattern.matches(it.callee) }
+        callSites.callSites(methodPattern) { node(it) }
 
     override fun supertypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         metadata.value.supertypes[type.className]?.asSequence() ?: emptySequence()
@@ -163,14 +214,16 @@ internal class LazyWebGraphBackedGraph(
     override fun subtypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         metadata.value.subtypes[type.className]?.asSequence() ?: emptySequence()
 
+    override fun typeClosure(): TypeClosure = closure
+
     override fun methods(pattern: MethodPattern): Sequence<MethodDescriptor> =
-        metadata.value.methods.values.asSequence().filter { pattern.matches(it) }
+        methodIndex.find(pattern)
 
     override fun enumValues(enumClass: String, enumName: String): List<Any?>? =
         metadata.value.enumValues["$enumClass#$enumName"]
 
     override fun memberAnnotations(className: String, memberName: String): Map<String, Map<String, Any?>> =
-        metadata.value.memberAnnotations["$className#$memberName"] ?: emptyMap()
+        metadata.value.memberAnnotations("$className#$memberName") ?: emptyMap()
 
     override fun classOrigin(className: String): String? = metadata.value.classOrigins[className]
 
@@ -178,29 +231,70 @@ internal class LazyWebGraphBackedGraph(
 
     override fun artifactDependencies(): Map<String, Map<String, Int>> = metadata.value.artifactDependencies
 
-    override fun branchScopes(): Sequence<BranchScope> =
-        branchScopeIndex.values.asSequence().flatMap { it.asSequence() }
+    override fun branchScopes(): Sequence<BranchScope> = allBranchScopes.asSequence()
 
     override fun branchScopesFor(conditionNodeId: NodeId): Sequence<BranchScope> =
-        branchScopeIndex[conditionNodeId.value]?.asSequence() ?: emptySequence()
+        metadata.value.branchScopesFor(conditionNodeId.value).asSequence().map(::branchScope)
 
     override fun typeHierarchyTypes(): Set<String> =
         metadata.value.supertypes.keys + metadata.value.subtypes.keys
 
+    private fun branchScope(raw: BranchScopeData): BranchScope = BranchScope(
+        conditionNodeId = NodeId(raw.conditionNodeId),
+        method = raw.method,
+        comparison = raw.comparison,
+        trueBranchNodeIds = IntOpenHashSet(raw.trueBranchNodeIds),
+        falseBranchNodeIds = IntOpenHashSet(raw.falseBranchNodeIds)
+    )
+
     override fun close() {
-        openRafs.forEach { runCatching { it.close() } }
-        openRafs.clear()
+        if (nodeData.isInitialized()) runCatching { nodeData.value.close() }
+        recordBuffers.clear()
     }
 
-    private fun readNodeAt(offset: Long): Node {
-        val raf = rafLocal.get()
-        synchronized(raf) {
-            raf.seek(offset)
-            val dis = DataInputStream(object : InputStream() {
-                override fun read(): Int = raf.read()
-                override fun read(b: ByteArray, off: Int, len: Int): Int = raf.read(b, off, len)
-            })
-            return NodeSerializer.readNode(dis, stringTable, nodeDataVersion)
+    /**
+     * Read the record of node [id] at [offset]. Its length comes from the
+     * node index; when the index does not know it, a buffer's worth is read
+     * and the read is retried with a larger buffer if the record is longer.
+     */
+    private fun readNodeAt(id: Int, offset: Long): Node {
+        if (compressedNodeData != null) {
+            val dis = DataInputStream(compressedNodeData.inputStream(offset))
+            return NodeSerializer.readNode(dis, stringTable, nodeDataVersion, descriptors.value)
+        }
+        val end = nodeIndex.end(id)
+        val available = nodeDataSize - offset
+        var length = if (end >= 0) end - offset else minOf(available, RECORD_BUFFER_SIZE.toLong())
+        while (true) {
+            try {
+                return readRecord(offset, length.toInt())
+            } catch (e: EOFException) {
+                if (end >= 0 || length >= available) throw e
+                length = minOf(available, length * 2)
+            }
         }
     }
+
+    private fun readRecord(offset: Long, length: Int): Node {
+        val pooled = if (length <= RECORD_BUFFER_SIZE) {
+            recordBuffers.poll() ?: ByteBuffer.allocateDirect(RECORD_BUFFER_SIZE)
+        } else {
+            null
+        }
+        val buffer = pooled ?: ByteBuffer.allocate(length)
+        try {
+            buffer.clear().limit(length)
+            GraphStore.readFully(nodeData.value, buffer, offset)
+            buffer.flip()
+            val dis = DataInputStream(ByteBufferInputStream(buffer))
+            return NodeSerializer.readNode(dis, stringTable, nodeDataVersion, descriptors.value)
+        } finally {
+            if (pooled != null) recordBuffers.offer(pooled)
+        }
+    }
+
+    private companion object {
+        /** Large enough for nearly all node records, whose strings live in the string table. */
+        const val RECORD_BUFFER_SIZE = 4096
+    }
 }
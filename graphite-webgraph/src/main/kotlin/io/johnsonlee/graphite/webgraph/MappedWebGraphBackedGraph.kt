@@ -3,15 +3,26 @@ package io.johnsonlee.graphite.webgraph
 import io.johnsonlee.graphite.core.BranchComparison
 import io.johnsonlee.graphite.core.BranchScope
 import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.DescriptorPool
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
 import io.johnsonlee.graphite.core.TypeDescriptor
+import io.johnsonlee.graphite.graph.CallSiteColumns
+import io.johnsonlee.graphite.graph.CallSiteIndex
+import io.johnsonlee.graphite.graph.EdgeConsumer
+import io.johnsonlee.graphite.graph.EdgeLabels
 import io.johnsonlee.graphite.graph.Graph
+import io.johnsonlee.graphite.graph.MethodIndex
 import io.johnsonlee.graphite.graph.MethodPattern
+import io.johnsonlee.graphite.graph.NodeColumns
+import io.johnsonlee.graphite.graph.PropertyIndex
+import io.johnsonlee.graphite.graph.TrigramIndex
+import io.johnsonlee.graphite.graph.TypeClosure
 import io.johnsonlee.graphite.input.ResourceAccessor
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
 import it.unimi.dsi.webgraph.ImmutableGraph
 import java.io.Closeable
 import java.io.DataInputStream
@@ -28,80 +39,106 @@ import java.nio.MappedByteBuffer
  * accessed nodes are cached in physical RAM via the page cache, unused nodes
  * stay on disk. No JVM heap is used for node storage.
  *
- * Unlike [LazyWebGraphBackedGraph] which uses [RandomAccessFile.seek] (one
+ * Unlike [LazyWebGraphBackedGraph] which uses a positional file read (one
  * system call per node access), this uses [MappedByteBuffer] which translates
  * to direct memory reads — no system calls after the initial page fault.
  *
+ * Graphs saved with `compressNodeData` map Deflate-compressed blocks instead,
+ * and a node read decompresses only the blocks its record spans (see
+ * [CompressedNodeData]), so full scans touch far fewer pages.
+ *
+ * Call site fields are also available column by column through [nodeColumns]
+ * (loaded on first use), so filters on them do not read node data at all.
+ *
  * **Memory profile (5.9M nodes, 6.5M edges):**
- * - BVGraph forward: loaded lazily on first edge traversal
- * - BVGraph backward: built lazily on first incoming query
- * - Edge label map: loaded lazily on first edge traversal
- * - Node index: ~47 MB (heap, nodeId → offset)
- * - Node type index: ~24 MB (heap, type → nodeId list)
+ * - BVGraph forward: memory-mapped on first edge traversal
+ * - BVGraph backward: memory-mapped on first incoming query (built on heap
+ *   when the graph was saved without one)
+ * - Edge labels: memory-mapped on first edge traversal, with label offsets in
+ *   an Elias-Fano list (a few bits per node)
+ * - Node index: Elias-Fano offsets by node id, a few bits per node (heap, was
+ *   ~47 MB as one `long` per id; still used for graphs saved without it)
+ * - Node type index: Elias-Fano node ids per tag plus a memory-mapped tag byte
+ *   per node id (was ~24 MB of `int` node id lists)
  * - StringTable: ~21 MB (heap)
  * - Node data: ~252 MB (mmap, NOT heap — managed by OS page cache)
- * - **Open heap before edge traversal: ~92 MB plus object overhead** vs ~4 GB
- *   for eager [WebGraphBackedGraph]
+ * - **Open heap before edge traversal: little more than the StringTable** vs
+ *   ~4 GB for eager [WebGraphBackedGraph]
  *
  * Created by [GraphStore.loadMapped].
  */
 @Suppress("LongParameterList")
 internal class MappedWebGraphBackedGraph(
     private val forward: Lazy<ImmutableGraph>,
-    private val backward: Lazy<ImmutableGraph>,
+    private val backward: Lazy<GraphStore.LabelledAdjacency>,
     private val mappedNodeData: MappedByteBuffer,
+    /** Block index of a block-compressed [mappedNodeData]; `null` when it is stored uncompressed. */
+    nodeDataBlocks: NodeDataBlocks?,
     private val nodeDataVersion: Int,
     private val stringTable: StringTable,
-    private val nodeOffsets: LongArray,
-    private val nodeTypeIndex: Map<Class<out Node>, IntArray>,
-    private val forwardLabels: Lazy<ByteArray>,
-    private val cumulativeOutdeg: Lazy<LongArray>,
-    private val comparisonMap: Lazy<Map<Long, BranchComparison>>,
-    private val metadata: Lazy<GraphMetadata>,
+    private val descriptors: Lazy<DescriptorPool>,
+    private val nodeIndex: NodeIndex,
+    /** Decoded nodes returned by [node]; `null` to decode on every call. */
+    private val nodeCache: NodeCache?,
+    private val forwardLabels: Lazy<ArcLabels>,
+    /** Per-family sub-graphs; `null` for graphs saved without them. */
+    private val edgeFamilies: EdgeFamilies?,
+    private val comparisonMap: Lazy<Long2ObjectOpenHashMap<BranchComparison>>,
+    private val metadata: Lazy<MetadataSections>,
+    /** Persisted call site index; `null` value for graphs saved without one. */
+    private val callSiteIndex: Lazy<CallSiteIndex?>,
+    /** Persisted property and trigram indexes; none for graphs saved without them. */
+    private val indexes: PersistedIndexes,
+    private val typeClosure: Lazy<TypeClosure?>,
+    /** Persisted call site columns; `null` value for graphs saved without them. */
+    private val callSiteColumns: Lazy<CallSiteColumns?>,
     private val resourceAccessor: Lazy<ResourceAccessor>
 ) : Graph, Closeable {
 
     override val resources: ResourceAccessor
         get() = resourceAccessor.value
 
-    private val branchScopeIndex: Map<Int, List<BranchScope>> by lazy {
-        metadata.value.branchScopes.map { raw ->
-            BranchScope(
-                conditionNodeId = NodeId(raw.conditionNodeId),
-                method = raw.method,
-                comparison = raw.comparison,
-                trueBranchNodeIds = IntOpenHashSet(raw.trueBranchNodeIds),
-                falseBranchNodeIds = IntOpenHashSet(raw.falseBranchNodeIds)
-            )
-        }.groupBy { it.conditionNodeId.value }
+    private val allBranchScopes: List<BranchScope> by lazy { metadata.value.branchScopes.map(::branchScope) }
+
+    private val edgeCursor = WebGraphEdgeCursor(nodeDataVersion, comparisonMap)
+
+    private val compressedNodeData = nodeDataBlocks?.let { blocks ->
+        CompressedNodeData(blocks) { at, into -> mappedNodeData.duplicate().position(at.toInt()).get(into) }
     }
 
+    private val callSites: CallSiteIndex by lazy {
+        callSiteIndex.value ?: CallSiteIndex.Builder().apply {
+            nodes(CallSiteNode::class.java).forEach { add(it) }
+        }.build()
+    }
+
+    private val closure: TypeClosure by lazy { typeClosure.value ?: TypeClosure.of(metadata.value.supertypes) }
+
+    private val methodIndex: MethodIndex by lazy { MethodIndex(metadata.value.methods.values) }
+
     override fun node(id: NodeId): Node? {
         val nodeId = id.value
-        if (nodeId < 0 || nodeId >= nodeOffsets.size) return null
-        val offset = nodeOffsets[nodeId]
-        if (offset == -1L) return null
-        return readNodeAt(offset)
+        if (nodeCache == null) return readNode(nodeId)
+        return nodeCache.get(nodeId) ?: readNode(nodeId)?.also { nodeCache.put(nodeId, it) }
     }
 
     @Suppress("UNCHECKED_CAST")
-    override fun <T : Node> nodes(type: Class<T>): Sequence<T> {
-        // Fast path: exact type
-        nodeTypeIndex[type]?.let { ids ->
-            return ids.asSequence().mapNotNull { node(NodeId(it)) as? T }
-        }
-        // Slow path: supertype
-        return nodeTypeIndex.entries.asSequence()
-            .filter { type.isAssignableFrom(it.key) }
-            .flatMap { it.value.asSequence() }
-            .mapNotNull { node(NodeId(it)) as? T }
+    override fun <T : Node> nodes(type: Class<T>): Sequence<T> =
+        nodeIndex.ids(type).mapNotNull { readNode(it) as? T }
+
+    private fun readNode(id: Int): Node? {
+        val offset = nodeIndex.offset(id)
+        if (offset == -1L) return null
+        return readNodeAt(offset)
     }
 
-    override fun nodeCount(type: Class<out Node>): Long =
-        nodeTypeIndex[type]?.size?.toLong()
-            ?: nodeTypeIndex.entries.asSequence()
-                .filter { type.isAssignableFrom(it.key) }
-                .sumOf { it.value.size.toLong() }
+    override fun nodeColumns(type: Class<out Node>): NodeColumns? =
+        if (type == CallSiteNode::class.java) callSiteColumns.value else null
+
+    override fun nodeCount(type: Class<out Node>): Long = nodeIndex.count(type)
+
+    override fun nodeType(id: NodeId): Class<out Node>? =
+        NodeSerializer.NODE_CLASSES.getOrNull(nodeIndex.tag(id.value))
 
     override fun outgoing(id: NodeId): Sequence<Edge> {
         val nodeIdx = id.value
@@ -110,53 +147,66 @@ internal class MappedWebGraphBackedGraph(
         val succs = forwardGraph.successorArray(nodeIdx)
         val outdeg = forwardGraph.outdegree(nodeIdx)
         val labels = forwardLabels.value
-        val labelStart = cumulativeOutdeg.value[nodeIdx]
+        val labelStart = labels.start(nodeIdx)
         return (0 until outdeg).asSequence().map { i ->
             val to = succs[i]
-            val label = labels[(labelStart + i).toInt()].toInt() and BYTE_MASK
+            val label = labels.label(labelStart + i).toInt() and BYTE_MASK
             val key = nodeIdx.toLong() shl INT_BITS or (to.toLong() and UNSIGNED_INT_MASK)
-            val comparison = comparisonMap.value[key]
+            val comparison = comparisonMap.value.get(key)
             NodeSerializer.decodeEdge(label, NodeId(nodeIdx), NodeId(to), comparison, nodeDataVersion)
         }
     }
 
     override fun incoming(id: NodeId): Sequence<Edge> {
         val nodeIdx = id.value
-        val backwardGraph = backward.value
-        if (nodeIdx >= backwardGraph.numNodes()) return emptySequence()
-        val preds = backwardGraph.successorArray(nodeIdx)
-        val indeg = backwardGraph.outdegree(nodeIdx)
+        val backwardAdj = backward.value
+        if (nodeIdx >= backwardAdj.numNodes) return emptySequence()
+        val preds = backwardAdj.graph.successorArray(nodeIdx)
+        val indeg = backwardAdj.graph.outdegree(nodeIdx)
+        val labelStart = backwardAdj.labels.start(nodeIdx)
         return (0 until indeg).asSequence().map { i ->
             val from = preds[i]
-            val label = lookupForwardLabel(from, nodeIdx)
+            val label = backwardAdj.labels.label(labelStart + i).toInt() and BYTE_MASK
             val key = from.toLong() shl INT_BITS or (nodeIdx.toLong() and UNSIGNED_INT_MASK)
-            val comparison = comparisonMap.value[key]
+            val comparison = comparisonMap.value.get(key)
             NodeSerializer.decodeEdge(label, NodeId(from), NodeId(nodeIdx), comparison, nodeDataVersion)
         }
     }
 
-    private fun lookupForwardLabel(from: Int, to: Int): Int {
-        val forwardGraph = forward.value
-        val succs = forwardGraph.successorArray(from)
-        val outdeg = forwardGraph.outdegree(from)
-        val pos = java.util.Arrays.binarySearch(succs, 0, outdeg, to)
-        return if (pos >= 0) {
-            forwardLabels.value[(cumulativeOutdeg.value[from] + pos).toInt()].toInt() and BYTE_MASK
+    override fun forEachOutgoing(id: NodeId, labelMask: Long, consumer: EdgeConsumer) {
+        val family = edgeFamilies?.outgoing(labelMask)
+        if (family != null) {
+            edgeCursor.forEachOutgoing(family.graph, family.labels, id.value, labelMask, consumer)
         } else {
-            0
+            edgeCursor.forEachOutgoing(forward.value, forwardLabels.value, id.value, labelMask, consumer)
         }
     }
 
+    override fun forEachIncoming(id: NodeId, labelMask: Long, consumer: EdgeConsumer) =
+        edgeCursor.forEachIncoming(edgeFamilies?.incoming(labelMask) ?: backward.value, id.value, labelMask, consumer)
+
+    override fun edge(from: Int, to: Int, label: Int): Edge = edgeCursor.edge(from, to, label)
+
     @Suppress("UNCHECKED_CAST")
-    override fun <T : Edge> outgoing(id: NodeId, type: Class<T>): Sequence<T> =
-        outgoing(id).filter { type.isInstance(it) } as Sequence<T>
+    override fun <T : Edge> outgoing(id: NodeId, type: Class<T>): Sequence<T> {
+        val edges = edgeFamilies?.outgoing(EdgeLabels.mask(type))?.let { edgeCursor.outgoing(it, id.value) } ?: outgoing(id)
+        return edges.filter { type.isInstance(it) } as Sequence<T>
+    }
 
     @Suppress("UNCHECKED_CAST")
-    override fun <T : Edge> incoming(id: NodeId, type: Class<T>): Sequence<T> =
-        incoming(id).filter { type.isInstance(it) } as Sequence<T>
+    override fun <T : Edge> incoming(id: NodeId, type: Class<T>): Sequence<T> {
+        val edges = edgeFamilies?.incoming(EdgeLabels.mask(type))?.let { edgeCursor.incoming(it, id.value) } ?: incoming(id)
+        return edges.filter { type.isInstance(it) } as Sequence<T>
+    }
+
+    override fun propertyIndex(type: Class<out Node>, property: String): PropertyIndex? =
+        indexes.propertyIndex(type, property)
+
+    override fun trigramIndex(type: Class<out Node>, property: String): TrigramIndex? =
+        indexes.trigramIndex(type, property)
 
     override fun callSites(methodPattern: MethodPattern): Sequence<CallSiteNode> =
-        nodes(CallSiteNode::class.java).filter { methodPattern.matches(it.callee) }
+        callSites.callSites(methodPattern) { node(it) }
 
     override fun supertypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         metadata.value.supertypes[type.className]?.asSequence() ?: emptySequence()
@@ -164,14 +214,16 @@ internal class MappedWebGraphBackedGraph(
     override fun subtypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         metadata.value.subtypes[type.className]?.asSequence() ?: emptySequence()
 
+    override fun typeClosure(): TypeClosure = closure
+
     override fun methods(pattern: MethodPattern): Sequence<MethodDescriptor> =
-        metadata.value.methods.values.asSequence().filter { pattern.matches(it) }
+        methodIndex.find(pattern)
 
     override fun enumValues(enumClass: String, enumName: String): List<Any?>? =
         metadata.value.enumValues["$enumClass#$enumName"]
 
     override fun memberAnnotations(className: String, memberName: String): Map<String, Map<String, Any?>> =
-        metadata.value.memberAnnotations["$className#$memberName"] ?: emptyMap()
+        metadata.value.memberAnnotations("$className#$memberName") ?: emptyMap()
 
     override fun classOrigin(className: String): String? = metadata.value.classOrigins[className]
 
@@ -179,25 +231,36 @@ internal class MappedWebGraphBackedGraph(
 
     override fun artifactDependencies(): Map<String, Map<String, Int>> = metadata.value.artifactDependencies
 
-    override fun branchScopes(): Sequence<BranchScope> =
-        branchScopeIndex.values.asSequence().flatMap { it.asSequence() }
+    override fun branchScopes(): Sequence<BranchScope> = allBranchScopes.asSequence()
 
     override fun branchScopesFor(conditionNodeId: NodeId): Sequence<BranchScope> =
-        branchScopeIndex[conditionNodeId.value]?.asSequence() ?: emptySequence()
+        metadata.value.branchScopesFor(conditionNodeId.value).asSequence().map(::branchScope)
 
     override fun typeHierarchyTypes(): Set<String> =
         metadata.value.supertypes.keys + metadata.value.subtypes.keys
 
+    private fun branchScope(raw: BranchScopeData): BranchScope = BranchScope(
+        conditionNodeId = NodeId(raw.conditionNodeId),
+        method = raw.method,
+        comparison = raw.comparison,
+        trueBranchNodeIds = IntOpenHashSet(raw.trueBranchNodeIds),
+        falseBranchNodeIds = IntOpenHashSet(raw.falseBranchNodeIds)
+    )
+
     override fun close() {
         // MappedByteBuffer is unmapped by GC; no explicit unmap in standard API
     }
 
     private fun readNodeAt(offset: Long): Node {
-        // Create a duplicate to avoid position conflicts across threads
-        val buf = mappedNodeData.duplicate()
-        buf.position(offset.toInt())
-        val dis = DataInputStream(ByteBufferInputStream(buf))
-        return NodeSerializer.readNode(dis, stringTable, nodeDataVersion)
+        val dis = if (compressedNodeData != null) {
+            DataInputStream(compressedNodeData.inputStream(offset))
+        } else {
+            // Create a duplicate to avoid position conflicts across threads
+            val buf = mappedNodeData.duplicate()
+            buf.position(offset.toInt())
+            DataInputStream(ByteBufferInputStream(buf))
+        }
+        return NodeSerializer.readNode(dis, stringTable, nodeDataVersion, descriptors.value)
     }
 }
 
@@ -205,7 +268,7 @@ internal class MappedWebGraphBackedGraph(
  * Adapts a [ByteBuffer] as an [InputStream] for use with [DataInputStream].
  * No system calls — reads directly from mapped memory.
  */
-private class ByteBufferInputStream(private val buf: ByteBuffer) : InputStream() {
+internal class ByteBufferInputStream(private val buf: ByteBuffer) : InputStream() {
     override fun read(): Int {
         return if (buf.hasRemaining()) buf.get().toInt() and BYTE_MASK else -1
     }
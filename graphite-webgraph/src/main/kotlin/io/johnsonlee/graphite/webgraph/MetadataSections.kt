@@ -0,0 +1,137 @@
+package io.johnsonlee.graphite.webgraph
+
+import io.johnsonlee.graphite.core.DescriptorPool
+import io.johnsonlee.graphite.core.MethodDescriptor
+import io.johnsonlee.graphite.core.TypeDescriptor
+import java.io.DataInputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Memory-mapped `graph.metadata`, decoded section by section on first use
+ * (see [NodeSerializer.saveMetadata]).
+ *
+ * The small sections -- methods, type hierarchy, enum values, class origins
+ * and artifact dependencies -- are decoded whole the first time they are
+ * read. Member annotations and branch scopes are keyed sections:
+ * [memberAnnotations] and [branchScopesFor] binary-search the sorted
+ * `(key, record offset)` entries in the mapping and decode only the matching
+ * records, so the whole section is only decoded to enumerate it.
+ *
+ * Files written before sections existed are decoded at once on first use.
+ */
+internal class MetadataSections private constructor(
+    private val buffer: ByteBuffer,
+    private val strings: StringTable,
+    private val descriptors: DescriptorPool
+) {
+
+    private val formatVersion = NodeSerializer.readHeader(input(0), NodeSerializer.MAGIC_METADATA)
+
+    /** Section offsets, or `null` for a file without sections. */
+    private val offsets: IntArray? = if (formatVersion >= NodeSerializer.SECTIONED_METADATA_FORMAT_VERSION) {
+        IntArray(buffer.getInt(Int.SIZE_BYTES) + 1) { buffer.getLong(Int.SIZE_BYTES * 2 + it * Long.SIZE_BYTES).toInt() }
+    } else {
+        null
+    }
+
+    private val all: GraphMetadata by lazy { NodeSerializer.loadMetadata(input(0), strings, descriptors) }
+
+    private val branchScopeIndex: Map<Int, List<BranchScopeData>> by lazy { all.branchScopes.groupBy { it.conditionNodeId } }
+
+    val methods: Map<String, MethodDescriptor> by lazy {
+        section(NodeSerializer.SECTION_METHODS)?.let { NodeSerializer.readMethods(it, strings, formatVersion, descriptors) }
+            ?: all.methods
+    }
+
+    val supertypes: Map<String, Set<TypeDescriptor>> by lazy {
+        section(NodeSerializer.SECTION_SUPERTYPES)?.let { NodeSerializer.readTypeHierarchy(it, strings, descriptors) }
+            ?: all.supertypes
+    }
+
+    val subtypes: Map<String, Set<TypeDescriptor>> by lazy {
+        section(NodeSerializer.SECTION_SUBTYPES)?.let { NodeSerializer.readTypeHierarchy(it, strings, descriptors) }
+            ?: all.subtypes
+    }
+
+    val enumValues: Map<String, List<Any?>> by lazy {
+        section(NodeSerializer.SECTION_ENUM_VALUES)?.let { NodeSerializer.readEnumValues(it, strings, formatVersion) }
+            ?: all.enumValues
+    }
+
+    val classOrigins: Map<String, String> by lazy {
+        section(NodeSerializer.SECTION_CLASS_ORIGINS)?.let { NodeSerializer.readClassOrigins(it, strings) }
+            ?: all.classOrigins
+    }
+
+    val artifactDependencies: Map<String, Map<String, Int>> by lazy {
+        section(NodeSerializer.SECTION_ARTIFACT_DEPENDENCIES)?.let { NodeSerializer.readArtifactDependencies(it, strings) }
+            ?: all.artifactDependencies
+    }
+
+    /** Every branch scope, in saved order. */
+    val branchScopes: List<BranchScopeData> by lazy {
+        section(NodeSerializer.SECTION_BRANCH_SCOPES)?.let {
+            NodeSerializer.readBranchScopes(it, strings, formatVersion, descriptors)
+        } ?: all.branchScopes
+    }
+
+    /** Annotations of the member with the given `class#member` [key], or `null` if it has none. */
+    fun memberAnnotations(key: String): Map<String, Map<String, Any?>>? {
+        val offsets = offsets ?: return all.memberAnnotations[key]
+        val index = strings.indexOf(key)
+        if (index < 0) return null
+        return records(offsets[NodeSerializer.SECTION_MEMBER_ANNOTATIONS], index).firstOrNull()?.let {
+            NodeSerializer.readMemberAnnotation(it, strings, formatVersion).second
+        }
+    }
+
+    /** Branch scopes of the condition node [conditionNodeId], in saved order. */
+    fun branchScopesFor(conditionNodeId: Int): List<BranchScopeData> {
+        val offsets = offsets ?: return branchScopeIndex[conditionNodeId] ?: emptyList()
+        return records(offsets[NodeSerializer.SECTION_BRANCH_SCOPES], conditionNodeId).map {
+            NodeSerializer.readBranchScope(it, strings, formatVersion, descriptors)
+        }
+    }
+
+    /** Stream at the start of [section], or `null` for a file without sections. */
+    private fun section(section: Int): DataInputStream? = offsets?.let { input(it[section]) }
+
+    /** Streams at the records whose key is [key] of the keyed section at [start]. */
+    private fun records(start: Int, key: Int): List<DataInputStream> {
+        val count = buffer.getInt(start)
+        val entries = start + Int.SIZE_BYTES
+        val records = entries + count * NodeSerializer.KEYED_ENTRY_BYTES
+        fun keyAt(i: Int): Int = buffer.getInt(entries + i * NodeSerializer.KEYED_ENTRY_BYTES)
+
+        // Lower bound: entries of equal keys are adjacent
+        var low = 0
+        var high = count
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (keyAt(mid) < key) low = mid + 1 else high = mid
+        }
+        val result = mutableListOf<DataInputStream>()
+        var i = low
+        while (i < count && keyAt(i) == key) {
+            result.add(input(records + buffer.getInt(entries + i * NodeSerializer.KEYED_ENTRY_BYTES + Int.SIZE_BYTES)))
+            i++
+        }
+        return result
+    }
+
+    /** Stream from [position]; the duplicate keeps concurrent reads apart. */
+    private fun input(position: Int): DataInputStream =
+        DataInputStream(ByteBufferInputStream(buffer.duplicate().also { it.position(position) }))
+
+    companion object {
+        fun open(file: Path, strings: StringTable, descriptors: DescriptorPool): MetadataSections {
+            val buffer = FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+            return MetadataSections(buffer, strings, descriptors)
+        }
+    }
+}
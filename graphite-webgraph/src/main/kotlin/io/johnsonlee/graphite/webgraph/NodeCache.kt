@@ -0,0 +1,100 @@
+package io.johnsonlee.graphite.webgraph
+
+import io.johnsonlee.graphite.core.Node
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Bounded cache of decoded nodes for graphs loaded by [GraphStore.loadLazy]
+ * and [GraphStore.loadMapped], which otherwise decode a node (and resolve its
+ * strings) on every [io.johnsonlee.graphite.graph.Graph.node] call.
+ *
+ * Holds at most [maximumSize] nodes and evicts with the CLOCK policy: a hit
+ * only sets the entry's reference bit, so lookups never lock; inserting into
+ * a full cache sweeps a hand over the entries, clearing reference bits, and
+ * evicts the first entry that was not referenced since the hand last passed.
+ * Node scans ([io.johnsonlee.graphite.graph.Graph.nodes]) bypass the cache,
+ * so they do not evict the hot nodes.
+ *
+ * A cache belongs to the single graph it is passed to when loading; the
+ * counters can be read at any time to size it.
+ */
+class NodeCache(val maximumSize: Int) {
+
+    init {
+        require(maximumSize > 0) { "maximumSize must be positive: $maximumSize" }
+    }
+
+    private class Entry(val id: Int, val node: Node) {
+        @Volatile
+        var referenced = false
+    }
+
+    private val entries = ConcurrentHashMap<Int, Entry>()
+    private val slots = arrayOfNulls<Entry>(maximumSize)
+    private var hand = 0
+    private val attached = AtomicBoolean()
+
+    private val hitCount = LongAdder()
+    private val missCount = LongAdder()
+    private val evictionCount = LongAdder()
+
+    /** Number of lookups answered from the cache. */
+    val hits: Long get() = hitCount.sum()
+
+    /** Number of lookups that had to decode the node. */
+    val misses: Long get() = missCount.sum()
+
+    /** Number of nodes evicted to make room for others. */
+    val evictions: Long get() = evictionCount.sum()
+
+    /** Number of cached nodes. */
+    val size: Int get() = entries.size
+
+    /** Bind this cache to the graph being loaded; a cache cannot be shared by two graphs. */
+    internal fun attach() {
+        check(attached.compareAndSet(false, true)) { "NodeCache is already used by another graph" }
+    }
+
+    /** The cached node [id], or `null` on a miss. */
+    internal fun get(id: Int): Node? {
+        val entry = entries[id]
+        if (entry == null) {
+            missCount.increment()
+            return null
+        }
+        hitCount.increment()
+        entry.referenced = true
+        return entry.node
+    }
+
+    /** Cache [node] as node [id], evicting another node if the cache is full. */
+    @Synchronized
+    internal fun put(id: Int, node: Node) {
+        if (entries.containsKey(id)) return
+        val entry = Entry(id, node)
+        if (entries.size < maximumSize) {
+            slots[entries.size] = entry
+            entries[id] = entry
+            return
+        }
+        while (true) {
+            val victim = slots[hand]!!
+            if (victim.referenced) {
+                victim.referenced = false
+                hand = (hand + 1) % maximumSize
+                continue
+            }
+            entries.remove(victim.id)
+            evictionCount.increment()
+            slots[hand] = entry
+            entries[id] = entry
+            hand = (hand + 1) % maximumSize
+            return
+        }
+    }
+
+    override fun toString(): String =
+        "NodeCache(size=$size/$maximumSize, hits=$hits, misses=$misses, evictions=$evictions)"
+}
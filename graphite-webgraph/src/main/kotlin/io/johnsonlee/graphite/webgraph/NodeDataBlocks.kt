@@ -0,0 +1,237 @@
+package io.johnsonlee.graphite.webgraph
+
+import it.unimi.dsi.fastutil.longs.LongArrayList
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+import java.util.zip.ZipException
+
+/**
+ * Block index of a block-compressed `graph.nodedata` (see
+ * `GraphStore.save(..., compressNodeData = true)`).
+ *
+ * The node data stream -- header, node count and node records -- is cut into
+ * blocks of [blockSize] bytes, and each block is Deflate-compressed on its own
+ * and stored back to back in `graph.nodedata`. Block `b` holds stream bytes
+ * from `b * blockSize` and its compressed bytes are
+ * `offsets[b] until offsets[b + 1]`. Node offsets in the node index stay
+ * positions in the uncompressed stream, so a record read only decompresses
+ * the blocks it spans (see [CompressedNodeData]).
+ *
+ * Stored in `graph.nodedata.blocks`: header, block size, stream length,
+ * block count, then the `block count + 1` compressed offsets.
+ */
+internal class NodeDataBlocks(
+    val blockSize: Int,
+    /** Length of the uncompressed stream. */
+    val length: Long,
+    private val offsets: LongArray
+) {
+
+    /** Number of blocks. */
+    val count: Int get() = offsets.size - 1
+
+    /** Offset of block [b] in the compressed file. */
+    fun offset(b: Int): Long = offsets[b]
+
+    /** Compressed length of block [b]. */
+    fun compressedLength(b: Int): Int = (offsets[b + 1] - offsets[b]).toInt()
+
+    /** Uncompressed length of block [b]; only the last block may be short. */
+    fun blockLength(b: Int): Int = minOf(blockSize.toLong(), length - b.toLong() * blockSize).toInt()
+
+    fun store(dir: Path) {
+        DataOutputStream(BufferedOutputStream(dir.resolve(FILE).toFile().outputStream())).use { dos ->
+            NodeSerializer.writeHeader(dos, NodeSerializer.MAGIC_BLOCKS)
+            dos.writeInt(blockSize)
+            dos.writeLong(length)
+            dos.writeInt(count)
+            for (offset in offsets) dos.writeLong(offset)
+        }
+    }
+
+    /**
+     * [OutputStream] that compresses everything written to it block by block
+     * into [out]; [blocks] describes the result once closed.
+     */
+    class Writer(private val out: OutputStream, private val blockSize: Int = DEFAULT_BLOCK_SIZE) : OutputStream() {
+        private val block = ByteArray(blockSize)
+        private var position = 0
+        private var compressed = ByteArray(blockSize)
+        private val deflater = Deflater(Deflater.BEST_SPEED)
+        private val offsets = LongArrayList().apply { add(0L) }
+        private var length = 0L
+        private var closed = false
+
+        override fun write(b: Int) {
+            block[position++] = b.toByte()
+            if (position == blockSize) writeBlock()
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            var from = off
+            val end = off + len
+            while (from < end) {
+                val n = minOf(end - from, blockSize - position)
+                System.arraycopy(b, from, block, position, n)
+                position += n
+                from += n
+                if (position == blockSize) writeBlock()
+            }
+        }
+
+        override fun close() {
+            if (closed) return
+            closed = true
+            if (position > 0) writeBlock()
+            deflater.end()
+            out.close()
+        }
+
+        /** The block index of the compressed stream; only valid after [close]. */
+        fun blocks(): NodeDataBlocks {
+            check(closed) { "Block writer is still open" }
+            return NodeDataBlocks(blockSize, length, offsets.toLongArray())
+        }
+
+        private fun writeBlock() {
+            deflater.reset()
+            deflater.setInput(block, 0, position)
+            deflater.finish()
+            var size = 0
+            while (!deflater.finished()) {
+                if (size == compressed.size) compressed = compressed.copyOf(compressed.size * 2)
+                size += deflater.deflate(compressed, size, compressed.size - size)
+            }
+            out.write(compressed, 0, size)
+            offsets.add(offsets.getLong(offsets.size - 1) + size)
+            length += position
+            position = 0
+        }
+    }
+
+    companion object {
+        const val FILE = "graph.nodedata.blocks"
+
+        /** Uncompressed bytes per block: a few hundred typical node records. */
+        const val DEFAULT_BLOCK_SIZE = 64 * 1024
+
+        fun exists(dir: Path): Boolean = Files.exists(dir.resolve(FILE))
+
+        /** The block index of `graph.nodedata` in [dir], or `null` if it is stored uncompressed. */
+        fun load(dir: Path): NodeDataBlocks? {
+            val file = dir.resolve(FILE).toFile()
+            if (!file.exists()) return null
+            return DataInputStream(BufferedInputStream(file.inputStream())).use { dis ->
+                NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_BLOCKS)
+                val blockSize = dis.readInt()
+                val length = dis.readLong()
+                NodeDataBlocks(blockSize, length, LongArray(dis.readInt() + 1) { dis.readLong() })
+            }
+        }
+
+        fun delete(dir: Path) {
+            Files.deleteIfExists(dir.resolve(FILE))
+        }
+    }
+}
+
+private const val CACHED_BLOCKS = 16
+
+/**
+ * Reads a block-compressed `graph.nodedata` described by [blocks], fetching
+ * compressed blocks through [source] (positional file reads or a mapping).
+ *
+ * Up to [CACHED_BLOCKS] decompressed blocks are kept in a direct-mapped
+ * cache indexed by block number, so reading neighbouring records, or the
+ * records of a small working set, decompresses each block once.
+ */
+internal class CompressedNodeData(
+    private val blocks: NodeDataBlocks,
+    private val source: Source
+) {
+
+    /** Reads [into].size compressed bytes starting at [position] of `graph.nodedata`. */
+    fun interface Source {
+        fun read(position: Long, into: ByteArray)
+    }
+
+    private class Block(val index: Int, val bytes: ByteArray)
+
+    private val cache = AtomicReferenceArray<Block?>(CACHED_BLOCKS)
+
+    /** Length of the uncompressed stream. */
+    val length: Long get() = blocks.length
+
+    /** Stream of the uncompressed node data from [position]. */
+    fun inputStream(position: Long = 0L): InputStream = BlockInputStream(position)
+
+    private fun block(b: Int): ByteArray {
+        val slot = b % CACHED_BLOCKS
+        cache.get(slot)?.takeIf { it.index == b }?.let { return it.bytes }
+
+        val compressed = ByteArray(blocks.compressedLength(b))
+        source.read(blocks.offset(b), compressed)
+        val bytes = ByteArray(blocks.blockLength(b))
+        val inflater = Inflater()
+        try {
+            inflater.setInput(compressed)
+            var size = 0
+            while (size < bytes.size) {
+                val n = inflater.inflate(bytes, size, bytes.size - size)
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw ZipException("Truncated node data block $b: $size of ${bytes.size} bytes")
+                }
+                size += n
+            }
+        } finally {
+            inflater.end()
+        }
+        cache.set(slot, Block(b, bytes))
+        return bytes
+    }
+
+    private inner class BlockInputStream(private var position: Long) : InputStream() {
+        private var current: ByteArray? = null
+        private var currentStart = 0L
+
+        override fun read(): Int {
+            val bytes = fill() ?: return -1
+            return bytes[(position++ - currentStart).toInt()].toInt() and BYTE_MASK
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            if (len == 0) return 0
+            val bytes = fill() ?: return -1
+            val from = (position - currentStart).toInt()
+            val n = minOf(len, bytes.size - from)
+            System.arraycopy(bytes, from, b, off, n)
+            position += n
+            return n
+        }
+
+        override fun skip(n: Long): Long {
+            val skipped = minOf(n, blocks.length - position).coerceAtLeast(0L)
+            position += skipped
+            return skipped
+        }
+
+        /** The block holding [position], or `null` at the end of the stream. */
+        private fun fill(): ByteArray? {
+            if (position >= blocks.length) return null
+            val bytes = current
+            if (bytes != null && position >= currentStart && position < currentStart + bytes.size) return bytes
+            val b = (position / blocks.blockSize).toInt()
+            currentStart = b.toLong() * blocks.blockSize
+            return block(b).also { current = it }
+        }
+    }
+}
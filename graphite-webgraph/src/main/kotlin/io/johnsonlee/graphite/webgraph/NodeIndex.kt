@@ -0,0 +1,191 @@
+package io.johnsonlee.graphite.webgraph
+
+import io.johnsonlee.graphite.core.Node
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.io.BinIO
+import it.unimi.dsi.fastutil.longs.LongIterators
+import it.unimi.dsi.sux4j.util.EliasFanoMonotoneLongBigList
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Position and type of every node record in `graph.nodedata`, by node id.
+ *
+ * Types are [NodeSerializer] tags; [NodeSerializer.NODE_CLASSES] maps them
+ * to node classes.
+ */
+internal interface NodeIndex {
+
+    /** One past the largest indexed node id. */
+    val size: Int
+
+    /** Offset of the record of node [id] in `graph.nodedata`, or `-1` if there is no such node. */
+    fun offset(id: Int): Long
+
+    /**
+     * Offset just past the record of node [id], or `-1` if it is not known
+     * (no such node, the last record, or records not stored in id order).
+     */
+    fun end(id: Int): Long
+
+    /** Tag of node [id], or `-1` if there is no such node. */
+    fun tag(id: Int): Int
+
+    /** Number of nodes with [tag]. */
+    fun count(tag: Int): Int
+
+    /** Ids of the nodes with [tag]. */
+    fun ids(tag: Int): Sequence<Int>
+
+    /** Ids of the nodes whose class is [type] or a subtype of it. */
+    fun ids(type: Class<out Node>): Sequence<Int> {
+        val exact = NodeSerializer.NODE_CLASSES.indexOf(type)
+        if (exact >= 0) return ids(exact)
+        return NodeSerializer.NODE_CLASSES.indices.asSequence()
+            .filter { type.isAssignableFrom(NodeSerializer.NODE_CLASSES[it]) }
+            .flatMap { ids(it) }
+    }
+
+    /** Number of nodes whose class is [type] or a subtype of it. */
+    fun count(type: Class<out Node>): Long =
+        NodeSerializer.NODE_CLASSES.indices
+            .filter { type.isAssignableFrom(NodeSerializer.NODE_CLASSES[it]) }
+            .sumOf { count(it).toLong() }
+}
+
+/**
+ * [NodeIndex] read from a `graph.nodeindex` file: one `long` offset and one
+ * tag byte per node id on heap. Used for graphs saved without
+ * [SuccinctNodeIndex] files.
+ */
+internal class ArrayNodeIndex(
+    private val offsets: LongArray,
+    private val tags: ByteArray
+) : NodeIndex {
+
+    private val counts = IntArray(NodeSerializer.NODE_CLASSES.size).also { counts ->
+        for (tag in tags) if (tag >= 0) counts[tag.toInt()]++
+    }
+
+    /** Ascending node ids of each tag, built in one pass over [tags] on the first [ids] call. */
+    private val idsByTag: Array<IntArray> by lazy {
+        val idsByTag = Array(counts.size) { IntArray(counts[it]) }
+        val sizes = IntArray(counts.size)
+        for (id in tags.indices) {
+            val tag = tags[id].toInt()
+            if (tag >= 0) idsByTag[tag][sizes[tag]++] = id
+        }
+        idsByTag
+    }
+
+    override val size: Int get() = offsets.size
+
+    override fun offset(id: Int): Long = if (id in offsets.indices) offsets[id] else -1L
+
+    override fun end(id: Int): Long = -1L
+
+    override fun tag(id: Int): Int = if (id in tags.indices) tags[id].toInt() else -1
+
+    override fun count(tag: Int): Int = counts.getOrElse(tag) { 0 }
+
+    override fun ids(tag: Int): Sequence<Int> =
+        if (count(tag) == 0) emptySequence() else idsByTag[tag].asSequence()
+}
+
+/**
+ * [NodeIndex] over Elias-Fano lists and a memory-mapped tag array, so it
+ * takes a few bits per node on heap instead of a `long` per node id plus an
+ * `int` per node:
+ *
+ * - `graph.nodeoffsets` -- record offsets by node id; ids without a node
+ *   repeat the next offset, so the list stays monotone
+ * - `graph.nodetypes`   -- ascending node ids of each tag, indexed by tag
+ * - `graph.nodetags`    -- one tag byte per node id, `-1` for ids without a node
+ *
+ * Requires `graph.nodedata` to hold its records in ascending id order.
+ */
+internal class SuccinctNodeIndex(
+    private val offsets: EliasFanoMonotoneLongBigList,
+    private val tags: ByteBuffer,
+    private val idsByTag: Array<EliasFanoMonotoneLongBigList?>
+) : NodeIndex {
+
+    override val size: Int get() = tags.capacity()
+
+    override fun offset(id: Int): Long = if (tag(id) >= 0) offsets.getLong(id.toLong()) else -1L
+
+    override fun end(id: Int): Long = if (tag(id) >= 0 && id + 1 < size) offsets.getLong(id + 1L) else -1L
+
+    override fun tag(id: Int): Int = if (id in 0 until tags.capacity()) tags.get(id).toInt() else -1
+
+    override fun count(tag: Int): Int = idsByTag.getOrNull(tag)?.size64()?.toInt() ?: 0
+
+    override fun ids(tag: Int): Sequence<Int> {
+        val ids = idsByTag.getOrNull(tag) ?: return emptySequence()
+        return (0L until ids.size64()).asSequence().map { ids.getLong(it).toInt() }
+    }
+
+    companion object {
+        const val OFFSETS_FILE = "graph.nodeoffsets"
+        const val TYPES_FILE = "graph.nodetypes"
+        const val TAGS_FILE = "graph.nodetags"
+
+        /**
+         * Store the index of a `graph.nodedata` file of [dataLength] bytes
+         * whose node [id] starts at [offsets]`[id]` with tag [tags]`[id]`
+         * (`-1` for ids without a node). [offsets] is overwritten.
+         */
+        fun store(dir: Path, offsets: LongArray, tags: ByteArray, dataLength: Long) {
+            // The tags file is written last, so its presence means the index is complete
+            delete(dir)
+            val idsByTag = Array(NodeSerializer.NODE_CLASSES.size) { IntArrayList() }
+            var next = dataLength
+            for (id in offsets.indices.reversed()) {
+                if (tags[id] < 0) offsets[id] = next else next = offsets[id]
+            }
+            for (id in tags.indices) {
+                if (tags[id] >= 0) idsByTag[tags[id].toInt()].add(id)
+            }
+            BinIO.storeObject(
+                EliasFanoMonotoneLongBigList(offsets.size.toLong(), dataLength, LongIterators.wrap(offsets)),
+                dir.resolve(OFFSETS_FILE).toString()
+            )
+            val types = arrayOfNulls<EliasFanoMonotoneLongBigList>(idsByTag.size)
+            for ((tag, ids) in idsByTag.withIndex()) {
+                if (ids.isEmpty) continue
+                val values = LongArray(ids.size) { ids.getInt(it).toLong() }
+                types[tag] = EliasFanoMonotoneLongBigList(values.size.toLong(), tags.size.toLong(), LongIterators.wrap(values))
+            }
+            BinIO.storeObject(types, dir.resolve(TYPES_FILE).toString())
+            BinIO.storeBytes(tags, dir.resolve(TAGS_FILE).toString())
+        }
+
+        /** Whether [dir] holds a complete index stored by [store]. */
+        fun exists(dir: Path): Boolean = Files.exists(dir.resolve(TAGS_FILE))
+
+        fun delete(dir: Path) {
+            listOf(TAGS_FILE, OFFSETS_FILE, TYPES_FILE).forEach { Files.deleteIfExists(dir.resolve(it)) }
+        }
+
+        /**
+         * Load the index stored by [store] in [dir]. Only the tags are
+         * memory-mapped; the Elias-Fano offset and per-tag id lists are
+         * deliberately deserialized on heap, as in [ArcLabels.mapped]: sux4j
+         * has no mapped Elias-Fano list, and they take a few bits per node.
+         */
+        @Suppress("UNCHECKED_CAST")
+        fun load(dir: Path): SuccinctNodeIndex {
+            val tags = FileChannel.open(dir.resolve(TAGS_FILE), StandardOpenOption.READ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+            return SuccinctNodeIndex(
+                BinIO.loadObject(dir.resolve(OFFSETS_FILE).toString()) as EliasFanoMonotoneLongBigList,
+                tags,
+                BinIO.loadObject(dir.resolve(TYPES_FILE).toString()) as Array<EliasFanoMonotoneLongBigList?>
+            )
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.johnsonlee.graphite.webgraph
+
+import io.johnsonlee.graphite.core.AnnotationNode
+import io.johnsonlee.graphite.core.BooleanConstant
+import io.johnsonlee.graphite.core.BranchComparison
+import io.johnsonlee.graphite.core.CallEdge
+import io.johnsonlee.graphite.core.CallSiteNode
+import io.johnsonlee.graphite.core.ControlFlowEdge
+import io.johnsonlee.graphite.core.DataFlowEdge
+import io.johnsonlee.graphite.core.DoubleConstant
+import io.johnsonlee.graphite.core.Edge
+import io.johnsonlee.graphite.core.EnumConstant
+import io.johnsonlee.graphite.core.FieldNode
+import io.johnsonlee.graphite.core.FloatConstant
+import io.johnsonlee.graphite.core.IntConstant
+import io.johnsonlee.graphite.core.LocalVariable
+import io.johnsonlee.graphite.core.LongConstant
+import io.johnsonlee.graphite.core.MethodDescriptor
+import io.johnsonlee.graphite.core.Node
+import io.johnsonlee.graphite.core.NodeId
+import io.johnsonlee.graphite.core.NullConstant
+import io.johnsonlee.graphite.core.ParameterNode
+import io.johnsonlee.graphite.core.ResourceEdge
+import io.johnsonlee.graphite.core.ResourceFileNode
+import io.johnsonlee.graphite.core.ResourceValueNode
+import io.johnsonlee.graphite.core.ReturnNode
+import io.johnsonlee.graphite.core.StringConstant
+import io.johnsonlee.graphite.core.TypeEdge
+import io.johnsonlee.graphite.graph.Graph
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+
+/**
+ * New, dense node ids for a graph being saved: node `i` of the saved graph
+ * is node [oldIds]`[i]` of the source graph. Node records, edges, branch
+ * comparisons and branch scopes are rewritten with [node], [edge] and
+ * [branchScope]. References to ids that are neither a node nor an edge
+ * target become `-1`, so they stay unresolvable.
+ */
+internal class NodeRenumbering(val oldIds: IntArray) {
+
+    private val newIds = Int2IntOpenHashMap(oldIds.size).apply {
+        defaultReturnValue(-1)
+        oldIds.forEachIndexed { newId, oldId -> put(oldId, newId) }
+    }
+
+    fun newId(oldId: Int): Int = newIds.get(oldId)
+
+    private fun newId(id: NodeId): NodeId = NodeId(newId(id.value))
+
+    private fun comparison(comparison: BranchComparison): BranchComparison =
+        comparison.copy(comparandNodeId = newId(comparison.comparandNodeId))
+
+    fun node(node: Node): Node = when (node) {
+        is IntConstant -> node.copy(id = newId(node.id))
+        is StringConstant -> node.copy(id = newId(node.id))
+        is LongConstant -> node.copy(id = newId(node.id))
+        is FloatConstant -> node.copy(id = newId(node.id))
+        is DoubleConstant -> node.copy(id = newId(node.id))
+        is BooleanConstant -> node.copy(id = newId(node.id))
+        is NullConstant -> node.copy(id = newId(node.id))
+        is EnumConstant -> node.copy(id = newId(node.id))
+        is LocalVariable -> node.copy(id = newId(node.id))
+        is FieldNode -> node.copy(id = newId(node.id))
+        is ParameterNode -> node.copy(id = newId(node.id))
+        is ReturnNode -> node.copy(id = newId(node.id))
+        is CallSiteNode -> node.copy(
+            id = newId(node.id),
+            receiver = node.receiver?.let { newId(it) },
+            arguments = node.arguments.map { newId(it) }
+        )
+        is AnnotationNode -> node.copy(id = newId(node.id))
+        is ResourceValueNode -> node.copy(id = newId(node.id))
+        is ResourceFileNode -> node.copy(id = newId(node.id))
+    }
+
+    fun edge(edge: Edge): Edge = when (edge) {
+        is DataFlowEdge -> edge.copy(from = newId(edge.from), to = newId(edge.to))
+        is ResourceEdge -> edge.copy(from = newId(edge.from), to = newId(edge.to))
+        is CallEdge -> edge.copy(from = newId(edge.from), to = newId(edge.to))
+        is TypeEdge -> edge.copy(from = newId(edge.from), to = newId(edge.to))
+        is ControlFlowEdge -> edge.copy(
+            from = newId(edge.from),
+            to = newId(edge.to),
+            comparison = edge.comparison?.let { comparison(it) }
+        )
+    }
+
+    fun branchScope(scope: BranchScopeData): BranchScopeData = scope.copy(
+        conditionNodeId = newId(scope.conditionNodeId),
+        comparison = comparison(scope.comparison),
+        trueBranchNodeIds = IntArray(scope.trueBranchNodeIds.size) { newId(scope.trueBranchNodeIds[it]) },
+        falseBranchNodeIds = IntArray(scope.falseBranchNodeIds.size) { newId(scope.falseBranchNodeIds[it]) }
+    )
+
+    companion object {
+
+        /**
+         * Number the nodes of [graph] method by method: starting from each
+         * node not numbered yet, in ascending id order, nodes are numbered
+         * breadth-first along outgoing edges that stay within the start
+         * node's method or lead to nodes of no method (constants, fields,
+         * resources). Each method's nodes then get a contiguous id range,
+         * with values next to the nodes they flow into, so successor lists
+         * have small gaps and traversals within a method touch few pages of
+         * `graph.nodedata`.
+         */
+        fun methodClustered(graph: Graph): NodeRenumbering {
+            val ids = IntArrayList()
+            val methodClusters = HashMap<MethodDescriptor, Int>()
+            val clusters = Int2IntOpenHashMap().apply { defaultReturnValue(-1) }
+            for (node in graph.nodes(Node::class.java)) {
+                ids.add(node.id.value)
+                val method = method(node) ?: continue
+                clusters.put(node.id.value, methodClusters.getOrPut(method) { methodClusters.size })
+            }
+            val roots = ids.toIntArray().apply { sort() }
+
+            // The order doubles as the breadth-first queue
+            val order = IntArrayList(roots.size)
+            val numbered = IntOpenHashSet(roots.size)
+            for (root in roots) {
+                if (!numbered.add(root)) continue
+                var head = order.size
+                order.add(root)
+                while (head < order.size) {
+                    val current = order.getInt(head++)
+                    val cluster = clusters.get(current)
+                    for (edge in graph.outgoing(NodeId(current))) {
+                        val next = edge.to.value
+                        val nextCluster = clusters.get(next)
+                        if ((nextCluster == -1 || nextCluster == cluster) && numbered.add(next)) order.add(next)
+                    }
+                }
+            }
+            return NodeRenumbering(order.toIntArray())
+        }
+
+        private fun method(node: Node): MethodDescriptor? = when (node) {
+            is LocalVariable -> node.method
+            is ParameterNode -> node.method
+            is ReturnNode -> node.method
+            is CallSiteNode -> node.caller
+            else -> null
+        }
+    }
+}
@@ -11,6 +11,7 @@ import io.johnsonlee.graphite.core.ControlFlowEdge
 import io.johnsonlee.graphite.core.ControlFlowKind
 import io.johnsonlee.graphite.core.DataFlowEdge
 import io.johnsonlee.graphite.core.DataFlowKind
+import io.johnsonlee.graphite.core.DescriptorPool
 import io.johnsonlee.graphite.core.DoubleConstant
 import io.johnsonlee.graphite.core.Edge
 import io.johnsonlee.graphite.core.EnumConstant
@@ -36,12 +37,18 @@ import io.johnsonlee.graphite.core.TypeDescriptor
 import io.johnsonlee.graphite.core.TypeEdge
 import io.johnsonlee.graphite.core.TypeRelation
 import io.johnsonlee.graphite.core.ValueNode
+import io.johnsonlee.graphite.graph.CallSiteIndex
+import io.johnsonlee.graphite.graph.EdgeLabels
+import io.johnsonlee.graphite.graph.PropertyIndex
+import io.johnsonlee.graphite.graph.TrigramIndex
+import io.johnsonlee.graphite.graph.TypeClosure
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import java.io.ByteArrayOutputStream
 import java.io.DataInputStream
 import java.io.DataOutputStream
 import java.io.File
 import java.io.InputStream
 import java.io.OutputStream
-import java.io.RandomAccessFile
 
 /**
  * Serializes and deserializes graph nodes and metadata to/from binary files
@@ -66,6 +73,11 @@ import java.io.RandomAccessFile
  * - Bit 7: reserved
  * - Metadata includes class origins and artifact-level dependency summaries.
  *
+ * v4:
+ * - Method and type descriptors are stored once in `graph.descriptors` (see
+ *   [writeDescriptors]); node data and metadata reference them by descriptor id.
+ *   Older files carry descriptors inline, which are interned on read.
+ *
  * [ControlFlowEdge.comparison] is stored separately since it does not fit in 8 bits.
  */
 internal object NodeSerializer {
@@ -75,12 +87,22 @@ internal object NodeSerializer {
     internal const val MAGIC_NODEDATA    = 0x47524E00  // "GRN"
     internal const val MAGIC_NODEINDEX   = 0x47524900  // "GRI"
     internal const val MAGIC_COMPARISONS = 0x47524300  // "GRC"
+    internal const val MAGIC_CALLSITES   = 0x47525300  // "GRS"
+    internal const val MAGIC_DESCRIPTORS = 0x47524400  // "GRD"
+    internal const val MAGIC_TYPES       = 0x47525400  // "GRT"
+    internal const val MAGIC_COLUMN      = 0x47524B00  // "GRK"
+    internal const val MAGIC_PROPERTIES  = 0x47525000  // "GRP"
+    internal const val MAGIC_TRIGRAMS    = 0x47524700  // "GRG"
+    internal const val MAGIC_BLOCKS      = 0x47525A00  // "GRZ"
 
     /** Current format version (occupies the low byte of the 4-byte header int). */
-    const val FORMAT_VERSION: Int = 3
+    const val FORMAT_VERSION: Int = 6
     private const val LEGACY_FORMAT_VERSION: Int = 1
     private const val TRANSITIONAL_FORMAT_VERSION: Int = 2
     private const val ARTIFACT_METADATA_FORMAT_VERSION: Int = 3
+    private const val DESCRIPTOR_TABLE_FORMAT_VERSION: Int = 4
+    internal const val SECTIONED_METADATA_FORMAT_VERSION: Int = 5
+    internal const val CSR_INDEX_FORMAT_VERSION: Int = 6
 
     /** Write a 4-byte file header: 3-byte magic prefix | 1-byte version. */
     fun writeHeader(dos: DataOutputStream, magic: Int) {
@@ -99,26 +121,12 @@ internal object NodeSerializer {
         return version
     }
 
-    /** Overload for [RandomAccessFile]. */
-    fun readHeader(raf: RandomAccessFile, expectedMagic: Int): Int {
-        val h = raf.readInt()
-        val prefix = h and HEADER_MAGIC_MASK
-        require(prefix == expectedMagic) {
-            "Invalid file magic: expected 0x${expectedMagic.toString(HEX_RADIX)}, got 0x${prefix.toString(HEX_RADIX)}"
-        }
-        val version = h and BYTE_MASK
-        validateVersion(version, expectedMagic)
-        return version
-    }
-
     private fun validateVersion(version: Int, expectedMagic: Int) {
         require(
-            version == LEGACY_FORMAT_VERSION ||
-                version == TRANSITIONAL_FORMAT_VERSION ||
-                version == FORMAT_VERSION
+            version in LEGACY_FORMAT_VERSION..FORMAT_VERSION
         ) {
             "Unsupported GraphStore format version $version for 0x${expectedMagic.toString(HEX_RADIX)}. " +
-                "This build supports versions $LEGACY_FORMAT_VERSION, $TRANSITIONAL_FORMAT_VERSION and $FORMAT_VERSION."
+                "This build supports versions $LEGACY_FORMAT_VERSION to $FORMAT_VERSION."
         }
     }
 
@@ -140,6 +148,26 @@ internal object NodeSerializer {
     internal const val TAG_RESOURCE_VALUE_NODE = 14
     internal const val TAG_RESOURCE_FILE_NODE = 15
 
+    /** Concrete node class of each node type tag, indexed by tag. */
+    internal val NODE_CLASSES: List<Class<out Node>> = listOf(
+        IntConstant::class.java,
+        StringConstant::class.java,
+        LongConstant::class.java,
+        FloatConstant::class.java,
+        DoubleConstant::class.java,
+        BooleanConstant::class.java,
+        NullConstant::class.java,
+        EnumConstant::class.java,
+        LocalVariable::class.java,
+        FieldNode::class.java,
+        ParameterNode::class.java,
+        ReturnNode::class.java,
+        CallSiteNode::class.java,
+        AnnotationNode::class.java,
+        ResourceValueNode::class.java,
+        ResourceFileNode::class.java
+    )
+
     // Value type tags (for heterogeneous value lists like enum constructor args)
     private const val VAL_INT = 0
     private const val VAL_LONG = 1
@@ -188,7 +216,22 @@ internal object NodeSerializer {
         comparison: BranchComparison? = null,
         version: Int = FORMAT_VERSION
     ): Edge {
-        return if (version >= FORMAT_VERSION) decodeEdgeV3(label, from, to, comparison) else decodeEdgeV2(label, from, to, comparison)
+        return if (version >= ARTIFACT_METADATA_FORMAT_VERSION) decodeEdgeV3(label, from, to, comparison) else decodeEdgeV2(label, from, to, comparison)
+    }
+
+    private val v2CursorLabels: IntArray by lazy { buildCursorLabelTable(TRANSITIONAL_FORMAT_VERSION) }
+    private val v3CursorLabels: IntArray by lazy { buildCursorLabelTable(ARTIFACT_METADATA_FORMAT_VERSION) }
+
+    /**
+     * Translation table from a persisted 8-bit label to its [EdgeLabels] value
+     * (without the comparison flag, which is resolved against the comparison
+     * map), or -1 for bytes that do not encode an edge in [version].
+     */
+    fun cursorLabelTable(version: Int = FORMAT_VERSION): IntArray =
+        if (version >= ARTIFACT_METADATA_FORMAT_VERSION) v3CursorLabels else v2CursorLabels
+
+    private fun buildCursorLabelTable(version: Int): IntArray = IntArray(BYTE_MASK + 1) { label ->
+        runCatching { EdgeLabels.of(decodeEdge(label, NodeId(0), NodeId(0), null, version)) }.getOrDefault(-1)
     }
 
     private fun decodeEdgeV2(label: Int, from: NodeId, to: NodeId, comparison: BranchComparison?): Edge {
@@ -237,46 +280,46 @@ internal object NodeSerializer {
     // ========================================================================
 
     /**
-     * Collect all unique strings from a list of nodes.
+     * Pass every string of a list of nodes to [dest], duplicates included.
      */
-    fun collectNodeStrings(nodes: Iterable<Node>, dest: MutableSet<String>) {
+    fun collectNodeStrings(nodes: Iterable<Node>, dest: (String) -> Unit) {
         for (node in nodes) {
             when (node) {
-                is StringConstant -> dest.add(node.value)
+                is StringConstant -> dest(node.value)
                 is EnumConstant -> {
-                    dest.add(node.enumType.className)
-                    dest.add(node.enumName)
+                    dest(node.enumType.className)
+                    dest(node.enumName)
                     collectAnyValueStrings(node.constructorArgs, dest)
                 }
                 is LocalVariable -> {
-                    dest.add(node.name)
-                    dest.add(node.type.className)
+                    dest(node.name)
+                    dest(node.type.className)
                     collectMethodDescriptorStrings(node.method, dest)
                 }
                 is FieldNode -> {
-                    dest.add(node.descriptor.declaringClass.className)
-                    dest.add(node.descriptor.name)
-                    dest.add(node.descriptor.type.className)
+                    dest(node.descriptor.declaringClass.className)
+                    dest(node.descriptor.name)
+                    dest(node.descriptor.type.className)
                 }
                 is ParameterNode -> {
-                    dest.add(node.type.className)
+                    dest(node.type.className)
                     collectMethodDescriptorStrings(node.method, dest)
                 }
                 is ReturnNode -> {
                     collectMethodDescriptorStrings(node.method, dest)
-                    node.actualType?.let { dest.add(it.className) }
+                    node.actualType?.let { dest(it.className) }
                 }
                 is ResourceFileNode -> {
-                    dest.add(node.path)
-                    dest.add(node.source)
-                    dest.add(node.format)
-                    node.profile?.let(dest::add)
+                    dest(node.path)
+                    dest(node.source)
+                    dest(node.format)
+                    node.profile?.let(dest)
                 }
                 is ResourceValueNode -> {
-                    dest.add(node.path)
-                    dest.add(node.key)
-                    dest.add(node.format)
-                    node.profile?.let(dest::add)
+                    dest(node.path)
+                    dest(node.key)
+                    dest(node.format)
+                    node.profile?.let(dest)
                     collectAnyValueString(node.value, dest)
                 }
                 is CallSiteNode -> {
@@ -284,11 +327,11 @@ internal object NodeSerializer {
                     collectMethodDescriptorStrings(node.callee, dest)
                 }
                 is AnnotationNode -> {
-                    dest.add(node.name)
-                    dest.add(node.className)
-                    dest.add(node.memberName)
+                    dest(node.name)
+                    dest(node.className)
+                    dest(node.memberName)
                     for ((k, v) in node.values) {
-                        dest.add(k)
+                        dest(k)
                         collectAnyValueString(v, dest)
                     }
                 }
@@ -298,9 +341,9 @@ internal object NodeSerializer {
     }
 
     /**
-     * Collect all unique strings from metadata.
+     * Pass every string of [metadata] to [dest], duplicates included.
      */
-    fun collectMetadataStrings(metadata: GraphMetadata, dest: MutableSet<String>) {
+    fun collectMetadataStrings(metadata: GraphMetadata, dest: (String) -> Unit) {
         // Methods
         for ((_, md) in metadata.methods) {
             collectMethodDescriptorStrings(md, dest)
@@ -308,39 +351,39 @@ internal object NodeSerializer {
 
         // Type hierarchy
         for ((typeName, sups) in metadata.supertypes) {
-            dest.add(typeName)
-            for (s in sups) dest.add(s.className)
+            dest(typeName)
+            for (s in sups) dest(s.className)
         }
         for ((typeName, subs) in metadata.subtypes) {
-            dest.add(typeName)
-            for (s in subs) dest.add(s.className)
+            dest(typeName)
+            for (s in subs) dest(s.className)
         }
 
         // Enum values
         for ((key, values) in metadata.enumValues) {
-            dest.add(key)
+            dest(key)
             collectAnyValueStrings(values, dest)
         }
 
         for ((className, source) in metadata.classOrigins) {
-            dest.add(className)
-            dest.add(source)
+            dest(className)
+            dest(source)
         }
 
         for ((fromArtifact, dependencies) in metadata.artifactDependencies) {
-            dest.add(fromArtifact)
+            dest(fromArtifact)
             for ((toArtifact, _) in dependencies) {
-                dest.add(toArtifact)
+                dest(toArtifact)
             }
         }
 
         // Member annotations
         for ((key, annotations) in metadata.memberAnnotations) {
-            dest.add(key)
+            dest(key)
             for ((fqn, attrs) in annotations) {
-                dest.add(fqn)
+                dest(fqn)
                 for ((k, v) in attrs) {
-                    dest.add(k)
+                    dest(k)
                     collectAnyValueString(v, dest)
                 }
             }
@@ -352,29 +395,68 @@ internal object NodeSerializer {
         }
     }
 
-    private fun collectMethodDescriptorStrings(md: MethodDescriptor, dest: MutableSet<String>) {
-        dest.add(md.declaringClass.className)
-        dest.add(md.name)
-        for (p in md.parameterTypes) dest.add(p.className)
-        dest.add(md.returnType.className)
+    /**
+     * Intern every method and type descriptor referenced by [node] into [dest],
+     * the descriptor table later written by [writeDescriptors].
+     */
+    fun collectNodeDescriptors(node: Node, dest: DescriptorPool) {
+        when (node) {
+            is EnumConstant -> dest.typeId(erase(node.enumType))
+            is LocalVariable -> {
+                dest.typeId(erase(node.type))
+                dest.methodId(erase(node.method))
+            }
+            is FieldNode -> {
+                dest.typeId(erase(node.descriptor.declaringClass))
+                dest.typeId(erase(node.descriptor.type))
+            }
+            is ParameterNode -> {
+                dest.typeId(erase(node.type))
+                dest.methodId(erase(node.method))
+            }
+            is ReturnNode -> {
+                dest.methodId(erase(node.method))
+                node.actualType?.let { dest.typeId(erase(it)) }
+            }
+            is CallSiteNode -> {
+                dest.methodId(erase(node.caller))
+                dest.methodId(erase(node.callee))
+            }
+            else -> {}
+        }
+    }
+
+    /**
+     * Intern the method descriptors referenced by [metadata] into [dest].
+     */
+    fun collectMetadataDescriptors(metadata: GraphMetadata, dest: DescriptorPool) {
+        for ((_, md) in metadata.methods) dest.methodId(erase(md))
+        for (bs in metadata.branchScopes) dest.methodId(erase(bs.method))
+    }
+
+    private fun collectMethodDescriptorStrings(md: MethodDescriptor, dest: (String) -> Unit) {
+        dest(md.declaringClass.className)
+        dest(md.name)
+        for (p in md.parameterTypes) dest(p.className)
+        dest(md.returnType.className)
     }
 
-    private fun collectAnyValueStrings(values: List<Any?>, dest: MutableSet<String>) {
+    private fun collectAnyValueStrings(values: List<Any?>, dest: (String) -> Unit) {
         for (value in values) {
             collectAnyValueString(value, dest)
         }
     }
 
-    private fun collectAnyValueString(value: Any?, dest: MutableSet<String>) {
+    private fun collectAnyValueString(value: Any?, dest: (String) -> Unit) {
         when (value) {
-            is String -> dest.add(value)
+            is String -> dest(value)
             is EnumValueReference -> {
-                dest.add(value.enumClass)
-                dest.add(value.enumName)
+                dest(value.enumClass)
+                dest(value.enumName)
             }
             is List<*> -> value.forEach { collectAnyValueString(it, dest) }
             is Int, is Long, is Float, is Double, is Boolean, null -> {}
-            else -> dest.add(value.toString())
+            else -> dest(value.toString())
         }
     }
 
@@ -382,7 +464,7 @@ internal object NodeSerializer {
     // Node writing / reading (string-table-aware)
     // ========================================================================
 
-    fun writeNode(dos: DataOutputStream, node: Node, strings: StringTable): Int {
+    fun writeNode(dos: DataOutputStream, node: Node, strings: StringTable, descriptors: DescriptorPool): Int {
         dos.writeInt(node.id.value)
         val tag = when (node) {
             is IntConstant -> TAG_INT_CONSTANT
@@ -413,31 +495,31 @@ internal object NodeSerializer {
             is BooleanConstant -> dos.writeBoolean(node.value)
             is NullConstant -> {} // no additional data
             is EnumConstant -> {
-                dos.writeInt(strings.indexOf(node.enumType.className))
+                writeTypeDescriptor(dos, node.enumType, descriptors)
                 dos.writeInt(strings.indexOf(node.enumName))
                 dos.writeInt(node.constructorArgs.size)
                 for (arg in node.constructorArgs) writeAnyValue(dos, arg, strings)
             }
             is LocalVariable -> {
                 dos.writeInt(strings.indexOf(node.name))
-                dos.writeInt(strings.indexOf(node.type.className))
-                writeMethodDescriptor(dos, node.method, strings)
+                writeTypeDescriptor(dos, node.type, descriptors)
+                writeMethodDescriptor(dos, node.method, descriptors)
             }
             is FieldNode -> {
-                dos.writeInt(strings.indexOf(node.descriptor.declaringClass.className))
+                writeTypeDescriptor(dos, node.descriptor.declaringClass, descriptors)
                 dos.writeInt(strings.indexOf(node.descriptor.name))
-                dos.writeInt(strings.indexOf(node.descriptor.type.className))
+                writeTypeDescriptor(dos, node.descriptor.type, descriptors)
                 dos.writeBoolean(node.isStatic)
             }
             is ParameterNode -> {
                 dos.writeInt(node.index)
-                dos.writeInt(strings.indexOf(node.type.className))
-                writeMethodDescriptor(dos, node.method, strings)
+                writeTypeDescriptor(dos, node.type, descriptors)
+                writeMethodDescriptor(dos, node.method, descriptors)
             }
             is ReturnNode -> {
-                writeMethodDescriptor(dos, node.method, strings)
+                writeMethodDescriptor(dos, node.method, descriptors)
                 dos.writeBoolean(node.actualType != null)
-                if (node.actualType != null) dos.writeInt(strings.indexOf(node.actualType!!.className))
+                if (node.actualType != null) writeTypeDescriptor(dos, node.actualType!!, descriptors)
             }
             is ResourceFileNode -> {
                 dos.writeInt(strings.indexOf(node.path))
@@ -455,8 +537,8 @@ internal object NodeSerializer {
                 if (node.profile != null) dos.writeInt(strings.indexOf(node.profile!!))
             }
             is CallSiteNode -> {
-                writeMethodDescriptor(dos, node.caller, strings)
-                writeMethodDescriptor(dos, node.callee, strings)
+                writeMethodDescriptor(dos, node.caller, descriptors)
+                writeMethodDescriptor(dos, node.callee, descriptors)
                 dos.writeInt(node.lineNumber ?: -1)
                 dos.writeInt(node.receiver?.value ?: -1)
                 dos.writeInt(node.arguments.size)
@@ -476,7 +558,17 @@ internal object NodeSerializer {
         return tag
     }
 
-    fun readNode(dis: DataInputStream, strings: StringTable, formatVersion: Int = FORMAT_VERSION): Node {
+    /**
+     * Read one node. [descriptors] resolves descriptor ids in [formatVersion] 4
+     * and later (see [readDescriptors]); descriptors of older versions are read
+     * inline and interned into it.
+     */
+    fun readNode(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int = FORMAT_VERSION,
+        descriptors: DescriptorPool = DescriptorPool()
+    ): Node {
         val id = NodeId(dis.readInt())
         return when (val tag = dis.readByte().toInt()) {
             TAG_INT_CONSTANT -> IntConstant(id, dis.readInt())
@@ -487,7 +579,7 @@ internal object NodeSerializer {
             TAG_BOOLEAN_CONSTANT -> BooleanConstant(id, dis.readBoolean())
             TAG_NULL_CONSTANT -> NullConstant(id)
             TAG_ENUM_CONSTANT -> {
-                val enumType = TypeDescriptor(strings.get(dis.readInt()))
+                val enumType = readTypeDescriptor(dis, strings, formatVersion, descriptors)
                 val enumName = strings.get(dis.readInt())
                 val argCount = dis.readInt()
                 val args = (0 until argCount).map { readAnyValue(dis, strings, formatVersion) }
@@ -495,27 +587,27 @@ internal object NodeSerializer {
             }
             TAG_LOCAL_VARIABLE -> {
                 val name = strings.get(dis.readInt())
-                val type = TypeDescriptor(strings.get(dis.readInt()))
-                val method = readMethodDescriptor(dis, strings)
+                val type = readTypeDescriptor(dis, strings, formatVersion, descriptors)
+                val method = readMethodDescriptor(dis, strings, formatVersion, descriptors)
                 LocalVariable(id, name, type, method)
             }
             TAG_FIELD_NODE -> {
-                val declClass = TypeDescriptor(strings.get(dis.readInt()))
+                val declClass = readTypeDescriptor(dis, strings, formatVersion, descriptors)
                 val name = strings.get(dis.readInt())
-                val fieldType = TypeDescriptor(strings.get(dis.readInt()))
+                val fieldType = readTypeDescriptor(dis, strings, formatVersion, descriptors)
                 val isStatic = dis.readBoolean()
                 FieldNode(id, FieldDescriptor(declClass, name, fieldType), isStatic)
             }
             TAG_PARAMETER_NODE -> {
                 val index = dis.readInt()
-                val type = TypeDescriptor(strings.get(dis.readInt()))
-                val method = readMethodDescriptor(dis, strings)
+                val type = readTypeDescriptor(dis, strings, formatVersion, descriptors)
+                val method = readMethodDescriptor(dis, strings, formatVersion, descriptors)
                 ParameterNode(id, index, type, method)
             }
             TAG_RETURN_NODE -> {
-                val method = readMethodDescriptor(dis, strings)
+                val method = readMethodDescriptor(dis, strings, formatVersion, descriptors)
                 val hasActualType = dis.readBoolean()
-                val actualType = if (hasActualType) TypeDescriptor(strings.get(dis.readInt())) else null
+                val actualType = if (hasActualType) readTypeDescriptor(dis, strings, formatVersion, descriptors) else null
                 ReturnNode(id, method, actualType)
             }
             TAG_RESOURCE_FILE_NODE -> {
@@ -534,8 +626,8 @@ internal object NodeSerializer {
                 ResourceValueNode(id, path, key, value, format, profile)
             }
             TAG_CALL_SITE_NODE -> {
-                val caller = readMethodDescriptor(dis, strings)
-                val callee = readMethodDescriptor(dis, strings)
+                val caller = readMethodDescriptor(dis, strings, formatVersion, descriptors)
+                val callee = readMethodDescriptor(dis, strings, formatVersion, descriptors)
                 val lineNumber = dis.readInt().let { if (it == -1) null else it }
                 val receiver = dis.readInt().let { if (it == -1) null else NodeId(it) }
                 val argCount = dis.readInt()
@@ -563,112 +655,208 @@ internal object NodeSerializer {
     // Metadata writing / reading (string-table-aware)
     // ========================================================================
 
-    fun saveMetadata(metadata: GraphMetadata, dos: DataOutputStream, strings: StringTable) {
+    /** Sections of `graph.metadata`, in file order. */
+    internal const val SECTION_METHODS = 0
+    internal const val SECTION_SUPERTYPES = 1
+    internal const val SECTION_SUBTYPES = 2
+    internal const val SECTION_ENUM_VALUES = 3
+    internal const val SECTION_CLASS_ORIGINS = 4
+    internal const val SECTION_ARTIFACT_DEPENDENCIES = 5
+    internal const val SECTION_MEMBER_ANNOTATIONS = 6
+    internal const val SECTION_BRANCH_SCOPES = 7
+    internal const val METADATA_SECTIONS = 8
+
+    /** Bytes of a keyed section entry: key and record offset. */
+    internal const val KEYED_ENTRY_BYTES = 2 * Int.SIZE_BYTES
+
+    /**
+     * Writes [metadata] as independently addressable sections: the header,
+     * the section count and `count + 1` absolute section offsets, then the
+     * sections back to back in [SECTION_METHODS]..[SECTION_BRANCH_SCOPES]
+     * order. Member annotations and branch scopes are keyed sections (see
+     * [writeKeyedSection]), so [MetadataSections] can decode the records of
+     * one key without the rest of the section.
+     */
+    fun saveMetadata(metadata: GraphMetadata, dos: DataOutputStream, strings: StringTable, descriptors: DescriptorPool) {
         writeHeader(dos, MAGIC_METADATA)
-        // Methods
-        dos.writeInt(metadata.methods.size)
-        for ((_, md) in metadata.methods) {
-            writeMethodDescriptor(dos, md, strings)
+        val sections = Array(METADATA_SECTIONS) { section ->
+            ByteArrayOutputStream().also { bytes ->
+                DataOutputStream(bytes).use { writeMetadataSection(section, metadata, it, strings, descriptors) }
+            }
         }
-
-        // Type hierarchy: supertypes
-        dos.writeInt(metadata.supertypes.size)
-        for ((typeName, sups) in metadata.supertypes) {
-            dos.writeInt(strings.indexOf(typeName))
-            dos.writeInt(sups.size)
-            for (s in sups) dos.writeInt(strings.indexOf(s.className))
+        var offset = Int.SIZE_BYTES * 2L + (sections.size + 1L) * Long.SIZE_BYTES
+        dos.writeInt(sections.size)
+        dos.writeLong(offset)
+        for (section in sections) {
+            offset += section.size()
+            dos.writeLong(offset)
         }
+        for (section in sections) section.writeTo(dos)
+    }
 
-        // Type hierarchy: subtypes
-        dos.writeInt(metadata.subtypes.size)
-        for ((typeName, subs) in metadata.subtypes) {
-            dos.writeInt(strings.indexOf(typeName))
-            dos.writeInt(subs.size)
-            for (s in subs) dos.writeInt(strings.indexOf(s.className))
+    @Suppress("CyclomaticComplexMethod")
+    private fun writeMetadataSection(
+        section: Int,
+        metadata: GraphMetadata,
+        dos: DataOutputStream,
+        strings: StringTable,
+        descriptors: DescriptorPool
+    ) {
+        when (section) {
+            SECTION_METHODS -> {
+                dos.writeInt(metadata.methods.size)
+                for ((_, md) in metadata.methods) {
+                    writeMethodDescriptor(dos, md, descriptors)
+                }
+            }
+            SECTION_SUPERTYPES -> writeTypeHierarchy(dos, metadata.supertypes, strings)
+            SECTION_SUBTYPES -> writeTypeHierarchy(dos, metadata.subtypes, strings)
+            SECTION_ENUM_VALUES -> {
+                dos.writeInt(metadata.enumValues.size)
+                for ((key, values) in metadata.enumValues) {
+                    dos.writeInt(strings.indexOf(key))
+                    dos.writeInt(values.size)
+                    for (v in values) writeAnyValue(dos, v, strings)
+                }
+            }
+            SECTION_CLASS_ORIGINS -> {
+                dos.writeInt(metadata.classOrigins.size)
+                for ((className, source) in metadata.classOrigins) {
+                    dos.writeInt(strings.indexOf(className))
+                    dos.writeInt(strings.indexOf(source))
+                }
+            }
+            SECTION_ARTIFACT_DEPENDENCIES -> {
+                dos.writeInt(metadata.artifactDependencies.size)
+                for ((fromArtifact, dependencies) in metadata.artifactDependencies) {
+                    dos.writeInt(strings.indexOf(fromArtifact))
+                    dos.writeInt(dependencies.size)
+                    for ((toArtifact, weight) in dependencies) {
+                        dos.writeInt(strings.indexOf(toArtifact))
+                        dos.writeInt(weight)
+                    }
+                }
+            }
+            SECTION_MEMBER_ANNOTATIONS -> writeKeyedSection(
+                dos,
+                metadata.memberAnnotations.entries,
+                { strings.indexOf(it.key) }
+            ) { out, (key, annotations) ->
+                out.writeInt(strings.indexOf(key))
+                out.writeInt(annotations.size)
+                for ((fqn, attrs) in annotations) {
+                    out.writeInt(strings.indexOf(fqn))
+                    out.writeInt(attrs.size)
+                    for ((k, v) in attrs) {
+                        out.writeInt(strings.indexOf(k))
+                        writeAnyValue(out, v, strings)
+                    }
+                }
+            }
+            SECTION_BRANCH_SCOPES -> writeKeyedSection(dos, metadata.branchScopes, BranchScopeData::conditionNodeId) { out, bs ->
+                out.writeInt(bs.conditionNodeId)
+                writeMethodDescriptor(out, bs.method, descriptors)
+                out.writeInt(bs.comparison.operator.ordinal)
+                out.writeInt(bs.comparison.comparandNodeId.value)
+                out.writeInt(bs.trueBranchNodeIds.size)
+                for (id in bs.trueBranchNodeIds) out.writeInt(id)
+                out.writeInt(bs.falseBranchNodeIds.size)
+                for (id in bs.falseBranchNodeIds) out.writeInt(id)
+            }
         }
+    }
 
-        // Enum values
-        dos.writeInt(metadata.enumValues.size)
-        for ((key, values) in metadata.enumValues) {
-            dos.writeInt(strings.indexOf(key))
-            dos.writeInt(values.size)
-            for (v in values) writeAnyValue(dos, v, strings)
+    private fun writeTypeHierarchy(dos: DataOutputStream, types: Map<String, Set<TypeDescriptor>>, strings: StringTable) {
+        dos.writeInt(types.size)
+        for ((typeName, related) in types) {
+            dos.writeInt(strings.indexOf(typeName))
+            dos.writeInt(related.size)
+            for (s in related) dos.writeInt(strings.indexOf(s.className))
         }
+    }
 
-        dos.writeInt(metadata.classOrigins.size)
-        for ((className, source) in metadata.classOrigins) {
-            dos.writeInt(strings.indexOf(className))
-            dos.writeInt(strings.indexOf(source))
+    /**
+     * Writes [records] as a keyed section: the record count, one
+     * `(key, record offset)` entry per record sorted by key, then the records
+     * in their original order. Offsets are relative to the first record, and
+     * records still start with their key, so the section also reads
+     * sequentially like the unkeyed sections of older versions.
+     */
+    private fun <T> writeKeyedSection(
+        dos: DataOutputStream,
+        records: Collection<T>,
+        key: (T) -> Int,
+        write: (DataOutputStream, T) -> Unit
+    ) {
+        val bytes = ByteArrayOutputStream()
+        val out = DataOutputStream(bytes)
+        // Key in the high half, offset in the low half: sorting keeps records of equal keys in order
+        val entries = LongArray(records.size)
+        for ((i, record) in records.withIndex()) {
+            entries[i] = (key(record).toLong() shl Int.SIZE_BITS) or bytes.size().toLong()
+            write(out, record)
         }
-
-        dos.writeInt(metadata.artifactDependencies.size)
-        for ((fromArtifact, dependencies) in metadata.artifactDependencies) {
-            dos.writeInt(strings.indexOf(fromArtifact))
-            dos.writeInt(dependencies.size)
-            for ((toArtifact, weight) in dependencies) {
-                dos.writeInt(strings.indexOf(toArtifact))
-                dos.writeInt(weight)
-            }
+        entries.sort()
+        dos.writeInt(records.size)
+        for (entry in entries) {
+            dos.writeInt((entry shr Int.SIZE_BITS).toInt())
+            dos.writeInt(entry.toInt())
         }
+        bytes.writeTo(dos)
+    }
 
-        // Member annotations
-        dos.writeInt(metadata.memberAnnotations.size)
-        for ((key, annotations) in metadata.memberAnnotations) {
-            dos.writeInt(strings.indexOf(key))
-            dos.writeInt(annotations.size)
-            for ((fqn, attrs) in annotations) {
-                dos.writeInt(strings.indexOf(fqn))
-                dos.writeInt(attrs.size)
-                for ((k, v) in attrs) {
-                    dos.writeInt(strings.indexOf(k))
-                    writeAnyValue(dos, v, strings)
-                }
-            }
+    fun loadMetadata(
+        dis: DataInputStream,
+        strings: StringTable,
+        descriptors: DescriptorPool = DescriptorPool()
+    ): GraphMetadata {
+        val formatVersion = readHeader(dis, MAGIC_METADATA)
+        if (formatVersion >= SECTIONED_METADATA_FORMAT_VERSION) {
+            // Sections follow the offset table back to back
+            dis.skipBytes((dis.readInt() + 1) * Long.SIZE_BYTES)
         }
-
-        // Branch scopes
-        dos.writeInt(metadata.branchScopes.size)
-        for (bs in metadata.branchScopes) {
-            dos.writeInt(bs.conditionNodeId)
-            writeMethodDescriptor(dos, bs.method, strings)
-            dos.writeInt(bs.comparison.operator.ordinal)
-            dos.writeInt(bs.comparison.comparandNodeId.value)
-            dos.writeInt(bs.trueBranchNodeIds.size)
-            for (id in bs.trueBranchNodeIds) dos.writeInt(id)
-            dos.writeInt(bs.falseBranchNodeIds.size)
-            for (id in bs.falseBranchNodeIds) dos.writeInt(id)
+        val methods = readMethods(dis, strings, formatVersion, descriptors)
+        val supertypes = readTypeHierarchy(dis, strings, descriptors)
+        val subtypes = readTypeHierarchy(dis, strings, descriptors)
+        val enumValues = readEnumValues(dis, strings, formatVersion)
+        val classOrigins = if (formatVersion >= ARTIFACT_METADATA_FORMAT_VERSION) readClassOrigins(dis, strings) else emptyMap()
+        val artifactDependencies = if (formatVersion >= ARTIFACT_METADATA_FORMAT_VERSION) {
+            readArtifactDependencies(dis, strings)
+        } else {
+            emptyMap()
         }
+        val memberAnnotations = readMemberAnnotations(dis, strings, formatVersion)
+        val branchScopes = readBranchScopes(dis, strings, formatVersion, descriptors)
+        return GraphMetadata(methods, supertypes, subtypes, enumValues, classOrigins, artifactDependencies, memberAnnotations, branchScopes)
     }
 
-    fun loadMetadata(dis: DataInputStream, strings: StringTable): GraphMetadata {
-        val formatVersion = readHeader(dis, MAGIC_METADATA)
-        // Methods
+    fun readMethods(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int,
+        descriptors: DescriptorPool
+    ): Map<String, MethodDescriptor> {
         val methodCount = dis.readInt()
         val methods = mutableMapOf<String, MethodDescriptor>()
         repeat(methodCount) {
-            val md = readMethodDescriptor(dis, strings)
+            val md = readMethodDescriptor(dis, strings, formatVersion, descriptors)
             methods[md.signature] = md
         }
+        return methods
+    }
 
-        // Type hierarchy: supertypes
-        val superCount = dis.readInt()
-        val supertypes = mutableMapOf<String, Set<TypeDescriptor>>()
-        repeat(superCount) {
-            val typeName = strings.get(dis.readInt())
-            val count = dis.readInt()
-            supertypes[typeName] = (0 until count).map { TypeDescriptor(strings.get(dis.readInt())) }.toSet()
-        }
-
-        // Type hierarchy: subtypes
-        val subCount = dis.readInt()
-        val subtypes = mutableMapOf<String, Set<TypeDescriptor>>()
-        repeat(subCount) {
+    fun readTypeHierarchy(dis: DataInputStream, strings: StringTable, descriptors: DescriptorPool): Map<String, Set<TypeDescriptor>> {
+        val typeCount = dis.readInt()
+        val types = mutableMapOf<String, Set<TypeDescriptor>>()
+        repeat(typeCount) {
             val typeName = strings.get(dis.readInt())
             val count = dis.readInt()
-            subtypes[typeName] = (0 until count).map { TypeDescriptor(strings.get(dis.readInt())) }.toSet()
+            types[typeName] = (0 until count).map { descriptors.type(strings.get(dis.readInt())) }.toSet()
         }
+        return types
+    }
 
-        // Enum values
+    fun readEnumValues(dis: DataInputStream, strings: StringTable, formatVersion: Int): Map<String, List<Any?>> {
         val enumCount = dis.readInt()
         val enumValues = mutableMapOf<String, List<Any?>>()
         repeat(enumCount) {
@@ -676,66 +864,97 @@ internal object NodeSerializer {
             val count = dis.readInt()
             enumValues[key] = (0 until count).map { readAnyValue(dis, strings, formatVersion) }
         }
+        return enumValues
+    }
 
+    fun readClassOrigins(dis: DataInputStream, strings: StringTable): Map<String, String> {
         val classOrigins = mutableMapOf<String, String>()
-        if (formatVersion >= ARTIFACT_METADATA_FORMAT_VERSION) {
-            val classOriginCount = dis.readInt()
-            repeat(classOriginCount) {
-                classOrigins[strings.get(dis.readInt())] = strings.get(dis.readInt())
-            }
+        repeat(dis.readInt()) {
+            classOrigins[strings.get(dis.readInt())] = strings.get(dis.readInt())
         }
+        return classOrigins
+    }
 
+    fun readArtifactDependencies(dis: DataInputStream, strings: StringTable): Map<String, Map<String, Int>> {
         val artifactDependencies = mutableMapOf<String, Map<String, Int>>()
-        if (formatVersion >= ARTIFACT_METADATA_FORMAT_VERSION) {
-            val artifactCount = dis.readInt()
-            repeat(artifactCount) {
-                val fromArtifact = strings.get(dis.readInt())
-                val dependencyCount = dis.readInt()
-                val dependencies = mutableMapOf<String, Int>()
-                repeat(dependencyCount) {
-                    dependencies[strings.get(dis.readInt())] = dis.readInt()
-                }
-                artifactDependencies[fromArtifact] = dependencies
+        repeat(dis.readInt()) {
+            val fromArtifact = strings.get(dis.readInt())
+            val dependencyCount = dis.readInt()
+            val dependencies = mutableMapOf<String, Int>()
+            repeat(dependencyCount) {
+                dependencies[strings.get(dis.readInt())] = dis.readInt()
             }
+            artifactDependencies[fromArtifact] = dependencies
         }
+        return artifactDependencies
+    }
 
-        // Member annotations
+    fun readMemberAnnotations(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int
+    ): Map<String, Map<String, Map<String, Any?>>> {
         val annCount = dis.readInt()
+        if (formatVersion >= SECTIONED_METADATA_FORMAT_VERSION) dis.skipBytes(annCount * KEYED_ENTRY_BYTES)
         val memberAnnotations = mutableMapOf<String, Map<String, Map<String, Any?>>>()
         repeat(annCount) {
-            val key = strings.get(dis.readInt())
-            val fqnCount = dis.readInt()
-            val annotations = mutableMapOf<String, Map<String, Any?>>()
-            repeat(fqnCount) {
-                val fqn = strings.get(dis.readInt())
-                val kvCount = dis.readInt()
-                val kv = mutableMapOf<String, Any?>()
-                repeat(kvCount) {
-                    val k = strings.get(dis.readInt())
-                    val v = readAnnotationValue(dis, strings, formatVersion)
-                    kv[k] = v
-                }
-                annotations[fqn] = kv
-            }
+            val (key, annotations) = readMemberAnnotation(dis, strings, formatVersion)
             memberAnnotations[key] = annotations
         }
+        return memberAnnotations
+    }
 
-        // Branch scopes
-        val scopeCount = dis.readInt()
-        val branchScopes = (0 until scopeCount).map {
-            val condId = dis.readInt()
-            val method = readMethodDescriptor(dis, strings)
-            val op = ComparisonOp.entries[dis.readInt()]
-            val comparandId = dis.readInt()
-            val comparison = BranchComparison(op, NodeId(comparandId))
-            val trueCount = dis.readInt()
-            val trueIds = IntArray(trueCount) { dis.readInt() }
-            val falseCount = dis.readInt()
-            val falseIds = IntArray(falseCount) { dis.readInt() }
-            BranchScopeData(condId, method, comparison, trueIds, falseIds)
+    /** Reads one `member key -> annotations` record of the member annotations section. */
+    fun readMemberAnnotation(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int
+    ): Pair<String, Map<String, Map<String, Any?>>> {
+        val key = strings.get(dis.readInt())
+        val fqnCount = dis.readInt()
+        val annotations = mutableMapOf<String, Map<String, Any?>>()
+        repeat(fqnCount) {
+            val fqn = strings.get(dis.readInt())
+            val kvCount = dis.readInt()
+            val kv = mutableMapOf<String, Any?>()
+            repeat(kvCount) {
+                val k = strings.get(dis.readInt())
+                val v = readAnnotationValue(dis, strings, formatVersion)
+                kv[k] = v
+            }
+            annotations[fqn] = kv
         }
+        return key to annotations
+    }
 
-        return GraphMetadata(methods, supertypes, subtypes, enumValues, classOrigins, artifactDependencies, memberAnnotations, branchScopes)
+    fun readBranchScopes(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int,
+        descriptors: DescriptorPool
+    ): List<BranchScopeData> {
+        val scopeCount = dis.readInt()
+        if (formatVersion >= SECTIONED_METADATA_FORMAT_VERSION) dis.skipBytes(scopeCount * KEYED_ENTRY_BYTES)
+        return (0 until scopeCount).map { readBranchScope(dis, strings, formatVersion, descriptors) }
+    }
+
+    /** Reads one record of the branch scopes section. */
+    fun readBranchScope(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int,
+        descriptors: DescriptorPool
+    ): BranchScopeData {
+        val condId = dis.readInt()
+        val method = readMethodDescriptor(dis, strings, formatVersion, descriptors)
+        val op = ComparisonOp.entries[dis.readInt()]
+        val comparandId = dis.readInt()
+        val comparison = BranchComparison(op, NodeId(comparandId))
+        val trueCount = dis.readInt()
+        val trueIds = IntArray(trueCount) { dis.readInt() }
+        val falseCount = dis.readInt()
+        val falseIds = IntArray(falseCount) { dis.readInt() }
+        return BranchScopeData(condId, method, comparison, trueIds, falseIds)
     }
 
     // ========================================================================
@@ -752,38 +971,277 @@ internal object NodeSerializer {
         }
     }
 
-    fun readComparisons(dis: DataInputStream): Map<Long, BranchComparison> {
+    fun readComparisons(dis: DataInputStream): Long2ObjectOpenHashMap<BranchComparison> {
         readHeader(dis, MAGIC_COMPARISONS)
         val count = dis.readInt()
-        val result = HashMap<Long, BranchComparison>(count)
+        val result = Long2ObjectOpenHashMap<BranchComparison>(count)
         repeat(count) {
             val key = dis.readLong()
             val op = ComparisonOp.entries[dis.readInt()]
             val comparandId = NodeId(dis.readInt())
-            result[key] = BranchComparison(op, comparandId)
+            result.put(key, BranchComparison(op, comparandId))
         }
         return result
     }
 
+    // ========================================================================
+    // Call site index writing / reading
+    // ========================================================================
+
+    fun writeCallSiteIndex(dos: DataOutputStream, index: CallSiteIndex, strings: StringTable) {
+        writeHeader(dos, MAGIC_CALLSITES)
+        dos.writeInt(index.bucketCount)
+        index.forEachBucket { className, name, nodeIds ->
+            dos.writeInt(strings.indexOf(className))
+            dos.writeInt(strings.indexOf(name))
+            dos.writeInt(nodeIds.size)
+            for (id in nodeIds) dos.writeInt(id)
+        }
+    }
+
+    fun readCallSiteIndex(dis: DataInputStream, strings: StringTable): CallSiteIndex {
+        readHeader(dis, MAGIC_CALLSITES)
+        val builder = CallSiteIndex.Builder()
+        repeat(dis.readInt()) {
+            val className = strings.get(dis.readInt())
+            val name = strings.get(dis.readInt())
+            repeat(dis.readInt()) { builder.add(className, name, dis.readInt()) }
+        }
+        return builder.build()
+    }
+
+    // ========================================================================
+    // Property index writing / reading
+    // ========================================================================
+
+    /** Bytes of an index table entry: node tag, property name, two counts and the offset of the arrays. */
+    internal const val INDEX_ENTRY_BYTES = 1 + 3 * Int.SIZE_BYTES + Long.SIZE_BYTES
+
+    /**
+     * Write [PropertyIndex]es in CSR form, so [PersistedIndexes] can load
+     * each on its own: a table with, per index, the node tag of its type,
+     * its property name, value count, node count and the file offset of its
+     * arrays; then per index the string indices of its values (ascending,
+     * like the values themselves), the `value count + 1` starts and the node
+     * ids.
+     */
+    fun writePropertyIndexes(dos: DataOutputStream, indexes: List<PropertyIndex>, strings: StringTable) {
+        writeHeader(dos, MAGIC_PROPERTIES)
+        dos.writeInt(indexes.size)
+        var offset = Int.SIZE_BYTES * 2L + indexes.size.toLong() * INDEX_ENTRY_BYTES
+        for (index in indexes) {
+            dos.writeByte(NODE_CLASSES.indexOf(index.type))
+            dos.writeInt(strings.indexOf(index.property))
+            dos.writeInt(index.valueCount)
+            dos.writeInt(index.size)
+            dos.writeLong(offset)
+            offset += Int.SIZE_BYTES * (2L * index.valueCount + 1 + index.size)
+        }
+        for (index in indexes) {
+            index.forEachValue { value, _ -> dos.writeInt(strings.indexOf(value)) }
+            var start = 0
+            dos.writeInt(start)
+            index.forEachValue { _, nodeIds ->
+                start += nodeIds.size
+                dos.writeInt(start)
+            }
+            index.forEachValue { _, nodeIds -> for (id in nodeIds) dos.writeInt(id) }
+        }
+    }
+
+    /**
+     * Write [TrigramIndex]es in CSR form, like [writePropertyIndexes]: a
+     * table with, per index, the node tag and property name of the
+     * [PropertyIndex] it covers, its trigram count, posting count and the
+     * file offset of its arrays; then per index the sorted trigrams, the
+     * `trigram count + 1` starts and the value positions.
+     */
+    fun writeTrigramIndexes(dos: DataOutputStream, indexes: List<TrigramIndex>, strings: StringTable) {
+        writeHeader(dos, MAGIC_TRIGRAMS)
+        dos.writeInt(indexes.size)
+        var offset = Int.SIZE_BYTES * 2L + indexes.size.toLong() * INDEX_ENTRY_BYTES
+        for (index in indexes) {
+            dos.writeByte(NODE_CLASSES.indexOf(index.values.type))
+            dos.writeInt(strings.indexOf(index.values.property))
+            dos.writeInt(index.size)
+            dos.writeInt(index.postingCount)
+            dos.writeLong(offset)
+            offset += Long.SIZE_BYTES.toLong() * index.size + Int.SIZE_BYTES * (index.size + 1L + index.postingCount)
+        }
+        for (index in indexes) {
+            index.forEachTrigram { trigram, _ -> dos.writeLong(trigram) }
+            var start = 0
+            dos.writeInt(start)
+            index.forEachTrigram { _, positions ->
+                start += positions.size
+                dos.writeInt(start)
+            }
+            index.forEachTrigram { _, positions -> for (position in positions) dos.writeInt(position) }
+        }
+    }
+
+    // ========================================================================
+    // Type closure writing / reading
+    // ========================================================================
+
+    /**
+     * Write a [TypeClosure] in id order: name string index, tree parent and
+     * interval end, then the extra (non-tree) supertype ids.
+     */
+    fun writeTypeClosure(dos: DataOutputStream, closure: TypeClosure, strings: StringTable) {
+        writeHeader(dos, MAGIC_TYPES)
+        dos.writeInt(closure.size)
+        for (id in 0 until closure.size) {
+            dos.writeInt(strings.indexOf(closure.name(id)))
+            dos.writeInt(closure.parent(id))
+            dos.writeInt(closure.end(id))
+            val extras = closure.extraSupertypes(id)
+            dos.writeInt(extras.size)
+            for (extra in extras) dos.writeInt(extra)
+        }
+    }
+
+    fun readTypeClosure(dis: DataInputStream, strings: StringTable): TypeClosure {
+        readHeader(dis, MAGIC_TYPES)
+        val size = dis.readInt()
+        val names = arrayOfNulls<String>(size)
+        val parents = IntArray(size)
+        val ends = IntArray(size)
+        val extras = arrayOfNulls<IntArray>(size)
+        for (id in 0 until size) {
+            names[id] = strings.get(dis.readInt())
+            parents[id] = dis.readInt()
+            ends[id] = dis.readInt()
+            extras[id] = IntArray(dis.readInt()) { dis.readInt() }
+        }
+        @Suppress("UNCHECKED_CAST")
+        return TypeClosure.of(names as Array<String>, parents, ends, extras as Array<IntArray>)
+    }
+
+    // ========================================================================
+    // Node column writing / reading
+    // ========================================================================
+
+    /** Write one node column (see [io.johnsonlee.graphite.graph.NodeColumns]) as a counted int array. */
+    fun writeIntColumn(dos: DataOutputStream, values: IntArray) {
+        writeHeader(dos, MAGIC_COLUMN)
+        dos.writeInt(values.size)
+        for (value in values) dos.writeInt(value)
+    }
+
+    fun readIntColumn(dis: DataInputStream): IntArray {
+        readHeader(dis, MAGIC_COLUMN)
+        return IntArray(dis.readInt()) { dis.readInt() }
+    }
+
+    // ========================================================================
+    // Descriptor table writing / reading
+    // ========================================================================
+
+    /**
+     * Write the descriptor table in id order: type class names as string
+     * indices, then methods as declaring type id, name string index, parameter
+     * type ids and return type id.
+     *
+     * Type arguments are not persisted, so [descriptors] must only hold erased
+     * types (as interned by [collectNodeDescriptors]).
+     */
+    fun writeDescriptors(dos: DataOutputStream, descriptors: DescriptorPool, strings: StringTable) {
+        writeHeader(dos, MAGIC_DESCRIPTORS)
+        val typeCount = descriptors.typeCount
+        val methodCount = descriptors.methodCount
+        dos.writeInt(typeCount)
+        for (id in 0 until typeCount) {
+            dos.writeInt(strings.indexOf(descriptors.typeAt(id).className))
+        }
+        dos.writeInt(methodCount)
+        for (id in 0 until methodCount) {
+            val md = descriptors.methodAt(id)
+            writeTypeDescriptor(dos, md.declaringClass, descriptors)
+            dos.writeInt(strings.indexOf(md.name))
+            dos.writeInt(md.parameterTypes.size)
+            for (p in md.parameterTypes) writeTypeDescriptor(dos, p, descriptors)
+            writeTypeDescriptor(dos, md.returnType, descriptors)
+        }
+    }
+
+    /**
+     * Read a descriptor table into a new pool whose ids match the persisted ones.
+     */
+    fun readDescriptors(dis: DataInputStream, strings: StringTable): DescriptorPool {
+        readHeader(dis, MAGIC_DESCRIPTORS)
+        val descriptors = DescriptorPool()
+        repeat(dis.readInt()) { id ->
+            val typeId = descriptors.typeId(TypeDescriptor(strings.get(dis.readInt())))
+            require(typeId == id) { "Duplicate type descriptor at id $id" }
+        }
+        repeat(dis.readInt()) { id ->
+            val declaringClass = descriptors.typeAt(dis.readInt())
+            val name = strings.get(dis.readInt())
+            val params = List(dis.readInt()) { descriptors.typeAt(dis.readInt()) }
+            val returnType = descriptors.typeAt(dis.readInt())
+            val methodId = descriptors.methodId(MethodDescriptor(declaringClass, name, params, returnType))
+            require(methodId == id) { "Duplicate method descriptor at id $id" }
+        }
+        return descriptors
+    }
+
     // ========================================================================
     // Helpers (string-table-aware)
     // ========================================================================
 
-    private fun writeMethodDescriptor(dos: DataOutputStream, md: MethodDescriptor, strings: StringTable) {
-        dos.writeInt(strings.indexOf(md.declaringClass.className))
-        dos.writeInt(strings.indexOf(md.name))
-        dos.writeInt(md.parameterTypes.size)
-        for (p in md.parameterTypes) dos.writeInt(strings.indexOf(p.className))
-        dos.writeInt(strings.indexOf(md.returnType.className))
+    private fun erase(type: TypeDescriptor): TypeDescriptor =
+        if (type.typeArguments.isEmpty()) type else TypeDescriptor(type.className)
+
+    private fun erase(md: MethodDescriptor): MethodDescriptor {
+        val generic = md.declaringClass.typeArguments.isNotEmpty() ||
+            md.returnType.typeArguments.isNotEmpty() ||
+            md.parameterTypes.any { it.typeArguments.isNotEmpty() }
+        if (!generic) return md
+        return MethodDescriptor(erase(md.declaringClass), md.name, md.parameterTypes.map(::erase), erase(md.returnType))
+    }
+
+    private fun writeTypeDescriptor(dos: DataOutputStream, type: TypeDescriptor, descriptors: DescriptorPool) {
+        val id = descriptors.idOf(erase(type))
+        require(id >= 0) { "Type not in descriptor table: ${type.className}" }
+        dos.writeInt(id)
+    }
+
+    private fun writeMethodDescriptor(dos: DataOutputStream, md: MethodDescriptor, descriptors: DescriptorPool) {
+        dos.writeInt(methodId(md, descriptors))
+    }
+
+    /** Descriptor table id of [md] as written to node data (type arguments erased). */
+    fun methodId(md: MethodDescriptor, descriptors: DescriptorPool): Int {
+        val id = descriptors.idOf(erase(md))
+        require(id >= 0) { "Method not in descriptor table: ${md.signature}" }
+        return id
+    }
+
+    private fun readTypeDescriptor(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int,
+        descriptors: DescriptorPool
+    ): TypeDescriptor = if (formatVersion >= DESCRIPTOR_TABLE_FORMAT_VERSION) {
+        descriptors.typeAt(dis.readInt())
+    } else {
+        descriptors.type(strings.get(dis.readInt()))
     }
 
-    private fun readMethodDescriptor(dis: DataInputStream, strings: StringTable): MethodDescriptor {
-        val className = TypeDescriptor(strings.get(dis.readInt()))
+    private fun readMethodDescriptor(
+        dis: DataInputStream,
+        strings: StringTable,
+        formatVersion: Int,
+        descriptors: DescriptorPool
+    ): MethodDescriptor {
+        if (formatVersion >= DESCRIPTOR_TABLE_FORMAT_VERSION) return descriptors.methodAt(dis.readInt())
+        val className = descriptors.type(strings.get(dis.readInt()))
         val name = strings.get(dis.readInt())
         val paramCount = dis.readInt()
-        val params = (0 until paramCount).map { TypeDescriptor(strings.get(dis.readInt())) }
-        val returnType = TypeDescriptor(strings.get(dis.readInt()))
-        return MethodDescriptor(className, name, params, returnType)
+        val params = (0 until paramCount).map { descriptors.type(strings.get(dis.readInt())) }
+        val returnType = descriptors.type(strings.get(dis.readInt()))
+        return descriptors.intern(MethodDescriptor(className, name, params, returnType))
     }
 
     private fun writeAnyValue(dos: DataOutputStream, value: Any?, strings: StringTable) {
@@ -0,0 +1,100 @@
+package io.johnsonlee.graphite.webgraph
+
+import io.johnsonlee.graphite.core.Node
+import io.johnsonlee.graphite.graph.PropertyIndex
+import io.johnsonlee.graphite.graph.TrigramIndex
+import java.io.DataInputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The [PropertyIndex]es in [propertyFile] (see
+ * [NodeSerializer.writePropertyIndexes]) and the [TrigramIndex]es in
+ * [trigramFile] (see [NodeSerializer.writeTrigramIndexes]) of a graph
+ * directory, each loaded the first time it is requested.
+ *
+ * Only the tables of the two files are read up front. An index copies its
+ * CSR arrays straight out of a mapping of its file, and property values are
+ * resolved through [strings], so no value is held on the heap twice. Files
+ * written before the CSR layout are ignored, and queries scan nodes instead.
+ */
+internal class PersistedIndexes(
+    private val propertyFile: Path,
+    private val trigramFile: Path,
+    private val strings: StringTable
+) {
+
+    /** Table entry of one index in a mapped index file. */
+    private class Entry(
+        val type: Class<out Node>,
+        val property: String,
+        val keyCount: Int,
+        val itemCount: Int,
+        val offset: Long
+    )
+
+    private class IndexFile(val buffer: ByteBuffer, val entries: List<Entry>)
+
+    private val properties: IndexFile? by lazy { open(propertyFile, NodeSerializer.MAGIC_PROPERTIES) }
+
+    private val propertyIndexes = ConcurrentHashMap<Entry, PropertyIndex>()
+
+    private val trigrams: IndexFile? by lazy { open(trigramFile, NodeSerializer.MAGIC_TRIGRAMS) }
+
+    private val trigramIndexes = ConcurrentHashMap<Entry, TrigramIndex>()
+
+    fun propertyIndex(type: Class<out Node>, property: String): PropertyIndex? {
+        val file = properties ?: return null
+        val entry = file.entries.firstOrNull { it.type == type && it.property == property } ?: return null
+        return propertyIndexes.computeIfAbsent(entry) {
+            val valueIds = ints(file.buffer, it.offset, it.keyCount)
+            val starts = ints(file.buffer, it.offset + Int.SIZE_BYTES.toLong() * it.keyCount, it.keyCount + 1)
+            val nodeIds = ints(file.buffer, it.offset + Int.SIZE_BYTES * (2L * it.keyCount + 1), it.itemCount)
+            PropertyIndex(it.type, it.property, it.keyCount, { v -> strings.get(valueIds[v]) }, starts, nodeIds)
+        }
+    }
+
+    fun trigramIndex(type: Class<out Node>, property: String): TrigramIndex? {
+        val file = trigrams ?: return null
+        val entry = file.entries.firstOrNull { it.type == type && it.property == property } ?: return null
+        val values = propertyIndex(type, property) ?: return null
+        return trigramIndexes.computeIfAbsent(entry) {
+            val keys = LongArray(it.keyCount)
+            file.buffer.duplicate().also { buffer -> buffer.position(it.offset.toInt()) }.asLongBuffer().get(keys)
+            val startsOffset = it.offset + Long.SIZE_BYTES.toLong() * it.keyCount
+            val starts = ints(file.buffer, startsOffset, it.keyCount + 1)
+            val postings = ints(file.buffer, startsOffset + Int.SIZE_BYTES * (it.keyCount + 1L), it.itemCount)
+            TrigramIndex(values, keys, starts, postings)
+        }
+    }
+
+    /** Map [file] and read its table; `null` if it does not exist or predates the CSR layout. */
+    private fun open(file: Path, magic: Int): IndexFile? {
+        if (!Files.exists(file)) return null
+        val buffer = FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+        }
+        val dis = DataInputStream(ByteBufferInputStream(buffer.duplicate()))
+        if (NodeSerializer.readHeader(dis, magic) < NodeSerializer.CSR_INDEX_FORMAT_VERSION) return null
+        val entries = List(dis.readInt()) {
+            Entry(
+                type = NodeSerializer.NODE_CLASSES[dis.readUnsignedByte()],
+                property = strings.get(dis.readInt()),
+                keyCount = dis.readInt(),
+                itemCount = dis.readInt(),
+                offset = dis.readLong()
+            )
+        }
+        return IndexFile(buffer, entries)
+    }
+
+    private fun ints(buffer: ByteBuffer, position: Long, count: Int): IntArray {
+        val ints = IntArray(count)
+        buffer.duplicate().also { it.position(position.toInt()) }.asIntBuffer().get(ints)
+        return ints
+    }
+}
@@ -4,16 +4,18 @@ import io.johnsonlee.graphite.graph.Graph
 import io.johnsonlee.graphite.input.EmptyResourceAccessor
 import io.johnsonlee.graphite.input.ResourceAccessor
 import io.johnsonlee.graphite.input.ResourceEntry
-import java.io.BufferedInputStream
 import java.io.BufferedOutputStream
-import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
 import java.io.DataInputStream
 import java.io.DataOutputStream
 import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
 import java.nio.charset.StandardCharsets
 import java.nio.file.FileSystems
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.StandardOpenOption
 
 internal data class PersistedResource(
     val path: String,
@@ -21,61 +23,150 @@ internal data class PersistedResource(
     val content: ByteArray
 )
 
+/**
+ * Resources stored back to back in [blob], with a path index sorted by path:
+ * resource `i` is [paths]`[i]`, from [sources]`[i]`, and its content is
+ * `lengths[i]` bytes of [blob] from `offsets[i]`.
+ *
+ * [open] streams straight from [blob] (a mapping of `graph.resources`), and
+ * [list] only matches the paths sharing the literal prefix of the glob.
+ */
 internal class PersistedResourceAccessor(
-    private val resources: Map<String, PersistedResource>
+    private val paths: Array<String>,
+    private val sources: Array<String>,
+    private val offsets: IntArray,
+    private val lengths: IntArray,
+    private val blob: ByteBuffer
 ) : ResourceAccessor {
 
     override fun list(pattern: String): Sequence<ResourceEntry> {
+        val prefix = literalPrefix(pattern)
+        if (prefix.length == pattern.length) {
+            val i = paths.binarySearch(pattern)
+            return if (i < 0) emptySequence() else sequenceOf(ResourceEntry(paths[i], sources[i]))
+        }
         val matcher = FileSystems.getDefault().getPathMatcher("glob:$pattern")
-        return resources.values.asSequence()
-            .filter { matcher.matches(Path.of(it.path)) }
-            .map { ResourceEntry(it.path, it.source) }
+        return (lowerBound(prefix) until paths.size).asSequence()
+            .takeWhile { paths[it].startsWith(prefix) }
+            .filter { matcher.matches(Path.of(paths[it])) }
+            .map { ResourceEntry(paths[it], sources[it]) }
+    }
+
+    override fun open(path: String): InputStream {
+        val i = paths.binarySearch(path)
+        if (i < 0) throw java.io.IOException("Resource not found: $path")
+        val content = blob.duplicate()
+        content.limit(offsets[i] + lengths[i])
+        content.position(offsets[i])
+        return ByteBufferInputStream(content)
+    }
+
+    /** Index of the first path not less than [prefix]. */
+    private fun lowerBound(prefix: String): Int {
+        val i = paths.binarySearch(prefix)
+        return if (i < 0) -(i + 1) else i
     }
 
-    override fun open(path: String): InputStream =
-        resources[path]?.let { ByteArrayInputStream(it.content) }
-            ?: throw java.io.IOException("Resource not found: $path")
+    private companion object {
+        private const val GLOB_SPECIAL_CHARS = "*?[{\\"
+
+        /** The part of a glob [pattern] before its first special char. */
+        fun literalPrefix(pattern: String): String {
+            val end = pattern.indexOfFirst { it in GLOB_SPECIAL_CHARS }
+            return if (end < 0) pattern else pattern.substring(0, end)
+        }
+    }
 }
 
+/**
+ * Stores persisted text resources in `graph.resources`: the header, the
+ * distinct sources, the path index sorted by path -- path, source index,
+ * content offset and length -- then all contents back to back. Loading maps
+ * the file, so only the path index lives on the heap.
+ */
 internal object PersistedResourceStore {
     private const val FILE_NAME = "graph.resources"
     private const val MAGIC = 0x47525200 // "GRR" + version byte
-    private const val VERSION = 1
+    private const val VERSION = 2
+    private const val LEGACY_VERSION = 1
     private val PERSISTED_SUFFIXES = setOf(".properties", ".yml", ".yaml", ".json", ".xml", ".txt")
 
     fun save(graph: Graph, dir: Path) {
-        val resources = collect(graph)
-        if (resources.isEmpty()) return
+        val resources = collect(graph).sortedBy { it.path }
+        if (resources.isEmpty()) {
+            Files.deleteIfExists(dir.resolve(FILE_NAME))
+            return
+        }
 
+        val sources = resources.map { it.source }.distinct()
+        val sourceIndex = sources.withIndex().associate { (i, source) -> source to i }
         DataOutputStream(BufferedOutputStream(Files.newOutputStream(dir.resolve(FILE_NAME)))).use { dos ->
             writeHeader(dos)
+            dos.writeInt(sources.size)
+            sources.forEach { writeString(dos, it) }
             dos.writeInt(resources.size)
+            var offset = 0L
             resources.forEach { resource ->
                 writeString(dos, resource.path)
-                writeString(dos, resource.source)
+                dos.writeInt(sourceIndex.getValue(resource.source))
+                dos.writeLong(offset)
                 dos.writeInt(resource.content.size)
-                dos.write(resource.content)
+                offset += resource.content.size
             }
+            resources.forEach { dos.write(it.content) }
         }
     }
 
     fun load(dir: Path): ResourceAccessor {
         val file = dir.resolve(FILE_NAME)
         if (!Files.exists(file)) return EmptyResourceAccessor
-        DataInputStream(BufferedInputStream(Files.newInputStream(file))).use { dis ->
-            readHeader(dis)
-            val count = dis.readInt()
-            val resources = LinkedHashMap<String, PersistedResource>(count)
-            repeat(count) {
-                val path = readString(dis)
-                val source = readString(dis)
-                val size = dis.readInt()
-                val bytes = ByteArray(size)
-                dis.readFully(bytes)
-                resources[path] = PersistedResource(path, source, bytes)
-            }
-            return PersistedResourceAccessor(resources)
+        val buffer = FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+        }
+        val index = buffer.duplicate()
+        val dis = DataInputStream(ByteBufferInputStream(index))
+        if (readHeader(dis) == LEGACY_VERSION) return loadLegacy(dis)
+
+        val sourceTable = Array(dis.readInt()) { readString(dis) }
+        val count = dis.readInt()
+        val paths = arrayOfNulls<String>(count)
+        val sources = arrayOfNulls<String>(count)
+        val offsets = IntArray(count)
+        val lengths = IntArray(count)
+        for (i in 0 until count) {
+            paths[i] = readString(dis)
+            sources[i] = sourceTable[dis.readInt()]
+            offsets[i] = dis.readLong().toInt()
+            lengths[i] = dis.readInt()
+        }
+        // The contents follow the index
+        val blob = index.slice()
+        return PersistedResourceAccessor(paths.requireNoNulls(), sources.requireNoNulls(), offsets, lengths, blob)
+    }
+
+    /** Version 1 stores each path, source and content together, in collection order. */
+    private fun loadLegacy(dis: DataInputStream): ResourceAccessor {
+        val resources = sortedMapOf<String, PersistedResource>()
+        repeat(dis.readInt()) {
+            val path = readString(dis)
+            val source = readString(dis)
+            val bytes = ByteArray(dis.readInt())
+            dis.readFully(bytes)
+            resources.putIfAbsent(path, PersistedResource(path, source, bytes))
+        }
+        val blob = ByteArrayOutputStream()
+        val offsets = IntArray(resources.size)
+        resources.values.forEachIndexed { i, resource ->
+            offsets[i] = blob.size()
+            blob.write(resource.content)
         }
+        return PersistedResourceAccessor(
+            resources.keys.toTypedArray(),
+            resources.values.map { it.source }.toTypedArray(),
+            offsets,
+            resources.values.map { it.content.size }.toIntArray(),
+            ByteBuffer.wrap(blob.toByteArray())
+        )
     }
 
     private fun collect(graph: Graph): List<PersistedResource> {
@@ -105,11 +196,13 @@ internal object PersistedResourceStore {
         dos.writeInt(MAGIC or VERSION)
     }
 
-    private fun readHeader(dis: DataInputStream) {
+    /** Read and validate the header. Returns the version. */
+    private fun readHeader(dis: DataInputStream): Int {
         val header = dis.readInt()
         require(header and HEADER_MAGIC_MASK == MAGIC) { "Invalid resource file magic: 0x${header.toUInt().toString(HEX_RADIX)}" }
         val version = header and BYTE_MASK
-        require(version == VERSION) { "Unsupported resource file version: $version" }
+        require(version in LEGACY_VERSION..VERSION) { "Unsupported resource file version: $version" }
+        return version
     }
 
     private fun writeString(dos: DataOutputStream, value: String) {
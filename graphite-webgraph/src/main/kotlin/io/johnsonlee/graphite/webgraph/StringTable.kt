@@ -16,14 +16,23 @@ import java.nio.file.Path
  * LAW team for this purpose).
  */
 internal class StringTable private constructor(
-    private val list: FrontCodedStringList,
-    private val indexMap: Map<String, Int>?
+    private val list: List<CharSequence>,
+    private val indexMap: Map<String, Int>?,
+    private val intern: ((String) -> Int)? = null
 ) {
 
     /**
      * Returns the index of [s] in the string table, or -1 if not found.
+     * A [growable] table appends [s] instead.
+     *
+     * A [load]ed table has no index map; since the strings are stored in
+     * sorted order, [s] is found by binary search over the front-coded list
+     * in O(log n) decodes, without building a map on the heap.
      */
-    fun indexOf(s: String): Int = indexMap?.get(s) ?: -1
+    fun indexOf(s: String): Int {
+        if (indexMap == null) return search(s)
+        return indexMap[s] ?: intern?.invoke(s) ?: -1
+    }
 
     /**
      * Returns the string at the given [index].
@@ -35,6 +44,40 @@ internal class StringTable private constructor(
      */
     fun size(): Int = list.size
 
+    /**
+     * Build and persist the final table (see [build]) from every string this
+     * [growable] table has interned, so no separate set of strings is needed.
+     */
+    fun build(dir: Path): StringTable {
+        check(intern != null) { "Only a growable table can be built" }
+        return StringTable.build(list.map { it.toString() }, dir)
+    }
+
+    private fun search(s: String): Int {
+        var low = 0
+        var high = list.size - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val cmp = compare(list[mid], s)
+            when {
+                cmp < 0 -> low = mid + 1
+                cmp > 0 -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -1
+    }
+
+    /** Compares like [String.compareTo], which is the order [build] sorts in. */
+    private fun compare(a: CharSequence, b: String): Int {
+        val n = minOf(a.length, b.length)
+        for (i in 0 until n) {
+            val diff = a[i] - b[i]
+            if (diff != 0) return diff
+        }
+        return a.length - b.length
+    }
+
     companion object {
 
         private const val FILE_NAME = "graph.strings"
@@ -57,6 +100,21 @@ internal class StringTable private constructor(
             return StringTable(fcl, indexMap)
         }
 
+        /**
+         * Create an in-memory table that assigns indices in first-seen order.
+         * It is never persisted; [GraphStore.save] spools records against it
+         * until every string is known and the final table can be built.
+         */
+        fun growable(): StringTable {
+            val strings = ArrayList<String>()
+            val indexMap = HashMap<String, Int>()
+            return StringTable(strings, indexMap) { s ->
+                strings.add(s)
+                indexMap[s] = strings.size - 1
+                strings.size - 1
+            }
+        }
+
         /**
          * Load a previously persisted [StringTable] from disk.
          */
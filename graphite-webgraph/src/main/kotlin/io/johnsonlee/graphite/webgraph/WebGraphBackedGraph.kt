@@ -9,10 +9,17 @@ import io.johnsonlee.graphite.core.MethodDescriptor
 import io.johnsonlee.graphite.core.Node
 import io.johnsonlee.graphite.core.NodeId
 import io.johnsonlee.graphite.core.TypeDescriptor
+import io.johnsonlee.graphite.graph.CallSiteIndex
+import io.johnsonlee.graphite.graph.EdgeConsumer
 import io.johnsonlee.graphite.graph.Graph
+import io.johnsonlee.graphite.graph.MethodIndex
 import io.johnsonlee.graphite.graph.MethodPattern
+import io.johnsonlee.graphite.graph.PropertyIndex
+import io.johnsonlee.graphite.graph.TrigramIndex
+import io.johnsonlee.graphite.graph.TypeClosure
 import io.johnsonlee.graphite.input.ResourceAccessor
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
 import it.unimi.dsi.webgraph.ImmutableGraph
 
 /**
@@ -26,13 +33,17 @@ import it.unimi.dsi.webgraph.ImmutableGraph
 @Suppress("TooManyFunctions")
 internal class WebGraphBackedGraph(
     private val forward: ImmutableGraph,
-    private val backward: Lazy<ImmutableGraph>,
+    private val backward: Lazy<GraphStore.LabelledAdjacency>,
     private val nodesById: Map<Int, Node>,
     private val nodeDataVersion: Int,
-    private val forwardLabels: ByteArray,
-    private val cumulativeOutdeg: LongArray,
-    private val comparisonMap: Map<Long, BranchComparison>,
+    private val forwardLabels: ArcLabels,
+    private val comparisonMap: Long2ObjectOpenHashMap<BranchComparison>,
     private val metadata: GraphMetadata,
+    /** Persisted call site index; `null` for graphs saved without one. */
+    callSiteIndex: CallSiteIndex?,
+    /** Persisted property and trigram indexes; none for graphs saved without them. */
+    private val indexes: PersistedIndexes,
+    typeClosure: TypeClosure?,
     override val resources: ResourceAccessor
 ) : Graph {
 
@@ -52,6 +63,18 @@ internal class WebGraphBackedGraph(
         }.groupBy { it.conditionNodeId.value }
     }
 
+    private val edgeCursor = WebGraphEdgeCursor(nodeDataVersion, lazyOf(comparisonMap))
+
+    private val callSites: CallSiteIndex by lazy {
+        callSiteIndex ?: CallSiteIndex.Builder().apply {
+            nodes(CallSiteNode::class.java).forEach { add(it) }
+        }.build()
+    }
+
+    private val closure: TypeClosure by lazy { typeClosure ?: TypeClosure.of(metadata.supertypes) }
+
+    private val methodIndex: MethodIndex by lazy { MethodIndex(metadata.methods.values) }
+
     override fun node(id: NodeId): Node? = nodesById[id.value]
 
     @Suppress("UNCHECKED_CAST")
@@ -75,37 +98,39 @@ internal class WebGraphBackedGraph(
         if (nodeIdx >= forward.numNodes()) return emptySequence()
         val succs = forward.successorArray(nodeIdx)
         val outdeg = forward.outdegree(nodeIdx)
-        val labelStart = cumulativeOutdeg[nodeIdx]
+        val labelStart = forwardLabels.start(nodeIdx)
         return (0 until outdeg).asSequence().map { i ->
             val to = succs[i]
-            val label = forwardLabels[(labelStart + i).toInt()].toInt() and BYTE_MASK
+            val label = forwardLabels.label(labelStart + i).toInt() and BYTE_MASK
             val key = nodeIdx.toLong() shl INT_BITS or (to.toLong() and UNSIGNED_INT_MASK)
-            val comparison = comparisonMap[key]
+            val comparison = comparisonMap.get(key)
             NodeSerializer.decodeEdge(label, NodeId(nodeIdx), NodeId(to), comparison, nodeDataVersion)
         }
     }
 
     override fun incoming(id: NodeId): Sequence<Edge> {
         val nodeIdx = id.value
-        val backwardGraph = backward.value
-        if (nodeIdx >= backwardGraph.numNodes()) return emptySequence()
-        val preds = backwardGraph.successorArray(nodeIdx)
-        val indeg = backwardGraph.outdegree(nodeIdx)
+        val backwardAdj = backward.value
+        if (nodeIdx >= backwardAdj.numNodes) return emptySequence()
+        val preds = backwardAdj.graph.successorArray(nodeIdx)
+        val indeg = backwardAdj.graph.outdegree(nodeIdx)
+        val labelStart = backwardAdj.labels.start(nodeIdx)
         return (0 until indeg).asSequence().map { i ->
             val from = preds[i]
-            val label = lookupForwardLabel(from, nodeIdx)
+            val label = backwardAdj.labels.label(labelStart + i).toInt() and BYTE_MASK
             val key = from.toLong() shl INT_BITS or (nodeIdx.toLong() and UNSIGNED_INT_MASK)
-            val comparison = comparisonMap[key]
+            val comparison = comparisonMap.get(key)
             NodeSerializer.decodeEdge(label, NodeId(from), NodeId(nodeIdx), comparison, nodeDataVersion)
         }
     }
 
-    private fun lookupForwardLabel(from: Int, to: Int): Int {
-        val succs = forward.successorArray(from)
-        val outdeg = forward.outdegree(from)
-        val pos = java.util.Arrays.binarySearch(succs, 0, outdeg, to)
-        return if (pos >= 0) forwardLabels[(cumulativeOutdeg[from] + pos).toInt()].toInt() and BYTE_MASK else 0
-    }
+    override fun forEachOutgoing(id: NodeId, labelMask: Long, consumer: EdgeConsumer) =
+        edgeCursor.forEachOutgoing(forward, forwardLabels, id.value, labelMask, consumer)
+
+    override fun forEachIncoming(id: NodeId, labelMask: Long, consumer: EdgeConsumer) =
+        edgeCursor.forEachIncoming(backward.value, id.value, labelMask, consumer)
+
+    override fun edge(from: Int, to: Int, label: Int): Edge = edgeCursor.edge(from, to, label)
 
     @Suppress("UNCHECKED_CAST")
     override fun <T : Edge> outgoing(id: NodeId, type: Class<T>): Sequence<T> =
@@ -115,8 +140,14 @@ internal class WebGraphBackedGraph(
     override fun <T : Edge> incoming(id: NodeId, type: Class<T>): Sequence<T> =
         incoming(id).filter { type.isInstance(it) } as Sequence<T>
 
+    override fun propertyIndex(type: Class<out Node>, property: String): PropertyIndex? =
+        indexes.propertyIndex(type, property)
+
+    override fun trigramIndex(type: Class<out Node>, property: String): TrigramIndex? =
+        indexes.trigramIndex(type, property)
+
     override fun callSites(methodPattern: MethodPattern): Sequence<CallSiteNode> =
-        nodes(CallSiteNode::class.java).filter { methodPattern.matches(it.callee) }
+        callSites.callSites(methodPattern) { nodesById[it.value] }
 
     override fun supertypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         metadata.supertypes[type.className]?.asSequence() ?: emptySequence()
@@ -124,8 +155,10 @@ internal class WebGraphBackedGraph(
     override fun subtypes(type: TypeDescriptor): Sequence<TypeDescriptor> =
         metadata.subtypes[type.className]?.asSequence() ?: emptySequence()
 
+    override fun typeClosure(): TypeClosure = closure
+
     override fun methods(pattern: MethodPattern): Sequence<MethodDescriptor> =
-        metadata.methods.values.asSequence().filter { pattern.matches(it) }
+        methodIndex.find(pattern)
 
     override fun enumValues(enumClass: String, enumName: String): List<Any?>? =
         metadata.enumValues["$enumClass#$enumName"]
@@ -0,0 +1,96 @@
+package io.johnsonlee.graphite.webgraph
+
+import io.johnsonlee.graphite.core.BranchComparison
+import io.johnsonlee.graphite.core.Edge
+import io.johnsonlee.graphite.graph.EdgeConsumer
+import io.johnsonlee.graphite.graph.EdgeLabels
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap
+import it.unimi.dsi.webgraph.ImmutableGraph
+
+/**
+ * Primitive edge iteration shared by the WebGraph-backed graphs.
+ *
+ * Walks the successor lists of the forward graph or its transpose
+ * (backward) together with their 8-bit [ArcLabels] and reports
+ * [EdgeLabels] values to an [EdgeConsumer]. Persisted labels are translated
+ * through a 256-entry table, and comparisons are looked up with primitive
+ * `long` keys, so no [Edge], boxed key or sequence is created per edge.
+ */
+internal class WebGraphEdgeCursor(
+    nodeDataVersion: Int,
+    private val comparisons: Lazy<Long2ObjectOpenHashMap<BranchComparison>>
+) {
+
+    private val labelTable = NodeSerializer.cursorLabelTable(nodeDataVersion)
+
+    fun forEachOutgoing(
+        forward: ImmutableGraph,
+        forwardLabels: ArcLabels,
+        node: Int,
+        mask: Long,
+        consumer: EdgeConsumer
+    ) {
+        if (node < 0 || node >= forward.numNodes() || mask == 0L) return
+        val successors = forward.successors(node)
+        var position = forwardLabels.start(node)
+        var to = successors.nextInt()
+        while (to != -1) {
+            val label = label(forwardLabels.label(position++), node, to)
+            if (label >= 0 && EdgeLabels.matches(mask, label)) consumer.accept(to, label)
+            to = successors.nextInt()
+        }
+    }
+
+    fun forEachIncoming(
+        backward: GraphStore.LabelledAdjacency,
+        node: Int,
+        mask: Long,
+        consumer: EdgeConsumer
+    ) {
+        if (node < 0 || node >= backward.numNodes || mask == 0L) return
+        val predecessors = backward.graph.successors(node)
+        var position = backward.labels.start(node)
+        var from = predecessors.nextInt()
+        while (from != -1) {
+            val label = label(backward.labels.label(position++), from, node)
+            if (label >= 0 && EdgeLabels.matches(mask, label)) consumer.accept(from, label)
+            from = predecessors.nextInt()
+        }
+    }
+
+    /** Outgoing edges of [node] in [forward], such as an [EdgeFamilies] sub-graph. */
+    fun outgoing(forward: GraphStore.LabelledAdjacency, node: Int): Sequence<Edge> {
+        if (node < 0 || node >= forward.numNodes) return emptySequence()
+        val successors = forward.graph.successorArray(node)
+        val start = forward.labels.start(node)
+        return (0 until forward.graph.outdegree(node)).asSequence().mapNotNull { i ->
+            val to = successors[i]
+            val label = label(forward.labels.label(start + i), node, to)
+            if (label >= 0) edge(node, to, label) else null
+        }
+    }
+
+    /** Incoming edges of [node] in [backward], a transposed graph. */
+    fun incoming(backward: GraphStore.LabelledAdjacency, node: Int): Sequence<Edge> {
+        if (node < 0 || node >= backward.numNodes) return emptySequence()
+        val predecessors = backward.graph.successorArray(node)
+        val start = backward.labels.start(node)
+        return (0 until backward.graph.outdegree(node)).asSequence().mapNotNull { i ->
+            val from = predecessors[i]
+            val label = label(backward.labels.label(start + i), from, node)
+            if (label >= 0) edge(from, node, label) else null
+        }
+    }
+
+    /** Materialize the edge `from -> to` reported with [label]. */
+    fun edge(from: Int, to: Int, label: Int): Edge =
+        EdgeLabels.decode(from, to, label) { comparisons.value.get(key(from, to)) }
+
+    /** Translate a persisted label, setting the comparison flag for control-flow edges that carry one. */
+    private fun label(persisted: Byte, from: Int, to: Int): Int {
+        val label = labelTable[persisted.toInt() and BYTE_MASK]
+        return if (EdgeLabels.isControlFlow(label) && comparisons.value.containsKey(key(from, to))) label + 1 else label
+    }
+
+    private fun key(from: Int, to: Int): Long = from.toLong() shl INT_BITS or (to.toLong() and UNSIGNED_INT_MASK)
+}
@@ -37,7 +37,10 @@ import io.johnsonlee.graphite.core.TypeDescriptor
 import io.johnsonlee.graphite.core.TypeEdge
 import io.johnsonlee.graphite.core.TypeRelation
 import io.johnsonlee.graphite.core.ValueNode
+import io.johnsonlee.graphite.graph.CallSiteColumns
 import io.johnsonlee.graphite.graph.DefaultGraph
+import io.johnsonlee.graphite.graph.EdgeLabels
+import io.johnsonlee.graphite.graph.IndexedProperty
 import io.johnsonlee.graphite.graph.MethodPattern
 import io.johnsonlee.graphite.graph.Graph
 import io.johnsonlee.graphite.input.ResourceAccessor
@@ -48,16 +51,17 @@ import java.io.Closeable
 import java.io.DataInputStream
 import java.io.DataOutputStream
 import java.io.OutputStream
-import java.io.RandomAccessFile
 import java.nio.ByteBuffer
 import java.nio.file.Files
 import java.nio.file.Path
+import java.util.concurrent.Executors
 import kotlin.test.Test
 import kotlin.test.assertEquals
 import kotlin.test.assertFailsWith
 import kotlin.test.assertFalse
 import kotlin.test.assertNotNull
 import kotlin.test.assertNull
+import kotlin.test.assertSame
 import kotlin.test.assertTrue
 
 class GraphStoreTest {
@@ -487,6 +491,42 @@ class GraphStoreTest {
         }
     }
 
+    @Test
+    fun `edge cursor filters by mask and keeps BranchComparison in every load mode`() {
+        val n1 = IntConstant(NodeId.next(), 1)
+        val n2 = IntConstant(NodeId.next(), 2)
+        val n3 = IntConstant(NodeId.next(), 0)
+        val cfEdge = ControlFlowEdge(n1.id, n2.id, ControlFlowKind.BRANCH_TRUE, BranchComparison(ComparisonOp.NE, n3.id))
+        val graph = DefaultGraph.Builder()
+            .addNode(n1)
+            .addNode(n2)
+            .addNode(n3)
+            .addEdge(cfEdge)
+            .addEdge(DataFlowEdge(n1.id, n3.id, DataFlowKind.ASSIGN))
+            .build()
+        val dir = Files.createTempDirectory("webgraph-cursor-test")
+        try {
+            GraphStore.save(graph, dir)
+            for (loaded in listOf(GraphStore.load(dir), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    val outgoing = mutableListOf<Edge>()
+                    loaded.forEachOutgoing(n1.id, EdgeLabels.mask(ControlFlowEdge::class.java)) { n, label ->
+                        outgoing += loaded.edge(n1.id.value, n, label)
+                    }
+                    assertEquals(listOf<Edge>(cfEdge), outgoing)
+
+                    val incoming = mutableListOf<Int>()
+                    loaded.forEachIncoming(n3.id, EdgeLabels.mask(DataFlowKind.ASSIGN)) { n, _ -> incoming += n }
+                    assertEquals(listOf(n1.id.value), incoming)
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
     @Test
     fun `round-trip preserves TypeEdge`() {
         val builder = DefaultGraph.Builder()
@@ -558,6 +598,52 @@ class GraphStoreTest {
         }
     }
 
+    @Test
+    fun `sectioned metadata looks up single keys in every mode`() {
+        val builder = DefaultGraph.Builder()
+        val fooType = TypeDescriptor("com.example.Foo")
+        val method = MethodDescriptor(fooType, "check", emptyList(), TypeDescriptor("boolean"))
+        builder.addMethod(method)
+        val conditions = (0 until 5).map { IntConstant(NodeId.next(), it).also(builder::addNode) }
+        // Added in descending order, so the keyed entries are not in record order
+        for (cond in conditions.reversed()) {
+            builder.addBranchScope(cond.id, method, BranchComparison(ComparisonOp.EQ, cond.id), intArrayOf(cond.id.value), intArrayOf())
+            builder.addBranchScope(cond.id, method, BranchComparison(ComparisonOp.NE, cond.id), intArrayOf(), intArrayOf(cond.id.value))
+        }
+        for (member in listOf("zeta", "alpha", "mid")) {
+            builder.addMemberAnnotation("com.example.Foo", member, "com.example.Tag", mapOf("value" to member))
+        }
+        val graph = builder.build()
+
+        val dir = Files.createTempDirectory("webgraph-sectioned-metadata-test")
+        try {
+            GraphStore.save(graph, dir)
+            for (loaded in listOf(GraphStore.load(dir), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    for (cond in conditions) {
+                        val scopes = loaded.branchScopesFor(cond.id).toList()
+                        assertEquals(listOf(ComparisonOp.EQ, ComparisonOp.NE), scopes.map { it.comparison.operator })
+                        assertTrue(scopes.all { it.conditionNodeId == cond.id })
+                    }
+                    assertEquals(0, loaded.branchScopesFor(NodeId(999999)).count())
+                    assertEquals(10, loaded.branchScopes().count())
+                    for (member in listOf("zeta", "alpha", "mid")) {
+                        assertEquals(
+                            mapOf("com.example.Tag" to mapOf("value" to member)),
+                            loaded.memberAnnotations("com.example.Foo", member)
+                        )
+                    }
+                    assertTrue(loaded.memberAnnotations("com.example.Foo", "check").isEmpty())
+                    assertEquals(listOf(method), loaded.methods(MethodPattern()).toList())
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
     // ========================================================================
     // callSites with pattern filtering on loaded graph
     // ========================================================================
@@ -582,6 +668,760 @@ class GraphStoreTest {
         }
     }
 
+    @Test
+    fun `callSites index is persisted and matches wildcards in every load mode`() {
+        val graph = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-callsite-index-test")
+        try {
+            GraphStore.save(graph, dir)
+            assertTrue(Files.exists(dir.resolve("graph.callsites")))
+            val patterns = listOf(
+                MethodPattern(declaringClass = "com.example.*"),
+                MethodPattern(declaringClass = "com.example.Foo", name = "ba*"),
+                MethodPattern(declaringClass = ".*Foo", name = "b.z", useRegex = true),
+                MethodPattern(name = "baz", returnType = "int"),
+                MethodPattern(declaringClass = "org.*")
+            )
+            for (loaded in listOf(GraphStore.load(dir), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    for (pattern in patterns) {
+                        assertEquals(
+                            graph.callSites(pattern).map { it.id }.toSet(),
+                            loaded.callSites(pattern).map { it.id }.toSet(),
+                            "$pattern"
+                        )
+                    }
+                    assertEquals(1, loaded.callSites(patterns[0]).count())
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `callSites falls back to scanning when the index file is missing`() {
+        val graph = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-callsite-legacy-test")
+        try {
+            GraphStore.save(graph, dir)
+            Files.delete(dir.resolve("graph.callsites"))
+            val pattern = MethodPattern(declaringClass = "com.example.Foo", name = "baz")
+            for (loaded in listOf(GraphStore.load(dir), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    assertEquals(1, loaded.callSites(pattern).count())
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `loaded nodes share interned descriptors in every load mode`() {
+        val graph = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-descriptors-test")
+        try {
+            GraphStore.save(graph, dir)
+            assertTrue(Files.exists(dir.resolve("graph.descriptors")))
+            for (loaded in listOf(GraphStore.load(dir), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    val param = loaded.nodes(ParameterNode::class.java).single()
+                    val local = loaded.nodes(LocalVariable::class.java).single()
+                    val callSite = loaded.nodes(CallSiteNode::class.java).single()
+                    val field = loaded.nodes(FieldNode::class.java).single()
+                    assertSame(param.method, local.method)
+                    assertSame(param.method, callSite.caller)
+                    assertSame(param.type, local.type)
+                    assertSame(callSite.caller.declaringClass, callSite.callee.declaringClass)
+                    assertSame(callSite.callee.declaringClass, field.descriptor.declaringClass)
+                    assertEquals(MethodDescriptor(TypeDescriptor("com.example.Foo"), "bar", listOf(TypeDescriptor("int")), TypeDescriptor("void")), param.method)
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `generic type arguments are erased in the descriptor table`() {
+        val listType = TypeDescriptor("java.util.List", listOf(TypeDescriptor("java.lang.String")))
+        val method = MethodDescriptor(TypeDescriptor("com.example.Foo"), "names", listOf(listType), listType)
+        val builder = DefaultGraph.Builder()
+        builder.addNode(ParameterNode(NodeId(1), 0, listType, method))
+        builder.addNode(LocalVariable(NodeId(2), "raw", TypeDescriptor("java.util.List"), method))
+        val dir = Files.createTempDirectory("webgraph-generic-descriptors-test")
+        try {
+            GraphStore.save(builder.build(), dir)
+            val loaded = GraphStore.load(dir)
+            val param = loaded.node(NodeId(1)) as ParameterNode
+            val local = loaded.node(NodeId(2)) as LocalVariable
+            assertEquals(TypeDescriptor("java.util.List"), param.type)
+            assertSame(param.type, local.type)
+            assertSame(param.type, param.method.returnType)
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `type closure is persisted and answers transitive queries in every load mode`() {
+        val builder = DefaultGraph.Builder()
+        fun relate(sub: String, sup: String, relation: TypeRelation) =
+            builder.addTypeRelation(TypeDescriptor(sub), TypeDescriptor(sup), relation)
+        relate("com.example.Impl", "com.example.Base", TypeRelation.EXTENDS)
+        relate("com.example.Impl", "com.example.Api", TypeRelation.IMPLEMENTS)
+        relate("com.example.Base", "java.lang.Object", TypeRelation.EXTENDS)
+        relate("com.example.Api", "com.example.Marker", TypeRelation.EXTENDS)
+        relate("com.example.Other", "com.example.Api", TypeRelation.IMPLEMENTS)
+        val dir = Files.createTempDirectory("webgraph-type-closure-test")
+        try {
+            GraphStore.save(builder.build(), dir)
+            assertTrue(Files.exists(dir.resolve("graph.types")))
+            val modes: List<() -> Graph> = listOf({ GraphStore.load(dir) }, { GraphStore.loadLazy(dir) }, { GraphStore.loadMapped(dir) })
+            for (load in modes + { Files.delete(dir.resolve("graph.types")); GraphStore.load(dir) }) {
+                val loaded = load()
+                try {
+                    val impl = TypeDescriptor("com.example.Impl")
+                    assertTrue(loaded.isSubtypeOf(impl, TypeDescriptor("com.example.Marker")))
+                    assertTrue(loaded.isSubtypeOf(impl, TypeDescriptor("java.lang.Object")))
+                    assertFalse(loaded.isSubtypeOf(TypeDescriptor("com.example.Other"), TypeDescriptor("com.example.Base")))
+                    assertEquals(
+                        setOf("com.example.Base", "com.example.Api", "java.lang.Object", "com.example.Marker"),
+                        loaded.allSupertypes(impl).map { it.className }.toSet()
+                    )
+                    assertEquals(
+                        setOf("com.example.Api", "com.example.Impl", "com.example.Other"),
+                        loaded.allSubtypes(TypeDescriptor("com.example.Marker")).map { it.className }.toSet()
+                    )
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `call site columns are persisted and read without materializing nodes`() {
+        val graph = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-call-site-columns-test")
+        try {
+            GraphStore.save(graph, dir)
+            assertTrue(Files.exists(dir.resolve("graph.columns.callsite.callee_class")))
+            val expected = graph.nodes(CallSiteNode::class.java).toList()
+            for (loaded in listOf(GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    val columns = loaded.nodeColumns(CallSiteNode::class.java) as CallSiteColumns
+                    assertNull(loaded.nodeColumns(IntConstant::class.java))
+                    assertEquals(expected.size, columns.size)
+                    assertEquals(loaded.nodes(CallSiteNode::class.java).map { it.id.value }.toList(), (0 until columns.size).map { columns.nodeId(it) })
+                    for (row in 0 until columns.size) {
+                        val node = loaded.node(NodeId(columns.nodeId(row))) as CallSiteNode
+                        assertEquals(node.callee.declaringClass.className, columns.calleeClass(row))
+                        assertEquals(node.callee.name, columns.calleeName(row))
+                        assertEquals(node.lineNumber, columns.line(row))
+                        assertEquals(node, columns.node(row))
+                    }
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+
+            Files.delete(dir.resolve("graph.columns.callsite.line"))
+            val legacy = GraphStore.loadLazy(dir)
+            try {
+                assertNull(legacy.nodeColumns(CallSiteNode::class.java))
+                assertEquals(expected.size, legacy.nodes(CallSiteNode::class.java).count())
+            } finally {
+                (legacy as? Closeable)?.close()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `growable string table builds the sorted final table`() {
+        val dir = Files.createTempDirectory("webgraph-string-growable-test")
+        try {
+            val growable = StringTable.growable()
+            for (s in listOf("b", "a", "c", "a")) growable.indexOf(s)
+            assertEquals(3, growable.size())
+            val built = growable.build(dir)
+            assertEquals(listOf("a", "b", "c"), List(built.size()) { built.get(it) })
+            assertEquals(1, StringTable.load(dir).indexOf("b"))
+            assertFailsWith<IllegalStateException> { built.build(dir) }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `loaded string table resolves strings to ids`() {
+        val dir = Files.createTempDirectory("webgraph-string-index-test")
+        try {
+            val strings = listOf("getOption", "com.example.Foo", "", "\uD83D\uDE00", "a", "ab", "b", "\u00e9")
+            val built = StringTable.build(strings, dir)
+            val loaded = StringTable.load(dir)
+            for (s in strings) {
+                assertEquals(built.indexOf(s), loaded.indexOf(s), s)
+                assertEquals(s, loaded.get(loaded.indexOf(s)))
+            }
+            for (missing in listOf("0", "aa", "zzz", "getOptions", "com.example")) {
+                assertEquals(-1, loaded.indexOf(missing), missing)
+            }
+
+            val graph = buildTestGraph()
+            val graphDir = dir.resolve("graph")
+            GraphStore.save(graph, graphDir)
+            val lazy = GraphStore.loadLazy(graphDir)
+            try {
+                val columns = lazy.nodeColumns(CallSiteNode::class.java) as CallSiteColumns
+                for (row in 0 until columns.size) {
+                    assertEquals(columns.calleeNameId(row), columns.stringId(columns.calleeName(row)))
+                    assertEquals(columns.calleeClassId(row), columns.stringId(columns.calleeClass(row)))
+                }
+                assertEquals(-1, columns.stringId("no.such.Class"))
+            } finally {
+                (lazy as? Closeable)?.close()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `save walks the source nodes and edges once`() {
+        val source = buildTestGraph()
+        var nodeWalks = 0
+        val outgoingCalls = mutableMapOf<Int, Int>()
+        val graph = object : Graph by source {
+            override fun <T : Node> nodes(type: Class<T>): Sequence<T> {
+                if (type == Node::class.java) nodeWalks++
+                return source.nodes(type)
+            }
+
+            override fun outgoing(id: NodeId): Sequence<Edge> {
+                outgoingCalls.merge(id.value, 1, Int::plus)
+                return source.outgoing(id)
+            }
+        }
+        val dir = Files.createTempDirectory("webgraph-single-pass-test")
+        try {
+            GraphStore.save(graph, dir)
+            assertEquals(1, nodeWalks)
+            assertEquals(source.nodes(Node::class.java).map { it.id.value }.toSet(), outgoingCalls.keys)
+            assertTrue(outgoingCalls.values.all { it == 1 })
+            assertTrue(Files.list(dir).use { files -> files.noneMatch { it.fileName.toString().endsWith(".spool") } })
+
+            val loaded = GraphStore.load(dir)
+            assertEquals(source.nodes(Node::class.java).toSet(), loaded.nodes(Node::class.java).toSet())
+            for (node in source.nodes(Node::class.java)) {
+                assertEquals(source.outgoing(node.id).toSet(), loaded.outgoing(node.id).toSet())
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `succinct node index matches the node index file`() {
+        val source = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-succinct-index-test")
+        fun assertNodes() {
+            for (loaded in listOf(GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    for (node in source.nodes(Node::class.java)) {
+                        assertEquals(node, loaded.node(node.id))
+                        assertEquals(node.javaClass, loaded.nodeType(node.id))
+                    }
+                    assertNull(loaded.node(NodeId(-1)))
+                    assertNull(loaded.node(NodeId(Int.MAX_VALUE)))
+                    assertNull(loaded.nodeType(NodeId(-1)))
+                    assertNull(loaded.nodeType(NodeId(Int.MAX_VALUE)))
+                    for (type in listOf(Node::class.java, ValueNode::class.java, CallSiteNode::class.java, FieldNode::class.java)) {
+                        assertEquals(source.nodes(type).toSet(), loaded.nodes(type).toSet())
+                        assertEquals(source.nodes(type).count().toLong(), loaded.nodeCount(type))
+                    }
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        }
+        try {
+            GraphStore.save(source, dir)
+            for (file in listOf("graph.nodeoffsets", "graph.nodetypes", "graph.nodetags", "graph.labels.offsets")) {
+                assertTrue(Files.exists(dir.resolve(file)), file)
+            }
+            val ids = mutableListOf<Int>()
+            DataInputStream(dir.resolve("graph.nodeindex").toFile().inputStream().buffered()).use { dis ->
+                NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEINDEX)
+                repeat(dis.readInt()) {
+                    ids += dis.readInt()
+                    dis.readByte()
+                    dis.readLong()
+                }
+            }
+            assertEquals(ids.sorted(), ids)
+            assertNodes()
+
+            // Without the succinct files the node index file is read instead
+            listOf("graph.nodeoffsets", "graph.nodetypes", "graph.nodetags", "graph.labels.offsets").forEach {
+                Files.delete(dir.resolve(it))
+            }
+            assertNodes()
+
+            // Rebuilding the node index file drops a succinct index that may be stale
+            GraphStore.save(source, dir)
+            Files.delete(dir.resolve("graph.nodeindex"))
+            GraphStore.ensureNodeIndex(dir)
+            assertFalse(Files.exists(dir.resolve("graph.nodetags")))
+            assertNodes()
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `node cache serves repeated lookups within its bound`() {
+        val source = buildTestGraph()
+        val ids = source.nodes(Node::class.java).map { it.id }.sortedBy { it.value }.toList()
+        val dir = Files.createTempDirectory("webgraph-node-cache-test")
+        try {
+            GraphStore.save(source, dir)
+            for (load in listOf(GraphStore::loadLazy, GraphStore::loadMapped)) {
+                val cache = NodeCache(2)
+                val loaded = load(dir, cache)
+                try {
+                    assertEquals(source.node(ids[0]), loaded.node(ids[0]))
+                    assertSame(loaded.node(ids[0]), loaded.node(ids[0]))
+                    assertEquals(1, cache.misses)
+                    assertEquals(2, cache.hits)
+
+                    // ids[0] was referenced, so the clock hand evicts ids[1] for ids[2]
+                    assertEquals(source.node(ids[1]), loaded.node(ids[1]))
+                    assertEquals(source.node(ids[2]), loaded.node(ids[2]))
+                    assertEquals(2, cache.size)
+                    assertEquals(1, cache.evictions)
+                    loaded.node(ids[0])
+                    assertEquals(3, cache.hits)
+
+                    // Scans and missing nodes are not cached
+                    assertEquals(source.nodes(Node::class.java).toSet(), loaded.nodes(Node::class.java).toSet())
+                    assertNull(loaded.node(NodeId(Int.MAX_VALUE)))
+                    assertEquals(2, cache.size)
+                    assertEquals(4, cache.misses)
+
+                    assertFailsWith<IllegalStateException> { load(dir, cache) }
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+            assertFailsWith<IllegalArgumentException> { NodeCache(0) }
+            assertFailsWith<IllegalArgumentException> { NodeCache(-1) }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `lazy node reads are safe across threads`() {
+        val source = buildTestGraph()
+        val nodes = source.nodes(Node::class.java).toList()
+        val dir = Files.createTempDirectory("webgraph-lazy-concurrent-test")
+        try {
+            GraphStore.save(source, dir)
+            val loaded = GraphStore.loadLazy(dir)
+            try {
+                val pool = Executors.newFixedThreadPool(4)
+                try {
+                    val reads = (0 until 8).map {
+                        pool.submit<List<Node?>> { (0 until 50).flatMap { nodes.map { loaded.node(it.id) } } }
+                    }
+                    for (read in reads) {
+                        assertEquals((0 until 50).flatMap { nodes }, read.get())
+                    }
+                } finally {
+                    pool.shutdown()
+                }
+            } finally {
+                (loaded as Closeable).close()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `renumbered save clusters nodes by method and keeps original ids`() {
+        val type = TypeDescriptor("com.example.Foo")
+        val m1 = MethodDescriptor(type, "m1", emptyList(), TypeDescriptor("void"))
+        val m2 = MethodDescriptor(type, "m2", emptyList(), TypeDescriptor("void"))
+        val a1 = LocalVariable(NodeId(10), "a", TypeDescriptor("int"), m1)
+        val a2 = LocalVariable(NodeId(20), "a", TypeDescriptor("int"), m2)
+        val b1 = CallSiteNode(NodeId(30), m1, m2, 3, a1.id, listOf(a1.id, NodeId(99)))
+        val b2 = LocalVariable(NodeId(40), "b", TypeDescriptor("int"), m2)
+        val c = IntConstant(NodeId(50), 7)
+        val comparison = BranchComparison(ComparisonOp.EQ, c.id)
+        val source = DefaultGraph.Builder()
+            .addNode(a1).addNode(a2).addNode(b1).addNode(b2).addNode(c)
+            .addEdge(DataFlowEdge(a1.id, b1.id, DataFlowKind.PARAMETER_PASS))
+            .addEdge(DataFlowEdge(a2.id, b2.id, DataFlowKind.ASSIGN))
+            .addEdge(ControlFlowEdge(b1.id, c.id, ControlFlowKind.BRANCH_TRUE, comparison))
+            .addEdge(CallEdge(b1.id, a2.id, false))
+            .addBranchScope(b1.id, m1, comparison, intArrayOf(c.id.value), intArrayOf(a2.id.value))
+            .build()
+        val dir = Files.createTempDirectory("webgraph-renumber-test")
+        try {
+            GraphStore.save(source, dir, renumber = true)
+            val originalIds = assertNotNull(GraphStore.originalIds(dir))
+            // Breadth-first within m1 (a1, b1 and the constant it branches on), then m2
+            assertEquals(listOf(10, 30, 50, 20, 40), originalIds.toList())
+
+            val renumbering = NodeRenumbering(originalIds)
+            for (loaded in listOf(GraphStore.load(dir, GraphStore.LoadMode.EAGER), GraphStore.loadMapped(dir))) {
+                try {
+                    for ((id, originalId) in originalIds.withIndex()) {
+                        val node = assertNotNull(source.node(NodeId(originalId)))
+                        assertEquals(renumbering.node(node), loaded.node(NodeId(id)))
+                        assertEquals(source.outgoing(node.id).map(renumbering::edge).toSet(), loaded.outgoing(NodeId(id)).toSet())
+                        assertEquals(source.incoming(node.id).map(renumbering::edge).toSet(), loaded.incoming(NodeId(id)).toSet())
+                    }
+                    assertEquals(listOf(NodeId(0), NodeId(-1)), (loaded.node(NodeId(1)) as CallSiteNode).arguments)
+                    val scope = loaded.branchScopes().single()
+                    assertEquals(NodeId(1), scope.conditionNodeId)
+                    assertEquals(BranchComparison(ComparisonOp.EQ, NodeId(2)), scope.comparison)
+                    assertEquals(setOf(2), scope.trueBranchNodeIds.toSet())
+                    assertEquals(setOf(3), scope.falseBranchNodeIds.toSet())
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+
+            GraphStore.save(source, dir)
+            assertNull(GraphStore.originalIds(dir))
+            GraphStore.load(dir, GraphStore.LoadMode.EAGER).let { loaded ->
+                assertEquals(b1, loaded.node(b1.id))
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `edge family sub-graphs answer typed edge queries`() {
+        val source = buildTestGraph()
+        val edgeTypes = listOf(
+            DataFlowEdge::class.java, CallEdge::class.java, TypeEdge::class.java,
+            ControlFlowEdge::class.java, ResourceEdge::class.java
+        )
+        val dir = Files.createTempDirectory("webgraph-edge-families-test")
+        try {
+            for (storeBackward in listOf(true, false)) {
+                GraphStore.save(source, dir, storeBackward = storeBackward, storeEdgeFamilies = true)
+                assertTrue(Files.exists(dir.resolve("forward.call.graph")))
+                assertTrue(Files.exists(dir.resolve("graph.labels.controlflow")))
+                assertEquals(storeBackward, Files.exists(dir.resolve("graph.backward.labels.dataflow")))
+
+                for (loaded in listOf(GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                    try {
+                        for (node in source.nodes(Node::class.java)) {
+                            for (type in edgeTypes) {
+                                assertEquals(source.outgoing(node.id, type).toSet(), loaded.outgoing(node.id, type).toSet())
+                                assertEquals(source.incoming(node.id, type).toSet(), loaded.incoming(node.id, type).toSet())
+                                val mask = EdgeLabels.mask(type)
+                                val outgoing = mutableSetOf<Edge>()
+                                loaded.forEachOutgoing(node.id, mask) { to, label -> outgoing += loaded.edge(node.id.value, to, label) }
+                                assertEquals(source.outgoing(node.id, type).toSet(), outgoing)
+                                val incoming = mutableSetOf<Edge>()
+                                loaded.forEachIncoming(node.id, mask) { from, label -> incoming += loaded.edge(from, node.id.value, label) }
+                                assertEquals(source.incoming(node.id, type).toSet(), incoming)
+                            }
+                            assertEquals(source.outgoing(node.id).toSet(), loaded.outgoing(node.id).toSet())
+                        }
+                    } finally {
+                        (loaded as? Closeable)?.close()
+                    }
+                }
+            }
+
+            GraphStore.save(source, dir)
+            assertFalse(Files.exists(dir.resolve("forward.call.graph")))
+            assertFalse(Files.exists(dir.resolve("graph.labels.controlflow")))
+            assertFalse(Files.exists(dir.resolve("graph.labels.controlflow.offsets")))
+            GraphStore.loadLazy(dir).let { loaded ->
+                for (node in source.nodes(Node::class.java)) {
+                    assertEquals(source.outgoing(node.id, CallEdge::class.java).toSet(), loaded.outgoing(node.id, CallEdge::class.java).toSet())
+                }
+                (loaded as Closeable).close()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `property indexes find nodes by value in every load mode`() {
+        val type = TypeDescriptor("com.example.Foo")
+        val caller = MethodDescriptor(type, "main", emptyList(), TypeDescriptor("void"))
+        val get = MethodDescriptor(TypeDescriptor("com.example.Client"), "get", emptyList(), TypeDescriptor("void"))
+        val getAll = MethodDescriptor(TypeDescriptor("com.example.Client"), "getAll", emptyList(), TypeDescriptor("void"))
+        val source = DefaultGraph.Builder()
+            .addNode(CallSiteNode(NodeId(3), caller, get, 1, null, emptyList()))
+            .addNode(CallSiteNode(NodeId(1), caller, getAll, 2, null, emptyList()))
+            .addNode(CallSiteNode(NodeId(5), caller, get, 3, null, emptyList()))
+            .addNode(StringConstant(NodeId(2), "feature.mode"))
+            .addNode(StringConstant(NodeId(4), "feature.enabled"))
+            .addNode(AnnotationNode(NodeId(6), "org.example.Flag", "com.example.Foo", "main", emptyMap()))
+            .addNode(ResourceValueNode(NodeId(7), "application.properties", "feature.mode", "shadow", "properties"))
+            .build()
+        val dir = Files.createTempDirectory("webgraph-property-index-test")
+        try {
+            GraphStore.save(source, dir)
+            for (loaded in listOf(GraphStore.load(dir, GraphStore.LoadMode.EAGER), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    assertEquals(listOf(3, 5), loaded.lookup(CallSiteNode::class.java, "callee_name", "get")?.toList())
+                    assertEquals(
+                        listOf(1, 3, 5),
+                        loaded.lookup(CallSiteNode::class.java, "callee_class", "com.example.Client")?.toList()
+                    )
+                    assertEquals(
+                        listOf(1, 3, 5),
+                        loaded.propertyIndex(CallSiteNode::class.java, "callee_name")?.lookupPrefix("get")?.toList()
+                    )
+                    assertEquals(
+                        listOf(2, 4),
+                        loaded.propertyIndex(StringConstant::class.java, "value")?.lookupPrefix("feature.")?.toList()
+                    )
+                    assertEquals(listOf(6), loaded.lookup(AnnotationNode::class.java, "name", "org.example.Flag")?.toList())
+                    assertEquals(listOf(7), loaded.lookup(ResourceValueNode::class.java, "key", "feature.mode")?.toList())
+                    assertEquals(emptyList(), loaded.lookup(StringConstant::class.java, "value", "missing")?.toList())
+                    assertNull(loaded.lookup(CallSiteNode::class.java, "caller_name", "main"))
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+
+            GraphStore.save(source, dir, indexedProperties = listOf(IndexedProperty.STRING_VALUE))
+            GraphStore.loadLazy(dir).let { loaded ->
+                assertEquals(listOf(4), loaded.lookup(StringConstant::class.java, "value", "feature.enabled")?.toList())
+                assertNull(loaded.lookup(CallSiteNode::class.java, "callee_name", "get"))
+                (loaded as Closeable).close()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `index files written before the CSR layout are ignored`() {
+        val dir = Files.createTempDirectory("webgraph-property-index-test")
+        try {
+            val strings = StringTable.build(listOf("value"), dir)
+            val files = listOf(
+                "graph.propertyindex" to NodeSerializer.MAGIC_PROPERTIES,
+                "graph.strings.trigrams" to NodeSerializer.MAGIC_TRIGRAMS
+            )
+            for ((file, magic) in files) {
+                DataOutputStream(Files.newOutputStream(dir.resolve(file))).use { dos ->
+                    // The sequential layout of version 5: one index over StringConstant.value
+                    dos.writeInt(magic or NodeSerializer.SECTIONED_METADATA_FORMAT_VERSION)
+                    dos.writeInt(1)
+                    dos.writeByte(NodeSerializer.NODE_CLASSES.indexOf(StringConstant::class.java))
+                    dos.writeInt(strings.indexOf("value"))
+                    dos.writeInt(0)
+                }
+            }
+            val indexes = PersistedIndexes(dir.resolve("graph.propertyindex"), dir.resolve("graph.strings.trigrams"), strings)
+            assertNull(indexes.propertyIndex(StringConstant::class.java, "value"))
+            assertNull(indexes.trigramIndex(StringConstant::class.java, "value"))
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `save rejects indexed properties of non-persisted node types`() {
+        val source = DefaultGraph.Builder().addNode(StringConstant(NodeId(1), "v")).build()
+        val dir = Files.createTempDirectory("webgraph-property-index-test")
+        try {
+            val property = IndexedProperty(ValueNode::class.java, "value") { null }
+            assertFailsWith<IllegalArgumentException> {
+                GraphStore.save(source, dir, indexedProperties = listOf(property))
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `trigram indexes find string constants by substring unless disabled`() {
+        val values = listOf("https://api.example.com/v1", "SELECT * FROM users", "feature.checkout.enabled", "select id from orders")
+        val builder = DefaultGraph.Builder()
+        values.forEachIndexed { i, value -> builder.addNode(StringConstant(NodeId(i + 1), value)) }
+        val source = builder.build()
+        val dir = Files.createTempDirectory("webgraph-trigram-test")
+        try {
+            GraphStore.save(source, dir)
+            assertTrue(Files.exists(dir.resolve("graph.strings.trigrams")))
+            for (loaded in listOf(GraphStore.load(dir, GraphStore.LoadMode.EAGER), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    val index = loaded.trigramIndex(StringConstant::class.java, "value")
+                    assertNotNull(index)
+                    assertEquals(listOf(1), index.lookup(listOf("example.com")) { "example.com" in it }?.toList())
+                    assertEquals(listOf(2, 4), index.lookup(listOf("from", "FROM")) { it.contains("from", ignoreCase = true) }?.toList())
+                    assertEquals(emptyList(), index.lookup(listOf("missing")) { true }?.toList())
+                    assertNull(loaded.trigramIndex(CallSiteNode::class.java, "callee_name"))
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+
+            GraphStore.save(source, dir, storeTrigrams = false)
+            assertFalse(Files.exists(dir.resolve("graph.strings.trigrams")))
+            GraphStore.loadLazy(dir).let { loaded ->
+                assertNull(loaded.trigramIndex(StringConstant::class.java, "value"))
+                assertEquals(listOf(3), loaded.lookup(StringConstant::class.java, "value", "feature.checkout.enabled")?.toList())
+                (loaded as Closeable).close()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `block-compressed node data loads in every mode`() {
+        val source = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-compressed-nodedata-test")
+        try {
+            GraphStore.save(source, dir, compressNodeData = true)
+            assertTrue(Files.exists(dir.resolve("graph.nodedata.blocks")))
+            // The node index is rebuilt from the decompressed stream
+            Files.delete(dir.resolve("graph.nodeindex"))
+            GraphStore.ensureNodeIndex(dir)
+            for (loaded in listOf(GraphStore.load(dir, GraphStore.LoadMode.EAGER), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    assertEquals(source.nodes(Node::class.java).toSet(), loaded.nodes(Node::class.java).toSet())
+                    for (node in source.nodes(Node::class.java)) {
+                        assertEquals(node, loaded.node(node.id))
+                        assertEquals(source.outgoing(node.id).toSet(), loaded.outgoing(node.id).toSet())
+                    }
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+
+            GraphStore.save(source, dir)
+            assertFalse(Files.exists(dir.resolve("graph.nodedata.blocks")))
+            GraphStore.loadLazy(dir).let { loaded ->
+                assertEquals(source.nodes(Node::class.java).toSet(), loaded.nodes(Node::class.java).toSet())
+                (loaded as Closeable).close()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `compressed node data reads records spanning blocks`() {
+        val data = ByteArray(10_000) { (it * 31 % 7).toByte() }
+        val compressed = java.io.ByteArrayOutputStream()
+        val writer = NodeDataBlocks.Writer(compressed, blockSize = 256)
+        writer.write(data, 0, 100)
+        data.drop(100).take(50).forEach { writer.write(it.toInt()) }
+        writer.write(data, 150, data.size - 150)
+        writer.close()
+        val blocks = writer.blocks()
+        assertEquals(data.size.toLong(), blocks.length)
+        assertEquals((data.size + 255) / 256, blocks.count)
+
+        val bytes = compressed.toByteArray()
+        val reader = CompressedNodeData(blocks) { position, into -> System.arraycopy(bytes, position.toInt(), into, 0, into.size) }
+        assertTrue(data.contentEquals(reader.inputStream().readBytes()))
+        for (offset in listOf(0, 255, 256, 700, 9_999)) {
+            val input = reader.inputStream(offset.toLong())
+            val length = minOf(600, data.size - offset)
+            assertTrue(data.copyOfRange(offset, offset + length).contentEquals(input.readNBytes(length)), "offset $offset")
+        }
+        assertEquals(-1, reader.inputStream(data.size.toLong()).read())
+    }
+
+    @Test
+    fun `mapped adjacency and labels match the eager load`() {
+        val source = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-offheap-test")
+        try {
+            GraphStore.save(source, dir)
+            val eager = GraphStore.load(dir, GraphStore.LoadMode.EAGER)
+            val mapped = GraphStore.loadMapped(dir)
+            try {
+                for (node in source.nodes(Node::class.java)) {
+                    assertEquals(eager.outgoing(node.id).toList(), mapped.outgoing(node.id).toList())
+                    assertEquals(eager.incoming(node.id).toList(), mapped.incoming(node.id).toList())
+                    val cursor = mutableListOf<Pair<Int, Int>>()
+                    mapped.forEachOutgoing(node.id, EdgeLabels.ALL) { n, label -> cursor += n to label }
+                    assertEquals(eager.outgoing(node.id).map { it.to.value to EdgeLabels.of(it) }.toList(), cursor)
+                }
+            } finally {
+                (mapped as? Closeable)?.close()
+            }
+
+            val empty = Files.createTempDirectory("webgraph-offheap-empty-test")
+            try {
+                GraphStore.save(DefaultGraph.Builder().build(), empty)
+                val loaded = GraphStore.loadMapped(empty)
+                assertTrue(loaded.outgoing(NodeId(0)).none())
+                assertTrue(loaded.incoming(NodeId(0)).none())
+                (loaded as? Closeable)?.close()
+            } finally {
+                empty.toFile().deleteRecursively()
+            }
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
+    @Test
+    fun `persisted transpose serves incoming edges and is optional`() {
+        val source = buildTestGraph()
+        val dir = Files.createTempDirectory("webgraph-backward-test")
+        fun assertIncoming() {
+            for (loaded in listOf(GraphStore.load(dir), GraphStore.loadLazy(dir), GraphStore.loadMapped(dir))) {
+                try {
+                    for (node in source.nodes(Node::class.java)) {
+                        assertEquals(source.incoming(node.id).toSet(), loaded.incoming(node.id).toSet())
+                        val cursor = mutableSetOf<Int>()
+                        loaded.forEachIncoming(node.id, EdgeLabels.ALL) { n, _ -> cursor += n }
+                        assertEquals(source.incoming(node.id).map { it.from.value }.toSet(), cursor)
+                    }
+                } finally {
+                    (loaded as? Closeable)?.close()
+                }
+            }
+        }
+        try {
+            GraphStore.save(source, dir)
+            assertTrue(Files.exists(dir.resolve("backward.graph")))
+            assertTrue(Files.exists(dir.resolve("graph.backward.labels")))
+            assertIncoming()
+
+            // Re-saving without the transpose removes it; loads rebuild it from forward
+            GraphStore.save(source, dir, storeBackward = false)
+            assertFalse(Files.exists(dir.resolve("graph.backward.labels")))
+            assertIncoming()
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
     // ========================================================================
     // Reified nodes<T>() type filtering on loaded graph
     // ========================================================================
@@ -1777,6 +2617,67 @@ class GraphStoreTest {
         }
     }
 
+    @Test
+    fun `persisted resources are listed by glob prefix and read from the blob`() {
+        val contents = linkedMapOf(
+            "i18n/messages_fr.properties" to "greeting=bonjour",
+            "application.yml" to "server:\n  port: 8080\n",
+            "i18n/messages.properties" to "greeting=hello",
+            "META-INF/spring.factories.txt" to "",
+            "i18n/nested/errors.properties" to "error=oops",
+            "logo.png" to "not persisted"
+        )
+        val graph = DefaultGraph.Builder().setResources(
+            object : ResourceAccessor {
+                override fun list(pattern: String): Sequence<ResourceEntry> =
+                    contents.keys.asSequence().map { ResourceEntry(it, if (it.startsWith("i18n/")) "i18n.jar" else "app.jar") }
+
+                override fun open(path: String) =
+                    contents[path]?.let { ByteArrayInputStream(it.toByteArray()) }
+                        ?: throw java.io.IOException("Resource not found: $path")
+            }
+        ).build()
+        val dir = Files.createTempDirectory("webgraph-resource-blob-test")
+        try {
+            GraphStore.save(graph, dir)
+            val loaded = GraphStore.loadMapped(dir)
+            try {
+                val resources = loaded.resources
+                assertEquals(
+                    listOf(
+                        "META-INF/spring.factories.txt",
+                        "application.yml",
+                        "i18n/messages.properties",
+                        "i18n/messages_fr.properties",
+                        "i18n/nested/errors.properties"
+                    ),
+                    resources.list("**").map { it.path }.toList()
+                )
+                assertEquals(
+                    listOf("i18n/messages.properties", "i18n/messages_fr.properties"),
+                    resources.list("i18n/*.properties").map { it.path }.toList()
+                )
+                assertEquals(listOf("i18n.jar"), resources.list("i18n/**").map { it.source }.distinct().toList())
+                assertEquals(listOf(ResourceEntry("application.yml", "app.jar")), resources.list("application.yml").toList())
+                assertEquals(0, resources.list("missing.yml").count())
+                assertEquals(0, resources.list("**/*.png").count())
+
+                for ((path, content) in contents.filterKeys { !it.endsWith(".png") }) {
+                    assertEquals(content, resources.open(path).bufferedReader().readText())
+                }
+                assertFailsWith<java.io.IOException> { resources.open("logo.png") }
+            } finally {
+                (loaded as Closeable).close()
+            }
+
+            // Saving a graph without resources removes the stale blob
+            PersistedResourceStore.save(DefaultGraph.Builder().build(), dir)
+            assertFalse(Files.exists(dir.resolve("graph.resources")))
+        } finally {
+            dir.toFile().deleteRecursively()
+        }
+    }
+
     // ========================================================================
     // Shared assertion helpers
     // ========================================================================
@@ -1860,6 +2761,16 @@ class GraphStoreTest {
                 "Incoming edge count for node ${node.id}")
         }
 
+        // Edge cursor agrees with the sequence API
+        for (node in originalNodes) {
+            val outgoing = mutableSetOf<Edge>()
+            loaded.forEachOutgoing(node.id, EdgeLabels.ALL) { n, label -> outgoing += loaded.edge(node.id.value, n, label) }
+            assertEquals(loaded.outgoing(node.id).toSet(), outgoing, "Outgoing cursor for node ${node.id}")
+            val incoming = mutableSetOf<Edge>()
+            loaded.forEachIncoming(node.id, EdgeLabels.ALL) { n, label -> incoming += loaded.edge(n, node.id.value, label) }
+            assertEquals(loaded.incoming(node.id).toSet(), incoming, "Incoming cursor for node ${node.id}")
+        }
+
         // callSites
         val matched = loaded.callSites(MethodPattern(declaringClass = "com.example.Foo", name = "baz")).toList()
         assertEquals(1, matched.size)
@@ -1940,16 +2851,16 @@ class GraphStoreTest {
     }
 
     @Test
-    fun `readHeader with invalid magic via RandomAccessFile throws`() {
+    fun `readHeader with invalid magic in a file throws`() {
         val tmpFile = Files.createTempFile("bad-magic", ".bin")
         try {
             // Write wrong magic into the file
             DataOutputStream(tmpFile.toFile().outputStream()).use { dos ->
                 dos.writeInt(0x12345678) // wrong magic
             }
-            RandomAccessFile(tmpFile.toFile(), "r").use { raf ->
+            DataInputStream(tmpFile.toFile().inputStream()).use { dis ->
                 assertFailsWith<IllegalArgumentException> {
-                    NodeSerializer.readHeader(raf, NodeSerializer.MAGIC_NODEDATA)
+                    NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEDATA)
                 }
             }
         } finally {
@@ -1958,14 +2869,14 @@ class GraphStoreTest {
     }
 
     @Test
-    fun `readHeader via RandomAccessFile round-trip`() {
-        val tmpFile = Files.createTempFile("raf-header", ".bin")
+    fun `readHeader from a file round-trip`() {
+        val tmpFile = Files.createTempFile("file-header", ".bin")
         try {
             DataOutputStream(tmpFile.toFile().outputStream()).use { dos ->
                 NodeSerializer.writeHeader(dos, NodeSerializer.MAGIC_NODEDATA)
             }
-            RandomAccessFile(tmpFile.toFile(), "r").use { raf ->
-                val version = NodeSerializer.readHeader(raf, NodeSerializer.MAGIC_NODEDATA)
+            DataInputStream(tmpFile.toFile().inputStream()).use { dis ->
+                val version = NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEDATA)
                 assertEquals(NodeSerializer.FORMAT_VERSION, version)
             }
         } finally {
@@ -1974,14 +2885,14 @@ class GraphStoreTest {
     }
 
     @Test
-    fun `readHeader with legacy version via RandomAccessFile succeeds`() {
-        val tmpFile = Files.createTempFile("raf-unsupported-version", ".bin")
+    fun `readHeader with legacy version in a file succeeds`() {
+        val tmpFile = Files.createTempFile("legacy-version-header", ".bin")
         try {
             DataOutputStream(tmpFile.toFile().outputStream()).use { dos ->
                 dos.writeInt(NodeSerializer.MAGIC_NODEDATA or 0x01)
             }
-            RandomAccessFile(tmpFile.toFile(), "r").use { raf ->
-                val version = NodeSerializer.readHeader(raf, NodeSerializer.MAGIC_NODEDATA)
+            DataInputStream(tmpFile.toFile().inputStream()).use { dis ->
+                val version = NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_NODEDATA)
                 assertEquals(1, version)
             }
         } finally {
@@ -1993,13 +2904,13 @@ class GraphStoreTest {
     fun `readHeader with unknown version throws`() {
         val baos = ByteArrayOutputStream()
         val dos = DataOutputStream(baos)
-        dos.writeInt(NodeSerializer.MAGIC_METADATA or 0x04)
+        dos.writeInt(NodeSerializer.MAGIC_METADATA or 0x07)
         dos.flush()
         val dis = DataInputStream(ByteArrayInputStream(baos.toByteArray()))
         val error = assertFailsWith<IllegalArgumentException> {
             NodeSerializer.readHeader(dis, NodeSerializer.MAGIC_METADATA)
         }
-        assertTrue(error.message!!.contains("Unsupported GraphStore format version 4"))
+        assertTrue(error.message!!.contains("Unsupported GraphStore format version 7"))
     }
 
     // ========================================================================
@@ -2163,15 +3074,15 @@ class GraphStoreTest {
     }
 
     // ========================================================================
-    // No backward files written on save
+    // No backward files written when the transpose is disabled
     // ========================================================================
 
     @Test
-    fun `no backward files written on save`() {
+    fun `no backward files written when the transpose is disabled`() {
         val graph = buildTestGraph()
         val dir = Files.createTempDirectory("no-backward-test")
         try {
-            GraphStore.save(graph, dir)
+            GraphStore.save(graph, dir, storeBackward = false)
             assertFalse(Files.exists(dir.resolve("backward.graph")))
             assertFalse(Files.exists(dir.resolve("backward.properties")))
             assertFalse(Files.exists(dir.resolve("backward.offsets")))